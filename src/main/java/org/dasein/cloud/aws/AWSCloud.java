@@ -20,18 +20,9 @@
 package org.dasein.cloud.aws;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.codec.binary.Hex;
 import org.apache.http.*;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.entity.GzipDecompressingEntity;
 import org.apache.http.client.utils.URIUtils;
-import org.apache.http.client.utils.URLEncodedUtils;
-import org.apache.http.conn.params.ConnRoutePNames;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.params.HttpProtocolParams;
-import org.apache.http.protocol.HttpContext;
 import org.apache.log4j.Logger;
 import org.dasein.cloud.*;
 import org.dasein.cloud.aws.admin.AWSAdminServices;
@@ -39,7 +30,6 @@ import org.dasein.cloud.aws.compute.EC2ComputeServices;
 import org.dasein.cloud.aws.compute.EC2Exception;
 import org.dasein.cloud.aws.compute.EC2Method;
 import org.dasein.cloud.aws.identity.AWSIdentityServices;
-import org.dasein.cloud.aws.identity.IAMMethod;
 import org.dasein.cloud.aws.network.EC2NetworkServices;
 import org.dasein.cloud.aws.network.ELBMethod;
 import org.dasein.cloud.aws.platform.AWSPlatformServices;
@@ -47,7 +37,6 @@ import org.dasein.cloud.aws.storage.AWSCloudStorageServices;
 import org.dasein.cloud.aws.storage.S3Method;
 import org.dasein.cloud.compute.ComputeServices;
 import org.dasein.cloud.compute.VirtualMachineSupport;
-import org.dasein.cloud.platform.KeyValuePair;
 import org.dasein.cloud.storage.BlobStoreSupport;
 import org.dasein.cloud.storage.StorageServices;
 import org.dasein.cloud.util.APITrace;
@@ -59,23 +48,20 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
+import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.security.InvalidKeyException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AWSCloud extends AbstractCloud {
 
-    private static final int MAX_RETRIES = 0;
 
     static private String getLastItem( String name ) {
         int idx = name.lastIndexOf('.');
@@ -184,43 +170,11 @@ public class AWSCloud extends AbstractCloud {
     }
 
     static public byte[] HmacSHA256( String data, byte[] key ) throws InternalException {
-
-        final String algorithm = "HmacSHA256";
-        Mac mac;
-        try {
-            mac = Mac.getInstance(algorithm);
-            mac.init(new SecretKeySpec(key, algorithm));
-            return mac.doFinal(data.getBytes("UTF-8"));
-        }
-        catch( NoSuchAlgorithmException e ) {
-            throw new InternalException(e);
-        }
-        catch( InvalidKeyException e ) {
-            throw new InternalException(e);
-        }
-        catch( UnsupportedEncodingException e ) {
-            throw new InternalException(e);
-        }
+        return V4Signer.hmacSHA256(data, key);
     }
 
     static public String computeSHA256Hash( String value ) throws InternalException {
-        try {
-            byte[] valueBytes = value.getBytes("utf-8");
-            BufferedInputStream inputStream = new BufferedInputStream(new ByteArrayInputStream(valueBytes));
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] buffer = new byte[4096];
-            int read;
-            while( ( read = inputStream.read(buffer, 0, buffer.length) ) != -1 ) {
-                digest.update(buffer, 0, read);
-            }
-            return new String(Hex.encodeHex(digest.digest(), true));
-        }
-        catch( NoSuchAlgorithmException e ) {
-            throw new InternalException(e);
-        }
-        catch( IOException e ) {
-            throw new InternalException(e);
-        }
+        return V4Signer.sha256Hex(value);
     }
 
     public AWSCloud() {
@@ -286,7 +240,7 @@ public class AWSCloud extends AbstractCloud {
             Thread t = new Thread() {
                 public void run() {
                     try {
-                        createTags(1, service, resourceIds, keyValuePairs);
+                        createTags(service, resourceIds, keyValuePairs);
                     }
                     finally {
                         release();
@@ -298,12 +252,12 @@ public class AWSCloud extends AbstractCloud {
             t.setDaemon(true);
             t.start();
         } else {
-            createTags(1, service, resourceIds, keyValuePairs);
+            createTags(service, resourceIds, keyValuePairs);
         }
         return true;
     }
 
-    private void createTags( int attempt, String service, String[] resourceIds, Tag... keyValuePairs ) {
+    private void createTags( String service, String[] resourceIds, Tag... keyValuePairs ) {
     	APITrace.begin(this, "Cloud.createTags");
     	try {
     		try {
@@ -332,16 +286,8 @@ public class AWSCloud extends AbstractCloud {
     			try {
     				method.invoke();
     			} catch( EC2Exception e ) {
-    				if( attempt > MAX_RETRIES ) {
-    					logger.error("EC2 error setting tags for " + Arrays.toString(resourceIds) + ": " + e.getSummary());
-    					return;
-    				}
-    				try {
-    					Thread.sleep(5000L);
-    				} catch( InterruptedException ignore ) {
-    				}
-    				logger.warn("Retry attempt "+ (attempt + 1) + " to create tags for ["+resourceIds+"]");
-    				createTags(attempt + 1, service, resourceIds, keyValuePairs);
+    				// EC2Method has already retried transient failures through the retry policy
+    				logger.error("EC2 error setting tags for " + Arrays.toString(resourceIds) + ": " + e.getSummary());
     			}
     		} catch( Throwable ignore ) {
     			logger.error("Error while creating tags for " + Arrays.toString(resourceIds) + ".", ignore);
@@ -728,6 +674,32 @@ public class AWSCloud extends AbstractCloud {
         return -1;
     }
 
+    /**
+     * Reads a numeric tuning value from the custom properties of the current context.
+     * @param name the name of the custom property
+     * @param defaultValue the value to use when the property is missing, invalid or not positive
+     * @return the configured value or the default value
+     */
+    public int getIntProperty( @Nonnull String name, int defaultValue ) {
+        ProviderContext ctx = getContext();
+        Properties props = ( ctx == null ? null : ctx.getCustomProperties() );
+        String value = ( props == null ? null : props.getProperty(name) );
+
+        if( value != null ) {
+            try {
+                int i = Integer.parseInt(value.trim());
+
+                if( i > 0 ) {
+                    return i;
+                }
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Ignoring invalid value for " + name + ": " + value);
+            }
+        }
+        return defaultValue;
+    }
+
     @Override
     public @Nonnull AWSCloudStorageServices getStorageServices() {
         return new AWSCloudStorageServices(this);
@@ -931,6 +903,16 @@ public class AWSCloud extends AbstractCloud {
         }
     }
 
+    /**
+     * Hashes the content of a file being uploaded. The file is streamed through the digest rather than read into memory.
+     * @param file the file to be sent as the request body
+     * @return the hex encoded SHA-256 hash of the file content
+     * @throws InternalException the file could not be read
+     */
+    public String getRequestBodyHash(File file) throws InternalException {
+        return V4Signer.sha256Hex(file);
+    }
+
     public String signCloudFront( String accessKey, byte[] secretKey, String dateString ) throws InternalException {
         String signature = sign(secretKey, dateString, CLOUD_FRONT_ALGORITHM);
 
@@ -1013,185 +995,11 @@ public class AWSCloud extends AbstractCloud {
      * @throws InternalException
      */
     public String getV4Authorization( String accessKey, String secretKey, String action, String url, String serviceId, Map<String, String> headers, String bodyHash ) throws InternalException {
-        serviceId = serviceId.toLowerCase();
-        String regionId = "us-east-1"; // default for IAM
-//        if( ctx != null && ctx.getRegionId() != null && !ctx.getRegionId().isEmpty() &&
-//                !serviceId.equalsIgnoreCase(IAMMethod.SERVICE_ID) ) {
-//            regionId = getContext().getRegionId();
-//        } else {
-        String host = url.replaceAll("https?:\\/\\/", "");
-        if( host.indexOf('/') > 0 ) {
-            host = host.substring(0, host.indexOf('/', 1));
-        }
-        if( !IAMMethod.SERVICE_ID.equalsIgnoreCase(serviceId) ) {
-            String[] urlParts = host.split("\\.");
-            // everywhere except s3 and iam this is: service.region.amazonaws.com or service.region.amazonaws.com.cn
-            if( urlParts.length > 2 ) {
-                regionId = urlParts[1];
-                if (regionId.startsWith("s3-")) {
-                    regionId = regionId.substring(3);
-                }
-            }
-        }
-        String amzDate = extractV4Date(headers);
-        String credentialScope = getV4CredentialScope(amzDate, regionId, serviceId);
-        String signedHeaders = getV4SignedHeaders(headers);
-        String signature = signV4(secretKey, action, url, regionId, serviceId, headers, bodyHash);
-
-        return V4_ALGORITHM + " " + "Credential=" + accessKey + "/" + credentialScope + ", " + "SignedHeaders=" + signedHeaders + ", " + "Signature=" + signature;
-    }
-
-    private String signV4( String secretKey, String action, String serviceUrl, String regionId, String serviceId, Map<String, String> headers, String bodyHash ) throws InternalException {
-        final String canonicalRequest = getV4CanonicalRequest(action, serviceUrl, headers, bodyHash);
-
-        String amzDate = extractV4Date(headers);
-        final String stringToSign = getV4StringToSign(amzDate, regionId, serviceId, canonicalRequest);
-
-        // signature uses YYYYMMDD
-        String dateStamp = amzDate.substring(0, 8);
-        final byte[] signingKey = getV4SigningKey(secretKey, dateStamp, regionId, serviceId);
-
-        return new String(Hex.encodeHex(HmacSHA256(stringToSign, signingKey), true));
-    }
-
-    private String extractV4Date( Map<String, String> headers ) throws InternalException {
-
-        Map<String, String> lower = new HashMap<String, String>();
-        for( Map.Entry<String, String> entry : headers.entrySet() ) {
-            lower.put(entry.getKey().toLowerCase(), entry.getValue());
-        }
-        String amzDate = headers.get(P_AWS_DATE);
-        // expecting YYYYMMDDTHHMMSSZ
-        if( amzDate != null ) {
-            if( amzDate.length() != 16 ) {
-                throw new InternalException("request has invalid " + P_AWS_DATE);
-            }
-            return amzDate;
-        }
-
-        String date = lower.get("date");
-        if( date == null ) {
-            throw new InternalException("request is missing date header");
-        }
-        SimpleDateFormat parser = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz");
-        try {
-            return getV4HeaderDate(parser.parse(date));
-
-        } catch( ParseException e ) {
-            throw new InternalException("request has invalid date header format");
-        }
-    }
-
-    private byte[] getV4SigningKey( String secretKey, String dateStamp, String regionId, String serviceId ) throws InternalException {
-        byte[] withSecret = ( "AWS4" + secretKey ).getBytes();
-        byte[] withDate = HmacSHA256(dateStamp, withSecret);
-        byte[] withRegion = HmacSHA256(regionId, withDate);
-        byte[] withService = HmacSHA256(serviceId, withRegion);
-        return HmacSHA256("aws4_request", withService);
-    }
-
-    private String getV4StringToSign( String dateStamp, String regionId, String serviceId, String canonicalRequest ) throws InternalException {
-        return V4_ALGORITHM + "\n" + dateStamp + "\n" + getV4CredentialScope(dateStamp, regionId, serviceId) + "\n" + computeSHA256Hash(canonicalRequest);
-    }
-
-    private String getV4CredentialScope( String dateStamp, String regionId, String serviceId ) {
-        return dateStamp.substring(0, 8) + "/" + regionId + "/" + serviceId + "/" + V4_TERMINATION;
-    }
-
-    private String getV4CanonicalRequest( String action, String serviceUrl, Map<String, String> headers, String bodyHash ) throws InternalException {
-    /*
-        CanonicalRequest =
-        HTTPRequestMethod + '\n' +
-        CanonicalURI + '\n' +
-        CanonicalQueryString + '\n' +
-        CanonicalHeaders + '\n' +
-        SignedHeaders + '\n' +
-        HexEncode(Hash(Payload))
-    */
-
-        final URI endpoint;
-        try {
-            endpoint = new URI(serviceUrl.replace(" ", "%20")).normalize();
-        } catch( URISyntaxException e ) {
-            throw new InternalException(e);
-        }
-
-        final StringBuilder s = new StringBuilder();
-        s.append(action.toUpperCase()).append("\n");
-
-        String path = endpoint.getPath();
-        if( path == null || path.length() == 0 ) {
-            path = "/";
-        }
-        s.append(encode(path, true)).append("\n");
-        s.append(getV4CanonicalQueryString(endpoint)).append("\n");
-
-        List<String> sortedHeaders = new ArrayList<String>();
-        sortedHeaders.addAll(headers.keySet());
-        Collections.sort(sortedHeaders, String.CASE_INSENSITIVE_ORDER);
-
-        for( String header : sortedHeaders ) {
-            String value = headers.get(header).trim().replaceAll("\\s+", " ");
-            header = header.toLowerCase().replaceAll("\\s+", " ");
-            s.append(header).append(":").append(value).append("\n");
-        }
-        s.append("\n").append(getV4SignedHeaders(headers)).append("\n").append(bodyHash);
-
-        return s.toString();
-    }
-
-    private String getV4CanonicalQueryString( URI endpoint ) throws InternalException {
-        // parse query params and translate to another form of tuple that is comparable on both key and value
-
-        List<NameValuePair> parsedParams = URLEncodedUtils.parse(endpoint, "UTF-8");
-        List<KeyValuePair> queryParams = new ArrayList<KeyValuePair>(parsedParams.size());
-        for( NameValuePair param : parsedParams ) {
-            String key = encode(param.getName(), false);
-            String value = param.getValue() != null ? encode(param.getValue(), false) : "";
-            queryParams.add(new KeyValuePair(key, value));
-        }
-
-        // sort query parameters by key, then value
-        Collections.sort(queryParams);
-
-        StringBuilder sb = new StringBuilder();
-        for( KeyValuePair pair : queryParams ) {
-            if( sb.length() > 0 ) {
-                sb.append("&");
-            }
-            sb.append(pair.getKey()).append("=").append(pair.getValue());
-        }
-        return sb.toString();
-    }
-
-    private String getV4SignedHeaders( Map<String, String> headers ) {
-        // move to set to lower case and remove dupes
-        Set<String> sorted = new TreeSet<String>();
-        for( String header : headers.keySet() ) {
-            sorted.add(header.toLowerCase());
-        }
-
-        StringBuilder sb = new StringBuilder();
-        for( String header : sorted ) {
-            if( sb.length() > 0 ) {
-                sb.append(";");
-            }
-            sb.append(header.toLowerCase());
-        }
-
-        return sb.toString();
+        return V4Signer.getAuthorization(accessKey, secretKey, action, url, serviceId, headers, bodyHash);
     }
 
     public String getV4HeaderDate( Date date ) {
-        SimpleDateFormat fmt = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
-        Calendar cal = Calendar.getInstance(new SimpleTimeZone(0, "GMT"));
-        fmt.setCalendar(cal);
-        if( date == null ) {
-            return fmt.format(new Date());
-        }
-        else {
-            return fmt.format(date);
-        }
+        return V4Signer.formatDate(date);
     }
 
     @Override
@@ -1440,69 +1248,112 @@ public class AWSCloud extends AbstractCloud {
         parameters.put(key, value.toString());
     }
 
+    /**
+     * @return the pooled client of the transport for the current proxy settings
+     * @throws InternalException if there is no context established for this provider
+     */
     public @Nonnull HttpClient getClient() throws InternalException {
-        return getClient(false);
+        return getTransport().getClient();
     }
 
+    /**
+     * @param multipart ignored
+     * @return the pooled client of the transport for the current proxy settings
+     * @throws InternalException if there is no context established for this provider
+     * @deprecated all requests share one pooled client whatever their body, use {@link #getClient()}
+     */
+    @Deprecated
     public @Nonnull HttpClient getClient(boolean multipart) throws InternalException {
+        return getClient();
+    }
+
+    // pooled transports keyed by the proxy they go through, so that changing the proxy of the context takes effect
+    private final ConcurrentHashMap<String, HttpTransport> transports = new ConcurrentHashMap<String, HttpTransport>();
+
+    /**
+     * Provides the pooled HTTP transport shared by all requests made through this provider with the current proxy
+     * settings. Connections are released back to the pool once the response entity is consumed or closed.
+     *
+     * @return the transport for this provider and proxy, created on first use
+     * @throws InternalException if there is no context established for this provider
+     */
+    public @Nonnull HttpTransport getTransport() throws InternalException {
         ProviderContext ctx = getContext();
+
         if( ctx == null ) {
             throw new InternalException("No context was specified for this request");
         }
+        String proxyHost = getProxyHost();
+        int proxyPort = getProxyPort();
+        String key = ( proxyHost == null ? "" : proxyHost ) + ":" + proxyPort;
+        HttpTransport t = transports.get(key);
+
+        if( t == null ) {
+            synchronized( transports ) {
+                t = transports.get(key);
+                if( t == null ) {
+                    t = new HttpTransport(ctx.getCustomProperties(), proxyHost, proxyPort);
+                    transports.put(key, t);
+                }
+            }
+        }
+        return t;
+    }
 
-        final HttpParams params = new BasicHttpParams();
+    private transient volatile RetryPolicy retryPolicy;
 
-        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
-        if( !multipart ) {
-            HttpProtocolParams.setContentCharset(params, Consts.UTF_8.toString());
+    /**
+     * @return the policy deciding which failed requests made through this provider are retried
+     */
+    public @Nonnull RetryPolicy getRetryPolicy() {
+        RetryPolicy p = retryPolicy;
+
+        return ( p == null ? RetryPolicy.getDefault() : p );
+    }
+
+    /**
+     * Replaces the retry policy of this provider.
+     * @param retryPolicy the policy to use, or null to use the shared default policy
+     */
+    public void setRetryPolicy( @Nullable RetryPolicy retryPolicy ) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    private transient volatile RateLimiter rateLimiter;
+
+    /**
+     * @return the limiter pacing the requests made through this provider
+     */
+    public @Nonnull RateLimiter getRateLimiter() {
+        RateLimiter l = rateLimiter;
+
+        return ( l == null ? RateLimiter.getDefault() : l );
+    }
+
+    /**
+     * Replaces the rate limiter of this provider.
+     * @param rateLimiter the limiter to use, or null to use the shared default limiter
+     */
+    public void setRateLimiter( @Nullable RateLimiter rateLimiter ) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public void close() {
+        try {
+            super.close();
         }
-        HttpProtocolParams.setUserAgent(params, "Dasein Cloud");
+        finally {
+            List<HttpTransport> closing;
 
-        Properties p = ctx.getCustomProperties();
-        if( p != null ) {
-            String proxyHost = p.getProperty("proxyHost");
-            String proxyPortStr = p.getProperty("proxyPort");
-            int proxyPort = 0;
-            if( proxyPortStr != null ) {
-                proxyPort = Integer.parseInt(proxyPortStr);
+            synchronized( transports ) {
+                closing = new ArrayList<HttpTransport>(transports.values());
+                transports.clear();
             }
-            if( proxyHost != null && proxyHost.length() > 0 && proxyPort > 0 ) {
-                params.setParameter(ConnRoutePNames.DEFAULT_PROXY,
-                        new HttpHost(proxyHost, proxyPort)
-                );
+            for( HttpTransport t : closing ) {
+                t.close();
             }
         }
-        DefaultHttpClient httpClient = new DefaultHttpClient(params);
-        httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
-            public void process(
-                    final HttpRequest request,
-                    final HttpContext context) throws HttpException, IOException {
-                if( !request.containsHeader("Accept-Encoding") ) {
-                    request.addHeader("Accept-Encoding", "gzip");
-                }
-                request.setParams(params);
-            }
-        });
-        httpClient.addResponseInterceptor(new HttpResponseInterceptor() {
-            public void process(
-                    final HttpResponse response,
-                    final HttpContext context) throws HttpException, IOException {
-                HttpEntity entity = response.getEntity();
-                if( entity != null ) {
-                    Header header = entity.getContentEncoding();
-                    if( header != null ) {
-                        for( HeaderElement codec : header.getElements() ) {
-                            if( codec.getName().equalsIgnoreCase("gzip") ) {
-                                response.setEntity(
-                                        new GzipDecompressingEntity(response.getEntity()));
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
-        });
-        return httpClient;
     }
 
     /**
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws;
+
+import org.apache.http.*;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provider-scoped HTTP transport shared by all of the AWS method classes. Connections are pooled per
+ * endpoint route (scheme, host and port) so that consecutive calls to the same endpoint reuse an already
+ * established TCP/TLS connection instead of paying a fresh handshake on every request.
+ * <p>
+ * The pool can be tuned through the following custom properties of the provider context:
+ * </p>
+ * <ul>
+ *     <li><code>httpMaxConnections</code> - total number of pooled connections (default 100)</li>
+ *     <li><code>httpMaxConnectionsPerRoute</code> - pooled connections per endpoint host (default 20)</li>
+ *     <li><code>httpIdleTimeout</code> - seconds an idle connection is kept before eviction (default 30)</li>
+ * </ul>
+ * <p>
+ * Callers must release connections by consuming or closing the response entity; they must never shut down
+ * the connection manager of the returned client.
+ * </p>
+ *
+ * @since 2015.10
+ */
+public class HttpTransport {
+    static private final Logger logger = AWSCloud.getLogger(HttpTransport.class);
+
+    static public final String P_MAX_CONNECTIONS           = "httpMaxConnections";
+    static public final String P_MAX_CONNECTIONS_PER_ROUTE = "httpMaxConnectionsPerRoute";
+    static public final String P_IDLE_TIMEOUT              = "httpIdleTimeout";
+
+    static private final int  DEFAULT_MAX_CONNECTIONS           = 100;
+    static private final int  DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    static private final long DEFAULT_IDLE_TIMEOUT              = 30L;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient                client;
+    private final AtomicLong                         poolHits   = new AtomicLong();
+    private final AtomicLong                         poolMisses = new AtomicLong();
+
+    public HttpTransport( @Nullable Properties properties, @Nullable String proxyHost, int proxyPort ) {
+        long idleTimeout = getLong(properties, P_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal((int)getLong(properties, P_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS));
+        connectionManager.setDefaultMaxPerRoute((int)getLong(properties, P_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+        // AWS endpoints may silently drop pooled connections, revalidate those that sat idle for a while
+        connectionManager.setValidateAfterInactivity(2000);
+
+        HttpHost proxy = null;
+        if( proxyHost != null && proxyHost.length() > 0 && proxyPort > 0 ) {
+            proxy = new HttpHost(proxyHost, proxyPort);
+        }
+        client = createClient(proxy, idleTimeout);
+    }
+
+    private @Nonnull CloseableHttpClient createClient( @Nullable HttpHost proxy, final long idleTimeout ) {
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setUserAgent("Dasein Cloud")
+                .disableContentCompression()
+                .setDefaultRequestConfig(RequestConfig.custom().setProxy(proxy).build())
+                .setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                    @Override
+                    public long getKeepAliveDuration( HttpResponse response, HttpContext context ) {
+                        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+
+                        // AWS rarely advertises a keep-alive timeout, keep the connection until the idle eviction
+                        return ( duration > 0 ? duration : TimeUnit.SECONDS.toMillis(idleTimeout) );
+                    }
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.SECONDS);
+
+        builder.addInterceptorLast(new HttpRequestInterceptor() {
+            public void process( final HttpRequest request, final HttpContext context ) throws HttpException, IOException {
+                // a range is a slice of the stored bytes and cannot be decoded on its own
+                if( !request.containsHeader("Accept-Encoding") && !request.containsHeader("Range") ) {
+                    request.addHeader("Accept-Encoding", "gzip");
+                }
+                HttpConnection connection = HttpClientContext.adapt(context).getConnection();
+
+                // a connection which has not sent anything yet has just been opened for this request
+                if( connection != null && connection.getMetrics().getRequestCount() > 0 ) {
+                    poolHits.incrementAndGet();
+                }
+                else {
+                    poolMisses.incrementAndGet();
+                }
+            }
+        });
+        builder.addInterceptorLast(new HttpResponseInterceptor() {
+            public void process( final HttpResponse response, final HttpContext context ) throws HttpException, IOException {
+                HttpEntity entity = response.getEntity();
+                HttpRequest request = HttpClientContext.adapt(context).getRequest();
+
+                if( entity != null && ( request == null || !request.containsHeader("Range") ) ) {
+                    Header header = entity.getContentEncoding();
+                    if( header != null ) {
+                        for( HeaderElement codec : header.getElements() ) {
+                            if( codec.getName().equalsIgnoreCase("gzip") ) {
+                                response.setEntity(new GzipDecompressingEntity(response.getEntity()));
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        });
+        return builder.build();
+    }
+
+    static private long getLong( @Nullable Properties properties, @Nonnull String name, long defaultValue ) {
+        String value = ( properties == null ? null : properties.getProperty(name) );
+
+        if( value != null ) {
+            try {
+                long l = Long.parseLong(value.trim());
+
+                if( l > 0 ) {
+                    return l;
+                }
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Ignoring invalid value for " + name + ": " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @return the pooled client backing this transport
+     */
+    public @Nonnull HttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return number of requests which were sent over a connection reused from the pool
+     */
+    public long getPoolHits() {
+        return poolHits.get();
+    }
+
+    /**
+     * @return number of requests which required a new connection (and therefore a new handshake)
+     */
+    public long getPoolMisses() {
+        return poolMisses.get();
+    }
+
+    /**
+     * @return current leased, available and pending connection counts across all routes
+     */
+    public @Nonnull PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    public void close() {
+        try {
+            client.close();
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to close HTTP clients cleanly: " + e.getMessage());
+        }
+        finally {
+            connectionManager.shutdown();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional client side limit on the rate of requests sent to AWS. Requests are paced by token buckets keyed
+ * by account, region and service, with separate buckets for read-only (Describe/List/Get) and mutating
+ * actions. A caller finding its bucket empty queues for the next token instead of sending a request that
+ * would only come back as <code>RequestLimitExceeded</code>.
+ * <p>
+ * Limiting is off unless enabled through the custom properties of the provider context:
+ * </p>
+ * <ul>
+ *     <li><code>rateLimitDescribe</code> - read-only requests per second for each account, region and service</li>
+ *     <li><code>rateLimitMutating</code> - mutating requests per second for each account, region and service</li>
+ * </ul>
+ * <p>
+ * Each bucket holds up to one second worth of tokens, so short bursts go through unthrottled. The current
+ * queue depth and the time spent waiting are available per bucket through {@link #getBuckets()}.
+ * </p>
+ *
+ * @since 2015.10
+ */
+public class RateLimiter {
+    static private final Logger logger = AWSCloud.getLogger(RateLimiter.class);
+
+    static public final String P_DESCRIBE_RATE = "rateLimitDescribe";
+    static public final String P_MUTATING_RATE = "rateLimitMutating";
+
+    static private final RateLimiter DEFAULT = new RateLimiter();
+
+    /**
+     * @return the limiter shared by providers without a custom rate limiter
+     */
+    static public @Nonnull RateLimiter getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param action the API action or HTTP method of a request
+     * @return true if the action only reads state
+     */
+    static public boolean isDescribe( @Nullable String action ) {
+        return ( action != null && ( action.startsWith("Describe") || action.startsWith("List") || action.startsWith("Get")
+                || action.equalsIgnoreCase("GET") || action.equalsIgnoreCase("HEAD") ) );
+    }
+
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+
+    /**
+     * Waits until the request may be sent. Returns immediately if no limit is configured for the kind of request.
+     * @param provider the provider sending the request
+     * @param serviceId the service the request is sent to, e.g. <code>ec2</code>
+     * @param regionId the region the request is sent to, or null for global services
+     * @param action the API action or HTTP method of the request
+     * @throws InternalException the thread was interrupted while waiting
+     */
+    public void acquire( @Nonnull AWSCloud provider, @Nonnull String serviceId, @Nullable String regionId, @Nullable String action ) throws InternalException {
+        boolean describe = isDescribe(action);
+        int rate = provider.getIntProperty(describe ? P_DESCRIBE_RATE : P_MUTATING_RATE, -1);
+
+        if( rate < 1 ) {
+            return;
+        }
+        ProviderContext ctx = provider.getContext();
+        String account = ( ctx == null ? null : ctx.getAccountNumber() );
+        String key = account + "/" + regionId + "/" + serviceId + "/" + ( describe ? "describe" : "mutating" );
+        Bucket bucket = buckets.get(key);
+
+        if( bucket == null ) {
+            Bucket b = buckets.putIfAbsent(key, bucket = new Bucket(key, rate));
+
+            if( b != null ) {
+                bucket = b;
+            }
+        }
+        bucket.acquire(rate);
+    }
+
+    /**
+     * @return the buckets created so far, for monitoring
+     */
+    public @Nonnull Collection<Bucket> getBuckets() {
+        return new ArrayList<Bucket>(buckets.values());
+    }
+
+    /**
+     * A token bucket pacing one kind of request for one account, region and service.
+     */
+    static public class Bucket {
+        private final String name;
+
+        private double rate;
+        private double tokens;
+        private long   lastRefill;
+
+        private final AtomicInteger queueDepth    = new AtomicInteger();
+        private final AtomicInteger maxQueueDepth = new AtomicInteger();
+        private final AtomicLong    acquired      = new AtomicLong();
+        private final AtomicLong    delayed       = new AtomicLong();
+        private final AtomicLong    waitNanos     = new AtomicLong();
+
+        Bucket( @Nonnull String name, @Nonnegative int rate ) {
+            this.name = name;
+            this.rate = rate;
+            this.tokens = rate;
+            this.lastRefill = System.nanoTime();
+        }
+
+        /**
+         * Takes a token, waiting for it if the bucket is empty.
+         * @param rate the currently configured rate in requests per second
+         * @throws InternalException the thread was interrupted while waiting
+         */
+        void acquire( @Nonnegative int rate ) throws InternalException {
+            long wait = reserve(rate);
+
+            acquired.incrementAndGet();
+            if( wait <= 0L ) {
+                return;
+            }
+            int depth = queueDepth.incrementAndGet();
+
+            while( true ) {
+                int max = maxQueueDepth.get();
+
+                if( depth <= max || maxQueueDepth.compareAndSet(max, depth) ) {
+                    break;
+                }
+            }
+            delayed.incrementAndGet();
+            if( logger.isDebugEnabled() ) {
+                logger.debug("Waiting " + TimeUnit.NANOSECONDS.toMillis(wait) + "ms for " + name + " (" + depth + " queued)");
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+                waitNanos.addAndGet(wait);
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InternalException("Interrupted while waiting for a request slot for " + name);
+            }
+            finally {
+                queueDepth.decrementAndGet();
+            }
+        }
+
+        /**
+         * Takes a token, going into debt when the bucket is empty. Later callers therefore line up behind the
+         * ones already waiting.
+         * @return nanoseconds to wait before the token may be used
+         */
+        private synchronized long reserve( int newRate ) {
+            long now = System.nanoTime();
+
+            tokens = Math.min(rate, tokens + ( now - lastRefill ) * rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+            if( newRate != ( int ) rate ) {
+                rate = newRate;
+                tokens = Math.min(tokens, rate);
+            }
+            tokens -= 1.0;
+            if( tokens >= 0.0 ) {
+                return 0L;
+            }
+            return ( long ) ( -tokens * TimeUnit.SECONDS.toNanos(1) / rate );
+        }
+
+        /**
+         * @return the account, region, service and kind of request paced by this bucket
+         */
+        public @Nonnull String getName() {
+            return name;
+        }
+
+        /**
+         * @return number of callers currently waiting for a token
+         */
+        public int getQueueDepth() {
+            return queueDepth.get();
+        }
+
+        /**
+         * @return highest number of callers that waited for a token at the same time
+         */
+        public int getMaxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+
+        /**
+         * @return number of tokens handed out
+         */
+        public long getAcquired() {
+            return acquired.get();
+        }
+
+        /**
+         * @return number of callers that had to wait for their token
+         */
+        public long getDelayed() {
+            return delayed.get();
+        }
+
+        /**
+         * @return total time in milliseconds spent waiting for tokens
+         */
+        public long getTotalWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+        }
+
+        @Override
+        public String toString() {
+            return name + " [queued=" + getQueueDepth() + ", maxQueued=" + getMaxQueueDepth() + ", acquired=" + getAcquired()
+                    + ", delayed=" + getDelayed() + ", waitMs=" + getTotalWaitMillis() + "]";
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.aws.compute.EC2Exception;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether and when a failed AWS request is retried. Server errors and throttling responses are retried
+ * with decorrelated jitter exponential backoff, i.e. each delay is picked at random between the base delay and
+ * three times the previous delay, capped at the maximum delay. This spreads retries of concurrent callers
+ * instead of having them hit the endpoint again in lock step.
+ * <p>
+ * Retries are paid for from a token bucket per account and region. Every retry takes tokens from the bucket and
+ * every successful request returns some, so an account that keeps failing in a region quickly runs out of retries
+ * and its callers fail fast rather than piling up in backoff sleeps while holding worker threads. Other accounts
+ * keep their own budgets, so a noisy account never uses up the retries of the others.
+ * </p>
+ * <p>
+ * The default policy is shared by all providers so that providers working for the same account share its
+ * budgets. Custom policies can be plugged in through {@link AWSCloud#setRetryPolicy(RetryPolicy)}.
+ * </p>
+ *
+ * @since 2015.10
+ */
+public class RetryPolicy {
+    static private final Logger logger = AWSCloud.getLogger(RetryPolicy.class);
+
+    static private final Set<String> TRANSIENT_CODES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "InternalError", "InternalFailure", "ServiceUnavailable", "Unavailable", "RequestTimeout",
+            "RequestTimeoutException", "PriorRequestNotComplete"
+    )));
+
+    static private final RetryPolicy DEFAULT = new RetryPolicy();
+
+    /**
+     * @return the policy used by providers without a custom retry policy
+     */
+    static public @Nonnull RetryPolicy getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Tokens taken from the budget of an account and region by a single retry.
+     */
+    static public final int RETRY_COST = 5;
+
+    private final int   maxRetries;
+    private final long  baseDelay;
+    private final long  maxDelay;
+    private final int   budgetCapacity;
+
+    private final ConcurrentMap<String, AtomicInteger> budgets = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * Creates a policy allowing 4 retries between 500 ms and 20 s apart and a budget of 100 retries per account and
+     * region.
+     */
+    public RetryPolicy() {
+        this(4, 500L, 20000L, 100 * RETRY_COST);
+    }
+
+    /**
+     * @param maxRetries     maximum number of retries of a single request
+     * @param baseDelay      minimum delay in milliseconds before a retry
+     * @param maxDelay       maximum delay in milliseconds before a retry
+     * @param budgetCapacity number of tokens in the retry budget of each account and region, a retry costs
+     *                       {@link #RETRY_COST}
+     */
+    public RetryPolicy( @Nonnegative int maxRetries, @Nonnegative long baseDelay, @Nonnegative long maxDelay, @Nonnegative int budgetCapacity ) {
+        this.maxRetries = maxRetries;
+        this.baseDelay = Math.max(1L, baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, maxDelay);
+        this.budgetCapacity = budgetCapacity;
+    }
+
+    /**
+     * Starts tracking the retries of a single request.
+     * @param accountNumber the account the request is made for
+     * @param regionId the region the request is sent to, or the service name for global services
+     * @return the retry state of the request
+     */
+    public @Nonnull Attempt begin( @Nullable String accountNumber, @Nullable String regionId ) {
+        String key = getBudgetKey(accountNumber, regionId);
+        AtomicInteger budget = budgets.get(key);
+
+        if( budget == null ) {
+            AtomicInteger b = budgets.putIfAbsent(key, budget = new AtomicInteger(budgetCapacity));
+
+            if( b != null ) {
+                budget = b;
+            }
+        }
+        return new Attempt(key, budget);
+    }
+
+    /**
+     * Identifies failures which may succeed when sent again unchanged.
+     * @param status the HTTP status of the response
+     * @param code the AWS error code of the response, if any
+     * @return true if the request should be retried
+     */
+    public boolean isRetryable( int status, @Nullable String code ) {
+        if( code != null && ( EC2Exception.isThrottling(code) || TRANSIENT_CODES.contains(code) ) ) {
+            return true;
+        }
+        return ( status == 500 || status == 502 || status == 503 || status == 504 );
+    }
+
+    /**
+     * Calculates the delay before the next retry using decorrelated jitter.
+     * @param previousDelay the delay before the previous retry, 0 for the first retry
+     * @param random the source of randomness
+     * @return the delay in milliseconds
+     */
+    public long getDelay( long previousDelay, @Nonnull Random random ) {
+        long upper = Math.min(maxDelay, Math.max(baseDelay, previousDelay) * 3L);
+
+        if( upper <= baseDelay ) {
+            return baseDelay;
+        }
+        return baseDelay + ( long ) ( random.nextDouble() * ( upper - baseDelay ) );
+    }
+
+    /**
+     * @return the maximum number of retries of a single request
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param accountNumber the account
+     * @param regionId the region or global service
+     * @return the tokens currently left in the retry budget of the account in the region
+     */
+    public int getRemainingBudget( @Nullable String accountNumber, @Nullable String regionId ) {
+        AtomicInteger budget = budgets.get(getBudgetKey(accountNumber, regionId));
+
+        return ( budget == null ? budgetCapacity : budget.get() );
+    }
+
+    static private @Nonnull String getBudgetKey( @Nullable String accountNumber, @Nullable String regionId ) {
+        return ( accountNumber == null ? "" : accountNumber ) + "/" + ( regionId == null ? "global" : regionId );
+    }
+
+    /**
+     * Retry state of a single request. Instances are not thread safe and must not be shared between requests.
+     */
+    public class Attempt {
+        private final String        budgetKey;
+        private final AtomicInteger budget;
+        private final Random        random = new Random();
+        private long                delay;
+        private int                 retries;
+
+        private Attempt( @Nonnull String budgetKey, @Nonnull AtomicInteger budget ) {
+            this.budgetKey = budgetKey;
+            this.budget = budget;
+        }
+
+        /**
+         * @return the number of retries performed so far
+         */
+        public int getRetries() {
+            return retries;
+        }
+
+        /**
+         * Decides whether the failed request should be sent again and, if so, waits for the backoff delay.
+         * @param e the error returned for the request
+         * @return true if the caller should send the request again
+         */
+        public boolean retry( @Nonnull CloudException e ) {
+            return retry(e.getHttpCode(), e.getProviderCode());
+        }
+
+        /**
+         * Decides whether the failed request should be sent again and, if so, waits for the backoff delay.
+         * @param status the HTTP status of the response
+         * @param code the AWS error code of the response, if any
+         * @return true if the caller should send the request again
+         */
+        public boolean retry( int status, @Nullable String code ) {
+            if( retries >= maxRetries || !isRetryable(status, code) ) {
+                return false;
+            }
+            if( !take(RETRY_COST) ) {
+                logger.warn("Retry budget for " + budgetKey + " exhausted, not retrying " + status + "/" + code);
+                return false;
+            }
+            retries++;
+            delay = getDelay(delay, random);
+            if( logger.isDebugEnabled() ) {
+                logger.debug("Retry " + retries + " after " + status + "/" + code + " in " + delay + "ms");
+            }
+            try {
+                Thread.sleep(delay);
+            }
+            catch( InterruptedException ignore ) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Records the success of the request, returning tokens to the budget of the account and region.
+         */
+        public void succeeded() {
+            // a request that made it after retrying pays its retries back, others slowly refill the budget
+            give(retries > 0 ? retries * RETRY_COST : 1);
+        }
+
+        private boolean take( int tokens ) {
+            while( true ) {
+                int available = budget.get();
+
+                if( available < tokens ) {
+                    return false;
+                }
+                if( budget.compareAndSet(available, available - tokens) ) {
+                    return true;
+                }
+            }
+        }
+
+        private void give( int tokens ) {
+            while( true ) {
+                int available = budget.get();
+
+                if( available >= budgetCapacity || budget.compareAndSet(available, Math.min(budgetCapacity, available + tokens)) ) {
+                    return;
+                }
+            }
+        }
+    }
+}
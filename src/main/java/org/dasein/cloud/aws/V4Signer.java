@@ -0,0 +1,434 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.aws.identity.IAMMethod;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * AWS Signature Version 4 request signing. Signing happens on every request, so this implementation avoids
+ * the avoidable work:
+ * <ul>
+ *     <li>derived signing keys only change per day, region and service and are cached instead of being
+ *     rebuilt from four chained HMACs per request</li>
+ *     <li><code>Mac</code>, <code>MessageDigest</code> and date formats are kept per thread rather than looked
+ *     up from the security providers for every use</li>
+ *     <li>the canonical request is built by scanning the header values instead of running regular expressions
+ *     over each of them</li>
+ * </ul>
+ *
+ * @since 2015.10
+ */
+public final class V4Signer {
+    static private final Charset UTF8        = Charset.forName("UTF-8");
+    static private final String  HMAC_SHA256 = "HmacSHA256";
+
+    // keys for a handful of days, regions and services per access key; flushed entirely if it ever grows past this
+    static private final int MAX_CACHED_KEYS = 1024;
+
+    static private final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    static private final ConcurrentMap<String, SigningKey> signingKeys = new ConcurrentHashMap<String, SigningKey>();
+
+    static private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance(HMAC_SHA256);
+            }
+            catch( NoSuchAlgorithmException e ) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    static private final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            }
+            catch( NoSuchAlgorithmException e ) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    static private final ThreadLocal<SimpleDateFormat> headerDates = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat fmt = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'", Locale.US);
+
+            fmt.setCalendar(Calendar.getInstance(new SimpleTimeZone(0, "GMT"), Locale.US));
+            return fmt;
+        }
+    };
+
+    static private final ThreadLocal<SimpleDateFormat> httpDates = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        }
+    };
+
+    static private class SigningKey {
+        // SHA-256 of the secret access key, so that the cache never holds the secret itself
+        private final byte[] secretDigest;
+        private final byte[] key;
+
+        private SigningKey( @Nonnull byte[] secretDigest, @Nonnull byte[] key ) {
+            this.secretDigest = secretDigest;
+            this.key = key;
+        }
+    }
+
+    private V4Signer() { }
+
+    /**
+     * Computes the V4 Authorization header of a request.
+     * @param accessKey the access key id
+     * @param secretKey the secret access key
+     * @param method    the HTTP method (GET, POST, etc)
+     * @param url       the full URL for the request, including any query parameters
+     * @param serviceId the canonical name of the service targeted in the request (e.g. "glacier")
+     * @param headers   map of headers of request. MUST include x-amz-date or date header.
+     * @param bodyHash  a hex-encoded sha256 hash of the body of the request
+     * @return a string suitable for including as the HTTP Authorization header
+     * @throws InternalException the request could not be signed
+     */
+    static public @Nonnull String getAuthorization( @Nonnull String accessKey, @Nonnull String secretKey, @Nonnull String method, @Nonnull String url, @Nonnull String serviceId, @Nonnull Map<String, String> headers, @Nonnull String bodyHash ) throws InternalException {
+        serviceId = serviceId.toLowerCase();
+        String regionId = getRegionId(url, serviceId);
+        String amzDate = extractDate(headers);
+        String credentialScope = getCredentialScope(amzDate, regionId, serviceId);
+        String signedHeaders = getSignedHeaders(headers);
+        String canonicalRequest = getCanonicalRequest(method, url, headers, signedHeaders, bodyHash);
+        String stringToSign = AWSCloud.V4_ALGORITHM + "\n" + amzDate + "\n" + credentialScope + "\n" + sha256Hex(canonicalRequest);
+        // signature uses YYYYMMDD
+        byte[] signingKey = getSigningKey(accessKey, secretKey, amzDate.substring(0, 8), regionId, serviceId);
+        String signature = new String(Hex.encodeHex(hmacSHA256(stringToSign, signingKey), true));
+
+        return AWSCloud.V4_ALGORITHM + " " + "Credential=" + accessKey + "/" + credentialScope + ", " + "SignedHeaders=" + signedHeaders + ", " + "Signature=" + signature;
+    }
+
+    /**
+     * @param date the date to format, or null for the current time
+     * @return the date formatted for the <code>x-amz-date</code> header
+     */
+    static public @Nonnull String formatDate( @Nullable Date date ) {
+        return headerDates.get().format(date == null ? new Date() : date);
+    }
+
+    static public @Nonnull byte[] hmacSHA256( @Nonnull String data, @Nonnull byte[] key ) throws InternalException {
+        Mac mac = macs.get();
+
+        try {
+            mac.init(new SecretKeySpec(key, HMAC_SHA256));
+        }
+        catch( InvalidKeyException e ) {
+            throw new InternalException(e);
+        }
+        return mac.doFinal(data.getBytes(UTF8));
+    }
+
+    /**
+     * @return a reset SHA-256 digest owned by the calling thread, which must not be kept beyond the current call
+     */
+    static public @Nonnull MessageDigest getSHA256Digest() {
+        MessageDigest digest = digests.get();
+
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * @param value the text to hash
+     * @return the lower case hex encoded SHA-256 hash of the UTF-8 encoding of the text
+     */
+    static public @Nonnull String sha256Hex( @Nonnull String value ) {
+        return sha256Hex(value.getBytes(UTF8));
+    }
+
+    /**
+     * @param value the bytes to hash
+     * @return the lower case hex encoded SHA-256 hash of the bytes
+     */
+    static public @Nonnull String sha256Hex( @Nonnull byte[] value ) {
+        return new String(Hex.encodeHex(getSHA256Digest().digest(value), true));
+    }
+
+    /**
+     * Hashes the content of a file without loading it into memory, reading it through a fixed size buffer.
+     * @param file the file to hash
+     * @return the lower case hex encoded SHA-256 hash of the file content
+     * @throws InternalException the file could not be read
+     */
+    static public @Nonnull String sha256Hex( @Nonnull File file ) throws InternalException {
+        MessageDigest digest = getSHA256Digest();
+        ByteBuffer buffer = ByteBuffer.allocate(FILE_BUFFER_SIZE);
+        FileInputStream input = null;
+
+        try {
+            input = new FileInputStream(file);
+            FileChannel channel = input.getChannel();
+
+            while( channel.read(buffer) != -1 ) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return new String(Hex.encodeHex(digest.digest(), true));
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        finally {
+            if( input != null ) {
+                try { input.close(); }
+                catch( IOException ignore ) { }
+            }
+        }
+    }
+
+    static private @Nonnull byte[] getSigningKey( @Nonnull String accessKey, @Nonnull String secretKey, @Nonnull String dateStamp, @Nonnull String regionId, @Nonnull String serviceId ) throws InternalException {
+        String cacheKey = accessKey + "/" + dateStamp + "/" + regionId + "/" + serviceId;
+        SigningKey cached = signingKeys.get(cacheKey);
+        byte[] secretDigest = getSHA256Digest().digest(secretKey.getBytes(UTF8));
+
+        // the secret is compared as well so that a rotated secret for the same access key is never signed with a stale key
+        if( cached != null && MessageDigest.isEqual(cached.secretDigest, secretDigest) ) {
+            return cached.key;
+        }
+        byte[] withSecret = ( "AWS4" + secretKey ).getBytes(UTF8);
+        byte[] withDate = hmacSHA256(dateStamp, withSecret);
+        byte[] withRegion = hmacSHA256(regionId, withDate);
+        byte[] withService = hmacSHA256(serviceId, withRegion);
+        byte[] key = hmacSHA256(AWSCloud.V4_TERMINATION, withService);
+
+        if( signingKeys.size() >= MAX_CACHED_KEYS ) {
+            signingKeys.clear();
+        }
+        signingKeys.put(cacheKey, new SigningKey(secretDigest, key));
+        return key;
+    }
+
+    static private @Nonnull String getRegionId( @Nonnull String url, @Nonnull String serviceId ) {
+        // default for IAM
+        if( IAMMethod.SERVICE_ID.equals(serviceId) ) {
+            return "us-east-1";
+        }
+        int start = url.indexOf("://");
+
+        start = ( start < 0 ? 0 : start + 3 );
+        int end = url.indexOf('/', start + 1);
+
+        if( end < 0 ) {
+            end = url.length();
+        }
+        // everywhere except s3 and iam this is: service.region.amazonaws.com or service.region.amazonaws.com.cn
+        int firstDot = url.indexOf('.', start);
+
+        if( firstDot < 0 || firstDot >= end ) {
+            return "us-east-1";
+        }
+        int secondDot = url.indexOf('.', firstDot + 1);
+
+        if( secondDot < 0 || secondDot >= end ) {
+            return "us-east-1";
+        }
+        String regionId = url.substring(firstDot + 1, secondDot);
+
+        if( regionId.startsWith("s3-") ) {
+            regionId = regionId.substring(3);
+        }
+        return regionId;
+    }
+
+    static private @Nonnull String extractDate( @Nonnull Map<String, String> headers ) throws InternalException {
+        String amzDate = headers.get(AWSCloud.P_AWS_DATE);
+        // expecting YYYYMMDDTHHMMSSZ
+        if( amzDate != null ) {
+            if( amzDate.length() != 16 ) {
+                throw new InternalException("request has invalid " + AWSCloud.P_AWS_DATE);
+            }
+            return amzDate;
+        }
+        String date = null;
+
+        for( Map.Entry<String, String> entry : headers.entrySet() ) {
+            if( entry.getKey().equalsIgnoreCase("date") ) {
+                date = entry.getValue();
+            }
+        }
+        if( date == null ) {
+            throw new InternalException("request is missing date header");
+        }
+        try {
+            return formatDate(httpDates.get().parse(date));
+        }
+        catch( ParseException e ) {
+            throw new InternalException("request has invalid date header format");
+        }
+    }
+
+    static private @Nonnull String getCredentialScope( @Nonnull String dateStamp, @Nonnull String regionId, @Nonnull String serviceId ) {
+        return dateStamp.substring(0, 8) + "/" + regionId + "/" + serviceId + "/" + AWSCloud.V4_TERMINATION;
+    }
+
+    static private @Nonnull String getCanonicalRequest( @Nonnull String method, @Nonnull String serviceUrl, @Nonnull Map<String, String> headers, @Nonnull String signedHeaders, @Nonnull String bodyHash ) throws InternalException {
+    /*
+        CanonicalRequest =
+        HTTPRequestMethod + '\n' +
+        CanonicalURI + '\n' +
+        CanonicalQueryString + '\n' +
+        CanonicalHeaders + '\n' +
+        SignedHeaders + '\n' +
+        HexEncode(Hash(Payload))
+    */
+        final URI endpoint;
+        try {
+            endpoint = new URI(serviceUrl.replace(" ", "%20")).normalize();
+        }
+        catch( URISyntaxException e ) {
+            throw new InternalException(e);
+        }
+
+        final StringBuilder s = new StringBuilder(256);
+        s.append(method.toUpperCase()).append('\n');
+
+        String path = endpoint.getPath();
+        if( path == null || path.length() == 0 ) {
+            path = "/";
+        }
+        s.append(AWSCloud.encode(path, true)).append('\n');
+        appendCanonicalQueryString(s, endpoint);
+        s.append('\n');
+
+        String[] sortedHeaders = headers.keySet().toArray(new String[headers.size()]);
+        Arrays.sort(sortedHeaders, String.CASE_INSENSITIVE_ORDER);
+
+        for( String header : sortedHeaders ) {
+            appendCollapsed(s, header.toLowerCase());
+            s.append(':');
+            appendCollapsed(s, headers.get(header).trim());
+            s.append('\n');
+        }
+        s.append('\n').append(signedHeaders).append('\n').append(bodyHash);
+
+        return s.toString();
+    }
+
+    /**
+     * Appends the text with every run of whitespace replaced by a single space.
+     */
+    static private void appendCollapsed( @Nonnull StringBuilder s, @Nonnull String text ) {
+        boolean inWhitespace = false;
+
+        for( int i = 0; i < text.length(); i++ ) {
+            char c = text.charAt(i);
+
+            if( c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B' ) {
+                if( !inWhitespace ) {
+                    s.append(' ');
+                    inWhitespace = true;
+                }
+            }
+            else {
+                s.append(c);
+                inWhitespace = false;
+            }
+        }
+    }
+
+    static private void appendCanonicalQueryString( @Nonnull StringBuilder s, @Nonnull URI endpoint ) throws InternalException {
+        if( endpoint.getRawQuery() == null ) {
+            return;
+        }
+        List<NameValuePair> parsedParams = URLEncodedUtils.parse(endpoint, "UTF-8");
+        String[][] queryParams = new String[parsedParams.size()][];
+        int i = 0;
+
+        for( NameValuePair param : parsedParams ) {
+            String key = AWSCloud.encode(param.getName(), false);
+            String value = param.getValue() != null ? AWSCloud.encode(param.getValue(), false) : "";
+            queryParams[i++] = new String[]{key, value};
+        }
+
+        // sort query parameters by key, then value
+        Arrays.sort(queryParams, new Comparator<String[]>() {
+            @Override
+            public int compare( String[] a, String[] b ) {
+                int c = a[0].compareTo(b[0]);
+
+                return ( c != 0 ? c : a[1].compareTo(b[1]) );
+            }
+        });
+
+        boolean first = true;
+        for( String[] pair : queryParams ) {
+            if( !first ) {
+                s.append('&');
+            }
+            s.append(pair[0]).append('=').append(pair[1]);
+            first = false;
+        }
+    }
+
+    static private @Nonnull String getSignedHeaders( @Nonnull Map<String, String> headers ) {
+        // move to set to lower case and remove dupes
+        Set<String> sorted = new TreeSet<String>();
+        for( String header : headers.keySet() ) {
+            sorted.add(header.toLowerCase());
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for( String header : sorted ) {
+            if( sb.length() > 0 ) {
+                sb.append(';');
+            }
+            sb.append(header);
+        }
+        return sb.toString();
+    }
+}
@@ -29,6 +29,7 @@ import org.dasein.cloud.admin.PrepaymentSupport;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.compute.EC2Exception;
 import org.dasein.cloud.aws.compute.EC2Method;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.compute.ComputeServices;
 import org.dasein.cloud.compute.Platform;
 import org.dasein.cloud.compute.VirtualMachineSupport;
@@ -48,6 +49,15 @@ import java.util.*;
 public class ReservedInstance implements PrepaymentSupport {
     static private final Logger logger = AWSCloud.getLogger(ReservedInstance.class);
 
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(PrepaymentSupport.ANY, EC2Method.EC2_PREFIX + "*")
+            .map(PrepaymentSupport.GET_OFFERING, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_RESERVED_INSTANCES_OFFERINGS)
+            .map(PrepaymentSupport.LIST_OFFERING, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_RESERVED_INSTANCES_OFFERINGS)
+            .map(PrepaymentSupport.GET_PREPAYMENT, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_RESERVED_INSTANCES)
+            .map(PrepaymentSupport.LIST_PREPAYMENT, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_RESERVED_INSTANCES)
+            .map(PrepaymentSupport.PREPAY, EC2Method.EC2_PREFIX + EC2Method.PURCHASE_RESERVED_INSTANCES_OFFERING)
+            .build();
+
     static private final int SECONDS_IN_DAY = (60 * 60 * 24);
 
     private AWSCloud provider = null;
@@ -261,19 +271,7 @@ public class ReservedInstance implements PrepaymentSupport {
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(PrepaymentSupport.ANY) ) {
-            return new String[] { EC2Method.EC2_PREFIX + "*" };
-        }
-        else if( action.equals(PrepaymentSupport.GET_OFFERING) || action.equals(PrepaymentSupport.LIST_OFFERING) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_RESERVED_INSTANCES_OFFERINGS };
-        }
-        else if( action.equals(PrepaymentSupport.GET_PREPAYMENT) || action.equals(PrepaymentSupport.LIST_PREPAYMENT) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_RESERVED_INSTANCES };
-        }
-        else if( action.equals(PrepaymentSupport.PREPAY) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.PURCHASE_RESERVED_INSTANCES_OFFERING };
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
 	@Override
@@ -23,6 +23,7 @@ import org.apache.log4j.Logger;
 import org.dasein.cloud.*;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.storage.S3Method;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.compute.*;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.util.APITrace;
@@ -45,6 +46,20 @@ import java.util.*;
  */
 public class AMI extends AbstractImageSupport<AWSCloud> {
 	static private final Logger logger = Logger.getLogger(AMI.class);
+
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(MachineImageSupport.ANY, EC2Method.EC2_PREFIX + "*")
+            .map(MachineImageSupport.DOWNLOAD_IMAGE)
+            .map(MachineImageSupport.GET_IMAGE, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_IMAGES)
+            .map(MachineImageSupport.IMAGE_VM, EC2Method.EC2_PREFIX + EC2Method.CREATE_IMAGE, EC2Method.EC2_PREFIX + EC2Method.REGISTER_IMAGE)
+            .map(MachineImageSupport.COPY_IMAGE, EC2Method.EC2_PREFIX + EC2Method.COPY_IMAGE)
+            .map(MachineImageSupport.LIST_IMAGE, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_IMAGES)
+            .map(MachineImageSupport.MAKE_PUBLIC, EC2Method.EC2_PREFIX + EC2Method.MODIFY_IMAGE_ATTRIBUTE)
+            .map(MachineImageSupport.REGISTER_IMAGE, EC2Method.EC2_PREFIX + EC2Method.REGISTER_IMAGE)
+            .map(MachineImageSupport.REMOVE_IMAGE, EC2Method.EC2_PREFIX + EC2Method.DEREGISTER_IMAGE)
+            .map(MachineImageSupport.SHARE_IMAGE, EC2Method.EC2_PREFIX + EC2Method.MODIFY_IMAGE_ATTRIBUTE)
+            .map(MachineImageSupport.UPLOAD_IMAGE)
+            .build();
 	
     private volatile transient AMICapabilities capabilities;
 
@@ -59,6 +74,7 @@ public class AMI extends AbstractImageSupport<AWSCloud> {
             setPrivateShare(providerImageId, true, accountNumber);
         }
         finally {
+            invalidate(providerImageId);
             APITrace.end();
         }
     }
@@ -70,6 +86,7 @@ public class AMI extends AbstractImageSupport<AWSCloud> {
             setPublicShare(providerImageId, true);
         }
         finally {
+            invalidate(providerImageId);
             APITrace.end();
         }
     }
@@ -440,6 +457,22 @@ public class AMI extends AbstractImageSupport<AWSCloud> {
 
     @Override
     public @Nullable MachineImage getImage(@Nonnull String providerImageId) throws CloudException, InternalException {
+        return ResourceCache.getImageCache().get(getProvider(), providerImageId, new ResourceCache.Loader<MachineImage>() {
+            @Override
+            public @Nullable MachineImage load(@Nonnull String id) throws CloudException, InternalException {
+                return loadImage(id);
+            }
+        });
+    }
+
+    /**
+     * Removes resources from the resource cache after this module changed them.
+     */
+    private void invalidate(@Nonnull String... ids) {
+        ResourceCache.getImageCache().invalidate(getProvider(), ids);
+    }
+
+    private @Nullable MachineImage loadImage(@Nonnull String providerImageId) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "Image.getImage");
         try {
             ProviderContext ctx = getProvider(). getContext();
@@ -763,40 +796,7 @@ public class AMI extends AbstractImageSupport<AWSCloud> {
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(MachineImageSupport.ANY) ) {
-            return new String[] { EC2Method.EC2_PREFIX + "*" };
-        }
-        if( action.equals(MachineImageSupport.DOWNLOAD_IMAGE) ) {
-            return new String[0];
-        }
-        else if( action.equals(MachineImageSupport.GET_IMAGE) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_IMAGES };
-        }
-        else if( action.equals(MachineImageSupport.IMAGE_VM) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.CREATE_IMAGE, EC2Method.EC2_PREFIX + EC2Method.REGISTER_IMAGE };
-        }
-        else if( action.equals(MachineImageSupport.COPY_IMAGE) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.COPY_IMAGE };
-        }
-        else if( action.equals(MachineImageSupport.LIST_IMAGE) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_IMAGES };
-        }
-        else if( action.equals(MachineImageSupport.MAKE_PUBLIC) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.MODIFY_IMAGE_ATTRIBUTE };
-        }
-        else if( action.equals(MachineImageSupport.REGISTER_IMAGE) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.REGISTER_IMAGE };
-        }
-        else if( action.equals(MachineImageSupport.REMOVE_IMAGE) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DEREGISTER_IMAGE };
-        }
-        else if( action.equals(MachineImageSupport.SHARE_IMAGE) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.MODIFY_IMAGE_ATTRIBUTE };
-        }
-        else if( action.equals(MachineImageSupport.UPLOAD_IMAGE) ) {
-            return new String[0];
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     /*
@@ -970,6 +970,7 @@ public class AMI extends AbstractImageSupport<AWSCloud> {
             }
         }
         finally {
+            invalidate(providerImageId);
             APITrace.end();
         }
     }
@@ -984,6 +985,7 @@ public class AMI extends AbstractImageSupport<AWSCloud> {
             setPublicShare(providerImageId, false);
         }
         finally {
+            invalidate(providerImageId);
             APITrace.end();
         }
     }
@@ -995,6 +997,7 @@ public class AMI extends AbstractImageSupport<AWSCloud> {
             setPrivateShare(providerImageId, false, accountNumber);
         }
         finally {
+            invalidate(providerImageId);
             APITrace.end();
         }
     }
@@ -1006,6 +1009,7 @@ public class AMI extends AbstractImageSupport<AWSCloud> {
             setPublicShare(providerImageId, false);
         }
         finally {
+            invalidate(providerImageId);
             APITrace.end();
         }
     }
@@ -1727,6 +1731,7 @@ public class AMI extends AbstractImageSupport<AWSCloud> {
             getProvider(). createTags(EC2Method.SERVICE_ID, imageIds, tags);
         }
         finally {
+            invalidate(imageIds);
             APITrace.end();
         }
     }
@@ -1743,6 +1748,7 @@ public class AMI extends AbstractImageSupport<AWSCloud> {
             getProvider(). removeTags(EC2Method.SERVICE_ID, imageIds, tags);
         }
         finally {
+            invalidate(imageIds);
             APITrace.end();
         }
     }
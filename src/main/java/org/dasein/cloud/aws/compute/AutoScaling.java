@@ -22,6 +22,7 @@ package org.dasein.cloud.aws.compute;
 import org.apache.log4j.Logger;
 import org.dasein.cloud.*;
 import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.compute.*;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.util.APITrace;
@@ -44,6 +45,26 @@ import java.util.*;
 
 public class AutoScaling extends AbstractAutoScalingSupport<AWSCloud> {
     static private final Logger logger     = Logger.getLogger(AutoScaling.class);
+
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(AutoScalingSupport.ANY, EC2Method.AUTOSCALING_PREFIX + "*")
+            .map(AutoScalingSupport.CREATE_LAUNCH_CONFIGURATION, EC2Method.AUTOSCALING_PREFIX + EC2Method.CREATE_LAUNCH_CONFIGURATION)
+            .map(AutoScalingSupport.CREATE_SCALING_GROUP, EC2Method.AUTOSCALING_PREFIX + EC2Method.CREATE_AUTO_SCALING_GROUP)
+            .map(AutoScalingSupport.GET_LAUNCH_CONFIGURATION, EC2Method.AUTOSCALING_PREFIX + EC2Method.DESCRIBE_LAUNCH_CONFIGURATIONS)
+            .map(AutoScalingSupport.GET_SCALING_GROUP, EC2Method.AUTOSCALING_PREFIX + EC2Method.DESCRIBE_AUTO_SCALING_GROUPS)
+            .map(AutoScalingSupport.LIST_LAUNCH_CONFIGURATION, EC2Method.AUTOSCALING_PREFIX + EC2Method.DESCRIBE_LAUNCH_CONFIGURATIONS)
+            .map(AutoScalingSupport.LIST_SCALING_GROUP, EC2Method.AUTOSCALING_PREFIX + EC2Method.DESCRIBE_AUTO_SCALING_GROUPS)
+            .map(AutoScalingSupport.REMOVE_LAUNCH_CONFIGURATION, EC2Method.AUTOSCALING_PREFIX + EC2Method.DELETE_LAUNCH_CONFIGURATION)
+            .map(AutoScalingSupport.REMOVE_SCALING_GROUP, EC2Method.AUTOSCALING_PREFIX + EC2Method.DELETE_AUTO_SCALING_GROUP)
+            .map(AutoScalingSupport.SET_CAPACITY, EC2Method.AUTOSCALING_PREFIX + EC2Method.SET_DESIRED_CAPACITY)
+            .map(AutoScalingSupport.SET_SCALING_TRIGGER, EC2Method.AUTOSCALING_PREFIX + EC2Method.CREATE_OR_UPDATE_SCALING_TRIGGER)
+            .map(AutoScalingSupport.UPDATE_SCALING_GROUP, EC2Method.AUTOSCALING_PREFIX + EC2Method.UPDATE_AUTO_SCALING_GROUP)
+            .map(AutoScalingSupport.SUSPEND_AUTO_SCALING_GROUP, EC2Method.AUTOSCALING_PREFIX + EC2Method.SUSPEND_AUTO_SCALING_GROUP)
+            .map(AutoScalingSupport.RESUME_AUTO_SCALING_GROUP, EC2Method.AUTOSCALING_PREFIX + EC2Method.RESUME_AUTO_SCALING_GROUP)
+            .map(AutoScalingSupport.PUT_SCALING_POLICY, EC2Method.AUTOSCALING_PREFIX + EC2Method.PUT_SCALING_POLICY)
+            .map(AutoScalingSupport.DELETE_SCALING_POLICY, EC2Method.AUTOSCALING_PREFIX + EC2Method.DELETE_SCALING_POLICY)
+            .map(AutoScalingSupport.LIST_SCALING_POLICIES, EC2Method.AUTOSCALING_PREFIX + EC2Method.DESCRIBE_SCALING_POLICIES)
+            .build();
     public static final  String SERVICE_ID = "autoscaling";
 
     AutoScaling( AWSCloud provider ) {
@@ -924,58 +945,7 @@ public class AutoScaling extends AbstractAutoScalingSupport<AWSCloud> {
 
     @Override
     public @Nonnull String[] mapServiceAction( @Nonnull ServiceAction action ) {
-        if( action.equals(AutoScalingSupport.ANY) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + "*"};
-        }
-        if( action.equals(AutoScalingSupport.CREATE_LAUNCH_CONFIGURATION) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.CREATE_LAUNCH_CONFIGURATION};
-        }
-        else if( action.equals(AutoScalingSupport.CREATE_SCALING_GROUP) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.CREATE_AUTO_SCALING_GROUP};
-        }
-        else if( action.equals(AutoScalingSupport.GET_LAUNCH_CONFIGURATION) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.DESCRIBE_LAUNCH_CONFIGURATIONS};
-        }
-        else if( action.equals(AutoScalingSupport.GET_SCALING_GROUP) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.DESCRIBE_AUTO_SCALING_GROUPS};
-        }
-        else if( action.equals(AutoScalingSupport.LIST_LAUNCH_CONFIGURATION) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.DESCRIBE_LAUNCH_CONFIGURATIONS};
-        }
-        else if( action.equals(AutoScalingSupport.LIST_SCALING_GROUP) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.DESCRIBE_AUTO_SCALING_GROUPS};
-        }
-        else if( action.equals(AutoScalingSupport.REMOVE_LAUNCH_CONFIGURATION) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.DELETE_LAUNCH_CONFIGURATION};
-        }
-        else if( action.equals(AutoScalingSupport.REMOVE_SCALING_GROUP) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.DELETE_AUTO_SCALING_GROUP};
-        }
-        else if( action.equals(AutoScalingSupport.SET_CAPACITY) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.SET_DESIRED_CAPACITY};
-        }
-        else if( action.equals(AutoScalingSupport.SET_SCALING_TRIGGER) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.CREATE_OR_UPDATE_SCALING_TRIGGER};
-        }
-        else if( action.equals(AutoScalingSupport.UPDATE_SCALING_GROUP) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.UPDATE_AUTO_SCALING_GROUP};
-        }
-        else if( action.equals(AutoScalingSupport.SUSPEND_AUTO_SCALING_GROUP) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.SUSPEND_AUTO_SCALING_GROUP};
-        }
-        else if( action.equals(AutoScalingSupport.RESUME_AUTO_SCALING_GROUP) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.RESUME_AUTO_SCALING_GROUP};
-        }
-        else if( action.equals(AutoScalingSupport.PUT_SCALING_POLICY) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.PUT_SCALING_POLICY};
-        }
-        else if( action.equals(AutoScalingSupport.DELETE_SCALING_POLICY) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.DELETE_SCALING_POLICY};
-        }
-        else if( action.equals(AutoScalingSupport.LIST_SCALING_POLICIES) ) {
-            return new String[]{EC2Method.AUTOSCALING_PREFIX + EC2Method.DESCRIBE_SCALING_POLICIES};
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
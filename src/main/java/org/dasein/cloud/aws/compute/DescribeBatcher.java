@@ -0,0 +1,289 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.compute;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.Volume;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces the virtual machines, volumes and snapshots looked up one at a time by concurrent callers into a single
+ * Describe request. Batching is off unless the {@link #P_WINDOW} custom property is set.
+ * <p>
+ * A lookup made while no request is in flight for its account and region is sent straight away, so lookups that
+ * do not overlap take no longer than without batching. A lookup made while a request is in flight starts a batch
+ * that other lookups add their ids to. The batch is sent as one request once no request is in flight any more,
+ * once {@link #P_WINDOW} milliseconds have passed, or once it holds {@link #MAX_IDS} ids, whichever comes first,
+ * and each caller gets its own resource. A batch holding a single id is looked up the same way as without
+ * batching.
+ * </p>
+ *
+ * @param <T> the type of resource looked up
+ * @since 2015.10
+ */
+public class DescribeBatcher<T> {
+    /**
+     * Custom property holding how long, at most, in milliseconds, lookups are collected while another request for
+     * the same account and region is in flight. This is the most a lookup is delayed by batching. Batching is off
+     * when unset.
+     */
+    static public final String P_WINDOW = "describeBatchWindowMillis";
+
+    /**
+     * The most ids sent in one request, which is the number of values EC2 accepts in one filter.
+     */
+    static public final int MAX_IDS = 200;
+
+    static private final DescribeBatcher<VirtualMachine> virtualMachines = new DescribeBatcher<VirtualMachine>();
+    static private final DescribeBatcher<Volume>         volumes         = new DescribeBatcher<Volume>();
+    static private final DescribeBatcher<Snapshot>       snapshots       = new DescribeBatcher<Snapshot>();
+
+    static public @Nonnull DescribeBatcher<VirtualMachine> getVirtualMachineBatcher() {
+        return virtualMachines;
+    }
+
+    static public @Nonnull DescribeBatcher<Volume> getVolumeBatcher() {
+        return volumes;
+    }
+
+    static public @Nonnull DescribeBatcher<Snapshot> getSnapshotBatcher() {
+        return snapshots;
+    }
+
+    /**
+     * Looks resources up in the cloud.
+     */
+    interface Fetcher<T> {
+        /**
+         * @param id the id of the resource
+         * @return the resource, or null if it does not exist
+         */
+        @Nullable T fetchOne( @Nonnull String id ) throws CloudException, InternalException;
+
+        /**
+         * @param ids the ids of the resources, at most {@link #MAX_IDS}
+         * @return the resources that exist, keyed by id
+         */
+        @Nonnull Map<String, T> fetchAll( @Nonnull Collection<String> ids ) throws CloudException, InternalException;
+    }
+
+    static private class Batch<T> {
+        private final Set<String> ids = new LinkedHashSet<String>();
+        private boolean           closed;
+        private boolean           done;
+        private Map<String, T>    results;
+        private Exception         failure;
+    }
+
+    private final AtomicLong lookups  = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+
+    // the batch still collecting ids for each account and region, guarded by itself
+    private final Map<String, Batch<T>> open = new HashMap<String, Batch<T>>();
+
+    // the number of requests in flight for each account and region, guarded by open
+    private final Map<String, Integer> inFlight = new HashMap<String, Integer>();
+
+    private DescribeBatcher() { }
+
+    /**
+     * Looks up a resource, sharing the request with other lookups made for the same account and region within the
+     * batching window.
+     * @param provider the provider the request is made through
+     * @param id the id of the resource
+     * @param fetcher looks the resources up in the cloud
+     * @return the resource, or null if it does not exist
+     */
+    @Nullable T load( @Nonnull AWSCloud provider, @Nonnull String id, @Nonnull Fetcher<T> fetcher ) throws CloudException, InternalException {
+        int window = provider.getIntProperty(P_WINDOW, 0);
+        String key = toKey(provider);
+
+        if( window < 1 || key == null ) {
+            return fetcher.fetchOne(id);
+        }
+        lookups.incrementAndGet();
+        Batch<T> batch;
+        boolean leader = false;
+
+        synchronized( open ) {
+            batch = open.get(key);
+            if( batch == null ) {
+                batch = new Batch<T>();
+                open.put(key, batch);
+                leader = true;
+            }
+            batch.ids.add(id);
+            if( batch.ids.size() >= MAX_IDS ) {
+                close(key, batch);
+            }
+        }
+        if( !leader ) {
+            return await(batch, id);
+        }
+        long deadline = System.currentTimeMillis() + window;
+
+        synchronized( open ) {
+            try {
+                long remaining;
+
+                // with nothing in flight there is nothing to wait for
+                while( !batch.closed && getInFlight(key) > 0 && ( remaining = deadline - System.currentTimeMillis() ) > 0 ) {
+                    open.wait(remaining);
+                }
+            }
+            catch( InterruptedException e ) {
+                // send what was collected so the other callers are not left waiting
+                Thread.currentThread().interrupt();
+            }
+            close(key, batch);
+            inFlight.put(key, getInFlight(key) + 1);
+        }
+        Map<String, T> results = null;
+        Exception failure = null;
+
+        requests.incrementAndGet();
+        try {
+            if( batch.ids.size() == 1 ) {
+                T value = fetcher.fetchOne(id);
+
+                results = ( value == null ? Collections.<String, T>emptyMap() : Collections.singletonMap(id, value) );
+            }
+            else {
+                results = fetcher.fetchAll(new ArrayList<String>(batch.ids));
+            }
+            return results.get(id);
+        }
+        catch( CloudException e ) {
+            failure = e;
+            throw e;
+        }
+        catch( InternalException e ) {
+            failure = e;
+            throw e;
+        }
+        catch( RuntimeException e ) {
+            failure = e;
+            throw e;
+        }
+        finally {
+            synchronized( open ) {
+                int count = getInFlight(key) - 1;
+
+                if( count > 0 ) {
+                    inFlight.put(key, count);
+                }
+                else {
+                    inFlight.remove(key);
+                }
+                // lets a batch waiting on this request go
+                open.notifyAll();
+            }
+            complete(batch, results, failure);
+        }
+    }
+
+    private int getInFlight( @Nonnull String key ) {
+        Integer count = inFlight.get(key);
+
+        return ( count == null ? 0 : count );
+    }
+
+    private void close( @Nonnull String key, @Nonnull Batch<T> batch ) {
+        batch.closed = true;
+        if( open.get(key) == batch ) {
+            open.remove(key);
+        }
+        open.notifyAll();
+    }
+
+    private void complete( @Nonnull Batch<T> batch, @Nullable Map<String, T> results, @Nullable Exception failure ) {
+        synchronized( batch ) {
+            batch.results = results;
+            batch.failure = failure;
+            batch.done = true;
+            batch.notifyAll();
+        }
+    }
+
+    private @Nullable T await( @Nonnull Batch<T> batch, @Nonnull String id ) throws CloudException, InternalException {
+        synchronized( batch ) {
+            while( !batch.done ) {
+                try {
+                    batch.wait();
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new InternalException("Interrupted while waiting for " + id);
+                }
+            }
+            if( batch.failure instanceof CloudException ) {
+                throw ( CloudException ) batch.failure;
+            }
+            if( batch.failure instanceof InternalException ) {
+                throw ( InternalException ) batch.failure;
+            }
+            if( batch.failure instanceof RuntimeException ) {
+                throw ( RuntimeException ) batch.failure;
+            }
+            if( batch.results == null ) {
+                throw new InternalException("The request looking up " + id + " did not complete");
+            }
+            return batch.results.get(id);
+        }
+    }
+
+    private @Nullable String toKey( @Nonnull AWSCloud provider ) {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null || ctx.getRegionId() == null ) {
+            return null;
+        }
+        return ctx.getAccountNumber() + "/" + ctx.getRegionId();
+    }
+
+    /**
+     * @return the number of lookups made while batching was on
+     */
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * @return the number of requests sent for those lookups
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+}
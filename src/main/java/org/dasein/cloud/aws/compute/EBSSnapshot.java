@@ -31,6 +31,7 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.compute.*;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.util.APITrace;
@@ -46,6 +47,16 @@ import javax.annotation.Nullable;
 
 public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
 	static private final Logger logger = AWSCloud.getLogger(EBSSnapshot.class);
+
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(SnapshotSupport.ANY, EC2Method.EC2_PREFIX + "*")
+            .map(SnapshotSupport.CREATE_SNAPSHOT, EC2Method.EC2_PREFIX + EC2Method.CREATE_SNAPSHOT)
+            .map(SnapshotSupport.GET_SNAPSHOT, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_SNAPSHOTS)
+            .map(SnapshotSupport.LIST_SNAPSHOT, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_SNAPSHOTS)
+            .map(SnapshotSupport.MAKE_PUBLIC, EC2Method.EC2_PREFIX + EC2Method.MODIFY_SNAPSHOT_ATTRIBUTE)
+            .map(SnapshotSupport.SHARE_SNAPSHOT, EC2Method.EC2_PREFIX + EC2Method.MODIFY_SNAPSHOT_ATTRIBUTE)
+            .map(SnapshotSupport.REMOVE_SNAPSHOT, EC2Method.EC2_PREFIX + EC2Method.DELETE_SNAPSHOT)
+            .build();
 	
     private EBSSnapshotCapabilities capabilities;
 	
@@ -60,6 +71,7 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
             setPrivateShare(providerSnapshotId, true, accountNumber);
         }
         finally {
+            invalidate(providerSnapshotId);
             APITrace.end();
         }
     }
@@ -71,6 +83,7 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
             setPublicShare(providerSnapshotId, true);
         }
         finally {
+            invalidate(providerSnapshotId);
             APITrace.end();
         }
     }
@@ -149,51 +162,41 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
 	}
 
     @Override
-    public @Nullable Snapshot getSnapshot(@Nonnull String snapshotId) throws InternalException, CloudException {
-        APITrace.begin(getProvider(), "Snapshot.getSnapshot");
-        try {
-            ProviderContext ctx = getContext();
-
-            if( ctx == null ) {
-                throw new CloudException("No context exists for this request.");
+    public @Nullable Snapshot getSnapshot(@Nonnull String snapshotId) throws CloudException, InternalException {
+        return ResourceCache.getSnapshotCache().get(getProvider(), snapshotId, new ResourceCache.Loader<Snapshot>() {
+            @Override
+            public @Nullable Snapshot load(@Nonnull String id) throws CloudException, InternalException {
+                return loadSnapshot(id);
             }
-            if( getProvider().getEC2Provider().isAWS() ) {
-                Map<String,String> parameters = getProvider().getStandardParameters(getContext(), EC2Method.DESCRIBE_SNAPSHOTS);
-                EC2Method method;
-                NodeList blocks;
-                Document doc;
+        });
+    }
 
-                parameters.put("SnapshotId.1", snapshotId);
-                method = new EC2Method(getProvider(), parameters);
-                try {
-                    doc = method.invoke();
-                }
-                catch( EC2Exception e ) {
-                    String code = e.getCode();
+    /**
+     * Removes resources from the resource cache after this module changed them.
+     */
+    private void invalidate(@Nonnull String... ids) {
+        ResourceCache.getSnapshotCache().invalidate(getProvider(), ids);
+    }
 
-                    if( code != null && (code.startsWith("InvalidSnapshot.NotFound") || code.equals("InvalidParameterValue")) ) {
-                        return null;
+    private @Nullable Snapshot loadSnapshot(@Nonnull String snapshotId) throws InternalException, CloudException {
+        APITrace.begin(getProvider(), "Snapshot.getSnapshot");
+        try {
+            if( getProvider().getEC2Provider().isAWS() ) {
+                return DescribeBatcher.getSnapshotBatcher().load(getProvider(), snapshotId, new DescribeBatcher.Fetcher<Snapshot>() {
+                    @Override
+                    public @Nullable Snapshot fetchOne(@Nonnull String id) throws CloudException, InternalException {
+                        return describeSnapshots(Collections.singletonMap("SnapshotId.1", id)).get(id);
                     }
-                    logger.error(e.getSummary());
-                    throw new CloudException(e);
-                }
-                blocks = doc.getElementsByTagName("snapshotSet");
-                for( int i=0; i<blocks.getLength(); i++ ) {
-                    NodeList items = blocks.item(i).getChildNodes();
 
-                    for( int j=0; j<items.getLength(); j++ ) {
-                        Node item = items.item(j);
+                    @Override
+                    public @Nonnull Map<String, Snapshot> fetchAll(@Nonnull Collection<String> ids) throws CloudException, InternalException {
+                        Map<String, String> filter = new HashMap<String, String>();
 
-                        if( item.getNodeName().equals("item") ) {
-                            Snapshot snapshot = toSnapshot(item);
-
-                            if( snapshot != null && snapshot.getProviderSnapshotId().equals(snapshotId) ) {
-                                return snapshot;
-                            }
-                        }
+                        // a filter leaves out unknown ids instead of failing the whole request
+                        AWSCloud.addFilterParameters(filter, 1, "snapshot-id", ids);
+                        return describeSnapshots(filter);
                     }
-                }
-                return null;
+                });
             }
             else {
                 for( Snapshot snapshot : listSnapshots() ) {
@@ -209,6 +212,51 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
         }
     }
 
+    private @Nonnull Map<String, Snapshot> describeSnapshots(@Nonnull Map<String, String> extraParameters) throws InternalException, CloudException {
+        ProviderContext ctx = getContext();
+
+        if( ctx == null ) {
+            throw new CloudException("No context exists for this request.");
+        }
+        Map<String,String> parameters = getProvider().getStandardParameters(getContext(), EC2Method.DESCRIBE_SNAPSHOTS);
+        Map<String,Snapshot> results = new HashMap<String, Snapshot>();
+        EC2Method method;
+        NodeList blocks;
+        Document doc;
+
+        parameters.putAll(extraParameters);
+        method = new EC2Method(getProvider(), parameters);
+        try {
+            doc = method.invoke();
+        }
+        catch( EC2Exception e ) {
+            String code = e.getCode();
+
+            if( code != null && (code.startsWith("InvalidSnapshot.NotFound") || code.equals("InvalidParameterValue")) ) {
+                return results;
+            }
+            logger.error(e.getSummary());
+            throw new CloudException(e);
+        }
+        blocks = doc.getElementsByTagName("snapshotSet");
+        for( int i=0; i<blocks.getLength(); i++ ) {
+            NodeList items = blocks.item(i).getChildNodes();
+
+            for( int j=0; j<items.getLength(); j++ ) {
+                Node item = items.item(j);
+
+                if( item.getNodeName().equals("item") ) {
+                    Snapshot snapshot = toSnapshot(item);
+
+                    if( snapshot != null ) {
+                        results.put(snapshot.getProviderSnapshotId(), snapshot);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
     @Override
     public @Nonnull Requirement identifyAttachmentRequirement() throws InternalException, CloudException {
         return getCapabilities().identifyAttachmentRequirement();
@@ -403,6 +451,8 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
 
 	@Override
 	public @Nonnull Iterable<Snapshot> listSnapshots(final @Nullable SnapshotFilterOptions options) throws InternalException, CloudException {
+        final FirstResponse first = new FirstResponse();
+
         getProvider().hold();
         PopulatorThread<Snapshot> populator = new PopulatorThread<Snapshot>(new JiteratorPopulator<Snapshot>() {
             @Override
@@ -412,8 +462,6 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
                     try {
                         Map<String,String> parameters = getProvider().getStandardParameters(getContext(), EC2Method.DESCRIBE_SNAPSHOTS);
                         EC2Method method;
-                        NodeList blocks;
-                        Document doc;
 
                         // we want to use the more efficient tag search via AWS if possible
                         // it is only possible if a) tags is the only search criterion or b) the options is set ot match all criteria
@@ -433,63 +481,49 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
                         }
                         method = new EC2Method(getProvider(), parameters);
                         try {
-                            doc = method.invoke();
-                        }
-                        catch( EC2Exception e ) {
-                            logger.error(e.getSummary());
-                            throw new CloudException(e);
-                        }
-                        blocks = doc.getElementsByTagName("snapshotSet");
-                        for( int i=0; i<blocks.getLength(); i++ ) {
-                            NodeList items = blocks.item(i).getChildNodes();
-
-                            for( int j=0; j<items.getLength(); j++ ) {
-                                Node item = items.item(j);
-
-                                if( item.getNodeName().equals("item") ) {
+                            method.invoke(new ItemSetStreamParser<Snapshot>("snapshotSet", iterator, first) {
+                                @Override
+                                protected @Nullable Snapshot toItem( @Nonnull Node item ) throws CloudException, InternalException {
                                     Snapshot snapshot = toSnapshot(item);
 
                                     if( snapshot != null ) {
                                         if( options == null || options.matches(snapshot, getContext().getAccountNumber()) ) {
-                                            iterator.push(snapshot);
+                                            return snapshot;
                                         }
                                     }
+                                    return null;
                                 }
-                            }
+                            });
+                        }
+                        catch( EC2Exception e ) {
+                            logger.error(e.getSummary());
+                            throw new CloudException(e);
                         }
                     }
                     finally {
                         APITrace.end();
                     }
                 }
+                catch( Exception e ) {
+                    first.failed(e);
+                    throw e;
+                }
                 finally {
+                    first.accepted();
                     getProvider().release();
                 }
             }
         });
 
         populator.populate();
+        // errors from AWS are thrown here rather than while iterating
+        first.await();
         return populator.getResult();
 	}
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(SnapshotSupport.ANY) ) {
-            return new String[] { EC2Method.EC2_PREFIX + "*" };
-        }
-        if( action.equals(SnapshotSupport.CREATE_SNAPSHOT) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.CREATE_SNAPSHOT };
-        }
-        else if( action.equals(SnapshotSupport.GET_SNAPSHOT) || action.equals(SnapshotSupport.LIST_SNAPSHOT) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_SNAPSHOTS };            
-        }
-        else if( action.equals(SnapshotSupport.MAKE_PUBLIC) || action.equals(SnapshotSupport.SHARE_SNAPSHOT) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.MODIFY_SNAPSHOT_ATTRIBUTE };
-        }
-        else if( action.equals(SnapshotSupport.REMOVE_SNAPSHOT) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DELETE_SNAPSHOT };
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
@@ -525,6 +559,7 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
             }
         }
         finally {
+            invalidate(snapshotId);
             APITrace.end();
         }
     }
@@ -542,6 +577,7 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
             setPublicShare(providerSnapshotId, false);
         }
         finally {
+            invalidate(providerSnapshotId);
             APITrace.end();
         }
     }
@@ -553,6 +589,7 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
             setPrivateShare(providerSnapshotId, false, accountNumber);
         }
         finally {
+            invalidate(providerSnapshotId);
             APITrace.end();
         }
     }
@@ -564,6 +601,7 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
             setPublicShare(providerSnapshotId, false);
         }
         finally {
+            invalidate(providerSnapshotId);
             APITrace.end();
         }
     }
@@ -575,6 +613,7 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
             ((AWSCloud)getProvider()).removeTags(EC2Method.SERVICE_ID, snapshotId, tags);
         }
         finally {
+            invalidate(snapshotId);
             APITrace.end();
         }
     }
@@ -586,6 +625,7 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
             ((AWSCloud)getProvider()).removeTags(EC2Method.SERVICE_ID, snapshotIds, tags);
         }
         finally {
+            invalidate(snapshotIds);
             APITrace.end();
         }
     }
@@ -934,6 +974,7 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
             ((AWSCloud)getProvider()).createTags(EC2Method.SERVICE_ID, snapshotId, tags);
         }
         finally {
+            invalidate(snapshotId);
             APITrace.end();
         }
     }
@@ -945,6 +986,7 @@ public class EBSSnapshot extends AbstractSnapshotSupport<AWSCloud> {
             ((AWSCloud)getProvider()).createTags(EC2Method.SERVICE_ID, snapshotIds, tags);
         }
         finally {
+            invalidate(snapshotIds);
             APITrace.end();
         }
     }
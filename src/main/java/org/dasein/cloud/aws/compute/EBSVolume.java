@@ -33,6 +33,7 @@ import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.model.*;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.compute.*;
 import org.dasein.cloud.compute.VolumeProduct;
 import org.dasein.cloud.dc.DataCenter;
@@ -40,6 +41,9 @@ import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.util.APITrace;
 import org.dasein.cloud.util.Cache;
 import org.dasein.cloud.util.CacheLevel;
+import org.dasein.util.Jiterator;
+import org.dasein.util.JiteratorPopulator;
+import org.dasein.util.PopulatorThread;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Storage;
 import org.w3c.dom.Document;
@@ -52,6 +56,16 @@ import javax.annotation.Nullable;
 public class EBSVolume extends AbstractVolumeSupport<AWSCloud> {
 	static private final Logger logger = Logger.getLogger(EBSVolume.class);
 
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(VolumeSupport.ANY, EC2Method.EC2_PREFIX + "*")
+            .map(VolumeSupport.ATTACH, EC2Method.EC2_PREFIX + EC2Method.ATTACH_VOLUME)
+            .map(VolumeSupport.CREATE_VOLUME, EC2Method.EC2_PREFIX + EC2Method.CREATE_VOLUME)
+            .map(VolumeSupport.DETACH, EC2Method.EC2_PREFIX + EC2Method.DETACH_VOLUME)
+            .map(VolumeSupport.GET_VOLUME, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VOLUMES)
+            .map(VolumeSupport.LIST_VOLUME, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VOLUMES)
+            .map(VolumeSupport.REMOVE_VOLUME, EC2Method.EC2_PREFIX + EC2Method.DELETE_VOLUME)
+            .build();
+
     static private final String VOLUME_PRODUCT_IOPS = "io1";
 
     private EBSVolumeCapabilities capabilities;
@@ -80,6 +94,8 @@ public class EBSVolume extends AbstractVolumeSupport<AWSCloud> {
             }
         }
         finally {
+            invalidate(volumeId);
+            ResourceCache.getVirtualMachineCache().invalidate(getProvider(), toServer);
             APITrace.end();
         }
 	}
@@ -196,8 +212,14 @@ public class EBSVolume extends AbstractVolumeSupport<AWSCloud> {
                     throw new CloudException("Detach of volume denied.");
                 }
             }
+            blocks = doc.getElementsByTagName("instanceId");
+            if( blocks.getLength() > 0 && blocks.item(0).hasChildNodes() ) {
+                // the instance no longer lists the volume
+                ResourceCache.getVirtualMachineCache().invalidate(getProvider(), blocks.item(0).getFirstChild().getNodeValue().trim());
+            }
         }
         finally {
+            invalidate(volumeId);
             APITrace.end();
         }
     }
@@ -247,12 +269,25 @@ public class EBSVolume extends AbstractVolumeSupport<AWSCloud> {
 
     @Override
     public @Nonnull Iterable<VolumeProduct> listVolumeProducts() throws InternalException, CloudException {
-        VolumeProvider volumeProvider = VolumeProvider.fromFile("/org/dasein/cloud/aws/volproducts.json", "AWS");
         String regionId = getContext().getRegionId();
-        List<org.dasein.cloud.aws.model.VolumeProduct> products = volumeProvider.getProducts();
+
+        if( regionId == null ) {
+            return Collections.emptyList();
+        }
+        // the with* methods of VolumeProduct change it in place, so products are not kept between calls
+        return toVolumeProducts(regionId);
+    }
+
+    private @Nonnull List<VolumeProduct> toVolumeProducts( @Nonnull String regionId ) throws InternalException {
+        VolumeProvider volumeProvider = VolumeProvider.fromFile("/org/dasein/cloud/aws/volproducts.json", "AWS");
+        VolumeRegion region = volumeProvider.findRegion(regionId);
         List<VolumeProduct> volumeProducts = new ArrayList<VolumeProduct>();
-        for ( org.dasein.cloud.aws.model.VolumeProduct product : products ) {
-            VolumePrice price = volumeProvider.findProductPrice(regionId, product.getId());
+
+        if( region == null ) {
+            return volumeProducts;
+        }
+        for ( org.dasein.cloud.aws.model.VolumeProduct product : volumeProvider.getProducts() ) {
+            VolumePrice price = region.findPrice(product.getId());
             if( price == null ) {
                 continue;
             }
@@ -266,55 +301,90 @@ public class EBSVolume extends AbstractVolumeSupport<AWSCloud> {
     }
 
     @Override
-	public @Nullable Volume getVolume(@Nonnull String volumeId) throws InternalException, CloudException {
+    public @Nullable Volume getVolume(@Nonnull String volumeId) throws CloudException, InternalException {
+        return ResourceCache.getVolumeCache().get(getProvider(), volumeId, new ResourceCache.Loader<Volume>() {
+            @Override
+            public @Nullable Volume load(@Nonnull String id) throws CloudException, InternalException {
+                return loadVolume(id);
+            }
+        });
+    }
+
+    /**
+     * Removes resources from the resource cache after this module changed them.
+     */
+    private void invalidate(@Nonnull String... ids) {
+        ResourceCache.getVolumeCache().invalidate(getProvider(), ids);
+    }
+
+    private @Nullable Volume loadVolume(@Nonnull String volumeId) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "Volume.getVolume");
         try {
-            ProviderContext ctx = getProvider().getContext();
-
-            if( ctx == null ) {
-                throw new CloudException("No context exists for this request.");
-            }
-            Map<String,String> parameters = getProvider().getStandardParameters(getProvider().getContext(), EC2Method.DESCRIBE_VOLUMES);
-            EC2Method method;
-            NodeList blocks;
-            Document doc;
+            return DescribeBatcher.getVolumeBatcher().load(getProvider(), volumeId, new DescribeBatcher.Fetcher<Volume>() {
+                @Override
+                public @Nullable Volume fetchOne(@Nonnull String id) throws CloudException, InternalException {
+                    return describeVolumes(Collections.singletonMap("VolumeId.1", id)).get(id);
+                }
 
-            parameters.put("VolumeId.1", volumeId);
-            method = new EC2Method(getProvider(), parameters);
-            try {
-                doc = method.invoke();
-            }
-            catch( EC2Exception e ) {
-                String code = e.getCode();
+                @Override
+                public @Nonnull Map<String, Volume> fetchAll(@Nonnull Collection<String> ids) throws CloudException, InternalException {
+                    Map<String, String> filter = new HashMap<String, String>();
 
-                if( code != null && (code.startsWith("InvalidVolume.NotFound") || code.equals("InvalidParameterValue")) ) {
-                    return null;
+                    // a filter leaves out unknown ids instead of failing the whole request
+                    AWSCloud.addFilterParameters(filter, 1, "volume-id", ids);
+                    return describeVolumes(filter);
                 }
-                logger.error(e.getSummary());
-                throw new CloudException(e);
+            });
+        }
+        finally {
+            APITrace.end();
+        }
+	}
+
+    private @Nonnull Map<String, Volume> describeVolumes(@Nonnull Map<String, String> extraParameters) throws InternalException, CloudException {
+        ProviderContext ctx = getProvider().getContext();
+
+        if( ctx == null ) {
+            throw new CloudException("No context exists for this request.");
+        }
+        Map<String,String> parameters = getProvider().getStandardParameters(getProvider().getContext(), EC2Method.DESCRIBE_VOLUMES);
+        Map<String,Volume> results = new HashMap<String, Volume>();
+        EC2Method method;
+        NodeList blocks;
+        Document doc;
+
+        parameters.putAll(extraParameters);
+        method = new EC2Method(getProvider(), parameters);
+        try {
+            doc = method.invoke();
+        }
+        catch( EC2Exception e ) {
+            String code = e.getCode();
+
+            if( code != null && (code.startsWith("InvalidVolume.NotFound") || code.equals("InvalidParameterValue")) ) {
+                return results;
             }
-            blocks = doc.getElementsByTagName("volumeSet");
-            for( int i=0; i<blocks.getLength(); i++ ) {
-                NodeList items = blocks.item(i).getChildNodes();
+            logger.error(e.getSummary());
+            throw new CloudException(e);
+        }
+        blocks = doc.getElementsByTagName("volumeSet");
+        for( int i=0; i<blocks.getLength(); i++ ) {
+            NodeList items = blocks.item(i).getChildNodes();
 
-                for( int j=0; j<items.getLength(); j++ ) {
-                    Node item = items.item(j);
+            for( int j=0; j<items.getLength(); j++ ) {
+                Node item = items.item(j);
 
-                    if( item.getNodeName().equals("item") ) {
-                        Volume volume = toVolume(ctx, item);
+                if( item.getNodeName().equals("item") ) {
+                    Volume volume = toVolume(ctx, item);
 
-                        if( volume != null && volume.getProviderVolumeId().equals(volumeId) ) {
-                            return volume;
-                        }
+                    if( volume != null ) {
+                        results.put(volume.getProviderVolumeId(), volume);
                     }
                 }
             }
-            return null;
-        }
-        finally {
-            APITrace.end();
         }
-	}
+        return results;
+    }
 
     @Override
     public @Nonnull Requirement getVolumeProductRequirement() throws InternalException, CloudException {
@@ -379,76 +449,71 @@ public class EBSVolume extends AbstractVolumeSupport<AWSCloud> {
     }
 
     @Override
-    public @Nonnull Iterable<Volume> listVolumes(@Nullable VolumeFilterOptions options) throws InternalException, CloudException {
-        APITrace.begin(getProvider(), "Volume.listVolumes");
-        try {
-            ProviderContext ctx = getProvider().getContext();
-
-            if( ctx == null ) {
-                throw new CloudException("No context exists for this request.");
-            }
-            Map<String,String> parameters = getProvider().getStandardParameters(getProvider().getContext(), EC2Method.DESCRIBE_VOLUMES);
-            ArrayList<Volume> list = new ArrayList<Volume>();
-            EC2Method method;
-            NodeList blocks;
-            Document doc;
-
-            if ( options != null ) {
-                AWSCloud.addExtraParameters( parameters, getProvider().getTagFilterParams( options.getTags() ) );
-            }
-
-            method = new EC2Method( getProvider(), parameters );
-            try {
-                doc = method.invoke();
-            }
-            catch( EC2Exception e ) {
-                logger.error(e.getSummary());
-                throw new CloudException(e);
-            }
-            blocks = doc.getElementsByTagName("volumeSet");
-            for( int i=0; i<blocks.getLength(); i++ ) {
-                NodeList items = blocks.item(i).getChildNodes();
-
-                for( int j=0; j<items.getLength(); j++ ) {
-                    Node item = items.item(j);
-
-                    if( item.getNodeName().equals("item") ) {
-                        Volume volume = toVolume( ctx, item );
+    public @Nonnull Iterable<Volume> listVolumes(final @Nullable VolumeFilterOptions options) throws InternalException, CloudException {
+        final ProviderContext ctx = getProvider().getContext();
+
+        if( ctx == null ) {
+            throw new CloudException("No context exists for this request.");
+        }
+        final FirstResponse first = new FirstResponse();
+
+        getProvider().hold();
+        PopulatorThread<Volume> populator = new PopulatorThread<Volume>(new JiteratorPopulator<Volume>() {
+            @Override
+            public void populate(@Nonnull Jiterator<Volume> iterator) throws Exception {
+                try {
+                    APITrace.begin(getProvider(), "Volume.listVolumes");
+                    try {
+                        Map<String,String> parameters = getProvider().getStandardParameters(ctx, EC2Method.DESCRIBE_VOLUMES);
+                        EC2Method method;
+
+                        if ( options != null ) {
+                            AWSCloud.addExtraParameters( parameters, getProvider().getTagFilterParams( options.getTags() ) );
+                        }
 
-                        if( volume != null && (options == null || options.matches(volume)) ) {
-                            list.add(volume);
+                        method = new EC2Method( getProvider(), parameters );
+                        try {
+                            method.invoke(new ItemSetStreamParser<Volume>("volumeSet", iterator, first) {
+                                @Override
+                                protected @Nullable Volume toItem( @Nonnull Node item ) throws CloudException {
+                                    Volume volume = toVolume( ctx, item );
+
+                                    if( volume != null && (options == null || options.matches(volume)) ) {
+                                        return volume;
+                                    }
+                                    return null;
+                                }
+                            });
+                        }
+                        catch( EC2Exception e ) {
+                            logger.error(e.getSummary());
+                            throw new CloudException(e);
                         }
                     }
+                    finally {
+                        APITrace.end();
+                    }
+                }
+                catch( Exception e ) {
+                    first.failed(e);
+                    throw e;
+                }
+                finally {
+                    first.accepted();
+                    getProvider().release();
                 }
             }
-            return list;
-        }
-        finally {
-            APITrace.end();
-        }
+        });
+
+        populator.populate();
+        // errors from AWS are thrown here rather than while iterating
+        first.await();
+        return populator.getResult();
     }
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(VolumeSupport.ANY) ) {
-            return new String[] { EC2Method.EC2_PREFIX + "*" };
-        }
-        else if( action.equals(VolumeSupport.ATTACH) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.ATTACH_VOLUME };
-        }
-        else if( action.equals(VolumeSupport.CREATE_VOLUME) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.CREATE_VOLUME };
-        }
-        else if( action.equals(VolumeSupport.DETACH) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DETACH_VOLUME };
-        }
-        else if( action.equals(VolumeSupport.GET_VOLUME) || action.equals(VolumeSupport.LIST_VOLUME) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VOLUMES };            
-        }
-        else if( action.equals(VolumeSupport.REMOVE_VOLUME) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DELETE_VOLUME };
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
@@ -477,6 +542,7 @@ public class EBSVolume extends AbstractVolumeSupport<AWSCloud> {
             }
         }
         finally {
+            invalidate(volumeId);
             APITrace.end();
         }
     }
@@ -493,6 +559,7 @@ public class EBSVolume extends AbstractVolumeSupport<AWSCloud> {
             getProvider().createTags(EC2Method.SERVICE_ID, volumeIds, tags);
         }
         finally {
+            invalidate(volumeIds);
             APITrace.end();
         }
     }
@@ -509,6 +576,7 @@ public class EBSVolume extends AbstractVolumeSupport<AWSCloud> {
             getProvider().removeTags(EC2Method.SERVICE_ID, volumeIds, tags);
         }
         finally {
+            invalidate(volumeIds);
             APITrace.end();
         }
     }
@@ -22,7 +22,12 @@ package org.dasein.cloud.aws.compute;
 import org.dasein.cloud.CloudErrorType;
 import org.dasein.cloud.CloudException;
 
+import javax.annotation.Nullable;
 import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 @SuppressWarnings("serial")
 public class EC2Exception extends CloudException {
@@ -30,6 +35,12 @@ public class EC2Exception extends CloudException {
     private static final String DEFAULT_ERROR_CODE = "NoResponse";
     private static final String DEFAULT_ERROR_MESSAGE = "No response body was specified";
 
+    private static final Set<String> THROTTLING_CODES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "Throttling", "ThrottlingException", "ThrottledException", "RequestThrottled", "RequestThrottledException",
+            "RequestLimitExceeded", "TooManyRequestsException", "SlowDown", "BandwidthLimitExceeded",
+            "ProvisionedThroughputExceededException"
+    )));
+
     private String requestId = null;
 
     private EC2Exception(CloudErrorType errorType, int status, String requestId, String code, String message) {
@@ -49,6 +60,13 @@ public class EC2Exception extends CloudException {
         return getHttpCode();
     }
 
+    /**
+     * @return true if the request was rejected because the caller exceeded the request rate of the service
+     */
+    public boolean isThrottling() {
+        return isThrottling(getCode());
+    }
+
     public String getSummary() {
         return (getStatus() + "/" + requestId + "/" + getCode() + ": " + getMessage());
     }
@@ -66,6 +84,16 @@ public class EC2Exception extends CloudException {
         return new EC2Exception(errorType, status, requestId, code, message);
     }
 
+    /**
+     * Checks whether an AWS error code signals that the caller is being throttled.
+     *
+     * @param code AWS error code
+     * @return true for throttling error codes
+     */
+    public static boolean isThrottling(@Nullable String code) {
+        return code != null && THROTTLING_CODES.contains(code);
+    }
+
     /**
      * Converts AWS error code to dasein cloud error type
      *
@@ -73,7 +101,7 @@ public class EC2Exception extends CloudException {
      * @return dasein cloud error type
      */
     private static CloudErrorType toCloudErrorType(String code) {
-        if ("Throttling".equals(code)) {
+        if (isThrottling(code)) {
             return CloudErrorType.THROTTLING;
         } else if ("TooManyBuckets".equals(code)) {
             return CloudErrorType.QUOTA;
@@ -29,20 +29,15 @@ import org.apache.log4j.Logger;
 import org.dasein.cloud.*;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.AWSResourceNotFoundException;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.compute.*;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.network.*;
 import org.dasein.cloud.util.APITrace;
-import org.dasein.cloud.util.Cache;
-import org.dasein.cloud.util.CacheLevel;
 import org.dasein.util.CalendarWrapper;
-import org.dasein.util.uom.storage.Gigabyte;
-import org.dasein.util.uom.storage.Megabyte;
-import org.dasein.util.uom.storage.Storage;
-import org.dasein.util.uom.time.Day;
-import org.dasein.util.uom.time.TimePeriod;
-import org.json.JSONArray;
-import org.json.JSONException;
+import org.dasein.util.Jiterator;
+import org.dasein.util.JiteratorPopulator;
+import org.dasein.util.PopulatorThread;
 import org.json.JSONObject;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -59,8 +54,39 @@ import java.util.concurrent.*;
 
 public class EC2Instance extends AbstractVMSupport<AWSCloud> {
     static private final Logger   logger       = Logger.getLogger(EC2Instance.class);
+
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(VirtualMachineSupport.ANY, EC2Method.EC2_PREFIX + "*")
+            .map(VirtualMachineSupport.BOOT, EC2Method.EC2_PREFIX + EC2Method.START_INSTANCES)
+            .map(VirtualMachineSupport.CLONE)
+            .map(VirtualMachineSupport.CREATE_VM, EC2Method.EC2_PREFIX + EC2Method.RUN_INSTANCES)
+            .map(VirtualMachineSupport.GET_VM, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_INSTANCES)
+            .map(VirtualMachineSupport.LIST_VM, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_INSTANCES)
+            .map(VirtualMachineSupport.PAUSE, EC2Method.EC2_PREFIX + EC2Method.STOP_INSTANCES)
+            .map(VirtualMachineSupport.REBOOT, EC2Method.EC2_PREFIX + EC2Method.REBOOT_INSTANCES)
+            .map(VirtualMachineSupport.REMOVE_VM, EC2Method.EC2_PREFIX + EC2Method.TERMINATE_INSTANCES)
+            .map(VirtualMachineSupport.TOGGLE_ANALYTICS, EC2Method.EC2_PREFIX + EC2Method.MONITOR_INSTANCES)
+            .map(VirtualMachineSupport.VIEW_ANALYTICS, EC2Method.EC2_PREFIX + EC2Method.GET_METRIC_STATISTICS)
+            .map(VirtualMachineSupport.VIEW_CONSOLE, EC2Method.EC2_PREFIX + EC2Method.GET_CONSOLE_OUTPUT)
+            .build();
     static private final Calendar UTC_CALENDAR = Calendar.getInstance(new SimpleTimeZone(0, "GMT"));
 
+    /**
+     * Custom property holding the number of instances requested per DescribeInstances page (5-1000).
+     */
+    static public final String P_DESCRIBE_PAGE_SIZE = "describeInstancesPageSize";
+
+    static private final int DEFAULT_PAGE_SIZE = 1000;
+
+    static private final ExecutorService pageFetcher = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+            Thread t = new Thread(r, "dasein-ec2-describe-pages");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     private transient volatile EC2InstanceCapabilities capabilities;
 
     EC2Instance( AWSCloud provider ) {
@@ -91,8 +117,10 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
             } catch( Throwable ex ) {
                 throw new CloudException(ex);
             }
+            invalidate(virtualMachineId);
             return getVirtualMachine(virtualMachineId);
         } finally {
+            invalidate(virtualMachineId);
             APITrace.end();
         }
     }
@@ -118,8 +146,10 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
             } catch( Throwable ex ) {
                 throw new CloudException(ex);
             }
+            invalidate(virtualMachineId);
             return getVirtualMachine(virtualMachineId);
         } finally {
+            invalidate(virtualMachineId);
             APITrace.end();
         }
     }
@@ -158,11 +188,12 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                 throw new CloudException(e);
             }
         } finally {
+            invalidate(instanceId);
             APITrace.end();
         }
     }
 
-    static private class Metric implements Comparable<Metric> {
+    static class Metric implements Comparable<Metric> {
         int    samples   = 0;
         long   timestamp = -1L;
         double minimum   = -1.0;
@@ -250,12 +281,133 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
         }
     }
 
+    /**
+     * Fetches the per minute datapoints of a metric through the time series cache, so that repeated queries over
+     * sliding windows only fetch the datapoints not seen before.
+     */
+    private Collection<Metric> calculateCached( final String metric, final String unit, final String id, final boolean idIsVolumeId, long startTimestamp, long endTimestamp ) throws CloudException, InternalException {
+        ProviderContext ctx = getContext();
+        String key = ctx.getAccountNumber() + "/" + ctx.getRegionId() + "/" + id + "/" + metric + "/" + unit;
+        long horizon = getProvider().getIntProperty(P_METRIC_CACHE_HORIZON, DEFAULT_METRIC_CACHE_HORIZON) * CalendarWrapper.MINUTE;
+        long overlap = getProvider().getIntProperty(P_METRIC_CACHE_OVERLAP, DEFAULT_METRIC_CACHE_OVERLAP) * CalendarWrapper.MINUTE;
+
+        return MetricSeriesCache.get(key, startTimestamp, endTimestamp, horizon, overlap, new MetricSeriesCache.Fetcher() {
+            @Override
+            public @Nonnull Collection<Metric> fetch( long start, long end ) throws CloudException, InternalException {
+                return calculate(metric, unit, id, idIsVolumeId, start, end);
+            }
+        });
+    }
+
     private interface ApplyCalcs {
         public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum );
     }
 
-    private void calculate( VmStatistics stats, String metricName, String unit, String id, boolean idIsVolumeId, long startTimestamp, long endTimestamp, ApplyCalcs apply ) throws CloudException, InternalException {
-        Set<Metric> metrics = calculate(metricName, unit, id, idIsVolumeId, startTimestamp, endTimestamp);
+    /**
+     * A metric reported in {@link VmStatistics}, with the name it has for instances and, for disk metrics, for the
+     * root volume of EBS backed instances.
+     */
+    static private class VmMetric {
+        private final String     instanceMetric;
+        private final String     volumeMetric;
+        private final String     unit;
+        private final ApplyCalcs apply;
+
+        private VmMetric( @Nonnull String instanceMetric, @Nullable String volumeMetric, @Nonnull String unit, @Nonnull ApplyCalcs apply ) {
+            this.instanceMetric = instanceMetric;
+            this.volumeMetric = volumeMetric;
+            this.unit = unit;
+            this.apply = apply;
+        }
+    }
+
+    static private final VmMetric[] VM_METRICS = {
+            new VmMetric("CPUUtilization", null, "Percent", new ApplyCalcs() {
+                public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
+                    stats.setSamples(samples);
+                    stats.setStartTimestamp(start);
+                    stats.setMinimumCpuUtilization(minimum);
+                    stats.setAverageCpuUtilization(average);
+                    stats.setMaximumCpuUtilization(maximum);
+                    stats.setEndTimestamp(end);
+                }
+            }),
+            new VmMetric("DiskReadBytes", "VolumeReadBytes", "Bytes", new ApplyCalcs() {
+                public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
+                    stats.setMinimumDiskReadBytes(minimum);
+                    stats.setAverageDiskReadBytes(average);
+                    stats.setMaximumDiskReadBytes(maximum);
+                }
+            }),
+            new VmMetric("DiskReadOps", "VolumeReadOps", "Count", new ApplyCalcs() {
+                public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
+                    stats.setMinimumDiskReadOperations(minimum);
+                    stats.setAverageDiskReadOperations(average);
+                    stats.setMaximumDiskReadOperations(maximum);
+                }
+            }),
+            new VmMetric("DiskWriteBytes", "VolumeWriteBytes", "Bytes", new ApplyCalcs() {
+                public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
+                    stats.setMinimumDiskWriteBytes(minimum);
+                    stats.setAverageDiskWriteBytes(average);
+                    stats.setMaximumDiskWriteBytes(maximum);
+                }
+            }),
+            new VmMetric("DiskWriteOps", "VolumeWriteOps", "Count", new ApplyCalcs() {
+                public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
+                    stats.setMinimumDiskWriteOperations(minimum);
+                    stats.setAverageDiskWriteOperations(average);
+                    stats.setMaximumDiskWriteOperations(maximum);
+                }
+            }),
+            new VmMetric("NetworkIn", null, "Bytes", new ApplyCalcs() {
+                public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
+                    stats.setMinimumNetworkIn(minimum);
+                    stats.setAverageNetworkIn(average);
+                    stats.setMaximumNetworkIn(maximum);
+                }
+            }),
+            new VmMetric("NetworkOut", null, "Bytes", new ApplyCalcs() {
+                public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
+                    stats.setMinimumNetworkOut(minimum);
+                    stats.setAverageNetworkOut(average);
+                    stats.setMaximumNetworkOut(maximum);
+                }
+            })
+    };
+
+    static private final String[] METRIC_STATISTICS = {"Average", "Minimum", "Maximum"};
+
+    /**
+     * Custom property holding the number of GetMetricData requests made at the same time by the bulk statistics call.
+     */
+    static public final String P_METRIC_DATA_THREADS = "cloudWatchRequestThreads";
+
+    static private final int DEFAULT_METRIC_DATA_THREADS = 4;
+
+    /**
+     * Custom property holding how long, in minutes, datapoints are kept in the time series cache behind
+     * {@link #getVMStatisticsForPeriod(String, long, long)}. Windows reaching further back than the horizon are
+     * always fetched in full.
+     */
+    static public final String P_METRIC_CACHE_HORIZON = "cloudWatchCacheHorizonMinutes";
+
+    static private final int DEFAULT_METRIC_CACHE_HORIZON = 25 * 60;
+
+    /**
+     * Custom property holding how many minutes before the end of the cached datapoints are fetched again on each
+     * refresh of the time series cache, picking up datapoints CloudWatch publishes late.
+     */
+    static public final String P_METRIC_CACHE_OVERLAP = "cloudWatchCacheOverlapMinutes";
+
+    static private final int DEFAULT_METRIC_CACHE_OVERLAP = 15;
+    static private final int MAX_METRIC_DATA_QUERIES     = 500;
+    static private final int DESCRIBE_FILTER_VALUES      = 200;
+
+    /**
+     * Reduces the per minute metrics of one series to the values reported in {@link VmStatistics}.
+     */
+    private void apply( VmStatistics stats, Collection<Metric> metrics, long startTimestamp, long endTimestamp, ApplyCalcs apply ) {
         double minimum = -1.0, maximum = 0.0, sum = 0.0;
         long start = -1L, end = 0L;
         int samples = 0;
@@ -291,84 +443,343 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
         apply.apply(stats, start, end, samples, samples == 0 ? 0.0 : sum / samples, minimum, maximum);
     }
 
-    private void calculateCpuUtilization( VmStatistics statistics, String instanceId, long startTimestamp, long endTimestamp ) throws CloudException, InternalException {
-        ApplyCalcs apply = new ApplyCalcs() {
-            public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
-                stats.setSamples(samples);
-                stats.setStartTimestamp(start);
-                stats.setMinimumCpuUtilization(minimum);
-                stats.setAverageCpuUtilization(average);
-                stats.setMaximumCpuUtilization(maximum);
-                stats.setEndTimestamp(end);
+    /**
+     * Finds the root volume of a virtual machine in its block device mapping, falling back to its first EBS volume
+     * when no root device was reported.
+     * @param vm the virtual machine as returned by DescribeInstances
+     * @return the id of the volume, or null if no EBS volume is attached
+     */
+    static private @Nullable String getRootVolumeId( @Nonnull VirtualMachine vm ) {
+        Volume[] volumes = vm.getVolumes();
+        String first = null;
+
+        if( volumes == null ) {
+            return null;
+        }
+        for( Volume volume : volumes ) {
+            if( volume.getProviderVolumeId() == null ) {
+                continue;
             }
-        };
-        calculate(statistics, "CPUUtilization", "Percent", instanceId, false, startTimestamp, endTimestamp, apply);
+            if( volume.isRootVolume() ) {
+                return volume.getProviderVolumeId();
+            }
+            if( first == null ) {
+                first = volume.getProviderVolumeId();
+            }
+        }
+        return first;
     }
 
-    private void calculateDiskReadBytes( VmStatistics statistics, String id, boolean idIsVolumeId, long startTimestamp, long endTimestamp ) throws CloudException, InternalException {
-        ApplyCalcs apply = new ApplyCalcs() {
-            public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
-                stats.setMinimumDiskReadBytes(minimum);
-                stats.setAverageDiskReadBytes(average);
-                stats.setMaximumDiskReadBytes(maximum);
-            }
-        };
-        calculate(statistics, idIsVolumeId ? "VolumeReadBytes" : "DiskReadBytes", "Bytes", id, idIsVolumeId, startTimestamp, endTimestamp, apply);
+    /**
+     * A virtual machine whose statistics are fetched, with the id its disk metrics are reported under.
+     */
+    static private class StatisticsTarget {
+        private final String       instanceId;
+        private final String       diskId;
+        private final boolean      idIsVolumeId;
+        private final VmStatistics statistics;
+
+        private StatisticsTarget( @Nonnull String instanceId, @Nonnull String diskId, boolean idIsVolumeId, @Nonnull VmStatistics statistics ) {
+            this.instanceId = instanceId;
+            this.diskId = diskId;
+            this.idIsVolumeId = idIsVolumeId;
+            this.statistics = statistics;
+        }
     }
 
-    private void calculateDiskReadOps( VmStatistics statistics, String id, boolean idIsVolumeId, long startTimestamp, long endTimestamp ) throws CloudException, InternalException {
-        ApplyCalcs apply = new ApplyCalcs() {
-            public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
-                stats.setMinimumDiskReadOperations(minimum);
-                stats.setAverageDiskReadOperations(average);
-                stats.setMaximumDiskReadOperations(maximum);
+    /**
+     * Fetches the statistics of many virtual machines at once. Instead of one GetMetricStatistics request per
+     * metric and virtual machine, the metrics of many virtual machines are requested together with GetMetricData,
+     * and several of these requests run at the same time. Disk metrics of EBS backed virtual machines are taken
+     * from their root volume, as in {@link #getVMStatistics(String, long, long)}. Root volumes come from the block
+     * device mappings returned with the virtual machines, so no volumes are looked up.
+     * @param instanceIds the virtual machines to fetch statistics for
+     * @param startTimestamp the start of the period, at most two days ago
+     * @param endTimestamp the end of the period
+     * @return the statistics by virtual machine id; virtual machines that do not exist have empty statistics
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     * @throws CloudException an error occurred with the cloud provider
+     */
+    public @Nonnull Map<String, VmStatistics> getVMStatistics( @Nonnull Collection<String> instanceIds, @Nonnegative long startTimestamp, @Nonnegative long endTimestamp ) throws InternalException, CloudException {
+        APITrace.begin(getProvider(), "getBulkVMStatistics");
+        try {
+            if( endTimestamp < 1L ) {
+                endTimestamp = System.currentTimeMillis() + 1000L;
             }
-        };
-        calculate(statistics, idIsVolumeId ? "VolumeReadOps" : "DiskReadOps", "Count", id, idIsVolumeId, startTimestamp, endTimestamp, apply);
-    }
+            if( startTimestamp < ( System.currentTimeMillis() - ( 2L * CalendarWrapper.DAY ) ) ) {
+                startTimestamp = System.currentTimeMillis() - ( 2L * CalendarWrapper.DAY );
+                if( startTimestamp > ( endTimestamp - ( 2L * CalendarWrapper.MINUTE ) ) ) {
+                    endTimestamp = startTimestamp + ( 2L * CalendarWrapper.MINUTE );
+                }
+            }
+            else if( startTimestamp > ( endTimestamp - ( 2L * CalendarWrapper.MINUTE ) ) ) {
+                startTimestamp = endTimestamp - ( 2L * CalendarWrapper.MINUTE );
+            }
+            Map<String, VmStatistics> results = new HashMap<String, VmStatistics>();
+            List<StatisticsTarget> targets = new ArrayList<StatisticsTarget>();
+            List<String> ids = new ArrayList<String>();
 
-    private void calculateDiskWriteBytes( VmStatistics statistics, String id, boolean idIsVolumeId, long startTimestamp, long endTimestamp ) throws CloudException, InternalException {
-        ApplyCalcs apply = new ApplyCalcs() {
-            public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
-                stats.setMinimumDiskWriteBytes(minimum);
-                stats.setAverageDiskWriteBytes(average);
-                stats.setMaximumDiskWriteBytes(maximum);
+            for( String id : instanceIds ) {
+                if( !results.containsKey(id) ) {
+                    results.put(id, new VmStatistics());
+                    ids.add(id);
+                }
             }
-        };
-        calculate(statistics, idIsVolumeId ? "VolumeWriteBytes" : "DiskWriteBytes", "Bytes", id, idIsVolumeId, startTimestamp, endTimestamp, apply);
+            for( int i = 0; i < ids.size(); i += DESCRIBE_FILTER_VALUES ) {
+                Map<String, String> filter = new HashMap<String, String>();
+
+                AWSCloud.addFilterParameters(filter, 1, "instance-id", ids.subList(i, Math.min(ids.size(), i + DESCRIBE_FILTER_VALUES)));
+                for( VirtualMachine vm : listVirtualMachinesWithParams(filter, null) ) {
+                    VmStatistics statistics = results.get(vm.getProviderVirtualMachineId());
+
+                    if( statistics == null ) {
+                        continue;
+                    }
+                    String volumeId = ( vm.isPersistent() ? getRootVolumeId(vm) : null );
+
+                    if( volumeId != null ) {
+                        targets.add(new StatisticsTarget(vm.getProviderVirtualMachineId(), volumeId, true, statistics));
+                    }
+                    else {
+                        targets.add(new StatisticsTarget(vm.getProviderVirtualMachineId(), vm.getProviderVirtualMachineId(), false, statistics));
+                    }
+                }
+            }
+            if( !getProvider().getEC2Provider().isAWS() ) {
+                for( StatisticsTarget target : targets ) {
+                    for( VmMetric metric : VM_METRICS ) {
+                        apply(target.statistics, Collections.<Metric>emptyList(), startTimestamp, endTimestamp, metric.apply);
+                    }
+                }
+                return results;
+            }
+            int perRequest = Math.max(1, MAX_METRIC_DATA_QUERIES / ( VM_METRICS.length * METRIC_STATISTICS.length ));
+            int concurrency = getProvider().getIntProperty(P_METRIC_DATA_THREADS, DEFAULT_METRIC_DATA_THREADS);
+            CompletionService<Void> requests = new ExecutorCompletionService<Void>(pageFetcher);
+            List<Future<Void>> pending = new ArrayList<Future<Void>>();
+            final long start = startTimestamp, end = endTimestamp;
+            int inFlight = 0;
+
+            try {
+                for( int i = 0; i < targets.size(); i += perRequest ) {
+                    final List<StatisticsTarget> batch = targets.subList(i, Math.min(targets.size(), i + perRequest));
+
+                    if( inFlight >= concurrency ) {
+                        getResult(requests.take());
+                        inFlight--;
+                    }
+                    pending.add(requests.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            APITrace.begin(getProvider(), "calculateVMAnalytics");
+                            try {
+                                fetchMetricData(batch, start, end);
+                                return null;
+                            }
+                            finally {
+                                APITrace.end();
+                            }
+                        }
+                    }));
+                    inFlight++;
+                }
+                while( inFlight > 0 ) {
+                    getResult(requests.take());
+                    inFlight--;
+                }
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InternalException(e);
+            }
+            finally {
+                for( Future<Void> f : pending ) {
+                    f.cancel(true);
+                }
+            }
+            return results;
+        } finally {
+            APITrace.end();
+        }
     }
 
-    private void calculateDiskWriteOps( VmStatistics statistics, String id, boolean idIsVolumeId, long startTimestamp, long endTimestamp ) throws CloudException, InternalException {
-        ApplyCalcs apply = new ApplyCalcs() {
-            public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
-                stats.setMinimumDiskWriteOperations(minimum);
-                stats.setAverageDiskWriteOperations(average);
-                stats.setMaximumDiskWriteOperations(maximum);
+    static private void getResult( @Nonnull Future<?> future ) throws CloudException, InternalException {
+        try {
+            future.get();
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InternalException(e);
+        }
+        catch( ExecutionException e ) {
+            Throwable t = e.getCause();
+
+            if( t instanceof CloudException ) {
+                throw ( CloudException ) t;
             }
-        };
-        calculate(statistics, idIsVolumeId ? "VolumeWriteOps" : "DiskWriteOps", "Count", id, idIsVolumeId, startTimestamp, endTimestamp, apply);
+            if( t instanceof InternalException ) {
+                throw ( InternalException ) t;
+            }
+            throw new InternalException(t);
+        }
     }
 
-    private void calculateNetworkIn( VmStatistics statistics, String instanceId, long startTimestamp, long endTimestamp ) throws CloudException, InternalException {
-        ApplyCalcs apply = new ApplyCalcs() {
-            public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
-                stats.setMinimumNetworkIn(minimum);
-                stats.setAverageNetworkIn(average);
-                stats.setMaximumNetworkIn(maximum);
+    /**
+     * Fetches every metric of a batch of virtual machines with GetMetricData, following NextToken until all
+     * datapoints are in, and applies them to the statistics of each virtual machine.
+     */
+    private void fetchMetricData( @Nonnull List<StatisticsTarget> batch, long startTimestamp, long endTimestamp ) throws CloudException, InternalException {
+        Map<String, String> parameters = getProvider().getStandardCloudWatchParameters(getContext(), EC2Method.GET_METRIC_DATA);
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
+        // a calendar per format keeps concurrent batches from sharing state
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        // series by query id, each holding datapoints by timestamp
+        Map<String, TreeMap<Long, Metric>> series = new HashMap<String, TreeMap<Long, Metric>>();
+        int q = 0;
+
+        parameters.put("StartTime", fmt.format(new Date(startTimestamp)));
+        parameters.put("EndTime", fmt.format(new Date(endTimestamp)));
+        for( int t = 0; t < batch.size(); t++ ) {
+            StatisticsTarget target = batch.get(t);
+
+            for( int m = 0; m < VM_METRICS.length; m++ ) {
+                VmMetric metric = VM_METRICS[m];
+                boolean onVolume = ( target.idIsVolumeId && metric.volumeMetric != null );
+
+                for( String statistic : METRIC_STATISTICS ) {
+                    String prefix = "MetricDataQueries.member." + ( ++q ) + ".";
+
+                    parameters.put(prefix + "Id", "v" + t + "_m" + m + "_" + statistic.toLowerCase());
+                    parameters.put(prefix + "MetricStat.Metric.Namespace", onVolume ? "AWS/EBS" : "AWS/EC2");
+                    parameters.put(prefix + "MetricStat.Metric.MetricName", onVolume ? metric.volumeMetric : metric.instanceMetric);
+                    parameters.put(prefix + "MetricStat.Metric.Dimensions.member.1.Name", onVolume ? "VolumeId" : "InstanceId");
+                    parameters.put(prefix + "MetricStat.Metric.Dimensions.member.1.Value", onVolume ? target.diskId : target.instanceId);
+                    parameters.put(prefix + "MetricStat.Period", "60");
+                    parameters.put(prefix + "MetricStat.Stat", statistic);
+                    parameters.put(prefix + "MetricStat.Unit", metric.unit);
+                }
+            }
+        }
+        SimpleDateFormat parser = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        parser.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String nextToken = null;
+
+        do {
+            if( nextToken != null ) {
+                parameters.put("NextToken", nextToken);
+            }
+            EC2Method method = new EC2Method("monitoring", getProvider(), parameters);
+            Document doc;
+
+            try {
+                doc = method.invoke();
+            } catch( EC2Exception e ) {
+                logger.error(e.getSummary());
+                throw new CloudException(e);
             }
-        };
-        calculate(statistics, "NetworkIn", "Bytes", instanceId, false, startTimestamp, endTimestamp, apply);
+            nextToken = null;
+            NodeList tokens = doc.getElementsByTagName("NextToken");
+
+            if( tokens.getLength() > 0 && tokens.item(0).hasChildNodes() ) {
+                nextToken = tokens.item(0).getFirstChild().getNodeValue().trim();
+            }
+            NodeList results = doc.getElementsByTagName("MetricDataResults");
+
+            for( int i = 0; i < results.getLength(); i++ ) {
+                NodeList members = results.item(i).getChildNodes();
+
+                for( int j = 0; j < members.getLength(); j++ ) {
+                    Node member = members.item(j);
+
+                    if( member.getNodeName().equals("member") ) {
+                        loadMetricDataResult(member, series, parser);
+                    }
+                }
+            }
+        } while( nextToken != null );
+
+        for( int t = 0; t < batch.size(); t++ ) {
+            StatisticsTarget target = batch.get(t);
+
+            for( int m = 0; m < VM_METRICS.length; m++ ) {
+                TreeMap<Long, Metric> metrics = series.get("v" + t + "_m" + m);
+
+                apply(target.statistics, metrics == null ? Collections.<Metric>emptyList() : metrics.values(), startTimestamp, endTimestamp, VM_METRICS[m].apply);
+            }
+        }
     }
 
-    private void calculateNetworkOut( VmStatistics statistics, String instanceId, long startTimestamp, long endTimestamp ) throws CloudException, InternalException {
-        ApplyCalcs apply = new ApplyCalcs() {
-            public void apply( VmStatistics stats, long start, long end, int samples, double average, double minimum, double maximum ) {
-                stats.setMinimumNetworkOut(minimum);
-                stats.setAverageNetworkOut(average);
-                stats.setMaximumNetworkOut(maximum);
+    /**
+     * Merges one MetricDataResults member into the series of its metric, filling in the statistic named by the
+     * query id for each timestamp.
+     */
+    private void loadMetricDataResult( @Nonnull Node member, @Nonnull Map<String, TreeMap<Long, Metric>> series, @Nonnull SimpleDateFormat parser ) throws InternalException {
+        List<Long> timestamps = new ArrayList<Long>();
+        List<Double> values = new ArrayList<Double>();
+        NodeList items = member.getChildNodes();
+        String id = null;
+
+        for( int i = 0; i < items.getLength(); i++ ) {
+            Node item = items.item(i);
+
+            if( item.getNodeName().equals("Id") && item.hasChildNodes() ) {
+                id = item.getFirstChild().getNodeValue().trim();
             }
-        };
-        calculate(statistics, "NetworkOut", "Bytes", instanceId, false, startTimestamp, endTimestamp, apply);
+            else if( item.getNodeName().equals("Timestamps") || item.getNodeName().equals("Values") ) {
+                NodeList entries = item.getChildNodes();
+
+                for( int j = 0; j < entries.getLength(); j++ ) {
+                    Node entry = entries.item(j);
+
+                    if( !entry.getNodeName().equals("member") || !entry.hasChildNodes() ) {
+                        continue;
+                    }
+                    String value = entry.getFirstChild().getNodeValue().trim();
+
+                    if( item.getNodeName().equals("Values") ) {
+                        values.add(Double.parseDouble(value));
+                    }
+                    else {
+                        try {
+                            timestamps.add(parser.parse(value).getTime());
+                        } catch( ParseException e ) {
+                            logger.error(e);
+                            throw new InternalException(e);
+                        }
+                    }
+                }
+            }
+        }
+        int split = ( id == null ? -1 : id.lastIndexOf('_') );
+
+        if( split < 0 ) {
+            return;
+        }
+        String statistic = id.substring(split + 1);
+        TreeMap<Long, Metric> metrics = series.get(id.substring(0, split));
+
+        if( metrics == null ) {
+            metrics = new TreeMap<Long, Metric>();
+            series.put(id.substring(0, split), metrics);
+        }
+        for( int i = 0; i < Math.min(timestamps.size(), values.size()); i++ ) {
+            Metric m = metrics.get(timestamps.get(i));
+
+            if( m == null ) {
+                m = new Metric();
+                m.timestamp = timestamps.get(i);
+                metrics.put(m.timestamp, m);
+            }
+            if( statistic.equals("average") ) {
+                m.average = values.get(i);
+            }
+            else if( statistic.equals("minimum") ) {
+                m.minimum = values.get(i);
+            }
+            else if( statistic.equals("maximum") ) {
+                m.maximum = values.get(i);
+            }
+        }
     }
 
     @Override
@@ -394,6 +805,7 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                 }
             }
         } finally {
+            invalidate(instanceId);
             APITrace.end();
         }
     }
@@ -686,22 +1098,8 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
             throw new CloudException("No context was established for this request");
         }
 
-        Future<Iterable<IpAddress>> ipPoolFuture = null;
-        Iterable<IpAddress> addresses;
-        if( getProvider().hasNetworkServices() ) {
-            NetworkServices services = getProvider().getNetworkServices();
-
-            if( services != null ) {
-                if( services.hasIpAddressSupport() ) {
-                    IpAddressSupport support = services.getIpAddressSupport();
-
-                    if( support != null ) {
-                        ipPoolFuture = support.listIpPoolConcurrently(IPVersion.IPV4, false);
-                    }
-                }
-            }
-        }
-
+        Future<Iterable<IpAddress>> ipPoolFuture = listIpPoolConcurrently();
+        Iterable<IpAddress> addresses = null;
 
         Map<String, String> parameters = getProvider().getStandardParameters(getContext(), EC2Method.DESCRIBE_INSTANCES);
         EC2Method method;
@@ -730,22 +1128,8 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                 Node instance = instances.item(j);
 
                 if( instance.getNodeName().equals("item") ) {
-                    try {
-                        if( ipPoolFuture != null ) {
-                            addresses = ipPoolFuture.get(30, TimeUnit.SECONDS);
-                        }
-                        else {
-                            addresses = Collections.emptyList();
-                        }
-                    } catch( InterruptedException e ) {
-                        logger.error(e.getMessage());
-                        addresses = Collections.emptyList();
-                    } catch( ExecutionException e ) {
-                        logger.error(e.getMessage());
-                        addresses = Collections.emptyList();
-                    } catch( TimeoutException e ) {
-                        logger.error(e.getMessage());
-                        addresses = Collections.emptyList();
+                    if( addresses == null ) {
+                        addresses = getIpPool(ipPoolFuture);
                     }
                     VirtualMachine server = toVirtualMachine(ctx, instance, addresses);
                     if( server != null && Arrays.binarySearch(instanceIds, server.getProviderVirtualMachineId()) >= 0) {
@@ -759,14 +1143,47 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
 
     @Override
     public @Nullable VirtualMachine getVirtualMachine( @Nonnull String instanceId ) throws InternalException, CloudException {
+        return ResourceCache.getVirtualMachineCache().get(getProvider(), instanceId, new ResourceCache.Loader<VirtualMachine>() {
+            @Override
+            public @Nullable VirtualMachine load( @Nonnull String id ) throws CloudException, InternalException {
+                return loadVirtualMachine(id);
+            }
+        });
+    }
+
+    /**
+     * Removes resources from the resource cache after this module changed them.
+     */
+    private void invalidate( @Nonnull String... ids ) {
+        ResourceCache.getVirtualMachineCache().invalidate(getProvider(), ids);
+    }
+
+    private @Nullable VirtualMachine loadVirtualMachine( @Nonnull String instanceId ) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "getVirtualMachine");
         try {
-            List<VirtualMachine> instances = describeInstances(instanceId);
-            if( instances.size() == 1 ) {
-                return instances.get(0);
-            }
+            return DescribeBatcher.getVirtualMachineBatcher().load(getProvider(), instanceId, new DescribeBatcher.Fetcher<VirtualMachine>() {
+                @Override
+                public @Nullable VirtualMachine fetchOne( @Nonnull String id ) throws CloudException, InternalException {
+                    List<VirtualMachine> instances = describeInstances(id);
+
+                    return ( instances.size() == 1 ? instances.get(0) : null );
+                }
+
+                @Override
+                public @Nonnull Map<String, VirtualMachine> fetchAll( @Nonnull Collection<String> ids ) throws CloudException, InternalException {
+                    Map<String, VirtualMachine> results = new HashMap<String, VirtualMachine>();
+                    Map<String, String> filter = new HashMap<String, String>();
+
+                    // a filter leaves out unknown ids instead of failing the whole request
+                    AWSCloud.addFilterParameters(filter, 1, "instance-id", ids);
+                    for( VirtualMachine vm : listVirtualMachinesWithParams(filter, null) ) {
+                        results.put(vm.getProviderVirtualMachineId(), vm);
+                    }
+                    return results;
+                }
+            });
         } catch( Exception e ) {
-            e.printStackTrace();
+            logger.error("Unable to look up virtual machine " + instanceId + ": " + e.getMessage(), e);
             if( e instanceof CloudException ) {
                 throw ( CloudException ) e;
             }
@@ -774,7 +1191,6 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
         } finally {
             APITrace.end();
         }
-        return null;
     }
 
     @Override
@@ -819,39 +1235,9 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
     public @Nonnull VmStatistics getVMStatistics( @Nonnull String instanceId, @Nonnegative long startTimestamp, @Nonnegative long endTimestamp ) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "getVMStatistics");
         try {
-            VmStatistics statistics = new VmStatistics();
-
-            if( endTimestamp < 1L ) {
-                endTimestamp = System.currentTimeMillis() + 1000L;
-            }
-            if( startTimestamp < ( System.currentTimeMillis() - ( 2L * CalendarWrapper.DAY ) ) ) {
-                startTimestamp = System.currentTimeMillis() - ( 2L * CalendarWrapper.DAY );
-                if( startTimestamp > ( endTimestamp - ( 2L * CalendarWrapper.MINUTE ) ) ) {
-                    endTimestamp = startTimestamp + ( 2L * CalendarWrapper.MINUTE );
-                }
-            }
-            else if( startTimestamp > ( endTimestamp - ( 2L * CalendarWrapper.MINUTE ) ) ) {
-                startTimestamp = endTimestamp - ( 2L * CalendarWrapper.MINUTE );
-            }
+            // one GetMetricData request covers all seven metrics
+            VmStatistics statistics = getVMStatistics(Collections.singletonList(instanceId), startTimestamp, endTimestamp).get(instanceId);
 
-            String id = instanceId;
-            boolean idIsVolumeId = false;
-            VirtualMachine vm = getVirtualMachine(instanceId);
-            if( vm != null ) {
-                if( vm.isPersistent() ) {
-                    if( vm.getProviderVolumeIds(getProvider()).length > 0 ) {
-                        id = vm.getProviderVolumeIds(getProvider())[0];
-                        idIsVolumeId = true;
-                    }
-                }
-                calculateCpuUtilization(statistics, instanceId, startTimestamp, endTimestamp);
-                calculateDiskReadBytes(statistics, id, idIsVolumeId, startTimestamp, endTimestamp);
-                calculateDiskReadOps(statistics, id, idIsVolumeId, startTimestamp, endTimestamp);
-                calculateDiskWriteBytes(statistics, id, idIsVolumeId, startTimestamp, endTimestamp);
-                calculateDiskWriteOps(statistics, id, idIsVolumeId, startTimestamp, endTimestamp);
-                calculateNetworkIn(statistics, instanceId, startTimestamp, endTimestamp);
-                calculateNetworkOut(statistics, instanceId, startTimestamp, endTimestamp);
-            }
             return statistics;
         } finally {
             APITrace.end();
@@ -880,7 +1266,7 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
             for( int i = 1; i <= minutes; i++ ) {
                 statMap.put(i, new VmStatistics());
             }
-            Set<Metric> metrics = calculate("CPUUtilization", "Percent", instanceId, false, startTimestamp, endTimestamp);
+            Collection<Metric> metrics = calculateCached("CPUUtilization", "Percent", instanceId, false, startTimestamp, endTimestamp);
             for( Metric m : metrics ) {
                 int minute = 1 + ( int ) ( ( m.timestamp - startTimestamp ) / CalendarWrapper.MINUTE );
                 VmStatistics stats = statMap.get(minute);
@@ -900,12 +1286,14 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
             boolean idIsVolumeId = false;
             VirtualMachine vm = getVirtualMachine(instanceId);
             if( vm != null && vm.isPersistent() ) {
-                if( vm.getProviderVolumeIds(getProvider()).length > 0 ) {
-                    id = vm.getProviderVolumeIds(getProvider())[0];
+                String volumeId = getRootVolumeId(vm);
+
+                if( volumeId != null ) {
+                    id = volumeId;
                     idIsVolumeId = true;
                 }
             }
-            metrics = calculate(idIsVolumeId ? "VolumeReadBytes" : "DiskReadBytes", "Bytes", id, idIsVolumeId, startTimestamp, endTimestamp);
+            metrics = calculateCached(idIsVolumeId ? "VolumeReadBytes" : "DiskReadBytes", "Bytes", id, idIsVolumeId, startTimestamp, endTimestamp);
             for( Metric m : metrics ) {
                 int minute = 1 + ( int ) ( ( m.timestamp - startTimestamp ) / CalendarWrapper.MINUTE );
                 VmStatistics stats = statMap.get(minute);
@@ -921,7 +1309,7 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                     stats.setSamples(m.samples);
                 }
             }
-            metrics = calculate(idIsVolumeId ? "VolumeReadOps" : "DiskReadOps", "Count", id, idIsVolumeId, startTimestamp, endTimestamp);
+            metrics = calculateCached(idIsVolumeId ? "VolumeReadOps" : "DiskReadOps", "Count", id, idIsVolumeId, startTimestamp, endTimestamp);
             for( Metric m : metrics ) {
                 int minute = 1 + ( int ) ( ( m.timestamp - startTimestamp ) / CalendarWrapper.MINUTE );
                 VmStatistics stats = statMap.get(minute);
@@ -937,7 +1325,7 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                     stats.setSamples(m.samples);
                 }
             }
-            metrics = calculate(idIsVolumeId ? "VolumeWriteBytes" : "DiskWriteBytes", "Bytes", id, idIsVolumeId, startTimestamp, endTimestamp);
+            metrics = calculateCached(idIsVolumeId ? "VolumeWriteBytes" : "DiskWriteBytes", "Bytes", id, idIsVolumeId, startTimestamp, endTimestamp);
             for( Metric m : metrics ) {
                 int minute = 1 + ( int ) ( ( m.timestamp - startTimestamp ) / CalendarWrapper.MINUTE );
                 VmStatistics stats = statMap.get(minute);
@@ -953,7 +1341,7 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                     stats.setSamples(m.samples);
                 }
             }
-            metrics = calculate(idIsVolumeId ? "VolumeWriteOps" : "DiskWriteOps", "Count", id, idIsVolumeId, startTimestamp, endTimestamp);
+            metrics = calculateCached(idIsVolumeId ? "VolumeWriteOps" : "DiskWriteOps", "Count", id, idIsVolumeId, startTimestamp, endTimestamp);
             for( Metric m : metrics ) {
                 int minute = 1 + ( int ) ( ( m.timestamp - startTimestamp ) / CalendarWrapper.MINUTE );
                 VmStatistics stats = statMap.get(minute);
@@ -969,7 +1357,7 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                     stats.setSamples(m.samples);
                 }
             }
-            metrics = calculate("NetworkIn", "Bytes", instanceId, false, startTimestamp, endTimestamp);
+            metrics = calculateCached("NetworkIn", "Bytes", instanceId, false, startTimestamp, endTimestamp);
             for( Metric m : metrics ) {
                 int minute = 1 + ( int ) ( ( m.timestamp - startTimestamp ) / CalendarWrapper.MINUTE );
                 VmStatistics stats = statMap.get(minute);
@@ -985,7 +1373,7 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                     stats.setSamples(m.samples);
                 }
             }
-            metrics = calculate("NetworkOut", "Bytes", instanceId, false, startTimestamp, endTimestamp);
+            metrics = calculateCached("NetworkOut", "Bytes", instanceId, false, startTimestamp, endTimestamp);
             for( Metric m : metrics ) {
                 int minute = 1 + ( int ) ( ( m.timestamp - startTimestamp ) / CalendarWrapper.MINUTE );
                 VmStatistics stats = statMap.get(minute);
@@ -1165,285 +1553,38 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
     @Override
     public @Nonnull Iterable<VirtualMachineProduct> listProducts(@Nonnull String machineImageId, @Nonnull VirtualMachineProductFilterOptions options) throws InternalException, CloudException {
         MachineImage image = getProvider().getComputeServices().getImageSupport().getImage(machineImageId);
-        Iterable<VirtualMachineProduct> allProducts = listProducts(options, image.getArchitecture());
-        List<VirtualMachineProduct> products = new ArrayList<VirtualMachineProduct>();
-        for( VirtualMachineProduct product : allProducts ) {
-            String vt = product.getProviderMetadata().get("vt");
-            String rdt = product.getProviderMetadata().get("rdt");
-            boolean matchesVt = false;
-            if( vt != null ) {
-                for( String type : vt.split(",") ) {
-                    if( type.equalsIgnoreCase(image.getProviderMetadata().get("virtualizationType")) ) {
-                        matchesVt = true;
-                        break;
-                    }
-                }
-            }
-            boolean matchesRdt = false;
-            if( rdt != null ) {
-                for( String type : rdt.split(",") ) {
-                    if( type.equalsIgnoreCase("ebs") && MachineImageType.VOLUME.equals(image.getType()) ) {
-                        matchesRdt = true;
-                        break;
-                    }
-                    else if( type.equalsIgnoreCase("instance") && MachineImageType.STORAGE.equals(image.getType()) ) {
-                        matchesRdt = true;
-                    }
-                }
-            }
-            if( matchesRdt && matchesVt ) {
-                products.add(product);
-            }
+
+        if( image == null ) {
+            throw new InternalException("No such machine image: " + machineImageId);
         }
-        return products;
+        ProviderContext ctx = getContext();
+        List<VirtualMachineProduct> products = VmProductCatalog.getInstance().list(getProvider().getCloudName(), getProvider().getProviderName(), ctx.getCloud().getEndpoint(), ctx.getRegionId(), image.getArchitecture(), image.getProviderMetadata().get("virtualizationType"), image.getType());
+
+        return filter(products, options);
     }
 
     protected @Nonnull Iterable<VirtualMachineProduct> listProducts( @Nullable VirtualMachineProductFilterOptions options, @Nullable Architecture architecture ) throws InternalException, CloudException {
         ProviderContext ctx = getContext();
         // FIXME: until core fixes the annotation for architecture let's assume it's nullable
-        String cacheName = "productsALL";
-        if( architecture != null ) {
-            cacheName = "products" + architecture.name();
-        }
-        Cache<VirtualMachineProduct> cache = Cache.getInstance(getProvider(), cacheName, VirtualMachineProduct.class, CacheLevel.REGION, new TimePeriod<Day>(1, TimePeriod.DAY));
-        Iterable<VirtualMachineProduct> products = cache.get(ctx);
-
-        if( products == null ) {
-            List<VirtualMachineProduct> list = new ArrayList<VirtualMachineProduct>();
+        List<VirtualMachineProduct> products = VmProductCatalog.getInstance().list(getProvider().getCloudName(), getProvider().getProviderName(), ctx.getCloud().getEndpoint(), ctx.getRegionId(), architecture);
 
-            try {
-                InputStream input = EC2Instance.class.getResourceAsStream("/org/dasein/cloud/aws/vmproducts.json");
-
-                if( input != null ) {
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-                    StringBuilder json = new StringBuilder();
-                    String line;
-
-                    while( ( line = reader.readLine() ) != null ) {
-                        json.append(line);
-                        json.append("\n");
-                    }
-                    JSONArray arr = new JSONArray(json.toString());
-                    JSONObject toCache = null;
-
-                    for( int i = 0; i < arr.length(); i++ ) {
-                        JSONObject productSet = arr.getJSONObject(i);
-                        String cloud, providerName;
-
-                        if( productSet.has("cloud") ) {
-                            cloud = productSet.getString("cloud");
-                        }
-                        else {
-                            continue;
-                        }
-                        if( productSet.has("provider") ) {
-                            providerName = productSet.getString("provider");
-                        }
-                        else {
-                            continue;
-                        }
-                        if( !productSet.has("products") ) {
-                            continue;
-                        }
-                        if( toCache == null || ( providerName.equals("AWS") && cloud.equals("AWS") ) ) {
-                            toCache = productSet;
-                        }
-                        if( providerName.equalsIgnoreCase(getProvider().getProviderName()) && cloud.equalsIgnoreCase(getProvider().getCloudName()) ) {
-                            toCache = productSet;
-                            break;
-                        }
-                    }
-                    if( toCache == null ) {
-                        logger.warn("No products were defined");
-                        return Collections.emptyList();
-                    }
-                    JSONArray plist = toCache.getJSONArray("products");
-
-                    for( int i = 0; i < plist.length(); i++ ) {
-                        JSONObject product = plist.getJSONObject(i);
-                        boolean supported = true;
-
-                        if( architecture != null ) {
-                            supported = false;
-                            if( product.has("architectures") ) {
-                                JSONArray architectures = product.getJSONArray("architectures");
-
-                                for( int j = 0; j < architectures.length(); j++ ) {
-                                    String a = architectures.getString(j);
-
-                                    if( architecture.name().equals(a) ) {
-                                        supported = true;
-                                        break;
-                                    }
-                                }
-                            }
-                            if( !supported ) {
-                                continue;
-                            }
-                        }
-                        if( product.has("excludesRegions") ) {
-                            JSONArray regions = product.getJSONArray("excludesRegions");
-
-                            for( int j = 0; j < regions.length(); j++ ) {
-                                String r = regions.getString(j);
-
-                                if( r.equals(ctx.getRegionId()) ) {
-                                    supported = false;
-                                    break;
-                                }
-                            }
-                        }
-                        if( !supported ) {
-                            continue;
-                        }
-                        VirtualMachineProduct prd = toProduct(product);
-
-                        if( prd != null ) {
-                            if( options != null) {
-                                if( options.matches(prd) ) {
-                                    list.add(prd);
-                                }
-                            }
-                            else {
-                                list.add(prd);
-                            }
-                        }
-
-                    }
-
-                }
-                else {
-                    logger.warn("No standard products resource exists for /org/dasein/cloud/aws/vmproducts.json");
-                }
-                input = EC2Instance.class.getResourceAsStream("/org/dasein/cloud/aws/vmproducts-custom.json");
-                if( input != null ) {
-                    ArrayList<VirtualMachineProduct> customList = new ArrayList<VirtualMachineProduct>();
-                    TreeSet<String> discard = new TreeSet<String>();
-                    boolean discardAll = false;
-
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-                    StringBuilder json = new StringBuilder();
-                    String line;
-
-                    while( ( line = reader.readLine() ) != null ) {
-                        json.append(line);
-                        json.append("\n");
-                    }
-                    JSONArray arr = new JSONArray(json.toString());
-                    JSONObject toCache = null;
-
-                    for( int i = 0; i < arr.length(); i++ ) {
-                        JSONObject listing = arr.getJSONObject(i);
-                        String cloud, providerName, endpoint = null;
-
-                        if( listing.has("cloud") ) {
-                            cloud = listing.getString("cloud");
-                        }
-                        else {
-                            continue;
-                        }
-                        if( listing.has("provider") ) {
-                            providerName = listing.getString("provider");
-                        }
-                        else {
-                            continue;
-                        }
-                        if( listing.has("endpoint") ) {
-                            endpoint = listing.getString("endpoint");
-                        }
-                        if( !cloud.equals(getProvider().getCloudName()) || !providerName.equals(getProvider().getProviderName()) ) {
-                            continue;
-                        }
-                        if( endpoint != null && endpoint.equals(ctx.getCloud().getEndpoint()) ) {
-                            toCache = listing;
-                            break;
-                        }
-                        if( endpoint == null && toCache == null ) {
-                            toCache = listing;
-                        }
-                    }
-                    if( toCache != null ) {
-                        if( toCache.has("discardDefaults") ) {
-                            discardAll = toCache.getBoolean("discardDefaults");
-                        }
-                        if( toCache.has("discard") ) {
-                            JSONArray dlist = toCache.getJSONArray("discard");
-
-                            for( int i = 0; i < dlist.length(); i++ ) {
-                                discard.add(dlist.getString(i));
-                            }
-                        }
-                        if( toCache.has("products") ) {
-                            JSONArray plist = toCache.getJSONArray("products");
-
-                            for( int i = 0; i < plist.length(); i++ ) {
-                                JSONObject product = plist.getJSONObject(i);
-                                boolean supported = true;
-                                
-                                if( architecture != null ) {
-                                    supported = false;
-                                    if( product.has("architectures") ) {
-                                        JSONArray architectures = product.getJSONArray("architectures");
-
-                                        for( int j = 0; j < architectures.length(); j++ ) {
-                                            String a = architectures.getString(j);
-
-                                            if( architecture.name().equals(a) ) {
-                                                supported = true;
-                                                break;
-                                            }
-                                        }
-                                    }
-                                    if( !supported ) {
-                                        continue;
-                                    }
-                                }
-                                if( product.has("excludesRegions") ) {
-                                    JSONArray regions = product.getJSONArray("excludesRegions");
-
-                                    for( int j = 0; j < regions.length(); j++ ) {
-                                        String r = regions.getString(j);
-
-                                        if( r.equals(ctx.getRegionId()) ) {
-                                            supported = false;
-                                            break;
-                                        }
-                                    }
-                                }
-                                if( !supported ) {
-                                    continue;
-                                }
-                                VirtualMachineProduct prd = toProduct(product);
+        return filter(products, options);
+    }
 
-                                if( prd != null ) {
-                                    customList.add(prd);
-                                }
-                            }
-                        }
-                        if( !discardAll ) {
-                            for( VirtualMachineProduct product : list ) {
-                                if( !discard.contains(product.getProviderProductId()) ) {
-                                    customList.add(product);
-                                }
-                            }
-                        }
-                        list = customList;
-                    }
-                }
-                products = list;
-                cache.put(ctx, products);
+    private @Nonnull List<VirtualMachineProduct> filter( @Nonnull List<VirtualMachineProduct> products, @Nullable VirtualMachineProductFilterOptions options ) {
+        if( options == null ) {
+            return products;
+        }
+        List<VirtualMachineProduct> matches = new ArrayList<VirtualMachineProduct>(products.size());
 
-            } catch( IOException e ) {
-                throw new InternalException(e);
-            } catch( JSONException e ) {
-                throw new InternalException(e);
+        for( VirtualMachineProduct product : products ) {
+            if( options.matches(product) ) {
+                matches.add(product);
             }
         }
-        return products;
+        return matches;
     }
 
-
-
     private String guess( String privateDnsAddress ) {
         String dnsAddress = privateDnsAddress;
         String[] parts = dnsAddress.split("\\.");
@@ -1811,45 +1952,51 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
 
     @Override
     public @Nonnull Iterable<ResourceStatus> listVirtualMachineStatus() throws InternalException, CloudException {
-        APITrace.begin(getProvider(), "listVirtualMachineStatus");
-        try {
-            ProviderContext ctx = getContext();
+        final ProviderContext ctx = getContext();
 
-            if( ctx == null ) {
-                throw new CloudException("No context was established for this request");
-            }
-            Map<String, String> parameters = getProvider().getStandardParameters(getContext(), EC2Method.DESCRIBE_INSTANCES);
-            EC2Method method = new EC2Method(getProvider(), parameters);
-            ArrayList<ResourceStatus> list = new ArrayList<ResourceStatus>();
-            NodeList blocks;
-            Document doc;
-
-            try {
-                doc = method.invoke();
-            } catch( EC2Exception e ) {
-                logger.error(e.getSummary());
-                throw new CloudException(e);
-            }
-            blocks = doc.getElementsByTagName("instancesSet");
-            for( int i = 0; i < blocks.getLength(); i++ ) {
-                NodeList instances = blocks.item(i).getChildNodes();
-
-                for( int j = 0; j < instances.getLength(); j++ ) {
-                    Node instance = instances.item(j);
+        if( ctx == null ) {
+            throw new CloudException("No context was established for this request");
+        }
+        final FirstResponse first = new FirstResponse();
 
-                    if( instance.getNodeName().equals("item") ) {
-                        ResourceStatus status = toStatus(instance);
+        getProvider().hold();
+        PopulatorThread<ResourceStatus> populator = new PopulatorThread<ResourceStatus>(new JiteratorPopulator<ResourceStatus>() {
+            @Override
+            public void populate( @Nonnull Jiterator<ResourceStatus> iterator ) throws Exception {
+                try {
+                    APITrace.begin(getProvider(), "listVirtualMachineStatus");
+                    try {
+                        Map<String, String> parameters = getProvider().getStandardParameters(ctx, EC2Method.DESCRIBE_INSTANCES);
+                        EC2Method method = new EC2Method(getProvider(), parameters);
 
-                        if( status != null ) {
-                            list.add(status);
+                        try {
+                            method.invoke(new ItemSetStreamParser<ResourceStatus>("instancesSet", iterator, first) {
+                                @Override
+                                protected @Nullable ResourceStatus toItem( @Nonnull Node instance ) {
+                                    return toStatus(instance);
+                                }
+                            });
+                        } catch( EC2Exception e ) {
+                            logger.error(e.getSummary());
+                            throw new CloudException(e);
                         }
+                    } finally {
+                        APITrace.end();
                     }
+                } catch( Exception e ) {
+                    first.failed(e);
+                    throw e;
+                } finally {
+                    first.accepted();
+                    getProvider().release();
                 }
             }
-            return list;
-        } finally {
-            APITrace.end();
-        }
+        });
+
+        populator.populate();
+        // errors from AWS are thrown here rather than while iterating
+        first.await();
+        return populator.getResult();
     }
 
     @Override
@@ -1899,85 +2046,152 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
         return extraParameters;
     }
 
-    private @Nonnull Iterable<VirtualMachine> listVirtualMachinesWithParams( Map<String, String> extraParameters, @Nullable VMFilterOptions options ) throws InternalException, CloudException {
-        APITrace.begin(getProvider(), "listVirtualMachines");
-        try {
-            ProviderContext ctx = getContext();
+    private @Nonnull Iterable<VirtualMachine> listVirtualMachinesWithParams( final Map<String, String> extraParameters, final @Nullable VMFilterOptions options ) throws InternalException, CloudException {
+        final ProviderContext ctx = getContext();
 
-            if( ctx == null ) {
-                throw new CloudException("No context was established for this request");
-            }
+        if( ctx == null ) {
+            throw new CloudException("No context was established for this request");
+        }
+        final Map<String, String> parameters = getProvider().getStandardParameters(ctx, EC2Method.DESCRIBE_INSTANCES);
+        int pageSize = Math.max(5, Math.min(1000, getProvider().getIntProperty(P_DESCRIBE_PAGE_SIZE, DEFAULT_PAGE_SIZE)));
+
+        AWSCloud.addExtraParameters(parameters, extraParameters);
+        parameters.put("MaxResults", String.valueOf(pageSize));
 
-            Future<Iterable<IpAddress>> ipPoolFuture = null;
-            Iterable<IpAddress> addresses;
-            if( getProvider().hasNetworkServices() ) {
-                NetworkServices services = getProvider().getNetworkServices();
+        final Future<Iterable<IpAddress>> ipPoolFuture = listIpPoolConcurrently();
+        // the first page is read by the caller so that errors from AWS are thrown here rather than while iterating
+        final InstancePage firstPage = getInstancePage(fetchInstancePage(parameters, null));
 
-                if( services != null ) {
-                    if( services.hasIpAddressSupport() ) {
-                        IpAddressSupport support = services.getIpAddressSupport();
+        getProvider().hold();
+        PopulatorThread<VirtualMachine> populator = new PopulatorThread<VirtualMachine>(new JiteratorPopulator<VirtualMachine>() {
+            @Override
+            public void populate( @Nonnull Jiterator<VirtualMachine> iterator ) throws Exception {
+                try {
+                    APITrace.begin(getProvider(), "listVirtualMachines");
+                    try {
+                        Iterable<IpAddress> addresses = null;
+                        InstancePage page = firstPage;
+                        Future<InstancePage> next = null;
+
+                        try {
+                            while( page != null ) {
+                                // request the following page before converting this one so the round trip overlaps the conversion
+                                next = ( page.nextToken == null ? null : fetchInstancePage(parameters, page.nextToken) );
+                                for( Node instance : page.instances ) {
+                                    if( addresses == null ) {
+                                        addresses = getIpPool(ipPoolFuture);
+                                    }
+                                    VirtualMachine vm = toVirtualMachine(ctx, instance, addresses);
 
-                        if( support != null ) {
-                            ipPoolFuture = support.listIpPoolConcurrently(IPVersion.IPV4, false);
+                                    if( vm != null && ( options == null || options.matches(vm) ) ) {
+                                        iterator.push(vm);
+                                    }
+                                }
+                                page = ( next == null ? null : getInstancePage(next) );
+                                next = null;
+                            }
+                        } finally {
+                            if( next != null ) {
+                                next.cancel(true);
+                            }
                         }
+                    } finally {
+                        APITrace.end();
                     }
+                } finally {
+                    getProvider().release();
                 }
             }
+        });
 
-            Map<String, String> parameters = getProvider().getStandardParameters(getContext(), EC2Method.DESCRIBE_INSTANCES);
+        populator.populate();
+        return populator.getResult();
+    }
 
-            AWSCloud.addExtraParameters(parameters, extraParameters);
+    static private class InstancePage {
+        private final List<Node> instances = new ArrayList<Node>();
+        private String           nextToken;
+    }
 
-            EC2Method method = new EC2Method(getProvider(), parameters);
-            ArrayList<VirtualMachine> list = new ArrayList<VirtualMachine>();
-            NodeList blocks;
-            Document doc;
+    private @Nonnull Future<InstancePage> fetchInstancePage( @Nonnull Map<String, String> parameters, @Nullable final String nextToken ) {
+        final Map<String, String> pageParameters = new HashMap<String, String>(parameters);
 
-            try {
-                doc = method.invoke();
-            } catch( EC2Exception e ) {
-                logger.error(e.getSummary());
-                throw new CloudException(e);
+        if( nextToken != null ) {
+            pageParameters.put("NextToken", nextToken);
+        }
+        return pageFetcher.submit(new Callable<InstancePage>() {
+            @Override
+            public InstancePage call() throws Exception {
+                InstancePage page = new InstancePage();
+                EC2Method method = new EC2Method(getProvider(), pageParameters);
+                ItemSetStreamParser<Node> parser = new ItemSetStreamParser<Node>("instancesSet", page.instances) {
+                    @Override
+                    protected @Nullable Node toItem( @Nonnull Node item ) {
+                        return item;
+                    }
+                };
+
+                try {
+                    method.invoke(parser);
+                } catch( EC2Exception e ) {
+                    logger.error(e.getSummary());
+                    throw new CloudException(e);
+                }
+                page.nextToken = parser.getNextToken();
+                return page;
             }
-            blocks = doc.getElementsByTagName("instancesSet");
-            for( int i = 0; i < blocks.getLength(); i++ ) {
-                NodeList instances = blocks.item(i).getChildNodes();
+        });
+    }
 
-                for( int j = 0; j < instances.getLength(); j++ ) {
-                    Node instance = instances.item(j);
+    private @Nonnull InstancePage getInstancePage( @Nonnull Future<InstancePage> future ) throws InternalException, CloudException {
+        try {
+            return future.get();
+        } catch( InterruptedException e ) {
+            throw new InternalException(e);
+        } catch( ExecutionException e ) {
+            Throwable cause = e.getCause();
 
-                    if( instance.getNodeName().equals("item") ) {
+            if( cause instanceof CloudException ) {
+                throw ( CloudException ) cause;
+            }
+            else if( cause instanceof InternalException ) {
+                throw ( InternalException ) cause;
+            }
+            throw new InternalException(cause);
+        }
+    }
 
-                        try {
-                            if( ipPoolFuture != null ) {
-                                addresses = ipPoolFuture.get(30, TimeUnit.SECONDS);
-                            }
-                            else {
-                                addresses = Collections.emptyList();
-                            }
-                        } catch( InterruptedException e ) {
-                            logger.error(e.getMessage());
-                            addresses = Collections.emptyList();
-                        } catch( ExecutionException e ) {
-                            logger.error(e.getMessage());
-                            addresses = Collections.emptyList();
-                        } catch( TimeoutException e ) {
-                            logger.error(e.getMessage());
-                            addresses = Collections.emptyList();
-                        }
+    private @Nullable Future<Iterable<IpAddress>> listIpPoolConcurrently() throws InternalException, CloudException {
+        if( getProvider().hasNetworkServices() ) {
+            NetworkServices services = getProvider().getNetworkServices();
 
-                        VirtualMachine vm = toVirtualMachine(ctx, instance, addresses);
+            if( services != null ) {
+                if( services.hasIpAddressSupport() ) {
+                    IpAddressSupport support = services.getIpAddressSupport();
 
-                        if( options == null || options.matches(vm) ) {
-                            list.add(vm);
-                        }
+                    if( support != null ) {
+                        return support.listIpPoolConcurrently(IPVersion.IPV4, false);
                     }
                 }
             }
-            return list;
-        } finally {
-            APITrace.end();
         }
+        return null;
+    }
+
+    private @Nonnull Iterable<IpAddress> getIpPool( @Nullable Future<Iterable<IpAddress>> ipPoolFuture ) {
+        if( ipPoolFuture == null ) {
+            return Collections.emptyList();
+        }
+        try {
+            return ipPoolFuture.get(30, TimeUnit.SECONDS);
+        } catch( InterruptedException e ) {
+            logger.error(e.getMessage());
+        } catch( ExecutionException e ) {
+            logger.error(e.getMessage());
+        } catch( TimeoutException e ) {
+            logger.error(e.getMessage());
+        }
+        return Collections.emptyList();
     }
 
     @Override
@@ -1987,40 +2201,7 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
 
     @Override
     public @Nonnull String[] mapServiceAction( @Nonnull ServiceAction action ) {
-        if( action.equals(VirtualMachineSupport.ANY) ) {
-            return new String[]{EC2Method.EC2_PREFIX + "*"};
-        }
-        else if( action.equals(VirtualMachineSupport.BOOT) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.START_INSTANCES};
-        }
-        else if( action.equals(VirtualMachineSupport.CLONE) ) {
-            return new String[0];
-        }
-        else if( action.equals(VirtualMachineSupport.CREATE_VM) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.RUN_INSTANCES};
-        }
-        else if( action.equals(VirtualMachineSupport.GET_VM) || action.equals(VirtualMachineSupport.LIST_VM) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_INSTANCES};
-        }
-        else if( action.equals(VirtualMachineSupport.PAUSE) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.STOP_INSTANCES};
-        }
-        else if( action.equals(VirtualMachineSupport.REBOOT) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.REBOOT_INSTANCES};
-        }
-        else if( action.equals(VirtualMachineSupport.REMOVE_VM) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.TERMINATE_INSTANCES};
-        }
-        else if( action.equals(VirtualMachineSupport.TOGGLE_ANALYTICS) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.MONITOR_INSTANCES};
-        }
-        else if( action.equals(VirtualMachineSupport.VIEW_ANALYTICS) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.GET_METRIC_STATISTICS};
-        }
-        else if( action.equals(VirtualMachineSupport.VIEW_CONSOLE) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.GET_CONSOLE_OUTPUT};
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
@@ -2050,6 +2231,7 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                 throw new CloudException(e);
             }
         } finally {
+            invalidate(instanceId);
             APITrace.end();
         }
     }
@@ -2070,6 +2252,7 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                 throw new CloudException(e);
             }
         } finally {
+            invalidate(instanceId);
             APITrace.end();
         }
     }
@@ -2100,6 +2283,7 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                 throw new CloudException(e);
             }
         } finally {
+            invalidate(instanceId);
             APITrace.end();
         }
     }
@@ -2595,136 +2779,37 @@ public class EC2Instance extends AbstractVMSupport<AWSCloud> {
                 }
             }
         } finally {
+            invalidate(instanceId);
             APITrace.end();
         }
     }
 
     protected @Nullable VirtualMachineProduct toProduct( @Nonnull JSONObject json ) throws InternalException {
-        /*
-                    {
-                "architectures":["I32"],
-                "id":"m1.small",
-                "name":"Small Instance (m1.small)",
-                "description":"Small Instance (m1.small)",
-                "cpuCount":1,
-                "rootVolumeSizeInGb":160,
-                "ramSizeInMb": 1700,
-                "generation":"current",
-                "vt":["hvm"],
-                "rdt":["ebs","instance"]
-
-            },
-         */
-        VirtualMachineProduct prd = new VirtualMachineProduct();
-
-        try {
-            if( json.has("id") ) {
-                prd.setProviderProductId(json.getString("id"));
-            }
-            else {
-                return null;
-            }
-            if( json.has("name") ) {
-                prd.setName(json.getString("name"));
-            }
-            else {
-                prd.setName(prd.getProviderProductId());
-            }
-            if( json.has("description") ) {
-                prd.setDescription(json.getString("description"));
-            }
-            else {
-                prd.setDescription(prd.getName());
-            }
-            if( json.has("cpuCount") ) {
-                prd.setCpuCount(json.getInt("cpuCount"));
-            }
-            else {
-                prd.setCpuCount(1);
-            }
-            if( json.has("rootVolumeSizeInGb") ) {
-                prd.setRootVolumeSize(new Storage<Gigabyte>(json.getInt("rootVolumeSizeInGb"), Storage.GIGABYTE));
-            }
-            else {
-                prd.setRootVolumeSize(new Storage<Gigabyte>(1, Storage.GIGABYTE));
-            }
-            if( json.has("ramSizeInMb") ) {
-                prd.setRamSize(new Storage<Megabyte>(json.getInt("ramSizeInMb"), Storage.MEGABYTE));
-            }
-            else {
-                prd.setRamSize(new Storage<Megabyte>(512, Storage.MEGABYTE));
-            }
-            if( json.has("generation") && json.getString("generation").equalsIgnoreCase("previous")) {      	
-                   prd.setStatusDeprecated();
-            }
-            if( json.has("standardHourlyRates") ) {
-                JSONArray rates = json.getJSONArray("standardHourlyRates");
-
-                for( int i = 0; i < rates.length(); i++ ) {
-                    JSONObject rate = rates.getJSONObject(i);
-
-                    if( rate.has("rate") ) {
-                        prd.setStandardHourlyRate(( float ) rate.getDouble("rate"));
-                    }
-                }
-            }
-            if( json.has("architectures") ) {
-                List<Architecture> architectures = new ArrayList<Architecture>();
-                JSONArray values = json.getJSONArray("architectures");
-                for( int i=0; i<values.length(); i++ ) {
-                    String arch = values.getString(i);
-                    architectures.add(Architecture.valueOf(arch));
-                }
-                prd.setArchitectures(architectures.toArray(new Architecture[architectures.size()]));
-            }
-            if( json.has("vt") ) {
-                JSONArray vts = json.getJSONArray("vt");
-                StringBuilder sb = new StringBuilder();
-                for( int i=0; i<vts.length(); i++ ) {
-                    String vt = vts.getString(i);
-                    if( sb.length() > 0 ) {
-                        sb.append(",");
-                    }
-                    sb.append(vt);
-                }
-                prd.getProviderMetadata().put("vt", sb.toString());
-            }
-            if( json.has("rdt") ) {
-                JSONArray types = json.getJSONArray("rdt");
-                StringBuilder sb = new StringBuilder();
-                for( int i=0; i<types.length(); i++ ) {
-                    String type = types.getString(i);
-                    if( sb.length() > 0 ) {
-                        sb.append(",");
-                    }
-                    sb.append(type);
-                }
-                prd.getProviderMetadata().put("rdt", sb.toString());
-            }
-        } catch( JSONException e ) {
-            throw new InternalException(e);
-        }
-        return prd;
+        return VmProductCatalog.toProduct(json);
     }
 
     @Override
     public void updateTags( @Nonnull String vmId, @Nonnull Tag... tags ) throws CloudException, InternalException {
         getProvider().createTags(EC2Method.SERVICE_ID, vmId, tags);
+        invalidate(vmId);
     }
 
     @Override
     public void updateTags( @Nonnull String[] vmIds, @Nonnull Tag... tags ) throws CloudException, InternalException {
         getProvider().createTags(EC2Method.SERVICE_ID, vmIds, tags);
+        invalidate(vmIds);
     }
 
     @Override
     public void removeTags(@Nonnull String vmId, @Nonnull Tag... tags) throws CloudException, InternalException {
         getProvider().removeTags(EC2Method.SERVICE_ID, vmId, tags);
+        invalidate(vmId);
     }
 
     @Override
     public void removeTags( @Nonnull String[] vmIds, @Nonnull Tag... tags ) throws CloudException, InternalException {
         getProvider().removeTags(EC2Method.SERVICE_ID, vmIds, tags);
+        invalidate(vmIds);
     }
 
     @Override
@@ -33,6 +33,8 @@ import org.apache.log4j.Logger;
 import org.dasein.cloud.*;
 import org.dasein.cloud.admin.PrepaymentSupport;
 import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.aws.RateLimiter;
+import org.dasein.cloud.aws.RetryPolicy;
 import org.dasein.cloud.aws.identity.IAMMethod;
 import org.dasein.cloud.compute.*;
 import org.dasein.cloud.identity.ServiceAction;
@@ -53,7 +55,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.TreeMap;
 
 public class EC2Method {
     static private final Logger logger = AWSCloud.getLogger(EC2Method.class);
@@ -165,6 +167,7 @@ public class EC2Method {
     // Instance operations
     static public final String DESCRIBE_INSTANCES          = "DescribeInstances";
     static public final String GET_CONSOLE_OUTPUT          = "GetConsoleOutput";
+    static public final String GET_METRIC_DATA             = "GetMetricData";
     static public final String GET_METRIC_STATISTICS       = "GetMetricStatistics";
     static public final String GET_PASSWORD_DATA           = "GetPasswordData";
     static public final String MONITOR_INSTANCES           = "MonitorInstances";
@@ -343,7 +346,7 @@ public class EC2Method {
         else if( action.equals(GET_CONSOLE_OUTPUT) ) {
             return new ServiceAction[]{VirtualMachineSupport.VIEW_CONSOLE};
         }
-        else if( action.equals(GET_METRIC_STATISTICS) ) {
+        else if( action.equals(GET_METRIC_STATISTICS) || action.equals(GET_METRIC_DATA) ) {
             return new ServiceAction[]{VirtualMachineSupport.VIEW_ANALYTICS};
         }
         else if( action.equals(GET_PASSWORD_DATA) ) {
@@ -585,10 +588,13 @@ public class EC2Method {
         return new ServiceAction[0];
     }
 
-    private int                 attempts   = 0;
-    private Map<String, String> parameters = null;
-    private AWSCloud            provider   = null;
-    private String              url        = null;
+    private Map<String, String>  parameters = null;
+    private AWSCloud             provider   = null;
+    private String               regionId   = null;
+    private String               url        = null;
+    private SingleFlight.Flight  flight     = null;
+    private SingleFlight.Capture capture    = null;
+    private int                  maxShared  = 0;
 
     public EC2Method( AWSCloud provider, Map<String, String> parameters ) throws InternalException, CloudException {
         this(EC2Method.SERVICE_ID, provider, parameters);
@@ -602,6 +608,7 @@ public class EC2Method {
         this.parameters = parameters;
         this.provider = provider;
         this.serviceId = serviceId;
+        this.regionId = regionIdOverride;
         if( serviceId.equalsIgnoreCase(EC2Method.SERVICE_ID) ) {
             this.url = provider.getEc2Url(regionIdOverride); // for eucalyptus' sake
         }
@@ -652,6 +659,137 @@ public class EC2Method {
     }
 
     private Document invoke( boolean debug, XmlStreamParser callback ) throws EC2Exception, CloudException, InternalException {
+        String scope = getFlightScope();
+
+        if( scope == null ) {
+            return send(debug, callback);
+        }
+        if( !RateLimiter.isDescribe(parameters.get(AWSCloud.P_ACTION)) ) {
+            try {
+                return send(debug, callback);
+            }
+            finally {
+                SingleFlight.getInstance().mutated(scope);
+            }
+        }
+        maxShared = provider.getIntProperty(SingleFlight.P_MAX_SIZE, 0);
+        if( maxShared < 1 || maxShared > Integer.MAX_VALUE / 1024 ) {
+            return send(debug, callback);
+        }
+        maxShared *= 1024;
+        SingleFlight.Flight joined = SingleFlight.getInstance().join(scope, getFlightRequest());
+
+        if( joined.isLeader() ) {
+            flight = joined;
+            try {
+                Document doc = send(debug, callback);
+
+                // the waiting callers send their own request if the body was not kept
+                flight.succeeded(capture == null ? null : capture.toByteArray());
+                return doc;
+            }
+            catch( CloudException e ) {
+                flight.failed(e);
+                throw e;
+            }
+            catch( InternalException e ) {
+                flight.failed(e);
+                throw e;
+            }
+            catch( RuntimeException e ) {
+                flight.failed(e);
+                throw e;
+            }
+            catch( Error e ) {
+                flight.failed(new InternalException(e));
+                throw e;
+            }
+            finally {
+                flight = null;
+                capture = null;
+            }
+        }
+        byte[] body = joined.await();
+
+        if( body == null ) {
+            Exception failure = joined.getFailure();
+
+            if( failure == null ) {
+                // the body was too large to share
+                return send(debug, callback);
+            }
+            if( failure instanceof CloudException ) {
+                throw ( CloudException ) failure;
+            }
+            if( failure instanceof RuntimeException ) {
+                throw ( RuntimeException ) failure;
+            }
+            throw ( InternalException ) failure;
+        }
+        // each caller parses its own copy because a DOM document is not safe to read from several threads
+        InputStream input = new ByteArrayInputStream(body);
+
+        if( callback != null ) {
+            try {
+                callback.parse(input);
+            }
+            catch( IOException e ) {
+                throw new CloudException(e);
+            }
+            return null;
+        }
+        return parseResponse(input);
+    }
+
+    /**
+     * @return the endpoint and credentials of the request for {@link SingleFlight}, or null if they are unknown
+     */
+    private String getFlightScope() {
+        byte[][] keys = provider.getAccessKey();
+
+        if( keys == null || keys[0] == null ) {
+            return null;
+        }
+        return url + "\n" + new String(keys[0]);
+    }
+
+    /**
+     * @return the parameters of the request, identical for identical requests
+     */
+    private String getFlightRequest() {
+        StringBuilder request = new StringBuilder();
+
+        // parameters are length prefixed so that values holding separators cannot collide with other requests
+        for( Map.Entry<String, String> entry : new TreeMap<String, String>(parameters).entrySet() ) {
+            String value = ( entry.getValue() == null ? "" : entry.getValue() );
+
+            request.append(entry.getKey().length()).append(':').append(entry.getKey());
+            request.append(value.length()).append(':').append(value);
+        }
+        return request.toString();
+    }
+
+    private Document send( boolean debug, XmlStreamParser callback ) throws EC2Exception, CloudException, InternalException {
+        RetryPolicy.Attempt attempt = provider.getRetryPolicy().begin(provider.getContext().getAccountNumber(), regionId);
+
+        while( true ) {
+            try {
+                Document doc = invokeOnce(debug, callback);
+
+                attempt.succeeded();
+                return doc;
+            }
+            catch( EC2Exception e ) {
+                // error responses are thrown before the callback sees any content, so a retry cannot repeat results
+                if( !attempt.retry(e) ) {
+                    throw e;
+                }
+                logger.warn("Retrying " + parameters.get(AWSCloud.P_ACTION) + " after " + e.getSummary());
+            }
+        }
+    }
+
+    private Document invokeOnce( boolean debug, XmlStreamParser callback ) throws EC2Exception, CloudException, InternalException {
         if( logger.isTraceEnabled() ) {
             logger.trace("ENTER - " + EC2Method.class.getName() + ".invoke(" + debug + ")");
         }
@@ -659,18 +797,15 @@ public class EC2Method {
             wire.debug("");
             wire.debug("--------------------------------------------------------------------------------------");
         }
-        HttpClient client = null;
+        HttpResponse response = null;
         try {
             if( logger.isDebugEnabled() ) {
                 logger.debug("Talking to server at " + url);
             }
 
             HttpPost post = new HttpPost(url);
-            client = provider.getClient();
+            HttpClient client = provider.getClient();
 
-            HttpResponse response;
-
-            attempts++;
             post.addHeader("Content-Type", "application/x-www-form-urlencoded; charset=utf-8");
             post.addHeader(AWSCloud.P_AWS_DATE, provider.getV4HeaderDate(null));
             String host = post.getURI().getHost();
@@ -727,6 +862,7 @@ public class EC2Method {
 
                 wire.debug("");
             }
+            provider.getRateLimiter().acquire(provider, getServiceId(), regionId, parameters.get(AWSCloud.P_ACTION));
             try {
                 APITrace.trace(provider, parameters.get(AWSCloud.P_ACTION));
                 response = client.execute(post);
@@ -748,17 +884,30 @@ public class EC2Method {
                     }
                     InputStream input = entity.getContent();
 
+                    capture = null;
+                    if( flight != null ) {
+                        // keep a copy of the body only if other callers are waiting for it
+                        input = flight.capture(input, maxShared);
+                        if( input instanceof SingleFlight.Capture ) {
+                            capture = ( SingleFlight.Capture ) input;
+                        }
+                    }
                     try {
+                        Document doc = null;
+
                         // When callback is passed, callback will parse the response, and therefore there
                         // will be no DOM document created. The callback will likely take a list to populate
                         // the results with.
                         if( callback != null ) {
                             callback.parse(input);
-                            return null;
                         }
                         else {
-                            return parseResponse(input);
+                            doc = parseResponse(input);
+                        }
+                        if( capture != null ) {
+                            capture.drain();
                         }
+                        return doc;
                     }
                     finally {
                         input.close();
@@ -857,42 +1006,33 @@ public class EC2Method {
                     logger.debug("Received " + status + " from " + parameters.get(AWSCloud.P_ACTION));
                 }
                 if( status == HttpStatus.SC_SERVICE_UNAVAILABLE || status == HttpStatus.SC_INTERNAL_SERVER_ERROR ) {
-                    if( attempts >= 5 ) {
-                        String msg;
+                    String msg;
 
-                        if( status == HttpStatus.SC_SERVICE_UNAVAILABLE ) {
-                            msg = "Cloud service is currently unavailable.";
-                        }
-                        else {
-                            msg = "The cloud service encountered a server error while processing your request.";
-                            try {
-                                HttpEntity entity = response.getEntity();
+                    if( status == HttpStatus.SC_SERVICE_UNAVAILABLE ) {
+                        msg = "Cloud service is currently unavailable.";
+                    }
+                    else {
+                        msg = "The cloud service encountered a server error while processing your request.";
+                        try {
+                            HttpEntity entity = response.getEntity();
 
-                                if( entity == null ) {
-                                    throw EC2Exception.create(status);
-                                }
+                            if( entity != null ) {
                                 msg = msg + "Response from server was:\n" + EntityUtils.toString(entity);
                             }
-                            catch( IOException ignore ) {
-                                // ignore me
-                            }
-                            catch( RuntimeException ignore ) {
-                                // ignore me
-                            }
-                            catch( Error ignore ) {
-                                // ignore me
-                            }
                         }
-                        logger.error(msg);
-                        throw new CloudException(msg);
-                    }
-                    else {
-                        try {
-                            Thread.sleep(5000L);
+                        catch( IOException ignore ) {
+                            // ignore me
+                        }
+                        catch( RuntimeException ignore ) {
+                            // ignore me
+                        }
+                        catch( Error ignore ) {
+                            // ignore me
                         }
-                        catch( InterruptedException e ) { /* ignore */ }
-                        return invoke();
                     }
+                    logger.error(msg);
+                    // the retry policy decides whether this is sent again
+                    throw EC2Exception.create(status, null, status == HttpStatus.SC_SERVICE_UNAVAILABLE ? "ServiceUnavailable" : "InternalError", msg);
                 }
                 try {
                     HttpEntity entity = response.getEntity();
@@ -957,9 +1097,9 @@ public class EC2Method {
             }
         }
         finally {
-            if( client != null ) {
-                client.getConnectionManager().closeIdleConnections(1, TimeUnit.SECONDS);
-                client.getConnectionManager().shutdown();
+            if( response != null ) {
+                // hand the connection back to the pool, even if the body was not read
+                EntityUtils.consumeQuietly(response.getEntity());
             }
             if( logger.isTraceEnabled() ) {
                 logger.trace("EXIT - " + EC2Method.class.getName() + ".invoke()");
@@ -998,6 +1138,21 @@ public class EC2Method {
     }
 
     private Document parseResponse( InputStream responseBodyAsStream ) throws CloudException, InternalException {
+        if( !wire.isDebugEnabled() ) {
+            // nothing to log, so let the parser read straight from the wire instead of copying the body twice
+            try {
+                return XMLParser.parse(responseBodyAsStream);
+            }
+            catch( IOException e ) {
+                throw new CloudException(e);
+            }
+            catch( ParserConfigurationException e ) {
+                throw new CloudException(e);
+            }
+            catch( SAXException e ) {
+                throw new CloudException(e);
+            }
+        }
         BufferedReader in = null;
         try {
             in = new BufferedReader(new InputStreamReader(responseBodyAsStream));
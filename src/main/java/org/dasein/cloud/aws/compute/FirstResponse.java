@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.compute;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Lets a list method return a streamed result only once AWS has accepted the request, so that errors such as
+ * failed authentication or throttling are thrown by the list method itself rather than while iterating. The
+ * populator marks the response as accepted as soon as it starts parsing it, or reports the error it failed with.
+ *
+ * @since 2015.10
+ */
+class FirstResponse {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private Exception            failure;
+
+    /**
+     * Marks the response as accepted. Errors reported afterwards reach the caller through the iterator.
+     */
+    synchronized void accepted() {
+        done.countDown();
+    }
+
+    /**
+     * Reports the error the request failed with, unless its response was already accepted.
+     * @param failure the error the request failed with
+     */
+    synchronized void failed( @Nonnull Exception failure ) {
+        if( done.getCount() > 0 ) {
+            this.failure = failure;
+            done.countDown();
+        }
+    }
+
+    /**
+     * Waits until the response is accepted or the request failed.
+     * @throws CloudException the request failed with an error from AWS
+     * @throws InternalException the request failed within Dasein Cloud or the thread was interrupted
+     */
+    void await() throws CloudException, InternalException {
+        Exception e;
+
+        try {
+            done.await();
+        }
+        catch( InterruptedException ignore ) {
+            Thread.currentThread().interrupt();
+            throw new InternalException("Interrupted while waiting for the response");
+        }
+        synchronized( this ) {
+            e = failure;
+        }
+        if( e instanceof CloudException ) {
+            throw ( CloudException ) e;
+        }
+        else if( e instanceof InternalException ) {
+            throw ( InternalException ) e;
+        }
+        else if( e instanceof RuntimeException ) {
+            throw ( RuntimeException ) e;
+        }
+        else if( e != null ) {
+            throw new InternalException(e);
+        }
+    }
+}
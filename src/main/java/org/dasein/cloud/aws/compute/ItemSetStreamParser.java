@@ -0,0 +1,258 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.compute;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.util.Jiterator;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Streams the <code>item</code> children of a named result set (e.g. <code>instancesSet</code> or
+ * <code>volumeSet</code>) out of an EC2 response. Every item is materialized as a small standalone DOM
+ * element so that the existing node based converters can be reused, converted by {@link #toItem(Node)} and
+ * pushed to the iterator straight away. Only a single item is held in memory at any time, and consumers of
+ * the iterator see the first results before the response has been fully read.
+ * <p>
+ * The <code>nextToken</code> of paginated responses is captured and available after parsing through
+ * {@link #getNextToken()}.
+ * </p>
+ * <p>
+ * When constructed with a list rather than an iterator the items are collected into that list, which is then
+ * returned by {@link #parse(InputStream)}. Otherwise the items are delivered to the iterator only and an empty
+ * list is returned.
+ * </p>
+ *
+ * @since 2015.10
+ * @see EC2Method#invoke(XmlStreamParser)
+ */
+public abstract class ItemSetStreamParser<T> implements XmlStreamParser<T> {
+    static private final XMLInputFactory        inputFactory;
+    static private final DocumentBuilderFactory documentFactory = DocumentBuilderFactory.newInstance();
+
+    static {
+        inputFactory = XMLInputFactory.newInstance();
+        // the converters read leaf values through getFirstChild(), so text must never be split across nodes
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    private final String        setName;
+    private final Jiterator<T>  iterator;
+    private final List<T>       list;
+    private final FirstResponse first;
+    private String              nextToken;
+    private int                 count;
+
+    /**
+     * @param setName  name of the element wrapping the items, every occurrence in the response is read
+     * @param iterator iterator receiving the converted items
+     */
+    public ItemSetStreamParser( @Nonnull String setName, @Nonnull Jiterator<T> iterator ) {
+        this(setName, iterator, null);
+    }
+
+    /**
+     * @param setName  name of the element wrapping the items, every occurrence in the response is read
+     * @param iterator iterator receiving the converted items
+     * @param first    marked as accepted once the response is being parsed, or null
+     */
+    ItemSetStreamParser( @Nonnull String setName, @Nonnull Jiterator<T> iterator, @Nullable FirstResponse first ) {
+        this.setName = setName;
+        this.iterator = iterator;
+        this.list = null;
+        this.first = first;
+    }
+
+    /**
+     * @param setName name of the element wrapping the items, every occurrence in the response is read
+     * @param list    list receiving the converted items
+     */
+    public ItemSetStreamParser( @Nonnull String setName, @Nonnull List<T> list ) {
+        this.setName = setName;
+        this.iterator = null;
+        this.list = list;
+        this.first = null;
+    }
+
+    /**
+     * Converts a single item of the result set.
+     * @param item a standalone <code>item</code> element holding the complete content of the item
+     * @return the converted item, or <code>null</code> if it should be skipped
+     * @throws CloudException an error occurred interpreting the item
+     * @throws InternalException an error occurred within Dasein Cloud converting the item
+     */
+    protected abstract @Nullable T toItem( @Nonnull Node item ) throws CloudException, InternalException;
+
+    @Override
+    public List<T> parse( InputStream stream ) throws IOException, CloudException, InternalException {
+        XMLStreamReader reader = null;
+
+        // error responses never reach the parser, so the request has been accepted
+        if( first != null ) {
+            first.accepted();
+        }
+        try {
+            DocumentBuilder builder;
+
+            synchronized( documentFactory ) {
+                builder = documentFactory.newDocumentBuilder();
+            }
+            reader = inputFactory.createXMLStreamReader(stream);
+
+            int depth = 0, setDepth = -1;
+
+            while( reader.hasNext() ) {
+                int event = reader.next();
+
+                if( event == XMLStreamConstants.START_ELEMENT ) {
+                    depth++;
+                    String name = reader.getLocalName();
+
+                    if( setDepth > -1 && depth == setDepth + 1 && "item".equals(name) ) {
+                        T item = toItem(readElement(reader, builder.newDocument()));
+
+                        // readElement() consumed the matching end tag
+                        depth--;
+                        if( item != null ) {
+                            count++;
+                            if( list != null ) {
+                                list.add(item);
+                            }
+                            else {
+                                iterator.push(item);
+                            }
+                        }
+                    }
+                    else if( setDepth == -1 && setName.equals(name) ) {
+                        setDepth = depth;
+                    }
+                    else if( setDepth == -1 && "nextToken".equals(name) ) {
+                        String token = reader.getElementText().trim();
+
+                        depth--;
+                        nextToken = ( token.length() > 0 ? token : null );
+                    }
+                }
+                else if( event == XMLStreamConstants.END_ELEMENT ) {
+                    if( depth == setDepth ) {
+                        setDepth = -1;
+                    }
+                    depth--;
+                }
+            }
+            if( list != null ) {
+                return list;
+            }
+            return Collections.emptyList();
+        }
+        catch( XMLStreamException e ) {
+            throw new CloudException(e);
+        }
+        catch( ParserConfigurationException e ) {
+            throw new InternalException(e);
+        }
+        finally {
+            if( reader != null ) {
+                try {
+                    reader.close();
+                }
+                catch( XMLStreamException e ) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the element the reader is positioned on, including all of its content, into the given document.
+     * On return the reader is positioned on the matching end tag.
+     */
+    private @Nonnull Element readElement( @Nonnull XMLStreamReader reader, @Nonnull Document doc ) throws XMLStreamException {
+        Deque<Element> stack = new ArrayDeque<Element>();
+        Element root = createElement(reader, doc);
+
+        doc.appendChild(root);
+        stack.push(root);
+        while( !stack.isEmpty() && reader.hasNext() ) {
+            switch( reader.next() ) {
+                case XMLStreamConstants.START_ELEMENT:
+                    Element child = createElement(reader, doc);
+
+                    stack.peek().appendChild(child);
+                    stack.push(child);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    stack.pop();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    stack.peek().appendChild(doc.createTextNode(reader.getText()));
+                    break;
+            }
+        }
+        return root;
+    }
+
+    private @Nonnull Element createElement( @Nonnull XMLStreamReader reader, @Nonnull Document doc ) {
+        Element element = doc.createElement(reader.getLocalName());
+
+        for( int i = 0; i < reader.getAttributeCount(); i++ ) {
+            String prefix = reader.getAttributePrefix(i);
+            String name = reader.getAttributeLocalName(i);
+
+            element.setAttribute(prefix == null || prefix.length() < 1 ? name : prefix + ":" + name, reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    /**
+     * @return the token for the next page of results, or <code>null</code> if the response was the last page
+     */
+    public @Nullable String getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * @return the number of items delivered to the iterator or list
+     */
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.compute;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the per minute datapoints of CloudWatch metrics so that repeated queries over sliding windows only fetch
+ * the part of the window not seen before. Each series is held in parallel primitive arrays sorted by timestamp
+ * and keyed by account, region, resource and metric.
+ * <p>
+ * The last minutes of a series, as many as the overlap passed in, are fetched again on every refresh, as CloudWatch
+ * may still be aggregating them or publish some datapoints late. Datapoints older than the horizon are dropped,
+ * and series unused for longer than the horizon are removed.
+ * </p>
+ */
+class MetricSeriesCache {
+    /**
+     * Fetches the datapoints of a series between two timestamps.
+     */
+    interface Fetcher {
+        @Nonnull Collection<EC2Instance.Metric> fetch( long startTimestamp, long endTimestamp ) throws CloudException, InternalException;
+    }
+
+    static private final ConcurrentHashMap<String, Series> cache     = new ConcurrentHashMap<String, Series>();
+    static private volatile long                           lastPurge = 0L;
+
+    static private class Series {
+        private long[]   timestamps = new long[64];
+        private double[] averages   = new double[64];
+        private double[] minimums   = new double[64];
+        private double[] maximums   = new double[64];
+        private int[]    samples    = new int[64];
+        private int      size       = 0;
+
+        // the period the series holds every datapoint for
+        private long coveredFrom = Long.MAX_VALUE;
+        private long coveredTo   = Long.MIN_VALUE;
+
+        private volatile long lastUsed;
+
+        private void put( @Nonnull EC2Instance.Metric metric ) {
+            int i = Arrays.binarySearch(timestamps, 0, size, metric.timestamp);
+
+            if( i < 0 ) {
+                i = -( i + 1 );
+                if( size == timestamps.length ) {
+                    int capacity = size * 2;
+
+                    timestamps = Arrays.copyOf(timestamps, capacity);
+                    averages = Arrays.copyOf(averages, capacity);
+                    minimums = Arrays.copyOf(minimums, capacity);
+                    maximums = Arrays.copyOf(maximums, capacity);
+                    samples = Arrays.copyOf(samples, capacity);
+                }
+                if( i < size ) {
+                    System.arraycopy(timestamps, i, timestamps, i + 1, size - i);
+                    System.arraycopy(averages, i, averages, i + 1, size - i);
+                    System.arraycopy(minimums, i, minimums, i + 1, size - i);
+                    System.arraycopy(maximums, i, maximums, i + 1, size - i);
+                    System.arraycopy(samples, i, samples, i + 1, size - i);
+                }
+                size++;
+            }
+            timestamps[i] = metric.timestamp;
+            averages[i] = metric.average;
+            minimums[i] = metric.minimum;
+            maximums[i] = metric.maximum;
+            samples[i] = metric.samples;
+        }
+
+        /**
+         * @return the index of the first datapoint at or after the timestamp
+         */
+        private int indexOf( long timestamp ) {
+            int i = Arrays.binarySearch(timestamps, 0, size, timestamp);
+
+            return ( i < 0 ? -( i + 1 ) : i );
+        }
+
+        private void removeBefore( long timestamp ) {
+            int count = indexOf(timestamp);
+
+            if( count > 0 ) {
+                System.arraycopy(timestamps, count, timestamps, 0, size - count);
+                System.arraycopy(averages, count, averages, 0, size - count);
+                System.arraycopy(minimums, count, minimums, 0, size - count);
+                System.arraycopy(maximums, count, maximums, 0, size - count);
+                System.arraycopy(samples, count, samples, 0, size - count);
+                size -= count;
+            }
+            if( coveredFrom < timestamp ) {
+                coveredFrom = timestamp;
+            }
+        }
+
+        private void removeFrom( long timestamp ) {
+            size = indexOf(timestamp);
+        }
+
+        private @Nonnull List<EC2Instance.Metric> range( long startTimestamp, long endTimestamp ) {
+            List<EC2Instance.Metric> metrics = new ArrayList<EC2Instance.Metric>();
+
+            for( int i = indexOf(startTimestamp); i < size && timestamps[i] <= endTimestamp; i++ ) {
+                EC2Instance.Metric m = new EC2Instance.Metric();
+
+                m.timestamp = timestamps[i];
+                m.average = averages[i];
+                m.minimum = minimums[i];
+                m.maximum = maximums[i];
+                m.samples = samples[i];
+                metrics.add(m);
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * Returns the datapoints of a series between two timestamps, fetching only those the cache does not hold.
+     * @param key the account, region, resource and metric the series belongs to
+     * @param startTimestamp the start of the window
+     * @param endTimestamp the end of the window
+     * @param horizon how long datapoints are kept, in milliseconds; 0 or less disables caching
+     * @param overlap how far back before the end of the cached period datapoints are fetched again, in milliseconds
+     * @param fetcher fetches the missing datapoints
+     * @return the datapoints in the window, sorted by timestamp
+     */
+    static @Nonnull Collection<EC2Instance.Metric> get( @Nonnull String key, long startTimestamp, long endTimestamp, long horizon, long overlap, @Nonnull Fetcher fetcher ) throws CloudException, InternalException {
+        if( horizon <= 0L ) {
+            return fetcher.fetch(startTimestamp, endTimestamp);
+        }
+        long now = System.currentTimeMillis();
+
+        purge(now, horizon);
+        Series series = cache.get(key);
+
+        if( series == null ) {
+            Series existing = cache.putIfAbsent(key, series = new Series());
+
+            if( existing != null ) {
+                series = existing;
+            }
+        }
+        // concurrent refreshes of the same series wait for a single fetch
+        synchronized( series ) {
+            series.lastUsed = now;
+            series.removeBefore(now - horizon);
+            if( startTimestamp < series.coveredFrom || startTimestamp > series.coveredTo ) {
+                // nothing useful is cached for this window
+                Collection<EC2Instance.Metric> fetched = fetcher.fetch(startTimestamp, endTimestamp);
+
+                series.size = 0;
+                for( EC2Instance.Metric m : fetched ) {
+                    series.put(m);
+                }
+                series.coveredFrom = startTimestamp;
+                series.coveredTo = endTimestamp;
+            }
+            else if( endTimestamp > series.coveredTo - overlap ) {
+                long from = Math.max(startTimestamp, series.coveredTo - overlap);
+
+                Collection<EC2Instance.Metric> fetched = fetcher.fetch(from, Math.max(endTimestamp, series.coveredTo));
+
+                series.removeFrom(from);
+                for( EC2Instance.Metric m : fetched ) {
+                    series.put(m);
+                }
+                series.coveredTo = Math.max(series.coveredTo, endTimestamp);
+            }
+            return series.range(startTimestamp, endTimestamp);
+        }
+    }
+
+    static private void purge( long now, long horizon ) {
+        if( now - lastPurge < horizon ) {
+            return;
+        }
+        lastPurge = now;
+        for( Iterator<Series> it = cache.values().iterator(); it.hasNext(); ) {
+            if( it.next().lastUsed < now - horizon ) {
+                it.remove();
+            }
+        }
+    }
+}
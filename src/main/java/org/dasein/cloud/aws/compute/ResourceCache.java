@@ -0,0 +1,395 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.compute;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.Volume;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of the virtual machines, volumes, snapshots and images looked up by id, keyed by account,
+ * region and id. The cache is off unless the {@link #P_SIZE} custom property is set.
+ * <p>
+ * Entries are kept for {@link #P_TTL} seconds. For the following {@link #P_STALE} seconds an entry is still returned,
+ * and it is reloaded in the background. Entries are removed when this module changes the resource. A load that
+ * started before a change in the same account and region is not cached, so a change is never hidden by an older
+ * read.
+ * </p>
+ * <p>
+ * Resources are mutable beans, so the cache keeps its own copy of each and hands every caller a new copy. Copies
+ * reach into the arrays, collections, maps, dates and Dasein objects a resource holds; strings, numbers, enums and
+ * other JDK values are shared as they are. A resource that cannot be copied is not cached.
+ * </p>
+ *
+ * @param <T> the type of resource cached
+ * @since 2015.10
+ */
+public class ResourceCache<T> {
+    static private final Logger logger = AWSCloud.getLogger(ResourceCache.class);
+
+    /**
+     * Custom property holding the number of entries kept for each type of resource. The cache is off when unset.
+     */
+    static public final String P_SIZE = "resourceCacheSize";
+
+    /**
+     * Custom property holding how long, in seconds, an entry is returned without being reloaded.
+     */
+    static public final String P_TTL = "resourceCacheTtlSeconds";
+
+    /**
+     * Custom property holding how long, in seconds, an expired entry is still returned while it is reloaded in the
+     * background. Expired entries are reloaded before being returned when unset.
+     */
+    static public final String P_STALE = "resourceCacheStaleSeconds";
+
+    static private final int DEFAULT_TTL = 30;
+
+    static private final ExecutorService refresher = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+            Thread t = new Thread(r, "dasein-ec2-resource-cache");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    static private final ResourceCache<VirtualMachine> virtualMachines = new ResourceCache<VirtualMachine>();
+    static private final ResourceCache<Volume>         volumes         = new ResourceCache<Volume>();
+    static private final ResourceCache<Snapshot>       snapshots       = new ResourceCache<Snapshot>();
+    static private final ResourceCache<MachineImage>   images          = new ResourceCache<MachineImage>();
+
+    static public @Nonnull ResourceCache<VirtualMachine> getVirtualMachineCache() {
+        return virtualMachines;
+    }
+
+    static public @Nonnull ResourceCache<Volume> getVolumeCache() {
+        return volumes;
+    }
+
+    static public @Nonnull ResourceCache<Snapshot> getSnapshotCache() {
+        return snapshots;
+    }
+
+    static public @Nonnull ResourceCache<MachineImage> getImageCache() {
+        return images;
+    }
+
+    /**
+     * Loads a resource from the cloud.
+     */
+    interface Loader<T> {
+        @Nullable T load( @Nonnull String id ) throws CloudException, InternalException;
+    }
+
+    static private class Entry<T> {
+        private final T    value;
+        private final long loaded;
+        private boolean    refreshing;
+
+        private Entry( @Nonnull T value, long loaded ) {
+            this.value = value;
+            this.loaded = loaded;
+        }
+    }
+
+    private final AtomicLong hits   = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // by account and region, changes each time an entry is invalidated so loads that overlap a change are not cached
+    private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+
+    private volatile int maxSize = 0;
+
+    private final LinkedHashMap<String, Entry<T>> entries = new LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, Entry<T>> eldest ) {
+            return size() > maxSize;
+        }
+    };
+
+    private ResourceCache() { }
+
+    /**
+     * Returns a resource from the cache, loading it if it is missing or expired.
+     * @param provider the provider the request is made through
+     * @param id the id of the resource
+     * @param loader loads the resource from the cloud
+     * @return the resource, or null if it does not exist
+     */
+    @Nullable T get( @Nonnull final AWSCloud provider, @Nonnull final String id, @Nonnull final Loader<T> loader ) throws CloudException, InternalException {
+        int size = provider.getIntProperty(P_SIZE, 0);
+        final String scope = toScope(provider);
+
+        if( size < 1 || scope == null ) {
+            return loader.load(id);
+        }
+        final String key = scope + "/" + id;
+
+        maxSize = size;
+        long ttl = provider.getIntProperty(P_TTL, DEFAULT_TTL) * 1000L;
+        long stale = provider.getIntProperty(P_STALE, 0) * 1000L;
+        long now = System.currentTimeMillis();
+        Entry<T> cached;
+        boolean refresh = false;
+
+        synchronized( entries ) {
+            cached = entries.get(key);
+            if( cached != null && now - cached.loaded >= ttl + stale ) {
+                cached = null;
+            }
+            else if( cached != null && now - cached.loaded >= ttl && !cached.refreshing ) {
+                cached.refreshing = true;
+                refresh = true;
+            }
+        }
+        if( cached == null ) {
+            misses.incrementAndGet();
+            return load(scope, key, id, loader);
+        }
+        final Entry<T> entry = cached;
+
+        hits.incrementAndGet();
+        if( refresh ) {
+            provider.hold();
+            refresher.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        load(scope, key, id, loader);
+                    }
+                    catch( Throwable t ) {
+                        logger.warn("Unable to refresh " + id + " in the resource cache: " + t.getMessage());
+                        // the next lookup of the expired entry tries again
+                        synchronized( entries ) {
+                            entry.refreshing = false;
+                        }
+                    }
+                    finally {
+                        provider.release();
+                    }
+                }
+            });
+        }
+        T copy = copyOf(entry.value);
+
+        return ( copy == null ? loader.load(id) : copy );
+    }
+
+    private @Nullable T load( @Nonnull String scope, @Nonnull String key, @Nonnull String id, @Nonnull Loader<T> loader ) throws CloudException, InternalException {
+        AtomicLong generation = getGeneration(scope);
+        long g = generation.get();
+        T value = loader.load(id);
+        T copy = ( value == null ? null : copyOf(value) );
+
+        synchronized( entries ) {
+            Entry<T> current = entries.get(key);
+
+            if( current != null ) {
+                current.refreshing = false;
+            }
+            if( copy == null ) {
+                entries.remove(key);
+            }
+            else if( g == generation.get() ) {
+                entries.put(key, new Entry<T>(copy, System.currentTimeMillis()));
+            }
+        }
+        return value;
+    }
+
+    private @Nonnull AtomicLong getGeneration( @Nonnull String scope ) {
+        AtomicLong generation = generations.get(scope);
+
+        if( generation == null ) {
+            generation = new AtomicLong();
+            AtomicLong existing = generations.putIfAbsent(scope, generation);
+
+            if( existing != null ) {
+                generation = existing;
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Copies a resource.
+     * @param value the resource
+     * @return the copy, or null if the resource could not be copied
+     */
+    @SuppressWarnings("unchecked")
+    static private @Nullable <T> T copyOf( @Nonnull T value ) {
+        try {
+            return ( T ) copy(value, new IdentityHashMap<Object, Object>());
+        }
+        catch( Exception e ) {
+            logger.warn("Unable to copy " + value.getClass().getName() + " for the resource cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static private @Nullable Object copy( @Nullable Object value, @Nonnull IdentityHashMap<Object, Object> copies ) throws Exception {
+        if( value == null || value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum || value instanceof Class ) {
+            return value;
+        }
+        Object copy = copies.get(value);
+
+        if( copy != null ) {
+            return copy;
+        }
+        Class<?> type = value.getClass();
+
+        if( type.isArray() ) {
+            int length = Array.getLength(value);
+
+            copy = Array.newInstance(type.getComponentType(), length);
+            copies.put(value, copy);
+            for( int i = 0; i < length; i++ ) {
+                Array.set(copy, i, copy(Array.get(value, i), copies));
+            }
+            return copy;
+        }
+        if( value instanceof Date ) {
+            copy = ( ( Date ) value ).clone();
+            copies.put(value, copy);
+            return copy;
+        }
+        if( value instanceof Collection || value instanceof Map ) {
+            Constructor<?> constructor;
+
+            try {
+                constructor = type.getConstructor();
+            }
+            catch( NoSuchMethodException e ) {
+                // unmodifiable and singleton views cannot be changed through the resource
+                return value;
+            }
+            copy = constructor.newInstance();
+            copies.put(value, copy);
+            if( value instanceof Collection ) {
+                for( Object element : ( Collection<Object> ) value ) {
+                    ( ( Collection<Object> ) copy ).add(copy(element, copies));
+                }
+            }
+            else {
+                for( Map.Entry<Object, Object> e : ( ( Map<Object, Object> ) value ).entrySet() ) {
+                    ( ( Map<Object, Object> ) copy ).put(e.getKey(), copy(e.getValue(), copies));
+                }
+            }
+            return copy;
+        }
+        if( !type.getName().startsWith("org.dasein.") ) {
+            return value;
+        }
+        Constructor<?> constructor = type.getDeclaredConstructor();
+
+        constructor.setAccessible(true);
+        copy = constructor.newInstance();
+        copies.put(value, copy);
+        for( Class<?> t = type; t != null && !t.equals(Object.class); t = t.getSuperclass() ) {
+            for( Field field : t.getDeclaredFields() ) {
+                if( Modifier.isStatic(field.getModifiers()) ) {
+                    continue;
+                }
+                field.setAccessible(true);
+                field.set(copy, copy(field.get(value), copies));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Removes resources from the cache after they were changed.
+     * @param provider the provider the change was made through
+     * @param ids the ids of the resources changed
+     */
+    void invalidate( @Nonnull AWSCloud provider, @Nonnull String... ids ) {
+        String scope = toScope(provider);
+
+        if( scope == null ) {
+            return;
+        }
+        getGeneration(scope).incrementAndGet();
+        synchronized( entries ) {
+            if( entries.isEmpty() ) {
+                return;
+            }
+            for( String id : ids ) {
+                entries.remove(scope + "/" + id);
+            }
+        }
+    }
+
+    private @Nullable String toScope( @Nonnull AWSCloud provider ) {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null || ctx.getRegionId() == null ) {
+            return null;
+        }
+        return ctx.getAccountNumber() + "/" + ctx.getRegionId();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache, including expired entries returned while reloading
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that were loaded from the cloud while the cache was on
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the share of lookups answered from the cache, or 0 if there were none
+     */
+    public double getHitRatio() {
+        long h = hits.get(), total = h + misses.get();
+
+        return ( total == 0 ? 0.0 : ( double ) h / total );
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.compute;
+
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the read-only requests in flight so that identical requests made at the same time share one call to AWS.
+ * Sharing is off unless the {@link #P_MAX_SIZE} custom property is set.
+ * <p>
+ * The first caller sends the request. Callers making the same request before the response body arrives wait for
+ * that body instead of sending their own request, and each parses its own copy. The body is only copied when
+ * someone is waiting for it, and never beyond {@link #P_MAX_SIZE}; waiting callers send their own request when a
+ * body is too large. Requests made after a mutating request through the same endpoint and credentials do not join
+ * flights opened before it.
+ * </p>
+ *
+ * @since 2015.10
+ */
+public class SingleFlight {
+    /**
+     * Custom property holding the largest response body, in kilobytes, shared with callers making the same request.
+     * Sharing is off when unset.
+     */
+    static public final String P_MAX_SIZE = "singleFlightMaxKilobytes";
+
+    static private final SingleFlight instance = new SingleFlight();
+
+    /**
+     * @return the flights shared by all providers
+     */
+    static public @Nonnull SingleFlight getInstance() {
+        return instance;
+    }
+
+    /**
+     * One request in flight. The thread that opened the flight sends the request and completes it.
+     */
+    class Flight {
+        private final String key;
+        private final Thread leader = Thread.currentThread();
+        private int          followers;
+        private boolean      done;
+        private byte[]       body;
+        private Exception    failure;
+
+        private Flight( @Nonnull String key ) {
+            this.key = key;
+        }
+
+        /**
+         * @return true if the current thread opened the flight and must send the request
+         */
+        boolean isLeader() {
+            return ( Thread.currentThread() == leader );
+        }
+
+        /**
+         * Called by the leader as it starts reading the response body. A flight nobody joined is closed, so later
+         * callers send their own request instead of waiting for a body that is not kept.
+         * @param input the response body
+         * @param maxSize the most bytes copied for the callers waiting on the flight
+         * @return the stream to read the body from, copying it if anyone is waiting
+         */
+        @Nonnull InputStream capture( @Nonnull InputStream input, int maxSize ) {
+            synchronized( flights ) {
+                if( followers == 0 ) {
+                    remove(this);
+                    return input;
+                }
+            }
+            return new Capture(input, maxSize);
+        }
+
+        /**
+         * Publishes the response body to the callers waiting on the flight.
+         * @param body the body of the successful response, or null if it was not kept
+         */
+        void succeeded( @Nullable byte[] body ) {
+            finish(body, null);
+        }
+
+        /**
+         * Publishes the error the request failed with to the callers waiting on the flight.
+         * @param failure the error the request failed with
+         */
+        void failed( @Nonnull Exception failure ) {
+            finish(null, failure);
+        }
+
+        private void finish( @Nullable byte[] body, @Nullable Exception failure ) {
+            synchronized( flights ) {
+                remove(this);
+            }
+            synchronized( this ) {
+                if( !done ) {
+                    this.body = body;
+                    this.failure = failure;
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Waits for the caller sending the request.
+         * @return the response body, or null if the request failed with the error from {@link #getFailure()} or the
+         * body was not kept and the caller must send its own request
+         * @throws InternalException the thread was interrupted while waiting
+         */
+        synchronized @Nullable byte[] await() throws InternalException {
+            while( !done ) {
+                try {
+                    wait();
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new InternalException("Interrupted while waiting for a shared request");
+                }
+            }
+            return body;
+        }
+
+        synchronized @Nullable Exception getFailure() {
+            return failure;
+        }
+    }
+
+    /**
+     * Copies a response body as it is read, giving up once it is larger than the callers waiting for it accept.
+     */
+    static class Capture extends FilterInputStream {
+        private final int             maxSize;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        Capture( @Nonnull InputStream in, int maxSize ) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+
+            if( b > -1 && keep(1) ) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException {
+            int n = super.read(b, off, len);
+
+            if( n > 0 && keep(n) ) {
+                copy.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip( long n ) throws IOException {
+            byte[] buffer = new byte[( int ) Math.min(n, 1024)];
+            long skipped = 0;
+
+            while( skipped < n ) {
+                int r = read(buffer, 0, ( int ) Math.min(buffer.length, n - skipped));
+
+                if( r < 0 ) {
+                    break;
+                }
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        private boolean keep( int n ) {
+            if( copy != null && copy.size() + n > maxSize ) {
+                copy = null;
+            }
+            return ( copy != null );
+        }
+
+        /**
+         * Reads what the parser left of the body, which is only trailing whitespace, unless the copy was given up.
+         * @throws IOException the rest of the body could not be read
+         */
+        void drain() throws IOException {
+            byte[] buffer = new byte[1024];
+
+            while( copy != null && read(buffer) > -1 ) {
+                // copied as it is read
+            }
+        }
+
+        /**
+         * @return the body read so far, or null if it was larger than the limit
+         */
+        @Nullable byte[] toByteArray() {
+            return ( copy == null ? null : copy.toByteArray() );
+        }
+    }
+
+    private final AtomicLong sent   = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    // the flight open to new callers for each request, guarded by itself
+    private final Map<String, Flight> flights = new HashMap<String, Flight>();
+
+    // the number of mutating requests sent through each endpoint and credentials
+    private final ConcurrentMap<String, AtomicLong> mutations = new ConcurrentHashMap<String, AtomicLong>();
+
+    private SingleFlight() { }
+
+    /**
+     * Joins the flight for a request, opening it if none is open.
+     * @param scope the endpoint and credentials the request is sent with
+     * @param request the action and parameters of the request
+     * @return the flight, which the caller must complete if {@link Flight#isLeader()}
+     */
+    @Nonnull Flight join( @Nonnull String scope, @Nonnull String request ) {
+        // a request made after a mutation never joins a flight that may have been answered before it
+        String key = scope + "\n" + getMutations(scope).get() + "\n" + request;
+
+        synchronized( flights ) {
+            Flight flight = flights.get(key);
+
+            if( flight == null ) {
+                flight = new Flight(key);
+                flights.put(key, flight);
+                sent.incrementAndGet();
+            }
+            else {
+                flight.followers++;
+                shared.incrementAndGet();
+            }
+            return flight;
+        }
+    }
+
+    /**
+     * Records a mutating request, so that later read-only requests do not join flights opened before it.
+     * @param scope the endpoint and credentials the request was sent with
+     */
+    void mutated( @Nonnull String scope ) {
+        getMutations(scope).incrementAndGet();
+    }
+
+    private @Nonnull AtomicLong getMutations( @Nonnull String scope ) {
+        AtomicLong count = mutations.get(scope);
+
+        if( count == null ) {
+            AtomicLong created = new AtomicLong();
+
+            count = mutations.putIfAbsent(scope, created);
+            if( count == null ) {
+                count = created;
+            }
+        }
+        return count;
+    }
+
+    private void remove( @Nonnull Flight flight ) {
+        if( flights.get(flight.key) == flight ) {
+            flights.remove(flight.key);
+        }
+    }
+
+    /**
+     * @return the number of read-only requests sent while sharing was on
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * @return the number of requests that waited for an identical request already in flight
+     */
+    public long getShared() {
+        return shared.get();
+    }
+}
@@ -0,0 +1,512 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.compute;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.MachineImageType;
+import org.dasein.cloud.compute.VirtualMachineProduct;
+import org.dasein.util.uom.storage.Gigabyte;
+import org.dasein.util.uom.storage.Megabyte;
+import org.dasein.util.uom.storage.Storage;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The VM products defined in <code>vmproducts.json</code> and <code>vmproducts-custom.json</code>, parsed once
+ * per JVM. For each cloud, provider and endpoint the default products are merged with the matching custom listing
+ * and indexed by architecture, virtualization type and root device type, so listing the products an image can
+ * run is a map lookup followed by a check of the excluded regions.
+ * <p>
+ * The catalog is immutable once loaded. Each call builds new products from the definitions of the matching
+ * entries, so callers may modify the products they get without affecting other callers or accounts.
+ * </p>
+ *
+ * @since 2015.10
+ */
+class VmProductCatalog {
+    static private final Logger logger = AWSCloud.getLogger(VmProductCatalog.class);
+
+    static private final String DEFAULT_RESOURCE = "/org/dasein/cloud/aws/vmproducts.json";
+    static private final String CUSTOM_RESOURCE  = "/org/dasein/cloud/aws/vmproducts-custom.json";
+
+    static private volatile VmProductCatalog instance;
+
+    /**
+     * The definition of a product along with the values it is selected on.
+     */
+    static private class Entry {
+        private final JSONObject            json;
+        private final String                productId;
+        private final Set<String>           excludedRegions;
+        private final Set<Architecture>     architectures;
+        private final Set<String>           virtualizationTypes;
+        private final Set<MachineImageType> imageTypes;
+
+        private Entry( @Nonnull JSONObject json, @Nonnull VirtualMachineProduct product ) throws JSONException {
+            this.json = json;
+            productId = product.getProviderProductId();
+            excludedRegions = toSet(json.optJSONArray("excludesRegions"));
+            architectures = EnumSet.noneOf(Architecture.class);
+            if( product.getArchitectures() != null ) {
+                Collections.addAll(architectures, product.getArchitectures());
+            }
+            virtualizationTypes = new HashSet<String>();
+            for( String vt : toSet(json.optJSONArray("vt")) ) {
+                virtualizationTypes.add(vt.toLowerCase());
+            }
+            imageTypes = EnumSet.noneOf(MachineImageType.class);
+            for( String rdt : toSet(json.optJSONArray("rdt")) ) {
+                if( rdt.equalsIgnoreCase("ebs") ) {
+                    imageTypes.add(MachineImageType.VOLUME);
+                }
+                else if( rdt.equalsIgnoreCase("instance") ) {
+                    imageTypes.add(MachineImageType.STORAGE);
+                }
+            }
+        }
+    }
+
+    /**
+     * The products of one cloud, provider and endpoint, custom products first, indexed for lookup.
+     */
+    static private class Listing {
+        private final List<Entry>                                                        all;
+        private final Map<Architecture, List<Entry>>                                     byArchitecture = new EnumMap<Architecture, List<Entry>>(Architecture.class);
+        private final Map<Architecture, Map<String, Map<MachineImageType, List<Entry>>>> byImage        = new EnumMap<Architecture, Map<String, Map<MachineImageType, List<Entry>>>>(Architecture.class);
+
+        private Listing( @Nonnull List<Entry> entries ) {
+            all = Collections.unmodifiableList(entries);
+            for( Entry entry : entries ) {
+                for( Architecture a : entry.architectures ) {
+                    List<Entry> list = byArchitecture.get(a);
+
+                    if( list == null ) {
+                        list = new ArrayList<Entry>();
+                        byArchitecture.put(a, list);
+                    }
+                    list.add(entry);
+
+                    Map<String, Map<MachineImageType, List<Entry>>> byVt = byImage.get(a);
+
+                    if( byVt == null ) {
+                        byVt = new HashMap<String, Map<MachineImageType, List<Entry>>>();
+                        byImage.put(a, byVt);
+                    }
+                    for( String vt : entry.virtualizationTypes ) {
+                        Map<MachineImageType, List<Entry>> byType = byVt.get(vt);
+
+                        if( byType == null ) {
+                            byType = new EnumMap<MachineImageType, List<Entry>>(MachineImageType.class);
+                            byVt.put(vt, byType);
+                        }
+                        for( MachineImageType type : entry.imageTypes ) {
+                            List<Entry> matches = byType.get(type);
+
+                            if( matches == null ) {
+                                matches = new ArrayList<Entry>();
+                                byType.put(type, matches);
+                            }
+                            matches.add(entry);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A listing of <code>vmproducts-custom.json</code> before it is merged with the defaults.
+     */
+    static private class CustomListing {
+        private final String      cloud;
+        private final String      providerName;
+        private final String      endpoint;
+        private final boolean     discardDefaults;
+        private final Set<String> discard;
+        private final List<Entry> products;
+
+        private CustomListing( @Nonnull JSONObject json ) throws JSONException, InternalException {
+            cloud = json.getString("cloud");
+            providerName = json.getString("provider");
+            endpoint = ( json.has("endpoint") ? json.getString("endpoint") : null );
+            discardDefaults = json.has("discardDefaults") && json.getBoolean("discardDefaults");
+            discard = toSet(json.optJSONArray("discard"));
+            products = toEntries(json.optJSONArray("products"));
+        }
+    }
+
+    /**
+     * Returns the catalog, loading it on first use.
+     * @return the catalog
+     * @throws InternalException the product resources could not be read or parsed
+     */
+    static @Nonnull VmProductCatalog getInstance() throws InternalException {
+        VmProductCatalog catalog = instance;
+
+        if( catalog == null ) {
+            synchronized( VmProductCatalog.class ) {
+                catalog = instance;
+                if( catalog == null ) {
+                    instance = catalog = load();
+                }
+            }
+        }
+        return catalog;
+    }
+
+    static private @Nonnull VmProductCatalog load() throws InternalException {
+        try {
+            JSONArray defaults = read(DEFAULT_RESOURCE);
+            JSONArray custom = read(CUSTOM_RESOURCE);
+            Map<String, List<Entry>> defaultSets = new HashMap<String, List<Entry>>();
+            String fallback = null;
+            List<CustomListing> customListings = new ArrayList<CustomListing>();
+
+            if( defaults == null ) {
+                logger.warn("No standard products resource exists for " + DEFAULT_RESOURCE);
+            }
+            else {
+                for( int i = 0; i < defaults.length(); i++ ) {
+                    JSONObject productSet = defaults.getJSONObject(i);
+
+                    if( !productSet.has("cloud") || !productSet.has("provider") || !productSet.has("products") ) {
+                        continue;
+                    }
+                    String key = key(productSet.getString("cloud"), productSet.getString("provider")).toLowerCase();
+
+                    if( defaultSets.containsKey(key) ) {
+                        continue;
+                    }
+                    defaultSets.put(key, toEntries(productSet.getJSONArray("products")));
+                    if( fallback == null || key.equals(key("aws", "aws")) ) {
+                        fallback = key;
+                    }
+                }
+            }
+            if( custom != null ) {
+                for( int i = 0; i < custom.length(); i++ ) {
+                    JSONObject listing = custom.getJSONObject(i);
+
+                    if( listing.has("cloud") && listing.has("provider") ) {
+                        customListings.add(new CustomListing(listing));
+                    }
+                }
+            }
+            return new VmProductCatalog(defaultSets, fallback, customListings);
+        }
+        catch( JSONException e ) {
+            throw new InternalException(e);
+        }
+    }
+
+    static private @Nullable JSONArray read( @Nonnull String resource ) throws InternalException, JSONException {
+        InputStream input = VmProductCatalog.class.getResourceAsStream(resource);
+
+        if( input == null ) {
+            return null;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+            StringBuilder json = new StringBuilder();
+            String line;
+
+            while( ( line = reader.readLine() ) != null ) {
+                json.append(line);
+                json.append("\n");
+            }
+            return new JSONArray(json.toString());
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        finally {
+            try { input.close(); }
+            catch( IOException ignore ) { }
+        }
+    }
+
+    static private @Nonnull List<Entry> toEntries( @Nullable JSONArray products ) throws JSONException, InternalException {
+        List<Entry> entries = new ArrayList<Entry>();
+
+        if( products != null ) {
+            for( int i = 0; i < products.length(); i++ ) {
+                JSONObject json = products.getJSONObject(i);
+                VirtualMachineProduct product = toProduct(json);
+
+                if( product != null ) {
+                    entries.add(new Entry(json, product));
+                }
+            }
+        }
+        return entries;
+    }
+
+    static private @Nonnull Set<String> toSet( @Nullable JSONArray values ) throws JSONException {
+        if( values == null || values.length() < 1 ) {
+            return Collections.emptySet();
+        }
+        Set<String> set = new HashSet<String>();
+
+        for( int i = 0; i < values.length(); i++ ) {
+            set.add(values.getString(i));
+        }
+        return set;
+    }
+
+    static private @Nonnull String key( @Nonnull String cloud, @Nonnull String providerName ) {
+        return cloud + "/" + providerName;
+    }
+
+    /**
+     * Builds a product from its definition in a product resource.
+     * @param json the product definition
+     * @return the product, or null if the definition has no id
+     * @throws InternalException the definition could not be parsed
+     */
+    static @Nullable VirtualMachineProduct toProduct( @Nonnull JSONObject json ) throws InternalException {
+        /*
+                    {
+                "architectures":["I32"],
+                "id":"m1.small",
+                "name":"Small Instance (m1.small)",
+                "description":"Small Instance (m1.small)",
+                "cpuCount":1,
+                "rootVolumeSizeInGb":160,
+                "ramSizeInMb": 1700,
+                "generation":"current",
+                "vt":["hvm"],
+                "rdt":["ebs","instance"]
+
+            },
+         */
+        VirtualMachineProduct prd = new VirtualMachineProduct();
+
+        try {
+            if( json.has("id") ) {
+                prd.setProviderProductId(json.getString("id"));
+            }
+            else {
+                return null;
+            }
+            if( json.has("name") ) {
+                prd.setName(json.getString("name"));
+            }
+            else {
+                prd.setName(prd.getProviderProductId());
+            }
+            if( json.has("description") ) {
+                prd.setDescription(json.getString("description"));
+            }
+            else {
+                prd.setDescription(prd.getName());
+            }
+            if( json.has("cpuCount") ) {
+                prd.setCpuCount(json.getInt("cpuCount"));
+            }
+            else {
+                prd.setCpuCount(1);
+            }
+            if( json.has("rootVolumeSizeInGb") ) {
+                prd.setRootVolumeSize(new Storage<Gigabyte>(json.getInt("rootVolumeSizeInGb"), Storage.GIGABYTE));
+            }
+            else {
+                prd.setRootVolumeSize(new Storage<Gigabyte>(1, Storage.GIGABYTE));
+            }
+            if( json.has("ramSizeInMb") ) {
+                prd.setRamSize(new Storage<Megabyte>(json.getInt("ramSizeInMb"), Storage.MEGABYTE));
+            }
+            else {
+                prd.setRamSize(new Storage<Megabyte>(512, Storage.MEGABYTE));
+            }
+            if( json.has("generation") && json.getString("generation").equalsIgnoreCase("previous") ) {
+                prd.setStatusDeprecated();
+            }
+            if( json.has("standardHourlyRates") ) {
+                JSONArray rates = json.getJSONArray("standardHourlyRates");
+
+                for( int i = 0; i < rates.length(); i++ ) {
+                    JSONObject rate = rates.getJSONObject(i);
+
+                    if( rate.has("rate") ) {
+                        prd.setStandardHourlyRate(( float ) rate.getDouble("rate"));
+                    }
+                }
+            }
+            if( json.has("architectures") ) {
+                List<Architecture> architectures = new ArrayList<Architecture>();
+                JSONArray values = json.getJSONArray("architectures");
+                for( int i=0; i<values.length(); i++ ) {
+                    String arch = values.getString(i);
+                    architectures.add(Architecture.valueOf(arch));
+                }
+                prd.setArchitectures(architectures.toArray(new Architecture[architectures.size()]));
+            }
+            if( json.has("vt") ) {
+                prd.getProviderMetadata().put("vt", join(json.getJSONArray("vt")));
+            }
+            if( json.has("rdt") ) {
+                prd.getProviderMetadata().put("rdt", join(json.getJSONArray("rdt")));
+            }
+        } catch( JSONException e ) {
+            throw new InternalException(e);
+        }
+        return prd;
+    }
+
+    static private @Nonnull String join( @Nonnull JSONArray values ) throws JSONException {
+        StringBuilder sb = new StringBuilder();
+
+        for( int i = 0; i < values.length(); i++ ) {
+            if( sb.length() > 0 ) {
+                sb.append(",");
+            }
+            sb.append(values.getString(i));
+        }
+        return sb.toString();
+    }
+
+    private final Map<String, List<Entry>>           defaultSets;
+    private final String                             fallback;
+    private final List<CustomListing>                customListings;
+    private final ConcurrentHashMap<String, Listing> listings = new ConcurrentHashMap<String, Listing>();
+
+    private VmProductCatalog( @Nonnull Map<String, List<Entry>> defaultSets, @Nullable String fallback, @Nonnull List<CustomListing> customListings ) {
+        this.defaultSets = defaultSets;
+        this.fallback = fallback;
+        this.customListings = customListings;
+    }
+
+    /**
+     * Lists the products available in a region.
+     * @param cloud the name of the cloud
+     * @param providerName the name of the provider
+     * @param endpoint the endpoint of the cloud, used to select a custom listing
+     * @param regionId the region the products must be available in
+     * @param architecture the architecture the products must support, or null for all products
+     * @return the matching products, custom products first
+     * @throws InternalException the definition of a product could not be parsed
+     */
+    @Nonnull List<VirtualMachineProduct> list( @Nonnull String cloud, @Nonnull String providerName, @Nullable String endpoint, @Nullable String regionId, @Nullable Architecture architecture ) throws InternalException {
+        Listing listing = getListing(cloud, providerName, endpoint);
+
+        return filter(architecture == null ? listing.all : listing.byArchitecture.get(architecture), regionId);
+    }
+
+    /**
+     * Lists the products in a region that can run an image.
+     * @param cloud the name of the cloud
+     * @param providerName the name of the provider
+     * @param endpoint the endpoint of the cloud, used to select a custom listing
+     * @param regionId the region the products must be available in
+     * @param architecture the architecture of the image
+     * @param virtualizationType the virtualization type of the image
+     * @param imageType the root device type of the image
+     * @return the matching products, custom products first
+     * @throws InternalException the definition of a product could not be parsed
+     */
+    @Nonnull List<VirtualMachineProduct> list( @Nonnull String cloud, @Nonnull String providerName, @Nullable String endpoint, @Nullable String regionId, @Nonnull Architecture architecture, @Nullable String virtualizationType, @Nullable MachineImageType imageType ) throws InternalException {
+        if( virtualizationType == null || imageType == null ) {
+            return Collections.emptyList();
+        }
+        Map<String, Map<MachineImageType, List<Entry>>> byVt = getListing(cloud, providerName, endpoint).byImage.get(architecture);
+        Map<MachineImageType, List<Entry>> byType = ( byVt == null ? null : byVt.get(virtualizationType.toLowerCase()) );
+
+        return filter(byType == null ? null : byType.get(imageType), regionId);
+    }
+
+    private @Nonnull List<VirtualMachineProduct> filter( @Nullable List<Entry> entries, @Nullable String regionId ) throws InternalException {
+        if( entries == null ) {
+            return Collections.emptyList();
+        }
+        List<VirtualMachineProduct> products = new ArrayList<VirtualMachineProduct>(entries.size());
+
+        for( Entry entry : entries ) {
+            // products are mutable beans, so every caller gets its own
+            VirtualMachineProduct product = ( regionId == null || !entry.excludedRegions.contains(regionId) ? toProduct(entry.json) : null );
+
+            if( product != null ) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    private @Nonnull Listing getListing( @Nonnull String cloud, @Nonnull String providerName, @Nullable String endpoint ) {
+        String key = key(cloud, providerName) + "/" + endpoint;
+        Listing listing = listings.get(key);
+
+        if( listing == null ) {
+            listing = merge(cloud, providerName, endpoint);
+            Listing existing = listings.putIfAbsent(key, listing);
+
+            if( existing != null ) {
+                listing = existing;
+            }
+        }
+        return listing;
+    }
+
+    private @Nonnull Listing merge( @Nonnull String cloud, @Nonnull String providerName, @Nullable String endpoint ) {
+        List<Entry> defaults = defaultSets.get(key(cloud, providerName).toLowerCase());
+        CustomListing custom = null;
+
+        if( defaults == null ) {
+            defaults = ( fallback == null ? Collections.<Entry>emptyList() : defaultSets.get(fallback) );
+        }
+        for( CustomListing candidate : customListings ) {
+            if( !candidate.cloud.equals(cloud) || !candidate.providerName.equals(providerName) ) {
+                continue;
+            }
+            if( candidate.endpoint != null && candidate.endpoint.equals(endpoint) ) {
+                custom = candidate;
+                break;
+            }
+            if( candidate.endpoint == null && custom == null ) {
+                custom = candidate;
+            }
+        }
+        if( custom == null ) {
+            return new Listing(defaults);
+        }
+        List<Entry> entries = new ArrayList<Entry>(custom.products);
+
+        if( !custom.discardDefaults ) {
+            for( Entry entry : defaults ) {
+                if( !custom.discard.contains(entry.productId) ) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return new Listing(entries);
+    }
+}
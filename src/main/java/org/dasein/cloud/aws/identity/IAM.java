@@ -35,7 +35,6 @@ import org.json.JSONObject;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.yaml.snakeyaml.Yaml;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -52,6 +51,40 @@ import java.util.*;
 public class IAM extends AbstractIdentityAndAccessSupport<AWSCloud> {
     static private final Logger logger = AWSCloud.getLogger(IAM.class);
 
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(IdentityAndAccessSupport.ANY, IAMMethod.IAM_PREFIX + "*")
+            .map(IdentityAndAccessSupport.ADD_GROUP_ACCESS, IAMMethod.IAM_PREFIX + IAMMethod.PUT_GROUP_POLICY)
+            .map(IdentityAndAccessSupport.ADD_USER_ACCESS, IAMMethod.IAM_PREFIX + IAMMethod.PUT_USER_POLICY)
+            .map(IdentityAndAccessSupport.CREATE_GROUP, IAMMethod.IAM_PREFIX + IAMMethod.CREATE_GROUP)
+            .map(IdentityAndAccessSupport.CREATE_USER, IAMMethod.IAM_PREFIX + IAMMethod.CREATE_USER)
+            .map(IdentityAndAccessSupport.DISABLE_API, IAMMethod.IAM_PREFIX + IAMMethod.DELETE_ACCESS_KEY)
+            .map(IdentityAndAccessSupport.DISABLE_CONSOLE, IAMMethod.IAM_PREFIX + IAMMethod.DELETE_LOGIN_PROFILE)
+            .map(IdentityAndAccessSupport.DROP_FROM_GROUP, IAMMethod.IAM_PREFIX + IAMMethod.REMOVE_USER_FROM_GROUP)
+            .map(IdentityAndAccessSupport.ENABLE_API, IAMMethod.IAM_PREFIX + IAMMethod.CREATE_ACCESS_KEY)
+            .map(IdentityAndAccessSupport.ENABLE_CONSOLE, IAMMethod.IAM_PREFIX + IAMMethod.CREATE_LOGIN_PROFILE)
+            .map(IdentityAndAccessSupport.GET_ACCESS_KEY, IAMMethod.IAM_PREFIX + IAMMethod.GET_ACCESS_KEY)
+            .map(IdentityAndAccessSupport.GET_GROUP, IAMMethod.IAM_PREFIX + IAMMethod.GET_GROUP)
+            .map(IdentityAndAccessSupport.GET_GROUP_POLICY, IAMMethod.IAM_PREFIX + IAMMethod.GET_GROUP_POLICY, IAMMethod.IAM_PREFIX + IAMMethod.LIST_GROUP_POLICIES)
+            .map(IdentityAndAccessSupport.GET_USER, IAMMethod.IAM_PREFIX + IAMMethod.GET_USER)
+            .map(IdentityAndAccessSupport.GET_USER_POLICY, IAMMethod.IAM_PREFIX + IAMMethod.GET_USER_POLICY, IAMMethod.IAM_PREFIX + IAMMethod.LIST_USER_POLICIES)
+            .map(IdentityAndAccessSupport.JOIN_GROUP, IAMMethod.IAM_PREFIX + IAMMethod.ADD_USER_TO_GROUP)
+            .map(IdentityAndAccessSupport.LIST_ACCESS_KEYS, IAMMethod.IAM_PREFIX + IAMMethod.LIST_ACCESS_KEYS)
+            .map(IdentityAndAccessSupport.LIST_GROUP, IAMMethod.IAM_PREFIX + IAMMethod.LIST_GROUPS + "*")
+            .map(IdentityAndAccessSupport.LIST_USER, IAMMethod.IAM_PREFIX + IAMMethod.LIST_USERS)
+            .map(IdentityAndAccessSupport.REMOVE_GROUP, IAMMethod.IAM_PREFIX + IAMMethod.DELETE_GROUP)
+            .map(IdentityAndAccessSupport.REMOVE_GROUP_ACCESS, IAMMethod.IAM_PREFIX + IAMMethod.PUT_GROUP_POLICY)
+            .map(IdentityAndAccessSupport.REMOVE_USER, IAMMethod.IAM_PREFIX + IAMMethod.DELETE_USER)
+            .map(IdentityAndAccessSupport.REMOVE_USER_ACCESS, IAMMethod.IAM_PREFIX + IAMMethod.PUT_USER_POLICY)
+            .map(IdentityAndAccessSupport.UPDATE_GROUP, IAMMethod.IAM_PREFIX + IAMMethod.UPDATE_GROUP)
+            .map(IdentityAndAccessSupport.UPDATE_USER, IAMMethod.IAM_PREFIX + IAMMethod.UPDATE_USER)
+            /* SSL certificates were explicitly requested to be included into LoadBalancingSupport
+             * by the upstream author */
+            .map(LoadBalancerSupport.LIST_SSL_CERTIFICATES, IAMMethod.IAM_PREFIX + IAMMethod.LIST_SSL_CERTIFICATES)
+            .map(LoadBalancerSupport.GET_SSL_CERTIFICATE, IAMMethod.IAM_PREFIX + IAMMethod.GET_SSL_CERTIFICATE)
+            .map(LoadBalancerSupport.CREATE_SSL_CERTIFICATE, IAMMethod.IAM_PREFIX + IAMMethod.CREATE_SSL_CERTIFICATE)
+            .map(LoadBalancerSupport.DELETE_SSL_CERTIFICATE, IAMMethod.IAM_PREFIX + IAMMethod.DELETE_SSL_CERTIFICATE)
+            .build();
+
     protected IAM(AWSCloud provider) {
         super(provider);
     }
@@ -1055,9 +1088,8 @@ public class IAM extends AbstractIdentityAndAccessSupport<AWSCloud> {
         return getManagedPolicyRules(providerPolicyId);
     }
 
-    @SuppressWarnings("unchecked")
     protected Map<String, List<String>> readServiceActionsYaml() throws InternalException {
-        return (Map<String, List<String>>) new Yaml().loadAs(IAM.class.getResourceAsStream("/org/dasein/cloud/aws/serviceActions.yaml"), Map.class);
+        return ServiceActionCatalog.getInstance().getActions();
     }
 
     @Override
@@ -1067,21 +1099,23 @@ public class IAM extends AbstractIdentityAndAccessSupport<AWSCloud> {
 
     @Override
     public @Nonnull Iterable<ServiceAction> listServiceActions(@Nullable String forService) throws CloudException, InternalException {
-        Map<String, List<String>> map = readServiceActionsYaml();
-        List<ServiceAction> serviceActions = new ArrayList<>();
-        if (forService == null) {
-            for (String key : map.keySet()) {
-                for (String action : map.get(key)) {
-                    serviceActions.add(new ServiceAction(key + ":" + action));
-                }
-            }
+        Map<String, List<String>> actions = readServiceActionsYaml();
+        ServiceActionCatalog catalog = ServiceActionCatalog.getInstance();
+
+        // the catalog's prebuilt actions only match its own map, not one supplied by a subclass
+        if( actions == catalog.getActions() ) {
+            return catalog.getServiceActions(forService);
         }
-        else {
-            for (String action : map.get(forService)) {
-                serviceActions.add(new ServiceAction(forService + ":" + action));
+        List<ServiceAction> list = new ArrayList<ServiceAction>();
+
+        for( Map.Entry<String, List<String>> entry : actions.entrySet() ) {
+            if( ( forService == null || forService.equals(entry.getKey()) ) && entry.getValue() != null ) {
+                for( String name : entry.getValue() ) {
+                    list.add(new ServiceAction(entry.getKey() + ":" + name));
+                }
             }
         }
-        return serviceActions;
+        return list;
     }
 
     protected @Nonnull List<CloudPolicy> listPoliciesForUser(@Nonnull String providerUserId) throws CloudException, InternalException {
@@ -1194,97 +1228,7 @@ public class IAM extends AbstractIdentityAndAccessSupport<AWSCloud> {
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(IdentityAndAccessSupport.ANY) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + "*" };
-        }
-        else if( action.equals(IdentityAndAccessSupport.ADD_GROUP_ACCESS) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.PUT_GROUP_POLICY };
-        }
-        else if( action.equals(IdentityAndAccessSupport.ADD_USER_ACCESS) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.PUT_USER_POLICY };
-        }
-        else if( action.equals(IdentityAndAccessSupport.CREATE_GROUP) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.CREATE_GROUP };
-        }
-        else if( action.equals(IdentityAndAccessSupport.CREATE_USER) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.CREATE_USER };
-        }
-        else if( action.equals(IdentityAndAccessSupport.DISABLE_API) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.DELETE_ACCESS_KEY };
-        }
-        else if( action.equals(IdentityAndAccessSupport.DISABLE_CONSOLE) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.DELETE_LOGIN_PROFILE };
-        }
-        else if( action.equals(IdentityAndAccessSupport.DROP_FROM_GROUP) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.REMOVE_USER_FROM_GROUP };
-        }
-        else if( action.equals(IdentityAndAccessSupport.ENABLE_API) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.CREATE_ACCESS_KEY };
-        }
-        else if( action.equals(IdentityAndAccessSupport.ENABLE_CONSOLE) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.CREATE_LOGIN_PROFILE };
-        }
-        else if( action.equals(IdentityAndAccessSupport.GET_ACCESS_KEY) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.GET_ACCESS_KEY };
-        }
-        else if( action.equals(IdentityAndAccessSupport.GET_GROUP) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.GET_GROUP };
-        }
-        else if( action.equals(IdentityAndAccessSupport.GET_GROUP_POLICY) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.GET_GROUP_POLICY, IAMMethod.IAM_PREFIX + IAMMethod.LIST_GROUP_POLICIES };
-        }
-        else if( action.equals(IdentityAndAccessSupport.GET_USER) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.GET_USER };
-        }
-        else if( action.equals(IdentityAndAccessSupport.GET_USER_POLICY) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.GET_USER_POLICY, IAMMethod.IAM_PREFIX + IAMMethod.LIST_USER_POLICIES };
-        }
-        else if( action.equals(IdentityAndAccessSupport.JOIN_GROUP) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.ADD_USER_TO_GROUP };
-        }
-        else if( action.equals(IdentityAndAccessSupport.LIST_ACCESS_KEYS) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.LIST_ACCESS_KEYS };
-        }
-        else if( action.equals(IdentityAndAccessSupport.LIST_GROUP) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.LIST_GROUPS + "*" };
-        }
-        else if( action.equals(IdentityAndAccessSupport.LIST_USER) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.LIST_USERS };
-        }
-        else if( action.equals(IdentityAndAccessSupport.REMOVE_GROUP) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.DELETE_GROUP };
-        }
-        else if( action.equals(IdentityAndAccessSupport.REMOVE_GROUP_ACCESS) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.PUT_GROUP_POLICY };
-        }
-        else if( action.equals(IdentityAndAccessSupport.REMOVE_USER) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.DELETE_USER };
-        }
-        else if( action.equals(IdentityAndAccessSupport.REMOVE_USER_ACCESS) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.PUT_USER_POLICY };
-        }
-        else if( action.equals(IdentityAndAccessSupport.UPDATE_GROUP) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.UPDATE_GROUP };
-        }
-        else if( action.equals(IdentityAndAccessSupport.UPDATE_USER) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.UPDATE_USER };
-        }
-
-        /* SSL certificates were explicitly requested to be included into LoadBalancingSupport
-         * by the upstream author */
-        else if( action.equals(LoadBalancerSupport.LIST_SSL_CERTIFICATES) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.LIST_SSL_CERTIFICATES };
-        }
-        else if( action.equals(LoadBalancerSupport.GET_SSL_CERTIFICATE) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.GET_SSL_CERTIFICATE };
-        }
-        else if( action.equals(LoadBalancerSupport.CREATE_SSL_CERTIFICATE) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.CREATE_SSL_CERTIFICATE };
-        }
-        else if( action.equals(LoadBalancerSupport.DELETE_SSL_CERTIFICATE) ) {
-            return new String[] { IAMMethod.IAM_PREFIX + IAMMethod.DELETE_SSL_CERTIFICATE };
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
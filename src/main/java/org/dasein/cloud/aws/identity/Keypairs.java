@@ -48,6 +48,14 @@ import javax.annotation.Nullable;
 
 public class Keypairs implements ShellKeySupport {
 	static private final Logger logger = AWSCloud.getLogger(Keypairs.class);
+
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(ShellKeySupport.ANY, EC2Method.EC2_PREFIX + "*")
+            .map(ShellKeySupport.CREATE_KEYPAIR, EC2Method.EC2_PREFIX + EC2Method.CREATE_KEY_PAIR, EC2Method.EC2_PREFIX + EC2Method.IMPORT_KEY_PAIR)
+            .map(ShellKeySupport.GET_KEYPAIR, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_KEY_PAIRS)
+            .map(ShellKeySupport.LIST_KEYPAIR, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_KEY_PAIRS)
+            .map(ShellKeySupport.REMOVE_KEYPAIR, EC2Method.EC2_PREFIX + EC2Method.DELETE_KEY_PAIR)
+            .build();
 	
 	private AWSCloud provider = null;
     private volatile transient KeypairsCapabilities capabilities;
@@ -441,18 +449,6 @@ public class Keypairs implements ShellKeySupport {
     
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(ShellKeySupport.ANY) ) {
-            return new String[] { EC2Method.EC2_PREFIX + "*" };
-        }
-        if( action.equals(ShellKeySupport.CREATE_KEYPAIR) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.CREATE_KEY_PAIR, EC2Method.EC2_PREFIX + EC2Method.IMPORT_KEY_PAIR };
-        }
-        else if( action.equals(ShellKeySupport.GET_KEYPAIR) || action.equals(ShellKeySupport.LIST_KEYPAIR) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_KEY_PAIRS };
-        }
-        else if( action.equals(ShellKeySupport.REMOVE_KEYPAIR) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DELETE_KEY_PAIR };
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 }
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.identity;
+
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.identity.ServiceAction;
+import org.yaml.snakeyaml.Yaml;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * The AWS services and actions listed in <code>serviceActions.yaml</code>, parsed once per JVM into immutable maps.
+ *
+ * @since 2015.10
+ */
+public class ServiceActionCatalog {
+    static private final String RESOURCE = "/org/dasein/cloud/aws/serviceActions.yaml";
+
+    static private volatile ServiceActionCatalog instance;
+
+    /**
+     * @return the catalog, parsed on first use
+     * @throws InternalException the catalog resource is missing or could not be parsed
+     */
+    static public @Nonnull ServiceActionCatalog getInstance() throws InternalException {
+        ServiceActionCatalog catalog = instance;
+
+        if( catalog == null ) {
+            synchronized( ServiceActionCatalog.class ) {
+                catalog = instance;
+                if( catalog == null ) {
+                    instance = catalog = load();
+                }
+            }
+        }
+        return catalog;
+    }
+
+    @SuppressWarnings("unchecked")
+    static private @Nonnull ServiceActionCatalog load() throws InternalException {
+        InputStream input = ServiceActionCatalog.class.getResourceAsStream(RESOURCE);
+
+        if( input == null ) {
+            throw new InternalException("No service actions resource exists for " + RESOURCE);
+        }
+        try {
+            Map<String, List<String>> map = (Map<String, List<String>>) new Yaml().loadAs(input, Map.class);
+
+            return new ServiceActionCatalog(map == null ? Collections.<String, List<String>>emptyMap() : map);
+        }
+        catch( RuntimeException e ) {
+            throw new InternalException(e);
+        }
+        finally {
+            try { input.close(); }
+            catch( IOException ignore ) { }
+        }
+    }
+
+    private final Map<String, List<String>>        actions;
+    private final Map<String, List<ServiceAction>> serviceActions;
+    private final List<ServiceAction>              allServiceActions;
+
+    private ServiceActionCatalog( @Nonnull Map<String, List<String>> map ) {
+        Map<String, List<String>> actions = new LinkedHashMap<String, List<String>>();
+        Map<String, List<ServiceAction>> serviceActions = new HashMap<String, List<ServiceAction>>();
+        List<ServiceAction> all = new ArrayList<ServiceAction>();
+
+        for( Map.Entry<String, List<String>> entry : map.entrySet() ) {
+            List<String> names = ( entry.getValue() == null ? Collections.<String>emptyList() : entry.getValue() );
+            List<ServiceAction> list = new ArrayList<ServiceAction>(names.size());
+
+            for( String name : names ) {
+                list.add(new ServiceAction(entry.getKey() + ":" + name));
+            }
+            actions.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(names)));
+            serviceActions.put(entry.getKey(), Collections.unmodifiableList(list));
+            all.addAll(list);
+        }
+        this.actions = Collections.unmodifiableMap(actions);
+        this.serviceActions = serviceActions;
+        this.allServiceActions = Collections.unmodifiableList(all);
+    }
+
+    /**
+     * @return the names of the actions of each service, without the service prefix, in the order they are listed
+     */
+    public @Nonnull Map<String, List<String>> getActions() {
+        return actions;
+    }
+
+    /**
+     * @return the services in the order they are listed
+     */
+    public @Nonnull Set<String> getServices() {
+        return actions.keySet();
+    }
+
+    /**
+     * @param forService the service whose actions are returned, or null for the actions of all services
+     * @return the actions as <code>service:Action</code>, empty for an unknown service
+     */
+    public @Nonnull List<ServiceAction> getServiceActions( @Nullable String forService ) {
+        if( forService == null ) {
+            return allServiceActions;
+        }
+        List<ServiceAction> list = serviceActions.get(forService);
+
+        return ( list == null ? Collections.<ServiceAction>emptyList() : list );
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.identity;
+
+import org.dasein.cloud.identity.ServiceAction;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps Dasein Cloud service actions to the AWS actions that implement them. Each support class builds its index once
+ * and answers <code>mapServiceAction</code> with a hash lookup on the action id.
+ *
+ * @since 2015.10
+ */
+public class ServiceActionIndex {
+    static private final String[] NONE = new String[0];
+
+    static public @Nonnull Builder builder() {
+        return new Builder();
+    }
+
+    static public class Builder {
+        private final Map<String, String[]> actions = new HashMap<String, String[]>();
+
+        private Builder() { }
+
+        /**
+         * Maps an action to the AWS actions that implement it. Only the first mapping of an action is kept.
+         * @param action the Dasein Cloud action
+         * @param providerActions the AWS actions, none if the action is not supported
+         * @return this builder
+         */
+        public @Nonnull Builder map( @Nonnull ServiceAction action, @Nonnull String... providerActions ) {
+            if( !actions.containsKey(action.getActionId()) ) {
+                actions.put(action.getActionId(), providerActions.clone());
+            }
+            return this;
+        }
+
+        public @Nonnull ServiceActionIndex build() {
+            return new ServiceActionIndex(actions);
+        }
+    }
+
+    private final Map<String, String[]> actions;
+
+    private ServiceActionIndex( @Nonnull Map<String, String[]> actions ) {
+        this.actions = new HashMap<String, String[]>(actions);
+    }
+
+    /**
+     * @param action the Dasein Cloud action
+     * @return the AWS actions that implement the action, empty if there are none
+     */
+    public @Nonnull String[] map( @Nonnull ServiceAction action ) {
+        String[] providerActions = actions.get(action.getActionId());
+
+        if( providerActions == null || providerActions.length == 0 ) {
+            return NONE;
+        }
+        // callers own the array they are given
+        return providerActions.clone();
+    }
+}
@@ -19,7 +19,10 @@
 
 package org.dasein.cloud.aws.model;
 
+import javax.annotation.Nullable;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Description
@@ -33,6 +36,9 @@ public class DatabaseEngine {
     String               name;
     List<DatabaseRegion> regions;
 
+    // lower case name index, built on first lookup
+    private volatile Map<String, DatabaseRegion> regionIndex;
+
     public String getName() {
         return name;
     }
@@ -47,5 +53,25 @@ public class DatabaseEngine {
 
     public void setRegions( List<DatabaseRegion> regions ) {
         this.regions = regions;
+        this.regionIndex = null;
+    }
+
+    public @Nullable DatabaseRegion findRegion(String regionName) {
+        Map<String, DatabaseRegion> index = regionIndex;
+
+        if( index == null ) {
+            index = new HashMap<String, DatabaseRegion>();
+            if( regions != null ) {
+                for( DatabaseRegion region : regions ) {
+                    String key = region.getName().toLowerCase();
+
+                    if( !index.containsKey(key) ) {
+                        index.put(key, region);
+                    }
+                }
+            }
+            regionIndex = index;
+        }
+        return index.get(regionName.toLowerCase());
     }
 }
@@ -26,8 +26,12 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Description
@@ -39,15 +43,62 @@ import java.util.List;
  * @since 2014.07
  */
 public class DatabaseProvider {
+    static private final ObjectMapper                                om     = new ObjectMapper();
+    static private final ConcurrentHashMap<String, DatabaseProvider> loaded = new ConcurrentHashMap<String, DatabaseProvider>();
+
     String cloud;
     String provider;
     Date created = new Date();
     List<DatabaseEngine> engines;
     private List<DatabaseProductDefinition> productDefinitions;
 
+    // lower case name indexes, built on first lookup
+    private volatile Map<String, DatabaseEngine>            engineIndex;
+    private volatile Map<String, DatabaseProductDefinition> definitionIndex;
+
+    /**
+     * Returns the configuration of a provider from a JSON resource. Each configuration is read once per JVM and
+     * shared by all callers. Its engine, region, product and definition lists are unmodifiable; its beans keep
+     * their setters, which must not be called on a shared configuration.
+     */
     public static DatabaseProvider fromFile(String filename, String providerId) throws InternalException {
+        String key = filename + "#" + providerId.toLowerCase();
+        DatabaseProvider provider = loaded.get(key);
+
+        if( provider == null ) {
+            synchronized( loaded ) {
+                provider = loaded.get(key);
+                if( provider == null ) {
+                    provider = load(filename, providerId);
+                    share(provider);
+                    loaded.put(key, provider);
+                }
+            }
+        }
+        return provider;
+    }
+
+    static private void share( DatabaseProvider provider ) {
+        if( provider.engines != null ) {
+            for( DatabaseEngine engine : provider.engines ) {
+                if( engine.regions != null ) {
+                    for( DatabaseRegion region : engine.regions ) {
+                        if( region.products != null ) {
+                            region.products = Collections.unmodifiableList(region.products);
+                        }
+                    }
+                    engine.regions = Collections.unmodifiableList(engine.regions);
+                }
+            }
+            provider.engines = Collections.unmodifiableList(provider.engines);
+        }
+        if( provider.productDefinitions != null ) {
+            provider.productDefinitions = Collections.unmodifiableList(provider.productDefinitions);
+        }
+    }
+
+    private static DatabaseProvider load(String filename, String providerId) throws InternalException {
         try {
-            ObjectMapper om = new ObjectMapper();
             URL url = om.getClass().getResource(filename);
             DatabaseProvider[] providers = om.readValue(url, DatabaseProvider[].class);
             for( DatabaseProvider provider : providers ) {
@@ -84,14 +135,16 @@ public class DatabaseProvider {
 
     public void setEngines( List<DatabaseEngine> engines ) {
         this.engines = engines;
+        this.engineIndex = null;
     }
 
     public Date getCreated() {
-        return created;
+        return ( created == null ? null : new Date(created.getTime()) );
     }
 
     public void setProductDefinitions( List<DatabaseProductDefinition> productDefinitions ) {
         this.productDefinitions = productDefinitions;
+        this.definitionIndex = null;
     }
 
     public List<DatabaseProductDefinition> getProductDefinitions() {
@@ -99,21 +152,41 @@ public class DatabaseProvider {
     }
 
     public @Nullable DatabaseProductDefinition findProductDefinition(String productName) {
-        for(DatabaseProductDefinition def : productDefinitions ) {
-            if( def.getName().equalsIgnoreCase( productName ) ) {
-                return def;
+        Map<String, DatabaseProductDefinition> index = definitionIndex;
+
+        if( index == null ) {
+            index = new HashMap<String, DatabaseProductDefinition>();
+            if( productDefinitions != null ) {
+                for( DatabaseProductDefinition def : productDefinitions ) {
+                    String key = def.getName().toLowerCase();
+
+                    if( !index.containsKey(key) ) {
+                        index.put(key, def);
+                    }
+                }
             }
+            definitionIndex = index;
         }
-        return null;
+        return index.get(productName.toLowerCase());
     }
 
     public @Nullable DatabaseEngine findEngine(String name) {
-        for(DatabaseEngine engine : engines ) {
-            if( engine.getName().equalsIgnoreCase(name)) {
-                return engine;
+        Map<String, DatabaseEngine> index = engineIndex;
+
+        if( index == null ) {
+            index = new HashMap<String, DatabaseEngine>();
+            if( engines != null ) {
+                for( DatabaseEngine engine : engines ) {
+                    String key = engine.getName().toLowerCase();
+
+                    if( !index.containsKey(key) ) {
+                        index.put(key, engine);
+                    }
+                }
             }
+            engineIndex = index;
         }
-        return null;
+        return index.get(name.toLowerCase());
     }
 
 }
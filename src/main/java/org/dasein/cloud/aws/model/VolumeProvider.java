@@ -26,8 +26,12 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Description
@@ -39,15 +43,57 @@ import java.util.List;
  * @since 2014.07
  */
 public class VolumeProvider {
+    static private final ObjectMapper                              om     = new ObjectMapper();
+    static private final ConcurrentHashMap<String, VolumeProvider> loaded = new ConcurrentHashMap<String, VolumeProvider>();
+
     private String cloud;
     private String provider;
     private Date created = new Date();
     private List<VolumeProduct> products;
     private List<VolumeRegion> regions;
 
+    // lower case name indexes, built on first lookup
+    private volatile Map<String, VolumeProduct> productIndex;
+    private volatile Map<String, VolumeRegion>  regionIndex;
+
+    /**
+     * Returns the configuration of a provider from a JSON resource. Each configuration is read once per JVM and
+     * shared by all callers, so its product, region and price lists are unmodifiable and the indexes behind
+     * {@link #findProduct(String)} and {@link #findProductPrice(String, String)} are built before it is returned.
+     */
     public static VolumeProvider fromFile(String filename, String providerId) throws InternalException {
+        String key = filename + "#" + providerId.toLowerCase();
+        VolumeProvider provider = loaded.get(key);
+
+        if( provider == null ) {
+            synchronized( loaded ) {
+                provider = loaded.get(key);
+                if( provider == null ) {
+                    provider = load(filename, providerId);
+                    share(provider);
+                    loaded.put(key, provider);
+                }
+            }
+        }
+        return provider;
+    }
+
+    static private void share( VolumeProvider provider ) {
+        for( VolumeRegion region : provider.getRegions() ) {
+            if( region.getPrices() != null ) {
+                region.setPrices(Collections.unmodifiableList(region.getPrices()));
+            }
+            // builds the index now rather than on the first concurrent lookup
+            region.findPrice("");
+        }
+        provider.setRegions(Collections.unmodifiableList(provider.getRegions()));
+        provider.setProducts(Collections.unmodifiableList(provider.getProducts()));
+        provider.findRegion("");
+        provider.findProduct("");
+    }
+
+    private static VolumeProvider load(String filename, String providerId) throws InternalException {
         try {
-            ObjectMapper om = new ObjectMapper();
             URL url = om.getClass().getResource(filename);
             VolumeProvider[] providers = om.readValue(url, VolumeProvider[].class);
             for( VolumeProvider provider : providers ) {
@@ -87,14 +133,16 @@ public class VolumeProvider {
 
     public void setProducts( List<VolumeProduct> products ) {
         this.products = products;
+        this.productIndex = null;
     }
 
     public Date getCreated() {
-        return created;
+        return ( created == null ? null : new Date(created.getTime()) );
     }
 
     public void setRegions( List<VolumeRegion> regions ) {
         this.regions = regions;
+        this.regionIndex = null;
     }
 
     public List<VolumeRegion> getRegions() {
@@ -105,33 +153,43 @@ public class VolumeProvider {
     }
 
     public @Nullable VolumeRegion findRegion(String regionName) {
-        for(VolumeRegion region : regions ) {
-            if( region.getName().equalsIgnoreCase( regionName ) ) {
-                return region;
+        Map<String, VolumeRegion> index = regionIndex;
+
+        if( index == null ) {
+            index = new HashMap<String, VolumeRegion>();
+            for( VolumeRegion region : getRegions() ) {
+                String key = region.getName().toLowerCase();
+
+                if( !index.containsKey(key) ) {
+                    index.put(key, region);
+                }
             }
+            regionIndex = index;
         }
-        return null;
+        return index.get(regionName.toLowerCase());
     }
 
     public @Nullable VolumePrice findProductPrice(String regionId, String productId) {
         VolumeRegion region = findRegion(regionId);
-        if( region != null ) {
-            for( VolumePrice price : region.getPrices() ) {
-                if( productId.equalsIgnoreCase(price.getId()) ) {
-                    return price;
-                }
-            }
-        }
-        return null;
+
+        return ( region == null ? null : region.findPrice(productId) );
     }
 
     public @Nullable VolumeProduct findProduct(String name) {
-        for(VolumeProduct product : products ) {
-            if( product.getName().equalsIgnoreCase(name)) {
-                return product;
+        Map<String, VolumeProduct> index = productIndex;
+
+        if( index == null ) {
+            index = new HashMap<String, VolumeProduct>();
+            for( VolumeProduct product : getProducts() ) {
+                String key = product.getName().toLowerCase();
+
+                if( !index.containsKey(key) ) {
+                    index.put(key, product);
+                }
             }
+            productIndex = index;
         }
-        return null;
+        return index.get(name.toLowerCase());
     }
 
 }
@@ -19,7 +19,10 @@
 
 package org.dasein.cloud.aws.model;
 
+import javax.annotation.Nullable;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by stas on 14/04/2015.
@@ -28,6 +31,9 @@ public class VolumeRegion {
     private String            name;
     private List<VolumePrice> prices;
 
+    // lower case product id index, built on first lookup
+    private volatile Map<String, VolumePrice> priceIndex;
+
     public String getName() {
         return name;
     }
@@ -42,5 +48,25 @@ public class VolumeRegion {
 
     public void setPrices(List<VolumePrice> prices) {
         this.prices = prices;
+        this.priceIndex = null;
+    }
+
+    public @Nullable VolumePrice findPrice(String productId) {
+        Map<String, VolumePrice> index = priceIndex;
+
+        if( index == null ) {
+            index = new HashMap<String, VolumePrice>();
+            if( prices != null ) {
+                for( VolumePrice price : prices ) {
+                    String key = price.getId().toLowerCase();
+
+                    if( !index.containsKey(key) ) {
+                        index.put(key, price);
+                    }
+                }
+            }
+            priceIndex = index;
+        }
+        return index.get(productId.toLowerCase());
     }
 }
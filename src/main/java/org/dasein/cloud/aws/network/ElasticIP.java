@@ -25,6 +25,7 @@ import org.dasein.cloud.*;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.compute.EC2Exception;
 import org.dasein.cloud.aws.compute.EC2Method;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.compute.ComputeServices;
 import org.dasein.cloud.compute.VirtualMachine;
 import org.dasein.cloud.compute.VirtualMachineSupport;
@@ -45,6 +46,18 @@ import java.util.concurrent.*;
 public class ElasticIP extends AbstractIpAddressSupport<AWSCloud> {
     static private final Logger logger = AWSCloud.getLogger(ElasticIP.class);
 
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(IpAddressSupport.ANY, EC2Method.EC2_PREFIX + "*")
+            .map(IpAddressSupport.ASSIGN, EC2Method.EC2_PREFIX + EC2Method.ASSOCIATE_ADDRESS)
+            .map(IpAddressSupport.CREATE_IP_ADDRESS, EC2Method.EC2_PREFIX + EC2Method.ALLOCATE_ADDRESS)
+            .map(IpAddressSupport.FORWARD)
+            .map(IpAddressSupport.GET_IP_ADDRESS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_ADDRESSES)
+            .map(IpAddressSupport.LIST_IP_ADDRESS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_ADDRESSES)
+            .map(IpAddressSupport.RELEASE, EC2Method.EC2_PREFIX + EC2Method.DISASSOCIATE_ADDRESS)
+            .map(IpAddressSupport.REMOVE_IP_ADDRESS, EC2Method.EC2_PREFIX + EC2Method.RELEASE_ADDRESS)
+            .map(IpAddressSupport.STOP_FORWARD)
+            .build();
+
     static private final ExecutorService threadPool = Executors.newCachedThreadPool(new ThreadFactory() {
         @Override
         public Thread newThread(Runnable r) {
@@ -427,28 +440,7 @@ public class ElasticIP extends AbstractIpAddressSupport<AWSCloud> {
     public
     @Nonnull
     String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if (action.equals(IpAddressSupport.ANY)) {
-            return new String[]{EC2Method.EC2_PREFIX + "*"};
-        } else if (action.equals(IpAddressSupport.ASSIGN)) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.ASSOCIATE_ADDRESS};
-        } else if (action.equals(IpAddressSupport.CREATE_IP_ADDRESS)) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.ALLOCATE_ADDRESS};
-        } else if (action.equals(IpAddressSupport.FORWARD)) {
-            return new String[0];
-        } else if (action.equals(IpAddressSupport.GET_IP_ADDRESS)) {
-
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_ADDRESSES};
-        } else if (action.equals(IpAddressSupport.LIST_IP_ADDRESS)) {
-
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_ADDRESSES};
-        } else if (action.equals(IpAddressSupport.RELEASE)) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DISASSOCIATE_ADDRESS};
-        } else if (action.equals(IpAddressSupport.REMOVE_IP_ADDRESS)) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.RELEASE_ADDRESS};
-        } else if (action.equals(IpAddressSupport.STOP_FORWARD)) {
-            return new String[0];
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
@@ -28,6 +28,7 @@ import org.dasein.cloud.aws.compute.EC2Exception;
 import org.dasein.cloud.aws.identity.IAMMethod;
 import org.dasein.cloud.aws.identity.InvalidAmazonResourceNameException;
 import org.dasein.cloud.aws.identity.SSLCertificateResourceName;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.network.*;
 import org.dasein.cloud.util.APITrace;
@@ -43,6 +44,22 @@ import java.util.*;
 public class ElasticLoadBalancer extends AbstractLoadBalancerSupport<AWSCloud> {
     static private final Logger logger = Logger.getLogger(ElasticLoadBalancer.class);
 
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(LoadBalancerSupport.ANY, ELBMethod.ELB_PREFIX + "*")
+            .map(LoadBalancerSupport.ADD_DATA_CENTERS, ELBMethod.ELB_PREFIX + ELBMethod.ENABLE_AVAILABILITY_ZONES)
+            .map(LoadBalancerSupport.ADD_VMS, ELBMethod.ELB_PREFIX + ELBMethod.REGISTER_INSTANCES)
+            .map(LoadBalancerSupport.CREATE_LOAD_BALANCER, ELBMethod.ELB_PREFIX + ELBMethod.CREATE_LOAD_BALANCER)
+            .map(LoadBalancerSupport.GET_LOAD_BALANCER, ELBMethod.ELB_PREFIX + ELBMethod.DESCRIBE_LOAD_BALANCERS)
+            .map(LoadBalancerSupport.LIST_LOAD_BALANCER, ELBMethod.ELB_PREFIX + ELBMethod.DESCRIBE_LOAD_BALANCERS)
+            .map(LoadBalancerSupport.GET_LOAD_BALANCER_SERVER_HEALTH, ELBMethod.ELB_PREFIX + ELBMethod.DESCRIBE_INSTANCE_HEALTH)
+            .map(LoadBalancerSupport.REMOVE_DATA_CENTERS, ELBMethod.ELB_PREFIX + ELBMethod.DISABLE_AVAILABILITY_ZONES)
+            .map(LoadBalancerSupport.REMOVE_LOAD_BALANCER, ELBMethod.ELB_PREFIX + ELBMethod.DELETE_LOAD_BALANCER)
+            .map(LoadBalancerSupport.REMOVE_VMS, ELBMethod.ELB_PREFIX + ELBMethod.DEREGISTER_INSTANCES)
+            .map(LoadBalancerSupport.ATTACH_LB_TO_SUBNETS, ELBMethod.ELB_PREFIX + ELBMethod.ATTACH_LB_TO_SUBNETS)
+            .map(LoadBalancerSupport.DETACH_LB_FROM_SUBNETS, ELBMethod.ELB_PREFIX + ELBMethod.DETACH_LB_FROM_SUBNETS)
+            .map(LoadBalancerSupport.SET_FIREWALLS, ELBMethod.APPLY_SECURITY_GROUPS_TO_LOAD_BALANCER)
+            .build();
+
     private AWSCloud provider = null;
     private volatile transient ElasticLoadBalancerCapabilities capabilities;
 
@@ -727,43 +744,7 @@ public class ElasticLoadBalancer extends AbstractLoadBalancerSupport<AWSCloud> {
 
     @Override
     public @Nonnull String[] mapServiceAction( @Nonnull ServiceAction action ) {
-        if( action.equals(LoadBalancerSupport.ANY) ) {
-            return new String[]{ELBMethod.ELB_PREFIX + "*"};
-        }
-        else if( action.equals(LoadBalancerSupport.ADD_DATA_CENTERS) ) {
-            return new String[]{ELBMethod.ELB_PREFIX + ELBMethod.ENABLE_AVAILABILITY_ZONES};
-        }
-        else if( action.equals(LoadBalancerSupport.ADD_VMS) ) {
-            return new String[]{ELBMethod.ELB_PREFIX + ELBMethod.REGISTER_INSTANCES};
-        }
-        else if( action.equals(LoadBalancerSupport.CREATE_LOAD_BALANCER) ) {
-            return new String[]{ELBMethod.ELB_PREFIX + ELBMethod.CREATE_LOAD_BALANCER};
-        }
-        else if( action.equals(LoadBalancerSupport.GET_LOAD_BALANCER) || action.equals(LoadBalancerSupport.LIST_LOAD_BALANCER) ) {
-            return new String[]{ELBMethod.ELB_PREFIX + ELBMethod.DESCRIBE_LOAD_BALANCERS};
-        }
-        else if( action.equals(LoadBalancerSupport.GET_LOAD_BALANCER_SERVER_HEALTH) ) {
-            return new String[]{ELBMethod.ELB_PREFIX + ELBMethod.DESCRIBE_INSTANCE_HEALTH};
-        }
-        else if( action.equals(LoadBalancerSupport.REMOVE_DATA_CENTERS) ) {
-            return new String[]{ELBMethod.ELB_PREFIX + ELBMethod.DISABLE_AVAILABILITY_ZONES};
-        }
-        else if( action.equals(LoadBalancerSupport.REMOVE_LOAD_BALANCER) ) {
-            return new String[]{ELBMethod.ELB_PREFIX + ELBMethod.DELETE_LOAD_BALANCER};
-        }
-        else if( action.equals(LoadBalancerSupport.REMOVE_VMS) ) {
-            return new String[]{ELBMethod.ELB_PREFIX + ELBMethod.DEREGISTER_INSTANCES};
-        }
-        else if( action.equals(LoadBalancerSupport.ATTACH_LB_TO_SUBNETS) ) {
-            return new String[]{ELBMethod.ELB_PREFIX + ELBMethod.ATTACH_LB_TO_SUBNETS};
-        }
-        else if( action.equals(LoadBalancerSupport.DETACH_LB_FROM_SUBNETS) ) {
-            return new String[]{ELBMethod.ELB_PREFIX + ELBMethod.DETACH_LB_FROM_SUBNETS};
-        }
-        else if (action.equals(LoadBalancerSupport.SET_FIREWALLS)) {
-            return new String[]{ELBMethod.APPLY_SECURITY_GROUPS_TO_LOAD_BALANCER};
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
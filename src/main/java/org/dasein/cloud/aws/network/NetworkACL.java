@@ -26,6 +26,7 @@ import org.dasein.cloud.Tag;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.compute.EC2Exception;
 import org.dasein.cloud.aws.compute.EC2Method;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.network.*;
 import org.dasein.cloud.util.APITrace;
@@ -52,6 +53,17 @@ import java.util.TreeSet;
 public class NetworkACL extends AbstractNetworkFirewallSupport<AWSCloud> {
     static private final Logger logger = AWSCloud.getLogger(NetworkACL.class);
 
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(FirewallSupport.ANY, EC2Method.EC2_PREFIX + "*")
+            .map(NetworkFirewallSupport.ASSOCIATE, EC2Method.EC2_PREFIX + EC2Method.REPLACE_NETWORK_ACL_ASSOC)
+            .map(NetworkFirewallSupport.AUTHORIZE, EC2Method.EC2_PREFIX + EC2Method.CREATE_NETWORK_ACL_ENTRY, EC2Method.EC2_PREFIX + EC2Method.REPLACE_NETWORK_ACL_ENTRY)
+            .map(NetworkFirewallSupport.CREATE_FIREWALL, EC2Method.EC2_PREFIX + EC2Method.CREATE_NETWORK_ACL)
+            .map(NetworkFirewallSupport.GET_FIREWALL, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_NETWORK_ACLS)
+            .map(FirewallSupport.LIST_FIREWALL, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_NETWORK_ACLS)
+            .map(NetworkFirewallSupport.REMOVE_FIREWALL, EC2Method.EC2_PREFIX + EC2Method.DELETE_NETWORK_ACL)
+            .map(NetworkFirewallSupport.REVOKE, EC2Method.EC2_PREFIX + EC2Method.DELETE_NETWORK_ACL_ENTRY)
+            .build();
+
     private NetworkACLCapabilities capabilities;
 
     NetworkACL(AWSCloud cloud) {
@@ -484,28 +496,7 @@ public class NetworkACL extends AbstractNetworkFirewallSupport<AWSCloud> {
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(FirewallSupport.ANY) ) {
-            return new String[] { EC2Method.EC2_PREFIX + "*" };
-        }
-        else if( action.equals(NetworkFirewallSupport.ASSOCIATE) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.REPLACE_NETWORK_ACL_ASSOC };
-        }
-        else if( action.equals(NetworkFirewallSupport.AUTHORIZE) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.CREATE_NETWORK_ACL_ENTRY, EC2Method.EC2_PREFIX + EC2Method.REPLACE_NETWORK_ACL_ENTRY };
-        }
-        else if( action.equals(NetworkFirewallSupport.CREATE_FIREWALL) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.CREATE_NETWORK_ACL };
-        }
-        else if( action.equals(NetworkFirewallSupport.GET_FIREWALL) || action.equals(FirewallSupport.LIST_FIREWALL) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_NETWORK_ACLS };
-        }
-        else if( action.equals(NetworkFirewallSupport.REMOVE_FIREWALL) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DELETE_NETWORK_ACL };
-        }
-        else if( action.equals(NetworkFirewallSupport.REVOKE) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DELETE_NETWORK_ACL_ENTRY };
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
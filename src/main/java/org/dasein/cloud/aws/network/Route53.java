@@ -26,6 +26,7 @@ import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.compute.EC2Exception;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.network.DNSRecord;
 import org.dasein.cloud.network.DNSRecordType;
@@ -48,6 +49,17 @@ import java.util.TreeSet;
 import java.util.UUID;
 
 public class Route53 implements DNSSupport {
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(DNSSupport.ANY, Route53Method.R53_PREFIX + "*")
+            .map(DNSSupport.ADD_RECORD, Route53Method.R53_PREFIX + Route53Method.CHANGE_RESOURCE_RECORD_SETS)
+            .map(DNSSupport.CREATE_ZONE, Route53Method.R53_PREFIX + Route53Method.CREATE_HOSTED_ZONE)
+            .map(DNSSupport.GET_ZONE, Route53Method.R53_PREFIX + Route53Method.GET_HOSTED_ZONE)
+            .map(DNSSupport.LIST_ZONE, Route53Method.R53_PREFIX + Route53Method.LIST_HOSTED_ZONES)
+            .map(DNSSupport.LIST_RECORD, Route53Method.R53_PREFIX + Route53Method.LIST_RESOURCE_RECORD_SETS)
+            .map(DNSSupport.REMOVE_RECORD, Route53Method.R53_PREFIX + Route53Method.CHANGE_RESOURCE_RECORD_SETS)
+            .map(DNSSupport.REMOVE_ZONE, Route53Method.R53_PREFIX + Route53Method.DELETE_HOSTED_ZONE)
+            .build();
+
     
     private AWSCloud provider;
     
@@ -495,31 +507,7 @@ public class Route53 implements DNSSupport {
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(DNSSupport.ANY) ) {
-            return new String[] { Route53Method.R53_PREFIX + "*" };
-        }
-        else if( action.equals(DNSSupport.ADD_RECORD) ) {
-            return new String[] { Route53Method.R53_PREFIX + Route53Method.CHANGE_RESOURCE_RECORD_SETS };
-        }
-        else if( action.equals(DNSSupport.CREATE_ZONE) ) {
-            return new String[] { Route53Method.R53_PREFIX + Route53Method.CREATE_HOSTED_ZONE };
-        }
-        else if( action.equals(DNSSupport.GET_ZONE) ) {
-            return new String[] { Route53Method.R53_PREFIX + Route53Method.GET_HOSTED_ZONE};
-        }
-        else if( action.equals(DNSSupport.LIST_ZONE) ) {
-            return new String[] { Route53Method.R53_PREFIX + Route53Method.LIST_HOSTED_ZONES };
-        }
-        else if( action.equals(DNSSupport.LIST_RECORD) ) {
-            return new String[] { Route53Method.R53_PREFIX + Route53Method.LIST_RESOURCE_RECORD_SETS };
-        }
-        else if( action.equals(DNSSupport.REMOVE_RECORD) ) {
-            return new String[] { Route53Method.R53_PREFIX + Route53Method.CHANGE_RESOURCE_RECORD_SETS };
-        }
-        else if( action.equals(DNSSupport.REMOVE_ZONE) ) {
-            return new String[] { Route53Method.R53_PREFIX + Route53Method.DELETE_HOSTED_ZONE };
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     private void populateZoneStatus(@Nonnull Jiterator<ResourceStatus> iterator, @Nullable String marker) throws CloudException, InternalException {
@@ -36,6 +36,7 @@ import org.dasein.cloud.CloudException;
 import org.dasein.cloud.InternalException;
 import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.aws.RetryPolicy;
 import org.dasein.cloud.aws.compute.EC2Exception;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.network.DNSSupport;
@@ -93,7 +94,6 @@ public class Route53Method {
         return new ServiceAction[0];
     }
 
-    private int                attempts    = 0;
 	private String             dateString  = null;
 	private String             method      = null;
     private String             operation   = null;
@@ -146,6 +146,26 @@ public class Route53Method {
 	}
 	
 	public Document invoke(String body) throws EC2Exception, CloudException, InternalException {
+	    // Route 53 is a global service, so it has a retry budget of its own
+	    RetryPolicy.Attempt attempt = provider.getRetryPolicy().begin(provider.getContext().getAccountNumber(), R53_PREFIX);
+
+	    while( true ) {
+	        try {
+	            Document doc = invokeOnce(body);
+
+	            attempt.succeeded();
+	            return doc;
+	        }
+	        catch( EC2Exception e ) {
+	            if( !attempt.retry(e) ) {
+	                throw e;
+	            }
+	            logger.warn("Retrying " + operation + " after " + e.getSummary());
+	        }
+	    }
+	}
+
+	private Document invokeOnce(String body) throws EC2Exception, CloudException, InternalException {
 	    if( method.equals("GET") ) {
 	        return get();
 	    }
@@ -172,7 +192,6 @@ public class Route53Method {
             HttpResponse response;
     		int status;
     
-    		attempts++;
     		method.addHeader("Content-Type", "text/xml");
     		method.addHeader("x-amz-date", dateString);
     		method.addHeader("Date", dateString);
@@ -188,6 +207,7 @@ public class Route53Method {
             }
             String xml;
 
+            provider.getRateLimiter().acquire(provider, R53_PREFIX, null, method.getMethod());
             try {
                 try {
                     APITrace.trace(provider, operation);
@@ -289,29 +309,18 @@ public class Route53Method {
     		}
     		else {
     			if( status == HttpStatus.SC_SERVICE_UNAVAILABLE || status == HttpStatus.SC_INTERNAL_SERVER_ERROR ) {
-    				if( attempts >= 5 ) {
-    					String msg;
-    					
-    					if( status == HttpStatus.SC_SERVICE_UNAVAILABLE ) {
-    						msg = "Cloud service is currently unavailable.";
-    					}
-    					else {
-    						msg = "The cloud service encountered a server error while processing your request.";
-                            msg = msg + "Response from server was:\n" + xml;
-    					}
-    					logger.error(msg);
-    					throw new CloudException(msg);
+    				String msg;
+
+    				if( status == HttpStatus.SC_SERVICE_UNAVAILABLE ) {
+    					msg = "Cloud service is currently unavailable.";
     				}
     				else {
-    					try { Thread.sleep(5000L); }
-    					catch( InterruptedException ignore ) { }
-    					try {
-    					    return invokeMethod(method.getClass().newInstance());
-    					}
-    					catch( Throwable t ) {
-    					    throw new InternalException(t);
-    					}
+    					msg = "The cloud service encountered a server error while processing your request.";
+                        msg = msg + "Response from server was:\n" + xml;
     				}
+    				logger.error(msg);
+    				// the retry policy decides whether this is sent again
+    				throw EC2Exception.create(status, null, status == HttpStatus.SC_SERVICE_UNAVAILABLE ? "ServiceUnavailable" : "InternalError", msg);
     			}
                 Document doc;
 
@@ -350,9 +359,6 @@ public class Route53Method {
     		}
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
             logger.debug("Done");
         }
 	}
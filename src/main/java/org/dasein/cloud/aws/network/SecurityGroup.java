@@ -25,6 +25,7 @@ import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.AWSResourceNotFoundException;
 import org.dasein.cloud.aws.compute.EC2Exception;
 import org.dasein.cloud.aws.compute.EC2Method;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.compute.ComputeServices;
 import org.dasein.cloud.compute.VirtualMachineSupport;
 import org.dasein.cloud.identity.ServiceAction;
@@ -42,6 +43,16 @@ import java.util.*;
 public class SecurityGroup extends AbstractFirewallSupport<AWSCloud> {
     static private final Logger logger = AWSCloud.getLogger(SecurityGroup.class);
 
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(FirewallSupport.ANY, EC2Method.EC2_PREFIX + "*")
+            .map(FirewallSupport.AUTHORIZE, EC2Method.EC2_PREFIX + EC2Method.AUTHORIZE_SECURITY_GROUP_INGRESS, EC2Method.EC2_PREFIX + EC2Method.AUTHORIZE_SECURITY_GROUP_EGRESS)
+            .map(FirewallSupport.CREATE_FIREWALL, EC2Method.EC2_PREFIX + EC2Method.CREATE_SECURITY_GROUP)
+            .map(FirewallSupport.GET_FIREWALL, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_SECURITY_GROUPS)
+            .map(FirewallSupport.LIST_FIREWALL, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_SECURITY_GROUPS)
+            .map(FirewallSupport.REMOVE_FIREWALL, EC2Method.EC2_PREFIX + EC2Method.DELETE_SECURITY_GROUP)
+            .map(FirewallSupport.REVOKE, EC2Method.EC2_PREFIX + EC2Method.REVOKE_SECURITY_GROUP_INGRESS, EC2Method.EC2_PREFIX + EC2Method.REVOKE_SECURITY_GROUP_EGRESS)
+            .build();
+
     private transient volatile SecurityGroupCapabilities capabilities;
 
     SecurityGroup(AWSCloud provider) {
@@ -604,20 +615,7 @@ public class SecurityGroup extends AbstractFirewallSupport<AWSCloud> {
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(FirewallSupport.ANY) ) {
-            return new String[]{EC2Method.EC2_PREFIX + "*"};
-        } else if( action.equals(FirewallSupport.AUTHORIZE) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.AUTHORIZE_SECURITY_GROUP_INGRESS, EC2Method.EC2_PREFIX + EC2Method.AUTHORIZE_SECURITY_GROUP_EGRESS};
-        } else if( action.equals(FirewallSupport.CREATE_FIREWALL) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.CREATE_SECURITY_GROUP};
-        } else if( action.equals(FirewallSupport.GET_FIREWALL) || action.equals(FirewallSupport.LIST_FIREWALL) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_SECURITY_GROUPS};
-        } else if( action.equals(FirewallSupport.REMOVE_FIREWALL) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DELETE_SECURITY_GROUP};
-        } else if( action.equals(FirewallSupport.REVOKE) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.REVOKE_SECURITY_GROUP_INGRESS, EC2Method.EC2_PREFIX + EC2Method.REVOKE_SECURITY_GROUP_EGRESS};
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
@@ -25,6 +25,7 @@ import org.dasein.cloud.*;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.compute.EC2Exception;
 import org.dasein.cloud.aws.compute.EC2Method;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.compute.ComputeServices;
 import org.dasein.cloud.compute.VirtualMachine;
 import org.dasein.cloud.compute.VirtualMachineSupport;
@@ -45,6 +46,33 @@ import java.util.*;
 public class VPC extends AbstractVLANSupport<AWSCloud> {
     static private final Logger logger = Logger.getLogger(VPC.class);
 
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(VLANSupport.ANY, EC2Method.EC2_PREFIX + "*")
+            .map(VLANSupport.ASSIGN_ROUTE_TO_SUBNET, EC2Method.EC2_PREFIX + EC2Method.ASSOCIATE_ROUTE_TABLE)
+            .map(VLANSupport.ASSIGN_ROUTE_TO_VLAN, EC2Method.EC2_PREFIX + EC2Method.REPLACE_ROUTE_TABLE_ASSOCIATION)
+            .map(VLANSupport.ATTACH_INTERNET_GATEWAY, EC2Method.EC2_PREFIX + EC2Method.ATTACH_INTERNET_GATEWAY)
+            .map(VLANSupport.CREATE_INTERNET_GATEWAY, EC2Method.EC2_PREFIX + EC2Method.CREATE_INTERNET_GATEWAY)
+            .map(VLANSupport.CREATE_ROUTING_TABLE, EC2Method.EC2_PREFIX + EC2Method.CREATE_ROUTE_TABLE)
+            .map(VLANSupport.ADD_ROUTE, EC2Method.EC2_PREFIX + EC2Method.CREATE_ROUTE)
+            .map(VLANSupport.CREATE_SUBNET, EC2Method.EC2_PREFIX + EC2Method.CREATE_SUBNET)
+            .map(VLANSupport.CREATE_VLAN, EC2Method.EC2_PREFIX + EC2Method.CREATE_VPC, EC2Method.EC2_PREFIX + EC2Method.CREATE_DHCP_OPTIONS, EC2Method.EC2_PREFIX + EC2Method.ASSOCIATE_DHCP_OPTIONS, EC2Method.EC2_PREFIX + EC2Method.CREATE_INTERNET_GATEWAY, EC2Method.EC2_PREFIX + EC2Method.ATTACH_INTERNET_GATEWAY)
+            .map(VLANSupport.GET_SUBNET, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_SUBNETS)
+            .map(VLANSupport.GET_VLAN, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPCS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_DHCP_OPTIONS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_INTERNET_GATEWAYS)
+            .map(VLANSupport.LIST_SUBNET, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_SUBNETS)
+            .map(VLANSupport.LIST_VLAN, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPCS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_DHCP_OPTIONS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_INTERNET_GATEWAYS)
+            .map(VLANSupport.REMOVE_INTERNET_GATEWAY, EC2Method.EC2_PREFIX + EC2Method.DELETE_INTERNET_GATEWAY, EC2Method.EC2_PREFIX + EC2Method.DETACH_INTERNET_GATEWAY)
+            .map(VLANSupport.REMOVE_SUBNET, EC2Method.EC2_PREFIX + EC2Method.DELETE_SUBNET)
+            .map(VLANSupport.REMOVE_VLAN, EC2Method.EC2_PREFIX + EC2Method.DELETE_VPC)
+            .map(VLANSupport.CREATE_NIC, EC2Method.EC2_PREFIX + EC2Method.CREATE_NIC)
+            .map(VLANSupport.ATTACH_NIC, EC2Method.EC2_PREFIX + EC2Method.ATTACH_NIC)
+            .map(VLANSupport.DETACH_NIC, EC2Method.EC2_PREFIX + EC2Method.DETACH_NIC)
+            .map(VLANSupport.REMOVE_NIC, EC2Method.EC2_PREFIX + EC2Method.DELETE_NIC)
+            .map(VLANSupport.GET_NIC, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_NICS)
+            .map(VLANSupport.LIST_NIC, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_NICS)
+            .map(VLANSupport.REMOVE_ROUTE, EC2Method.EC2_PREFIX + EC2Method.DELETE_ROUTE)
+            .map(VLANSupport.REMOVE_ROUTING_TABLE, EC2Method.EC2_PREFIX + EC2Method.DELETE_ROUTE_TABLE)
+            .build();
+
     private transient volatile NetworkCapabilities capabilities;
 
     VPC(AWSCloud provider) {
@@ -2284,56 +2312,7 @@ public class VPC extends AbstractVLANSupport<AWSCloud> {
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(VLANSupport.ANY) ) {
-            return new String[]{EC2Method.EC2_PREFIX + "*"};
-        } else if( action.equals(VLANSupport.ASSIGN_ROUTE_TO_SUBNET) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.ASSOCIATE_ROUTE_TABLE};
-        } else if( action.equals(VLANSupport.ASSIGN_ROUTE_TO_VLAN) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.REPLACE_ROUTE_TABLE_ASSOCIATION};
-        } else if( action.equals(VLANSupport.ATTACH_INTERNET_GATEWAY) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.ATTACH_INTERNET_GATEWAY};
-        } else if( action.equals(VLANSupport.CREATE_INTERNET_GATEWAY) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.CREATE_INTERNET_GATEWAY};
-        } else if( action.equals(VLANSupport.CREATE_ROUTING_TABLE) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.CREATE_ROUTE_TABLE};
-        } else if( action.equals(VLANSupport.ADD_ROUTE) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.CREATE_ROUTE};
-        } else if( action.equals(VLANSupport.CREATE_SUBNET) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.CREATE_SUBNET};
-        } else if( action.equals(VLANSupport.CREATE_VLAN) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.CREATE_VPC, EC2Method.EC2_PREFIX + EC2Method.CREATE_DHCP_OPTIONS, EC2Method.EC2_PREFIX + EC2Method.ASSOCIATE_DHCP_OPTIONS, EC2Method.EC2_PREFIX + EC2Method.CREATE_INTERNET_GATEWAY, EC2Method.EC2_PREFIX + EC2Method.ATTACH_INTERNET_GATEWAY};
-        } else if( action.equals(VLANSupport.GET_SUBNET) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_SUBNETS};
-        } else if( action.equals(VLANSupport.GET_VLAN) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPCS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_DHCP_OPTIONS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_INTERNET_GATEWAYS};
-        } else if( action.equals(VLANSupport.LIST_SUBNET) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_SUBNETS};
-        } else if( action.equals(VLANSupport.LIST_VLAN) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPCS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_DHCP_OPTIONS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_INTERNET_GATEWAYS};
-        } else if( action.equals(VLANSupport.REMOVE_INTERNET_GATEWAY) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DELETE_INTERNET_GATEWAY, EC2Method.EC2_PREFIX + EC2Method.DETACH_INTERNET_GATEWAY};
-        } else if( action.equals(VLANSupport.REMOVE_SUBNET) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DELETE_SUBNET};
-        } else if( action.equals(VLANSupport.REMOVE_VLAN) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DELETE_VPC};
-        } else if( action.equals(VLANSupport.CREATE_NIC) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.CREATE_NIC};
-        } else if( action.equals(VLANSupport.ATTACH_NIC) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.ATTACH_NIC};
-        } else if( action.equals(VLANSupport.DETACH_NIC) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DETACH_NIC};
-        } else if( action.equals(VLANSupport.REMOVE_NIC) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DELETE_NIC};
-        } else if( action.equals(VLANSupport.GET_NIC) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_NICS};
-        } else if( action.equals(VLANSupport.LIST_NIC) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_NICS};
-        } else if( action.equals(VLANSupport.REMOVE_ROUTE) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DELETE_ROUTE};
-        } else if( action.equals(VLANSupport.REMOVE_ROUTING_TABLE) ) {
-            return new String[]{EC2Method.EC2_PREFIX + EC2Method.DELETE_ROUTE_TABLE};
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
@@ -27,6 +27,7 @@ import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.compute.EC2Exception;
 import org.dasein.cloud.aws.compute.EC2Method;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.network.*;
 import org.dasein.cloud.util.APITrace;
@@ -40,6 +41,20 @@ import java.util.*;
 
 @SuppressWarnings("UnusedDeclaration")
 public class VPCGateway extends AbstractVpnSupport<AWSCloud> {
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(VpnSupport.ANY, EC2Method.EC2_PREFIX + "*")
+            .map(VpnSupport.ATTACH, EC2Method.EC2_PREFIX + EC2Method.ATTACH_VPN_GATEWAY)
+            .map(VpnSupport.CREATE_GATEWAY, EC2Method.EC2_PREFIX + EC2Method.CREATE_CUSTOMER_GATEWAY)
+            .map(VpnSupport.CREATE_VPN, EC2Method.EC2_PREFIX + EC2Method.CREATE_VPN_GATEWAY)
+            .map(VpnSupport.GET_GATEWAY, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_CUSTOMER_GATEWAYS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPN_CONNECTIONS)
+            .map(VpnSupport.LIST_GATEWAY, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_CUSTOMER_GATEWAYS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPN_CONNECTIONS)
+            .map(VpnSupport.GET_VPN, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPN_GATEWAYS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPN_CONNECTIONS)
+            .map(VpnSupport.LIST_VPN, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPN_GATEWAYS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPN_CONNECTIONS)
+            .map(VpnSupport.REMOVE_GATEWAY, EC2Method.EC2_PREFIX + EC2Method.DELETE_CUSTOMER_GATEWAY)
+            .map(VpnSupport.REMOVE_VPN, EC2Method.EC2_PREFIX + EC2Method.DELETE_VPN_GATEWAY)
+            .map(VpnSupport.DETACH, EC2Method.EC2_PREFIX + EC2Method.DETACH_VPN_GATEWAY)
+            .build();
+
     Logger logger = AWSCloud.getLogger(VPCGateway.class);
 
     private VPCGatewayCapabilities capabilities;
@@ -618,34 +633,7 @@ public class VPCGateway extends AbstractVpnSupport<AWSCloud> {
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(VpnSupport.ANY) ) {
-            return new String[] { EC2Method.EC2_PREFIX + "*" };
-        }
-        else if( action.equals(VpnSupport.ATTACH) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.ATTACH_VPN_GATEWAY };
-        }
-        else if( action.equals(VpnSupport.CREATE_GATEWAY) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.CREATE_CUSTOMER_GATEWAY };
-        }
-        else if( action.equals(VpnSupport.CREATE_VPN) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.CREATE_VPN_GATEWAY };
-        }
-        else if( action.equals(VpnSupport.GET_GATEWAY) || action.equals(VpnSupport.LIST_GATEWAY) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_CUSTOMER_GATEWAYS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPN_CONNECTIONS };
-        }
-        else if( action.equals(VpnSupport.GET_VPN) || action.equals(VpnSupport.LIST_VPN) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPN_GATEWAYS, EC2Method.EC2_PREFIX + EC2Method.DESCRIBE_VPN_CONNECTIONS };
-        }
-        else if( action.equals(VpnSupport.REMOVE_GATEWAY) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DELETE_CUSTOMER_GATEWAY };
-        }
-        else if( action.equals(VpnSupport.REMOVE_VPN) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DELETE_VPN_GATEWAY };
-        }
-        else if( action.equals(VpnSupport.DETACH) ) {
-            return new String[] { EC2Method.EC2_PREFIX + EC2Method.DETACH_VPN_GATEWAY };
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
     
     private @Nullable VpnConnection toConnection(@Nullable Node node) throws CloudException, InternalException {
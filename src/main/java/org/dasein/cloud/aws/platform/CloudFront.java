@@ -36,6 +36,7 @@ import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.platform.CloudFrontMethod.CloudFrontResponse;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.platform.CDNCapabilities;
 import org.dasein.cloud.platform.CDNSupport;
@@ -47,6 +48,14 @@ import org.w3c.dom.NodeList;
 
 public class CloudFront implements CDNSupport {
 	static private final Logger logger = AWSCloud.getLogger(CloudFront.class);
+
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(CDNSupport.ANY, CloudFrontMethod.CF_PREFIX + "*")
+            .map(CDNSupport.CREATE_DISTRIBUTION, CloudFrontMethod.CF_PREFIX + "CreateDistribution")
+            .map(CDNSupport.GET_DISTRIBUTION, CloudFrontMethod.CF_PREFIX + "GetDistribution")
+            .map(CDNSupport.LIST_DISTRIBUTION, CloudFrontMethod.CF_PREFIX + "ListDistributions")
+            .map(CDNSupport.REMOVE_DISTRIBUTION, CloudFrontMethod.CF_PREFIX + "DeleteDistribution")
+            .build();
     private volatile transient CloudFrontCapabilities capabilities;
 	private AWSCloud provider = null;
 	
@@ -331,22 +340,7 @@ public class CloudFront implements CDNSupport {
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(CDNSupport.ANY) ) {
-            return new String[] { CloudFrontMethod.CF_PREFIX + "*" };
-        }
-        else if( action.equals(CDNSupport.CREATE_DISTRIBUTION) ) {
-            return new String[] { CloudFrontMethod.CF_PREFIX + "CreateDistribution" };
-        }
-        else if( action.equals(CDNSupport.GET_DISTRIBUTION) ) {
-            return new String[] { CloudFrontMethod.CF_PREFIX + "GetDistribution"};
-        }
-        else if( action.equals(CDNSupport.LIST_DISTRIBUTION) ) {
-            return new String[] { CloudFrontMethod.CF_PREFIX + "ListDistributions" };
-        }
-        else if( action.equals(CDNSupport.REMOVE_DISTRIBUTION) ) {
-            return new String[] { CloudFrontMethod.CF_PREFIX + "DeleteDistribution" };
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
 	@Override
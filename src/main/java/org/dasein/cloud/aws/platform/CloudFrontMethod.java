@@ -27,6 +27,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.InternalException;
@@ -148,7 +149,7 @@ public class CloudFrontMethod {
         client = provider.getClient();
         CloudFrontResponse response = new CloudFrontResponse();
 
-        HttpResponse httpResponse;
+        HttpResponse httpResponse = null;
         int status;
 
         try {
@@ -289,8 +290,8 @@ public class CloudFrontMethod {
                 }
             }
         } finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
+            if( httpResponse != null ) {
+                EntityUtils.consumeQuietly(httpResponse.getEntity());
             }
         }
     }
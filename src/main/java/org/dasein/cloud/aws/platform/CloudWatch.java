@@ -26,6 +26,7 @@ import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.compute.EC2Exception;
 import org.dasein.cloud.aws.compute.EC2Method;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.platform.*;
 import org.dasein.cloud.util.APITrace;
@@ -53,6 +54,12 @@ public class CloudWatch extends AbstractMonitoringSupport {
     public static final String STATE_ALARM = "ALARM";
     public static final String STATE_INSUFFICIENT_DATA = "INSUFFICIENT_DATA";
     static private final Logger logger = Logger.getLogger(CloudWatch.class);
+
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(MonitoringSupport.ANY, EC2Method.CW_PREFIX + "*")
+            .map(MonitoringSupport.LIST_METRICS, EC2Method.CW_PREFIX + EC2Method.LIST_METRICS)
+            .map(MonitoringSupport.DESCRIBE_ALARMS, EC2Method.CW_PREFIX + EC2Method.DESCRIBE_ALARMS)
+            .build();
     private AWSCloud provider = null;
 
     CloudWatch( AWSCloud provider ) {
@@ -516,16 +523,7 @@ public class CloudWatch extends AbstractMonitoringSupport {
 
     @Override
     public @Nonnull String[] mapServiceAction( @Nonnull ServiceAction action ) {
-        if( action.equals(MonitoringSupport.ANY) ) {
-            return new String[]{EC2Method.CW_PREFIX + "*"};
-        }
-        if( action.equals(MonitoringSupport.LIST_METRICS) ) {
-            return new String[]{EC2Method.CW_PREFIX + EC2Method.LIST_METRICS};
-        }
-        if( action.equals(MonitoringSupport.DESCRIBE_ALARMS) ) {
-            return new String[]{EC2Method.CW_PREFIX + EC2Method.DESCRIBE_ALARMS};
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
 }
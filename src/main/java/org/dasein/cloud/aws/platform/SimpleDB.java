@@ -36,6 +36,7 @@ import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.compute.EC2Exception;
 import org.dasein.cloud.aws.compute.EC2Method;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.platform.KeyValueDatabase;
 import org.dasein.cloud.platform.KeyValueDatabaseCapabilities;
@@ -59,6 +60,18 @@ public class SimpleDB implements KeyValueDatabaseSupport {
     static public final String LIST_DOMAINS      = "ListDomains";
     static public final String PUT_ATTRIBUTES    = "PutAttributes";
     static public final String SELECT            = "Select";
+
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(KeyValueDatabaseSupport.ANY, EC2Method.SDB_PREFIX + "*")
+            .map(KeyValueDatabaseSupport.CREATE_KVDB, EC2Method.SDB_PREFIX + CREATE_DOMAIN)
+            .map(KeyValueDatabaseSupport.DELETE, EC2Method.SDB_PREFIX + DELETE_DOMAIN)
+            .map(KeyValueDatabaseSupport.GET_KVDB, EC2Method.SDB_PREFIX + LIST_DOMAINS)
+            .map(KeyValueDatabaseSupport.LIST_KVDB, EC2Method.SDB_PREFIX + LIST_DOMAINS)
+            .map(KeyValueDatabaseSupport.PUT, EC2Method.SDB_PREFIX + PUT_ATTRIBUTES)
+            .map(KeyValueDatabaseSupport.REMOVE_KVDB, EC2Method.SDB_PREFIX + DELETE_DOMAIN)
+            .map(KeyValueDatabaseSupport.SELECT, EC2Method.SDB_PREFIX + SELECT)
+            .build();
+
     private volatile transient SimpleDBCapabilities capabilities;
 
     static public @Nonnull ServiceAction[] asSimpleDBServiceAction( @Nonnull String action ) {
@@ -450,31 +463,7 @@ public class SimpleDB implements KeyValueDatabaseSupport {
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(KeyValueDatabaseSupport.ANY) ) {
-            return new String[] { EC2Method.SDB_PREFIX + "*" };
-        }
-        else if( action.equals(KeyValueDatabaseSupport.CREATE_KVDB) ) {
-            return new String[] { EC2Method.SDB_PREFIX + CREATE_DOMAIN };
-        }
-        else if( action.equals(KeyValueDatabaseSupport.DELETE) ) {
-            return new String[] { EC2Method.SDB_PREFIX + DELETE_DOMAIN };            
-        }
-        else if( action.equals(KeyValueDatabaseSupport.GET_KVDB) ) {
-            return new String[] { EC2Method.SDB_PREFIX + LIST_DOMAINS };
-        }
-        else if( action.equals(KeyValueDatabaseSupport.LIST_KVDB) ) {
-            return new String[] { EC2Method.SDB_PREFIX + LIST_DOMAINS };
-        }
-        else if( action.equals(KeyValueDatabaseSupport.PUT) ) {
-            return new String[] { EC2Method.SDB_PREFIX + PUT_ATTRIBUTES };
-        }
-        else if( action.equals(KeyValueDatabaseSupport.REMOVE_KVDB) ) {
-            return new String[] { EC2Method.SDB_PREFIX + DELETE_DOMAIN };
-        }
-        else if( action.equals(KeyValueDatabaseSupport.SELECT) ) {
-            return new String[] { EC2Method.SDB_PREFIX + SELECT };
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
@@ -19,9 +19,13 @@
 
 package org.dasein.cloud.aws.storage;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.apache.log4j.Logger;
 import org.dasein.cloud.*;
 import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.storage.*;
 import org.dasein.cloud.util.APITrace;
@@ -39,6 +43,9 @@ import org.json.JSONObject;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -54,6 +61,21 @@ import java.util.*;
 public class Glacier extends AbstractBlobStoreSupport<AWSCloud> implements OfflineStoreSupport {
     static private final Logger logger = AWSCloud.getLogger(Glacier.class);
 
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(BlobStoreSupport.ANY, GlacierMethod.GLACIER_PREFIX + "*")
+            .map(BlobStoreSupport.CREATE_BUCKET, GlacierMethod.GLACIER_PREFIX + "CreateVault")
+            .map(BlobStoreSupport.GET_BUCKET, GlacierMethod.GLACIER_PREFIX + "DescribeVault")
+            .map(BlobStoreSupport.LIST_BUCKET, GlacierMethod.GLACIER_PREFIX + "ListVaults")
+            .map(BlobStoreSupport.REMOVE_BUCKET, GlacierMethod.GLACIER_PREFIX + "DeleteVault")
+            .map(BlobStoreSupport.UPLOAD, GlacierMethod.GLACIER_PREFIX + "UploadArchive")
+            .map(OfflineStoreSupport.CREATE_REQUEST, GlacierMethod.GLACIER_PREFIX + "InitiateJob")
+            .map(OfflineStoreSupport.GET_REQUEST, GlacierMethod.GLACIER_PREFIX + "DescribeJob")
+            .map(OfflineStoreSupport.LIST_REQUEST, GlacierMethod.GLACIER_PREFIX + "ListJobs")
+            .map(OfflineStoreSupport.GET_REQUEST_RESULT, GlacierMethod.GLACIER_PREFIX + "GetJobOutput")
+            .build();
+
+    static private final JsonFactory jsonFactory = new JsonFactory();
+
     public static final String ACTION_ARCHIVE_RETRIEVAL = "ArchiveRetrieval";
     public static final String ACTION_INVENTORY_RETRIEVAL = "InventoryRetrieval";
     public static final String HEADER_JOB_ID = "x-amz-job-id";
@@ -345,37 +367,7 @@ public class Glacier extends AbstractBlobStoreSupport<AWSCloud> implements Offli
 
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
-        if( action.equals(BlobStoreSupport.ANY) ) {
-            return new String[] { GlacierMethod.GLACIER_PREFIX + "*" };
-        }
-        else if( action.equals(BlobStoreSupport.CREATE_BUCKET) ) {
-            return new String[] { GlacierMethod.GLACIER_PREFIX + "CreateVault" };
-        }
-        else if( action.equals(BlobStoreSupport.GET_BUCKET) ) {
-            return new String[] { GlacierMethod.GLACIER_PREFIX + "DescribeVault" };
-        }
-        else if( action.equals(BlobStoreSupport.LIST_BUCKET) ) {
-            return new String[] { GlacierMethod.GLACIER_PREFIX + "ListVaults" };
-        }
-        else if ( action.equals(BlobStoreSupport.REMOVE_BUCKET) ) {
-            return new String[] { GlacierMethod.GLACIER_PREFIX + "DeleteVault"};
-        }
-        else if( action.equals(BlobStoreSupport.UPLOAD) ) {
-            return new String[] { GlacierMethod.GLACIER_PREFIX + "UploadArchive" };
-        }
-        else if ( action.equals(OfflineStoreSupport.CREATE_REQUEST) ) {
-            return new String[] { GlacierMethod.GLACIER_PREFIX + "InitiateJob" };
-        }
-        else if ( action.equals(OfflineStoreSupport.GET_REQUEST) ) {
-            return new String[] { GlacierMethod.GLACIER_PREFIX + "DescribeJob" };
-        }
-        else if ( action.equals(OfflineStoreSupport.LIST_REQUEST) ) {
-            return new String[] { GlacierMethod.GLACIER_PREFIX + "ListJobs" };
-        }
-        else if ( action.equals(OfflineStoreSupport.GET_REQUEST_RESULT) ) {
-            return new String[] { GlacierMethod.GLACIER_PREFIX + "GetJobOutput" };
-        }
-        return new String[0];
+        return serviceActionIndex.map(action);
     }
 
     @Override
@@ -384,9 +376,16 @@ public class Glacier extends AbstractBlobStoreSupport<AWSCloud> implements Offli
     }
 
     protected void put(@Nullable String bucket, @Nonnull String object, @Nonnull File file) throws CloudException, InternalException {
+        putArchive(bucket, object, file);
+    }
+
+    private @Nonnull String putArchive(@Nullable String bucket, @Nonnull String object, @Nonnull File file) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "Blob.putFile");
         try {
-            // TODO: upload
+            if( bucket == null ) {
+                throw new OperationNotSupportedException("Root objects are not supported");
+            }
+            return new GlacierMultipartUpload(getProvider(), bucket, object, file).upload();
         }
         finally {
             APITrace.end();
@@ -396,7 +395,15 @@ public class Glacier extends AbstractBlobStoreSupport<AWSCloud> implements Offli
     protected void put(@Nullable String bucket, @Nonnull String object, @Nonnull String content) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "Blob.putString");
         try {
-            // TODO: upload
+            if( bucket == null ) {
+                throw new OperationNotSupportedException("Root objects are not supported");
+            }
+            try {
+                GlacierMultipartUpload.uploadArchive(getProvider(), bucket, object, ByteBuffer.wrap(content.getBytes("utf-8")));
+            }
+            catch( UnsupportedEncodingException e ) {
+                throw new InternalException(e);
+            }
         }
         finally {
             APITrace.end();
@@ -464,8 +471,10 @@ public class Glacier extends AbstractBlobStoreSupport<AWSCloud> implements Offli
             if( !exists(bucket) ) {
                 createBucket(bucket, false);
             }
-            put(bucket, fileName, source);
-            return getObject(bucket, fileName);
+            // archives are only known by the id Glacier assigns them
+            String archiveId = putArchive(bucket, fileName, source);
+
+            return Blob.getInstance(getContext().getRegionId(), archiveId, bucket, archiveId, System.currentTimeMillis(), new Storage<Byte>(source.length(), Storage.BYTE));
         }
         finally {
             APITrace.end();
@@ -669,8 +678,27 @@ public class Glacier extends AbstractBlobStoreSupport<AWSCloud> implements Offli
     public OfflineStoreRequest createDownloadRequest(@Nonnull String bucket, @Nonnull String object) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "Blob.createDownloadRequest");
         try {
-            // todo
-            throw new OperationNotSupportedException("glacier downloads are not yet supported");
+            try {
+                JSONObject bodyJson = new JSONObject();
+                bodyJson.put("Type", "archive-retrieval");
+                bodyJson.put("ArchiveId", object);
+
+                final GlacierMethod method = GlacierMethod.build(getProvider(), GlacierAction.CREATE_JOB)
+                        .vaultId(bucket).bodyText(bodyJson.toString()).toMethod();
+
+                Map<String,String> responseHeaders = method.invokeHeaders();
+                if (!responseHeaders.containsKey(HEADER_JOB_ID)) {
+                    throw new CloudException("Glacier response missing " + HEADER_JOB_ID + " header");
+                }
+                String jobId = responseHeaders.get(HEADER_JOB_ID);
+
+                return new OfflineStoreRequest(jobId, bucket, object, OfflineStoreRequestAction.DOWNLOAD,
+                        ACTION_ARCHIVE_RETRIEVAL, null, "", OfflineStoreRequestStatus.IN_PROGRESS, "",
+                        System.currentTimeMillis(), -1);
+
+            } catch (JSONException e) {
+                throw new CloudException(e);
+            }
         }
         finally {
             APITrace.end();
@@ -679,32 +707,63 @@ public class Glacier extends AbstractBlobStoreSupport<AWSCloud> implements Offli
 
     @Nonnull
     @Override
-    public Iterable<Blob> getListRequestResult(@Nonnull String bucket, @Nonnull String requestId)
+    public Iterable<Blob> getListRequestResult(@Nonnull final String bucket, @Nonnull final String requestId)
             throws InternalException, CloudException {
         final String regionId = getContext().getRegionId();
 
         if( regionId == null ) {
             throw new CloudException("No region ID was specified");
         }
+        getProvider().hold();
+        PopulatorThread <Blob> populator = new PopulatorThread<Blob>(new JiteratorPopulator<Blob>() {
+            public void populate(@Nonnull Jiterator<Blob> iterator) throws CloudException, InternalException {
+                try {
+                    loadInventory(regionId, bucket, requestId, iterator);
+                }
+                finally {
+                    getProvider().release();
+                }
+            }
+        });
+        populator.populate();
+        return populator.getResult();
+    }
+
+    /**
+     * Reads the inventory with a streaming parser, pushing each archive as soon as it is parsed so that memory use
+     * does not grow with the number of archives in the vault.
+     */
+    private void loadInventory(@Nonnull String regionId, @Nonnull String bucket, @Nonnull String requestId, @Nonnull Jiterator<Blob> iterator) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "Blob.getListRequestResult");
         try {
-
             final GlacierMethod method = GlacierMethod.build(getProvider(), GlacierAction.GET_JOB_OUTPUT)
                     .vaultId(bucket).jobId(requestId).toMethod();
+            JsonParser parser = null;
 
             try {
-                JSONObject jsonObject = method.invokeJson();
-                JSONArray archives = jsonObject.getJSONArray("ArchiveList");
-
-                // not using thread here because there is no potential for pagination in the API
-                List<Blob> blobs = new ArrayList<Blob>(archives.length());
-                for (int i=0; i<archives.length(); i++) {
-                    blobs.add(loadArchiveJson(archives.getJSONObject(i), bucket, regionId));
+                parser = jsonFactory.createParser(method.invokeStream(null));
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new CloudException("Invalid Glacier inventory: expected JSON object");
                 }
-                return blobs;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
 
-            } catch (JSONException e) {
+                    if (parser.nextToken() == JsonToken.START_ARRAY && field.equals("ArchiveList")) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            iterator.push(loadArchiveJson(parser, bucket, regionId));
+                        }
+                    }
+                    else {
+                        parser.skipChildren();
+                    }
+                }
+            } catch (IOException e) {
                 throw new CloudException(e);
+            } finally {
+                if (parser != null) {
+                    try { parser.close(); }
+                    catch (IOException ignore) { }
+                }
             }
         }
         finally {
@@ -712,19 +771,59 @@ public class Glacier extends AbstractBlobStoreSupport<AWSCloud> implements Offli
         }
     }
 
-    private Blob loadArchiveJson(JSONObject jsonObject, String bucket, String regionId) throws JSONException {
-        String archiveId = jsonObject.getString("ArchiveId");
-        Storage<Byte> size = new Storage<Byte>(jsonObject.getLong("Size"), Storage.BYTE);
+    private Blob loadArchiveJson(JsonParser parser, String bucket, String regionId) throws IOException {
+        String archiveId = null;
+        String creationDate = null;
+        long size = 0L;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+
+            parser.nextToken();
+            if (field.equals("ArchiveId")) {
+                archiveId = parser.getText();
+            }
+            else if (field.equals("Size")) {
+                size = parser.getLongValue();
+            }
+            else if (field.equals("CreationDate")) {
+                creationDate = parser.getText();
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
         return Blob.getInstance(regionId, archiveId, bucket, archiveId,
-                parseTimestamp(jsonObject.getString("CreationDate")), size);
+                parseTimestamp(creationDate), new Storage<Byte>(size, Storage.BYTE));
     }
 
     @Nonnull
     @Override
-    public FileTransfer getDownloadRequestResult(@Nonnull String bucket, @Nonnull String requestId, @Nonnull File toFile) throws InternalException, CloudException {
+    public FileTransfer getDownloadRequestResult(@Nonnull String bucket, @Nonnull final String requestId, @Nonnull File toFile) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "Blob.getDownloadRequestResult");
         try {
-            throw new OperationNotSupportedException("glacier downloads are not yet supported");
+            final GlacierRangedDownload download = GlacierRangedDownload.forJob(getProvider(), bucket, requestId, toFile);
+            final FileTransfer transfer = new FileTransfer();
+
+            transfer.setBytesToTransfer(download.getSize());
+            getProvider().hold();
+            S3.transfers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        download.download(transfer);
+                        transfer.complete(null);
+                    }
+                    catch( Throwable t ) {
+                        logger.error("Download of the output of job " + requestId + " failed: " + t.getMessage());
+                        transfer.complete(t);
+                    }
+                    finally {
+                        getProvider().release();
+                    }
+                }
+            });
+            return transfer;
         }
         finally {
             APITrace.end();
@@ -24,18 +24,19 @@ import org.dasein.cloud.InternalException;
 
 public enum GlacierAction {
     CREATE_VAULT, DELETE_VAULT, DESCRIBE_VAULT, LIST_VAULTS, CREATE_ARCHIVE,
-    DELETE_ARCHIVE, CREATE_JOB, DESCRIBE_JOB, LIST_JOBS, GET_JOB_OUTPUT;
+    DELETE_ARCHIVE, CREATE_JOB, DESCRIBE_JOB, LIST_JOBS, GET_JOB_OUTPUT,
+    INITIATE_MULTIPART_UPLOAD, UPLOAD_PART, COMPLETE_MULTIPART_UPLOAD, ABORT_MULTIPART_UPLOAD;
 
     public HttpRequestBase getMethod(String url) throws InternalException {
 
         switch( GlacierAction.this ) {
-            case DELETE_VAULT: case DELETE_ARCHIVE:
+            case DELETE_VAULT: case DELETE_ARCHIVE: case ABORT_MULTIPART_UPLOAD:
                 return new HttpDelete(url);
             case LIST_VAULTS: case DESCRIBE_VAULT: case DESCRIBE_JOB: case LIST_JOBS: case GET_JOB_OUTPUT:
                 return new HttpGet(url);
-            case CREATE_VAULT:
+            case CREATE_VAULT: case UPLOAD_PART:
                 return new HttpPut(url);
-            case CREATE_ARCHIVE: case CREATE_JOB:
+            case CREATE_ARCHIVE: case CREATE_JOB: case INITIATE_MULTIPART_UPLOAD: case COMPLETE_MULTIPART_UPLOAD:
                 return new HttpPost(url);
         }
         throw new InternalException("failed to build method");
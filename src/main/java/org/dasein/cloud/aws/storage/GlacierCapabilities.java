@@ -37,7 +37,7 @@ import java.util.Locale;
 public class GlacierCapabilities extends AbstractCapabilities<AWSCloud> implements BlobStoreCapabilities {
     static public final int                                       MAX_VAULTS       = 1000;
     static public final int                                       MAX_ARCHIVES     = -1;
-    static public final Storage<Megabyte>                         MAX_OBJECT_SIZE  = new Storage<Megabyte>(100L, Storage.MEGABYTE);
+    static public final Storage<Megabyte>                         MAX_OBJECT_SIZE  = new Storage<Megabyte>(10000L * 1024L, Storage.MEGABYTE);
 
     public GlacierCapabilities(AWSCloud provider) {
         super(provider);
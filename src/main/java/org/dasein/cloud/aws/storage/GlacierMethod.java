@@ -19,12 +19,14 @@
 
 package org.dasein.cloud.aws.storage;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
@@ -33,12 +35,16 @@ import org.dasein.cloud.CloudException;
 import org.dasein.cloud.InternalException;
 import org.dasein.cloud.OperationNotSupportedException;
 import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.aws.RetryPolicy;
+import org.dasein.cloud.aws.V4Signer;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.*;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.net.URISyntaxException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -58,6 +64,8 @@ public class GlacierMethod {
     static public final String SERVICE_ID        = "glacier";
     static public final String API_VERSION       = "2012-06-01";
 
+    static private final int BUFFER_SIZE = 64 * 1024;
+
     private GlacierAction action           = null;
     private Map<String,String> headers     = null;
     private Map<String,String> queryParameters = null;
@@ -65,8 +73,11 @@ public class GlacierMethod {
     private String vaultId                 = null;
     private String archiveId               = null;
     private String jobId                   = null;
+    private String uploadId                = null;
     private String bodyText                = null;
     private File bodyFile                  = null;
+    private ByteBuffer bodyBuffer          = null;
+    private String bodyHash                = null;
 
     private GlacierMethod(Builder builder) {
         this.action = builder.action;
@@ -74,10 +85,13 @@ public class GlacierMethod {
         this.vaultId = builder.vaultId;
         this.archiveId = builder.archiveId;
         this.jobId = builder.jobId;
+        this.uploadId = builder.uploadId;
         this.headers = builder.headers == null ? new HashMap<String,String>() : builder.headers;
         this.queryParameters = builder.queryParameters == null ? new HashMap<String, String>() : builder.queryParameters;
         this.bodyText = builder.bodyText;
         this.bodyFile = builder.bodyFile;
+        this.bodyBuffer = builder.bodyBuffer;
+        this.bodyHash = builder.bodyHash;
     }
 
     private static byte[] computePayloadSHA256Hash(byte[] payload) throws NoSuchAlgorithmException, IOException {
@@ -123,7 +137,7 @@ public class GlacierMethod {
             throw new CloudException(e);
         } finally {
             if (clientAndResponse != null) {
-                clientAndResponse.client.getConnectionManager().shutdown();
+                clientAndResponse.release();
             }
         }
     }
@@ -145,7 +159,62 @@ public class GlacierMethod {
             }
             return headers;
         }finally {
-            clientAndResponse.client.getConnectionManager().shutdown();
+            clientAndResponse.release();
+        }
+    }
+
+    /**
+     * Invokes the method and returns the response body as a stream. Closing the stream before the end of the body
+     * drops the connection instead of reading the rest of the body.
+     * @param responseHeaders map to fill with the response headers, keyed in lower case
+     * @return the response body
+     * @throws InternalException
+     * @throws CloudException
+     * @throws GlacierException
+     */
+    public InputStream invokeStream(@Nullable Map<String, String> responseHeaders) throws InternalException, CloudException {
+        final ClientAndResponse clientAndResponse = invokeInternal();
+        final HttpEntity entity = clientAndResponse.response.getEntity();
+
+        if (responseHeaders != null) {
+            for (Header header : clientAndResponse.response.getAllHeaders()) {
+                responseHeaders.put(header.getName().toLowerCase(), header.getValue());
+            }
+        }
+        if (entity == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        try {
+            return new FilterInputStream(entity.getContent()) {
+                private boolean ended = false;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+
+                    ended = (b == -1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int count = super.read(b, off, len);
+
+                    ended = (count == -1);
+                    return count;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (!ended) {
+                        clientAndResponse.method.abort();
+                    }
+                    super.close();
+                }
+            };
+        } catch (IOException e) {
+            clientAndResponse.release();
+            throw new CloudException(e);
         }
     }
 
@@ -157,10 +226,29 @@ public class GlacierMethod {
     public void invoke() throws InternalException, CloudException {
 
         final ClientAndResponse clientAndResponse = invokeInternal();
-        clientAndResponse.client.getConnectionManager().shutdown();
+        clientAndResponse.release();
     }
 
     private ClientAndResponse invokeInternal() throws InternalException, CloudException {
+        RetryPolicy.Attempt attempt = provider.getRetryPolicy().begin(provider.getContext().getAccountNumber(), provider.getContext().getRegionId());
+
+        while( true ) {
+            try {
+                ClientAndResponse clientAndResponse = invokeOnce();
+
+                attempt.succeeded();
+                return clientAndResponse;
+            }
+            catch( GlacierException e ) {
+                if( !attempt.retry(e) ) {
+                    throw e;
+                }
+                logger.warn("Retrying " + action + " after " + e.getHttpCode() + "/" + e.getProviderCode());
+            }
+        }
+    }
+
+    private ClientAndResponse invokeOnce() throws InternalException, CloudException {
 
         if( wire.isDebugEnabled() ) {
             wire.debug("");
@@ -189,6 +277,10 @@ public class GlacierMethod {
             headers.put(AWSCloud.P_AWS_DATE, provider.getV4HeaderDate(null));
             headers.put("x-amz-glacier-version", API_VERSION);
             headers.put("host", host);
+            if (bodyBuffer != null) {
+                // uploads must carry the hash of their content
+                headers.put("x-amz-content-sha256", getRequestBodyHash());
+            }
             final String v4Authorization = provider.getV4Authorization(accessId, secret,
                     method.getMethod(), url, SERVICE_ID, headers, getRequestBodyHash());
             for( Map.Entry<String, String> entry : headers.entrySet() ) {
@@ -203,6 +295,9 @@ public class GlacierMethod {
                     throw new InternalException(e);
                 }
             }
+            else if (bodyBuffer != null) {
+                ((HttpEntityEnclosingRequestBase)method).setEntity(new ByteBufferEntity(bodyBuffer));
+            }
 
             if( wire.isDebugEnabled() ) {
                 wire.debug("[" + url + "]");
@@ -220,6 +315,8 @@ public class GlacierMethod {
             }
 
             HttpResponse httpResponse;
+
+            provider.getRateLimiter().acquire(provider, SERVICE_ID, provider.getContext().getRegionId(), method.getMethod());
             try {
                 httpResponse = client.execute(method);
             } catch (IOException e) {
@@ -237,7 +334,7 @@ public class GlacierMethod {
             if( status >= 400) {
                 throw getGlacierException(httpResponse);
             } else {
-                return new ClientAndResponse(client, httpResponse);
+                return new ClientAndResponse(client, method, httpResponse);
             }
         }
         finally {
@@ -278,6 +375,23 @@ public class GlacierMethod {
     }
 
     private String getRequestBodyHash() throws InternalException {
+        if (bodyHash != null) {
+            return bodyHash;
+        }
+        if (bodyBuffer != null) {
+            MessageDigest digest = V4Signer.getSHA256Digest();
+            ByteBuffer content = bodyBuffer.duplicate();
+            byte[] chunk = new byte[BUFFER_SIZE];
+
+            while (content.hasRemaining()) {
+                int count = Math.min(chunk.length, content.remaining());
+
+                content.get(chunk, 0, count);
+                digest.update(chunk, 0, count);
+            }
+            bodyHash = new String(Hex.encodeHex(digest.digest(), true));
+            return bodyHash;
+        }
         if (bodyText == null && bodyFile == null) {
             // use hash of the empty string
             return AWSCloud.computeSHA256Hash("");
@@ -337,6 +451,15 @@ public class GlacierMethod {
             case CREATE_ARCHIVE:
                 url.append("/archives");
                 break;
+            case INITIATE_MULTIPART_UPLOAD:
+                url.append("/multipart-uploads");
+                break;
+            case UPLOAD_PART: case COMPLETE_MULTIPART_UPLOAD: case ABORT_MULTIPART_UPLOAD:
+                if (uploadId == null) {
+                    throw new InternalException("uploadId required");
+                }
+                url.append("/multipart-uploads/").append(uploadId);
+                break;
             case DELETE_ARCHIVE:
                 if (archiveId == null) {
                     throw new InternalException("archiveId required");
@@ -360,14 +483,86 @@ public class GlacierMethod {
     }
 
 
+    /**
+     * Sends the remaining content of a buffer, which may be a mapped region of a file, without copying it onto
+     * the heap. Each write starts again from the original position so the request can be retried.
+     */
+    private static class ByteBufferEntity extends AbstractHttpEntity {
+        private final ByteBuffer buffer;
+
+        private ByteBufferEntity(ByteBuffer buffer) {
+            this.buffer = buffer;
+            setContentType("application/octet-stream");
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            final ByteBuffer content = buffer.duplicate();
+
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    return (content.hasRemaining() ? content.get() & 0xff : -1);
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (!content.hasRemaining()) {
+                        return -1;
+                    }
+                    len = Math.min(len, content.remaining());
+                    content.get(b, off, len);
+                    return len;
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream output) throws IOException {
+            ByteBuffer content = buffer.duplicate();
+            byte[] chunk = new byte[BUFFER_SIZE];
+
+            while (content.hasRemaining()) {
+                int count = Math.min(chunk.length, content.remaining());
+
+                content.get(chunk, 0, count);
+                output.write(chunk, 0, count);
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
     private static class ClientAndResponse {
         public final HttpClient client;
+        public final HttpRequestBase method;
         public final HttpResponse response;
 
-        private ClientAndResponse(HttpClient client, HttpResponse response) {
+        private ClientAndResponse(HttpClient client, HttpRequestBase method, HttpResponse response) {
             this.client = client;
+            this.method = method;
             this.response = response;
         }
+
+        /**
+         * Returns the pooled connection by consuming whatever is left of the response body
+         */
+        private void release() {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
     }
 
     public static Builder build(@Nonnull AWSCloud provider, @Nonnull GlacierAction action) {
@@ -380,10 +575,13 @@ public class GlacierMethod {
         private String vaultId;
         private String archiveId;
         private String jobId;
+        private String uploadId;
         public Map<String, String> headers;
         public Map<String, String> queryParameters;
         public String bodyText;
         public File bodyFile;
+        public ByteBuffer bodyBuffer;
+        public String bodyHash;
 
         public Builder(@Nonnull AWSCloud provider, @Nonnull GlacierAction action) {
             this.provider = provider;
@@ -405,6 +603,11 @@ public class GlacierMethod {
             return this;
         }
 
+        public Builder uploadId(@Nonnull String value) {
+            uploadId = value;
+            return this;
+        }
+
         public Builder headers(@Nonnull Map<String, String> value) {
             headers = value;
             return this;
@@ -425,6 +628,18 @@ public class GlacierMethod {
             return this;
         }
 
+        /**
+         * Sends the remaining content of the buffer as the body of the request.
+         * @param value the content to send
+         * @param sha256 the hex encoded SHA-256 hash of the content, if already known
+         * @return this builder
+         */
+        public Builder bodyBuffer(@Nonnull ByteBuffer value, @Nullable String sha256) {
+            bodyBuffer = value;
+            bodyHash = sha256;
+            return this;
+        }
+
         public GlacierMethod toMethod() {
             return new GlacierMethod(this);
         }
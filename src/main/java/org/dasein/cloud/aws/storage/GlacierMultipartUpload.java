@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.storage;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.util.APITrace;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Uploads a file to a Glacier vault as an archive. Files up to the part size are sent in a single request and
+ * larger files as a multipart upload with several parts in flight at the same time.
+ * <p>
+ * Each part is read through a memory mapping of its region of the file, so the heap used does not grow with the
+ * size of the archive. The SHA-256 tree hash of a part is computed from its 1 MB leaf digests in the same pass as
+ * the linear hash needed to sign the request, and the tree hash of the archive is combined from the part hashes
+ * without reading the file again. Part sizes are powers of two so that the part hashes line up with the tree.
+ * </p>
+ * <p>
+ * The part size is set in MB with the <code>glacierPartSizeMB</code> custom property (64 by default, rounded up to
+ * a power of two between 1 and 1024). Concurrency follows the <code>s3TransferThreads</code> setting of
+ * {@link S3MultipartUpload}.
+ * </p>
+ *
+ * @since 2015.10
+ */
+public class GlacierMultipartUpload {
+    static private final Logger logger = AWSCloud.getLogger(GlacierMultipartUpload.class);
+
+    static public final String P_PART_SIZE = "glacierPartSizeMB";
+
+    static private final long MB                = 1024L * 1024L;
+    static private final int  DEFAULT_PART_SIZE = 64;
+    // keeps every part within a single mapping
+    static private final int  MAX_PART_SIZE     = 1024;
+    static private final int  MAX_PARTS         = 10000;
+
+    static public final String HEADER_TREE_HASH = "x-amz-sha256-tree-hash";
+
+    private final AWSCloud provider;
+    private final String   vaultId;
+    private final String   description;
+    private final File     file;
+
+    /**
+     * @param provider the provider to upload through
+     * @param vaultId the vault to store the archive in
+     * @param description the description stored with the archive
+     * @param file the file to upload
+     */
+    public GlacierMultipartUpload( @Nonnull AWSCloud provider, @Nonnull String vaultId, @Nonnull String description, @Nonnull File file ) {
+        this.provider = provider;
+        this.vaultId = vaultId;
+        this.description = description;
+        this.file = file;
+    }
+
+    /**
+     * Uploads the file, blocking until the archive is stored.
+     * @return the id Glacier assigned to the archive
+     * @throws CloudException the upload failed
+     * @throws InternalException the file could not be read or the upload was interrupted
+     */
+    public @Nonnull String upload() throws CloudException, InternalException {
+        FileInputStream input;
+
+        try {
+            input = new FileInputStream(file);
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        try {
+            FileChannel channel = input.getChannel();
+            long length = channel.size();
+            long partSize = getPartSize(provider, length);
+
+            if( length <= partSize ) {
+                return uploadArchive(provider, vaultId, description, map(channel, 0L, length));
+            }
+            return uploadParts(channel, length, partSize);
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        finally {
+            try { input.close(); }
+            catch( IOException ignore ) { }
+        }
+    }
+
+    private @Nonnull String uploadParts( @Nonnull final FileChannel channel, final long length, final long partSize ) throws CloudException, InternalException {
+        Map<String, String> headers = new HashMap<String, String>();
+
+        headers.put("x-amz-archive-description", description);
+        headers.put("x-amz-part-size", String.valueOf(partSize));
+        final String uploadId = GlacierMethod.build(provider, GlacierAction.INITIATE_MULTIPART_UPLOAD).vaultId(vaultId).headers(headers).toMethod().invokeHeaders().get("x-amz-multipart-upload-id");
+
+        if( uploadId == null ) {
+            throw new CloudException("No upload id was returned for an archive in " + vaultId);
+        }
+        final int partCount = ( int ) ( ( length + partSize - 1 ) / partSize );
+        CompletionService<byte[]> parts = new ExecutorCompletionService<byte[]>(S3.transfers);
+        List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+        int concurrency = S3MultipartUpload.getConcurrency(provider);
+        boolean completed = false;
+        int next = 0, done = 0;
+
+        try {
+            while( done < partCount ) {
+                while( next < partCount && next - done < concurrency ) {
+                    final long start = next++ * partSize;
+                    final long size = Math.min(partSize, length - start);
+
+                    futures.add(parts.submit(new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() throws Exception {
+                            APITrace.begin(provider, "Blob.putArchivePart");
+                            try {
+                                return uploadPart(uploadId, map(channel, start, size), start);
+                            }
+                            finally {
+                                APITrace.end();
+                            }
+                        }
+                    }));
+                }
+                S3.awaitResult(parts.take());
+                done++;
+            }
+            // part hashes are combined in the order of the parts, not of their completion
+            List<byte[]> partHashes = new ArrayList<byte[]>(partCount);
+
+            for( Future<byte[]> f : futures ) {
+                partHashes.add(S3.awaitResult(f));
+            }
+            headers = new HashMap<String, String>();
+            headers.put("x-amz-archive-size", String.valueOf(length));
+            headers.put(HEADER_TREE_HASH, toHex(treeHash(partHashes)));
+            String archiveId = GlacierMethod.build(provider, GlacierAction.COMPLETE_MULTIPART_UPLOAD).vaultId(vaultId).uploadId(uploadId).headers(headers).toMethod().invokeHeaders().get("x-amz-archive-id");
+
+            if( archiveId == null ) {
+                throw new CloudException("No archive id was returned for upload " + uploadId + " to " + vaultId);
+            }
+            completed = true;
+            return archiveId;
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InternalException(e);
+        }
+        finally {
+            for( Future<byte[]> f : futures ) {
+                f.cancel(true);
+            }
+            if( !completed ) {
+                try {
+                    GlacierMethod.build(provider, GlacierAction.ABORT_MULTIPART_UPLOAD).vaultId(vaultId).uploadId(uploadId).toMethod().invoke();
+                }
+                catch( Exception e ) {
+                    logger.warn("Unable to abort upload " + uploadId + " to " + vaultId + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Uploads one part.
+     * @return the tree hash of the part
+     */
+    private @Nonnull byte[] uploadPart( @Nonnull String uploadId, @Nonnull ByteBuffer content, long start ) throws CloudException, InternalException {
+        ContentHash hash = hash(content);
+        Map<String, String> headers = new HashMap<String, String>();
+
+        headers.put("Content-Range", "bytes " + start + "-" + ( start + content.remaining() - 1 ) + "/*");
+        headers.put(HEADER_TREE_HASH, toHex(hash.treeHash));
+        GlacierMethod.build(provider, GlacierAction.UPLOAD_PART).vaultId(vaultId).uploadId(uploadId).headers(headers).bodyBuffer(content, toHex(hash.linearHash)).toMethod().invoke();
+        return hash.treeHash;
+    }
+
+    /**
+     * Stores content as an archive with a single request.
+     * @return the id Glacier assigned to the archive
+     */
+    static @Nonnull String uploadArchive( @Nonnull AWSCloud provider, @Nonnull String vaultId, @Nonnull String description, @Nonnull ByteBuffer content ) throws CloudException, InternalException {
+        ContentHash hash = hash(content);
+        Map<String, String> headers = new HashMap<String, String>();
+
+        headers.put("x-amz-archive-description", description);
+        headers.put(HEADER_TREE_HASH, toHex(hash.treeHash));
+        String archiveId = GlacierMethod.build(provider, GlacierAction.CREATE_ARCHIVE).vaultId(vaultId).headers(headers).bodyBuffer(content, toHex(hash.linearHash)).toMethod().invokeHeaders().get("x-amz-archive-id");
+
+        if( archiveId == null ) {
+            throw new CloudException("No archive id was returned for an archive in " + vaultId);
+        }
+        return archiveId;
+    }
+
+    /**
+     * Calculates the part size for an archive, a power of two number of MB that keeps within the limit of
+     * 10,000 parts per upload.
+     * @param provider the provider the upload is made through
+     * @param length the size of the archive in bytes
+     * @return the part size in bytes
+     */
+    static long getPartSize( @Nonnull AWSCloud provider, long length ) {
+        int requested = Math.min(MAX_PART_SIZE, provider.getIntProperty(P_PART_SIZE, DEFAULT_PART_SIZE));
+        long partSize = MB;
+
+        while( partSize < requested * MB || ( partSize < MAX_PART_SIZE * MB && ( length + partSize - 1 ) / partSize > MAX_PARTS ) ) {
+            partSize *= 2;
+        }
+        return partSize;
+    }
+
+    static private @Nonnull ByteBuffer map( @Nonnull FileChannel channel, long start, long size ) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+    }
+
+    /**
+     * The linear and tree hashes of a block of content.
+     */
+    static private class ContentHash {
+        private final byte[] linearHash;
+        private final byte[] treeHash;
+
+        private ContentHash( @Nonnull byte[] linearHash, @Nonnull byte[] treeHash ) {
+            this.linearHash = linearHash;
+            this.treeHash = treeHash;
+        }
+    }
+
+    /**
+     * Computes the SHA-256 hash and the tree hash of the remaining content of a buffer in one pass, leaving the
+     * position of the buffer unchanged.
+     */
+    static private @Nonnull ContentHash hash( @Nonnull ByteBuffer content ) throws InternalException {
+        MessageDigest linear = newDigest();
+        MessageDigest leaf = newDigest();
+        ByteBuffer remaining = content.duplicate();
+        List<byte[]> leaves = new ArrayList<byte[]>();
+        byte[] chunk = new byte[( int ) MB];
+
+        while( remaining.hasRemaining() ) {
+            int count = Math.min(chunk.length, remaining.remaining());
+
+            remaining.get(chunk, 0, count);
+            linear.update(chunk, 0, count);
+            leaf.update(chunk, 0, count);
+            leaves.add(leaf.digest());
+        }
+        if( leaves.isEmpty() ) {
+            leaves.add(leaf.digest());
+        }
+        return new ContentHash(linear.digest(), treeHash(leaves));
+    }
+
+    /**
+     * Computes the tree hash of the remaining content of a buffer, leaving the position of the buffer unchanged.
+     * @param content the content to hash
+     * @return the tree hash
+     */
+    static @Nonnull byte[] treeHash( @Nonnull ByteBuffer content ) throws InternalException {
+        return hash(content).treeHash;
+    }
+
+    /**
+     * Combines the hashes of consecutive, equally sized blocks into the hash of the tree above them, pairing
+     * hashes level by level and promoting an odd hash at the end of a level unchanged.
+     * @param hashes the hashes of the blocks, in order
+     * @return the root hash
+     */
+    static @Nonnull byte[] treeHash( @Nonnull List<byte[]> hashes ) throws InternalException {
+        MessageDigest digest = newDigest();
+        List<byte[]> level = hashes;
+
+        while( level.size() > 1 ) {
+            List<byte[]> parents = new ArrayList<byte[]>(( level.size() + 1 ) / 2);
+
+            for( int i = 0; i < level.size(); i += 2 ) {
+                if( i + 1 < level.size() ) {
+                    digest.update(level.get(i));
+                    digest.update(level.get(i + 1));
+                    parents.add(digest.digest());
+                }
+                else {
+                    parents.add(level.get(i));
+                }
+            }
+            level = parents;
+        }
+        return level.get(0);
+    }
+
+    static @Nonnull String toHex( @Nonnull byte[] hash ) {
+        return new String(Hex.encodeHex(hash, true));
+    }
+
+    static private @Nonnull MessageDigest newDigest() throws InternalException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch( NoSuchAlgorithmException e ) {
+            throw new InternalException(e);
+        }
+    }
+}
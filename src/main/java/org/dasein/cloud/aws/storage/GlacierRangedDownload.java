@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.storage;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.storage.FileTransfer;
+import org.dasein.cloud.util.APITrace;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads the output of a completed Glacier archive retrieval job by fetching byte ranges in parallel and writing
+ * each of them at its offset in a preallocated file.
+ * <p>
+ * Ranges are powers of two MB aligned on their size, so Glacier returns the tree hash of every range. Each range is
+ * checked against that hash once written and fetched again if it does not match; a range that fails part way is
+ * resumed from the last byte written. Only failed ranges are fetched again, and the range hashes are combined to
+ * check the whole archive against the tree hash of the job.
+ * </p>
+ * <p>
+ * Range size and concurrency follow the <code>glacierPartSizeMB</code> setting of {@link GlacierMultipartUpload}
+ * and the <code>s3TransferThreads</code> setting of {@link S3MultipartUpload}.
+ * </p>
+ *
+ * @since 2015.10
+ */
+public class GlacierRangedDownload {
+    static private final Logger logger = AWSCloud.getLogger(GlacierRangedDownload.class);
+
+    static private final int RANGE_ATTEMPTS = 5;
+    static private final int BUFFER_SIZE    = 64 * 1024;
+
+    private final AWSCloud provider;
+    private final String   vaultId;
+    private final String   jobId;
+    private final File     toFile;
+    private final long     size;
+    private final String   treeHash;
+
+    /**
+     * @param provider the provider to download through
+     * @param vaultId the vault the job was started in
+     * @param jobId the id of the archive retrieval job
+     * @param toFile the file to write the archive to
+     * @param size the size of the job output in bytes
+     * @param treeHash the hex encoded tree hash of the job output, if known
+     */
+    public GlacierRangedDownload( @Nonnull AWSCloud provider, @Nonnull String vaultId, @Nonnull String jobId, @Nonnull File toFile, long size, @Nullable String treeHash ) {
+        this.provider = provider;
+        this.vaultId = vaultId;
+        this.jobId = jobId;
+        this.toFile = toFile;
+        this.size = size;
+        this.treeHash = treeHash;
+    }
+
+    /**
+     * Downloads the job output, blocking until all ranges are written and verified.
+     * @param transfer optional transfer on which progress is reported
+     * @throws CloudException a range could not be fetched or the output does not match its tree hash
+     * @throws InternalException the file could not be written or the download was interrupted
+     */
+    public void download( @Nullable final FileTransfer transfer ) throws CloudException, InternalException {
+        final long rangeSize = GlacierMultipartUpload.getPartSize(provider, size);
+        final int rangeCount = ( int ) Math.max(1L, ( size + rangeSize - 1 ) / rangeSize);
+        final AtomicLong transferred = new AtomicLong();
+        RandomAccessFile file;
+
+        if( transfer != null ) {
+            transfer.setBytesToTransfer(size);
+        }
+        try {
+            file = new RandomAccessFile(toFile, "rw");
+            file.setLength(size);
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        final FileChannel channel = file.getChannel();
+        CompletionService<byte[]> ranges = new ExecutorCompletionService<byte[]>(S3.transfers);
+        List<Future<byte[]>> pending = new ArrayList<Future<byte[]>>();
+        int concurrency = S3MultipartUpload.getConcurrency(provider);
+        int next = 0, done = 0;
+
+        try {
+            while( done < rangeCount ) {
+                // bound the number of open connections for this download
+                while( next < rangeCount && next - done < concurrency ) {
+                    final long start = next++ * rangeSize;
+                    final long end = Math.min(start + rangeSize, size) - 1;
+
+                    pending.add(ranges.submit(new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() throws Exception {
+                            APITrace.begin(provider, "Blob.getArchiveRange");
+                            try {
+                                return fetchRange(channel, start, end, transferred, transfer);
+                            }
+                            finally {
+                                APITrace.end();
+                            }
+                        }
+                    }));
+                }
+                S3.awaitResult(ranges.take());
+                done++;
+            }
+            channel.force(false);
+            if( treeHash != null ) {
+                List<byte[]> rangeHashes = new ArrayList<byte[]>(rangeCount);
+
+                for( Future<byte[]> f : pending ) {
+                    rangeHashes.add(S3.awaitResult(f));
+                }
+                String actual = GlacierMultipartUpload.toHex(GlacierMultipartUpload.treeHash(rangeHashes));
+
+                if( !actual.equalsIgnoreCase(treeHash) ) {
+                    throw new CloudException("Tree hash " + actual + " of the output of job " + jobId + " does not match " + treeHash);
+                }
+            }
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InternalException(e);
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        finally {
+            for( Future<byte[]> f : pending ) {
+                f.cancel(true);
+            }
+            try { file.close(); }
+            catch( IOException ignore ) { }
+        }
+    }
+
+    /**
+     * Fetches the bytes from start to end, inclusive, into the file and checks them against the tree hash
+     * returned for the range. Failures part way resume after the last byte written.
+     * @return the tree hash of the range
+     */
+    private @Nonnull byte[] fetchRange( @Nonnull FileChannel channel, long start, long end, @Nonnull AtomicLong transferred, @Nullable FileTransfer transfer ) throws CloudException, InternalException {
+        long position = start;
+        String expected = null;
+
+        for( int attempt = 1; ; attempt++ ) {
+            Map<String, String> headers = new HashMap<String, String>();
+            Map<String, String> responseHeaders = new HashMap<String, String>();
+
+            InputStream input = null;
+
+            headers.put("Range", "bytes=" + position + "-" + end);
+            try {
+                input = GlacierMethod.build(provider, GlacierAction.GET_JOB_OUTPUT).vaultId(vaultId).jobId(jobId).headers(headers).toMethod().invokeStream(responseHeaders);
+                // the hash covers the range requested, so only one that starts at the range start is kept
+                if( position == start ) {
+                    expected = responseHeaders.get(GlacierMultipartUpload.HEADER_TREE_HASH);
+                }
+                byte[] data = new byte[BUFFER_SIZE];
+                int count;
+
+                while( position <= end && ( count = input.read(data, 0, ( int ) Math.min(data.length, end - position + 1)) ) != -1 ) {
+                    ByteBuffer buffer = ByteBuffer.wrap(data, 0, count);
+
+                    while( buffer.hasRemaining() ) {
+                        position += channel.write(buffer, position);
+                    }
+                    long total = transferred.addAndGet(count);
+
+                    if( transfer != null ) {
+                        transfer.setBytesTransferred(total);
+                    }
+                }
+                if( position <= end ) {
+                    throw new IOException("Connection closed after " + ( position - start ) + " of " + ( end - start + 1 ) + " bytes");
+                }
+                // reach the end of the body so the connection can be reused
+                input.read();
+
+                byte[] actual = GlacierMultipartUpload.treeHash(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start + 1));
+
+                if( expected == null || expected.equalsIgnoreCase(GlacierMultipartUpload.toHex(actual)) ) {
+                    return actual;
+                }
+                if( attempt >= RANGE_ATTEMPTS ) {
+                    throw new CloudException("Tree hash of bytes " + start + "-" + end + " of the output of job " + jobId + " does not match " + expected);
+                }
+                logger.warn("Fetching bytes " + start + "-" + end + " of the output of job " + jobId + " again after a tree hash mismatch");
+                transferred.addAndGet(start - position);
+                position = start;
+            }
+            catch( IOException e ) {
+                if( attempt >= RANGE_ATTEMPTS ) {
+                    throw new InternalException(e);
+                }
+                logger.warn("Resuming bytes " + position + "-" + end + " of the output of job " + jobId + " after: " + e.getMessage());
+            }
+            catch( CloudException e ) {
+                // connect and read failures reach here wrapped by GlacierMethod, error responses as GlacierException
+                if( e instanceof GlacierException || !( e.getCause() instanceof IOException ) || attempt >= RANGE_ATTEMPTS ) {
+                    throw e;
+                }
+                logger.warn("Resuming bytes " + position + "-" + end + " of the output of job " + jobId + " after: " + e.getMessage());
+            }
+            finally {
+                if( input != null ) {
+                    try { input.close(); }
+                    catch( IOException ignore ) { }
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepares a download of the output of an archive retrieval job, checking that the job has succeeded.
+     * @return the download
+     * @throws CloudException the job is not an archive retrieval or has not succeeded
+     */
+    static @Nonnull GlacierRangedDownload forJob( @Nonnull AWSCloud provider, @Nonnull String vaultId, @Nonnull String jobId, @Nonnull File toFile ) throws CloudException, InternalException {
+        JSONObject job = GlacierMethod.build(provider, GlacierAction.DESCRIBE_JOB).vaultId(vaultId).jobId(jobId).toMethod().invokeJson();
+
+        try {
+            if( job == null ) {
+                throw new CloudException("No such job: " + jobId);
+            }
+            if( !Glacier.ACTION_ARCHIVE_RETRIEVAL.equalsIgnoreCase(job.optString("Action")) ) {
+                throw new CloudException("Job " + jobId + " is not an archive retrieval");
+            }
+            if( !"Succeeded".equalsIgnoreCase(job.optString("StatusCode")) ) {
+                throw new CloudException("Job " + jobId + " has not succeeded: " + job.optString("StatusCode"));
+            }
+            String treeHash = ( job.isNull("SHA256TreeHash") ? null : job.getString("SHA256TreeHash") );
+
+            return new GlacierRangedDownload(provider, vaultId, jobId, toFile, job.getLong("ArchiveSizeInBytes"), treeHash);
+        }
+        catch( JSONException e ) {
+            throw new CloudException(e);
+        }
+    }
+
+    /**
+     * @return the size of the job output in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+}
@@ -25,6 +25,7 @@ import org.apache.log4j.Logger;
 import org.dasein.cloud.*;
 import org.dasein.cloud.aws.AWSCloud;
 import org.dasein.cloud.aws.storage.S3Method.S3Response;
+import org.dasein.cloud.aws.identity.ServiceActionIndex;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.storage.AbstractBlobStoreSupport;
 import org.dasein.cloud.storage.Blob;
@@ -54,18 +55,56 @@ import javax.xml.bind.DatatypeConverter;
 import java.io.*;
 import java.net.URLEncoder;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
     static private final Logger                                    logger              = AWSCloud.getLogger(S3.class);
+
+    static private final ServiceActionIndex serviceActionIndex = ServiceActionIndex.builder()
+            .map(BlobStoreSupport.ANY, S3Method.S3_PREFIX + "*")
+            .map(BlobStoreSupport.CREATE_BUCKET, S3Method.S3_PREFIX + "CreateBucket")
+            .map(BlobStoreSupport.DOWNLOAD, S3Method.S3_PREFIX + "GetObject")
+            .map(BlobStoreSupport.GET_BUCKET, S3Method.S3_PREFIX + "GetBucket")
+            .map(BlobStoreSupport.LIST_BUCKET, S3Method.S3_PREFIX + "ListBucket")
+            .map(BlobStoreSupport.LIST_BUCKET_CONTENTS, S3Method.S3_PREFIX + "ListBucket")
+            .map(BlobStoreSupport.MAKE_PUBLIC, S3Method.S3_PREFIX + "PutAccessControlPolicy")
+            .map(BlobStoreSupport.REMOVE_BUCKET, S3Method.S3_PREFIX + "DeleteBucket")
+            .map(BlobStoreSupport.UPLOAD, S3Method.S3_PREFIX + "PutObject")
+            .build();
     static private final String                                    HMAC_SHA1_ALGORITHM = "HmacSHA1";
 
 
     static private final Random random = new Random();
-    private static final int MAX_RETRIES = 0;
+
+    static public final String P_LIST_PAGE_SIZE = "s3ListPageSize";
+
+    static private final int MAX_LIST_PAGE_SIZE = 1000;
+    static private final int MAX_DELETE_BATCH   = 1000;
+
+    // shared by the parallel part transfers; each transfer bounds how many parts it has in flight
+    static final ExecutorService transfers = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+            Thread t = new Thread(r, "dasein-s3-transfer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
 
     public S3( AWSCloud provider ) {
         super(provider);
@@ -174,7 +213,7 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
             // set tags
             List<Tag> tags = new ArrayList<Tag>();
             tags.add(new Tag("Name", bucketName));
-            updateTags( 1, bucketName, S3Action.PUT_BUCKET_TAG, tags.toArray(new Tag[tags.size()]));
+            updateTags(bucketName, S3Action.PUT_BUCKET_TAG, tags.toArray(new Tag[tags.size()]));
 
             return Blob.getInstance(regionId, "http://" + bucketName + ".s3" + AWSCloud.getRegionSuffix(regionId), bucketName, System.currentTimeMillis());
         }
@@ -213,7 +252,7 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
         }
     }
 
-    private void updateTags ( int attempt, String bucketName, S3Action action, Tag... keyValuePairs ) throws CloudException, InternalException{
+    private void updateTags ( String bucketName, S3Action action, Tag... keyValuePairs ) throws CloudException, InternalException{
     	APITrace.begin(getProvider(),  "Cloud.updateTags");
     	try {
     		try {
@@ -242,14 +281,8 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
     				return;
     			}
     			catch( S3Exception e ) {
-    				if( attempt > MAX_RETRIES ) {
-    					logger.error("S3 error setting tags for " + bucketName + ": " + e.getSummary());
-    					return;
-    				}
-    				try { Thread.sleep(5000L); } 
-    				catch( InterruptedException ignore ) { }
-    				logger.warn("Retry attempt "+ (attempt + 1) + " to create tags for ["+bucketName+"]");
-    				updateTags( attempt + 1, bucketName, action, keyValuePairs);
+    				// S3Method has already retried transient failures through the retry policy
+    				logger.error("S3 error setting tags for " + bucketName + ": " + e.getSummary());
     			} 
     		}catch( Throwable ignore ) {
     			logger.error("Error while creating tags for " + bucketName + ".", ignore);
@@ -431,78 +464,12 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
                 return null;
             }
 
-            HashMap<String, String> parameters = new HashMap<String, String>();
-            S3Response response;
-            String marker = null;
-            boolean done = false;
-            S3Method method;
-
-            while( !done ) {
-                NodeList blocks;
-
-                parameters.clear();
-                if( marker != null ) {
-                    parameters.put("marker", marker);
-                }
-                parameters.put("max-keys", String.valueOf(30));
-                method = new S3Method(getProvider(), S3Action.LIST_CONTENTS, parameters, null);
-                try {
-                    response = method.invoke(bucketName, null);
-                }
-                catch( S3Exception e ) {
-                    String code = e.getCode();
-
-                    if( code == null || !code.equals("SignatureDoesNotMatch") ) {
-                        throw new CloudException(e);
-                    }
-                    logger.error(e.getSummary());
-                    throw new CloudException(e);
-                }
-                blocks = response.document.getElementsByTagName("IsTruncated");
-                if( blocks.getLength() > 0 ) {
-                    done = blocks.item(0).getFirstChild().getNodeValue().trim().equalsIgnoreCase("false");
-                }
-                blocks = response.document.getElementsByTagName("Contents");
-                for( int i = 0; i < blocks.getLength(); i++ ) {
-                    Node object = blocks.item(i);
-                    Storage<org.dasein.util.uom.storage.Byte> size = null;
-                    String name = null;
-                    long ts = -1L;
-
-                    if( object.hasChildNodes() ) {
-                        NodeList attrs = object.getChildNodes();
-
-                        for( int j = 0; j < attrs.getLength(); j++ ) {
-                            Node attr = attrs.item(j);
-
-                            if( attr.getNodeName().equalsIgnoreCase("Key") ) {
-                                String key = attr.getFirstChild().getNodeValue().trim();
-
-                                name = key;
-                                marker = key;
-                            }
-                            else if( attr.getNodeName().equalsIgnoreCase("Size") ) {
-                                size = new Storage<org.dasein.util.uom.storage.Byte>(Long.parseLong(attr.getFirstChild().getNodeValue().trim()), Storage.BYTE);
-                            }
-                            else if( attr.getNodeName().equalsIgnoreCase("LastModified") ) {
-                                SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-                                String dateString = attr.getFirstChild().getNodeValue().trim();
+            // keys are listed in order, so the object is the first key with its own name as prefix
+            ObjectPage page = fetchObjectPage(regionId, bucketName, objectName, null, null, 1);
 
-                                try {
-                                    ts = fmt.parse(dateString).getTime();
-                                }
-                                catch( ParseException e ) {
-                                    logger.error(e);
-                                    e.printStackTrace();
-                                    throw new CloudException(e);
-                                }
-                            }
-                        }
-                    }
-                    if( !objectName.equals(name) || size == null ) {
-                        continue;
-                    }
-                    return Blob.getInstance(regionId, getLocation(bucketName, name), bucketName, name, ts, size);
+            for( Blob blob : page.blobs ) {
+                if( objectName.equals(blob.getObjectName()) ) {
+                    return blob;
                 }
             }
             return null;
@@ -698,6 +665,17 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
             if( bucket == null ) {
                 throw new CloudException("No bucket was specified");
             }
+            if( getProvider().getEC2Provider().isAWS() ) {
+                try {
+                    if( S3RangedDownload.get(getProvider(), bucket, object, toFile, transfer) ) {
+                        return;
+                    }
+                }
+                catch( S3Exception e ) {
+                    logger.error(e.getSummary());
+                    throw new CloudException(e);
+                }
+            }
             IOException lastError = null;
             int attempts = 0;
 
@@ -1044,81 +1022,459 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
         }
     }
 
-    private void loadObjects( @Nonnull String regionId, @Nonnull String bucket, @Nonnull Jiterator<Blob> iterator ) throws CloudException, InternalException {
-        HashMap<String, String> parameters = new HashMap<String, String>();
-        S3Response response;
-        String marker = null;
-        boolean done = false;
-        S3Method method;
+    /**
+     * Lists the objects of a bucket below a prefix. With a delimiter, keys are rolled up at the first delimiter
+     * after the prefix and each distinct rollup is listed once as an empty object named after it, ending with the
+     * delimiter, the way folders are commonly represented in S3.
+     * @param bucket the bucket to list
+     * @param prefix only list keys starting with this prefix, or null for all keys
+     * @param delimiter the delimiter to roll keys up at, such as <code>/</code>, or null to list all keys below the prefix
+     * @return the objects found
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    public @Nonnull Iterable<Blob> list( @Nonnull final String bucket, @Nullable final String prefix, @Nullable final String delimiter ) throws CloudException, InternalException {
+        final ProviderContext ctx = getProvider().getContext();
 
-        while( !done ) {
-            NodeList blocks;
+        if( ctx == null ) {
+            throw new CloudException("No context was specified for this request");
+        }
+        final String regionId = ctx.getRegionId();
 
-            parameters.clear();
-            if( marker != null ) {
-                parameters.put("marker", marker);
+        if( regionId == null ) {
+            throw new CloudException("No region ID was specified");
+        }
+        if( !getRegion(bucket, false).equals(regionId) ) {
+            throw new CloudException("No such bucket in target region: " + bucket + " in " + regionId);
+        }
+        getProvider().hold();
+        PopulatorThread<Blob> populator = new PopulatorThread<Blob>(new JiteratorPopulator<Blob>() {
+            public void populate( @Nonnull Jiterator<Blob> iterator ) throws CloudException, InternalException {
+                APITrace.begin(getProvider(), "Blob.list");
+                try {
+                    loadObjects(regionId, bucket, prefix, delimiter, iterator);
+                }
+                finally {
+                    APITrace.end();
+                    getProvider().release();
+                }
             }
-            parameters.put("max-keys", String.valueOf(30));
-            method = new S3Method(getProvider(), S3Action.LIST_CONTENTS, parameters, null);
-            try {
-                response = method.invoke(bucket, null);
+        });
+        populator.populate();
+        return populator.getResult();
+    }
+
+    /**
+     * Lists the objects of a bucket below a prefix by splitting the key space into shards and listing the shards
+     * concurrently. Shards are the common prefixes found with the delimiter; when there are fewer of them than the
+     * fan-out, they are split again one level deeper. Objects at a level that is split are listed directly.
+     * <p>
+     * In key order, a shard is returned once all shards before it are; shards listed ahead of it hold at most
+     * two listing pages each until then. Unordered, objects are returned as soon as any shard lists
+     * them.
+     * </p>
+     * @param bucket the bucket to list
+     * @param prefix only list keys starting with this prefix, or null for all keys
+     * @param delimiter the delimiter separating the levels of the key space, such as <code>/</code>
+     * @param maxFanOut the maximum number of shards listed at the same time
+     * @param ordered true to return the objects in key order
+     * @return the objects found
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    public @Nonnull Iterable<Blob> listParallel( @Nonnull final String bucket, @Nullable final String prefix, @Nonnull final String delimiter, final int maxFanOut, final boolean ordered ) throws CloudException, InternalException {
+        final ProviderContext ctx = getProvider().getContext();
+
+        if( ctx == null ) {
+            throw new CloudException("No context was specified for this request");
+        }
+        final String regionId = ctx.getRegionId();
+
+        if( regionId == null ) {
+            throw new CloudException("No region ID was specified");
+        }
+        if( !getRegion(bucket, false).equals(regionId) ) {
+            throw new CloudException("No such bucket in target region: " + bucket + " in " + regionId);
+        }
+        getProvider().hold();
+        PopulatorThread<Blob> populator = new PopulatorThread<Blob>(new JiteratorPopulator<Blob>() {
+            public void populate( @Nonnull Jiterator<Blob> iterator ) throws CloudException, InternalException {
+                APITrace.begin(getProvider(), "Blob.listParallel");
+                try {
+                    loadObjectsParallel(regionId, bucket, prefix, delimiter, Math.max(1, maxFanOut), ordered, iterator);
+                }
+                finally {
+                    APITrace.end();
+                    getProvider().release();
+                }
             }
-            catch( S3Exception e ) {
-                String code = e.getCode();
+        });
+        populator.populate();
+        return populator.getResult();
+    }
 
-                if( code == null || !code.equals("SignatureDoesNotMatch") ) {
-                    throw new CloudException(e);
+    /**
+     * Either a single object or a shard of the key space to be listed, sortable by key.
+     */
+    static private class ListUnit implements Comparable<ListUnit> {
+        private final String key;
+        private final Blob   blob;
+
+        private ListUnit( @Nonnull String key, @Nullable Blob blob ) {
+            this.key = key;
+            this.blob = blob;
+        }
+
+        @Override
+        public int compareTo( @Nonnull ListUnit other ) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    static private final int MAX_SHARD_DEPTH = 3;
+
+    /**
+     * The number of listing pages a shard buffers ahead of the caller when objects are returned in key order.
+     */
+    static private final int SHARD_BUFFER_PAGES = 2;
+
+    private void loadObjectsParallel( @Nonnull final String regionId, @Nonnull final String bucket, @Nullable String prefix, @Nonnull String delimiter, int fanOut, boolean ordered, @Nonnull final Jiterator<Blob> iterator ) throws CloudException, InternalException {
+        final int pageSize = getListPageSize();
+        List<ListUnit> units = new ArrayList<ListUnit>();
+        List<String> shards = Collections.singletonList(prefix == null ? "" : prefix);
+
+        // discover shards level by level until there are enough of them to keep the fan-out busy
+        for( int depth = 0; depth < MAX_SHARD_DEPTH && !shards.isEmpty() && shards.size() < fanOut; depth++ ) {
+            List<String> next = new ArrayList<String>();
+
+            for( String shard : shards ) {
+                String marker = null;
+
+                do {
+                    ObjectPage page = fetchObjectPage(regionId, bucket, shard.isEmpty() ? null : shard, delimiter, marker, pageSize);
+
+                    for( Blob blob : page.blobs ) {
+                        String name = blob.getObjectName();
+
+                        if( name != null && name.indexOf(delimiter, shard.length()) > -1 ) {
+                            next.add(name);
+                        }
+                        else if( name != null ) {
+                            if( ordered ) {
+                                units.add(new ListUnit(name, blob));
+                            }
+                            else {
+                                iterator.push(blob);
+                            }
+                        }
+                    }
+                    marker = page.nextMarker;
+                } while( marker != null );
+            }
+            shards = next;
+        }
+        for( String shard : shards ) {
+            units.add(new ListUnit(shard, null));
+        }
+        Collections.sort(units);
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(Collections.<Future<Void>>nCopies(units.size(), null));
+
+        try {
+            if( ordered ) {
+                List<BlockingQueue<ObjectPage>> buffers = new ArrayList<BlockingQueue<ObjectPage>>(Collections.<BlockingQueue<ObjectPage>>nCopies(units.size(), null));
+                int nextSubmit = 0, inFlight = 0;
+
+                for( int i = 0; i < units.size(); i++ ) {
+                    // stay ahead of the unit being returned by up to the fan-out
+                    while( nextSubmit < units.size() && inFlight < fanOut ) {
+                        ListUnit unit = units.get(nextSubmit);
+
+                        if( unit.blob == null ) {
+                            BlockingQueue<ObjectPage> buffer = new ArrayBlockingQueue<ObjectPage>(SHARD_BUFFER_PAGES);
+
+                            buffers.set(nextSubmit, buffer);
+                            futures.set(nextSubmit, transfers.submit(newShardTask(regionId, bucket, unit.key, pageSize, null, buffer)));
+                            inFlight++;
+                        }
+                        nextSubmit++;
+                    }
+                    ListUnit unit = units.get(i);
+
+                    if( unit.blob != null ) {
+                        iterator.push(unit.blob);
+                    }
+                    else {
+                        drainShard(buffers.get(i), futures.get(i), iterator);
+                        buffers.set(i, null);
+                        futures.set(i, null);
+                        inFlight--;
+                    }
+                }
+            }
+            else {
+                CompletionService<Void> completion = new ExecutorCompletionService<Void>(transfers);
+                int submitted = 0, done = 0;
+
+                while( done < units.size() ) {
+                    while( submitted < units.size() && submitted - done < fanOut ) {
+                        futures.set(submitted, completion.submit(newShardTask(regionId, bucket, units.get(submitted).key, pageSize, iterator, null)));
+                        submitted++;
+                    }
+                    awaitResult(completion.take());
+                    done++;
                 }
-                logger.error(e.getSummary());
-                throw new CloudException(e);
             }
-            blocks = response.document.getElementsByTagName("IsTruncated");
-            if( blocks.getLength() > 0 ) {
-                done = blocks.item(0).getFirstChild().getNodeValue().trim().equalsIgnoreCase("false");
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InternalException(e);
+        }
+        finally {
+            for( Future<Void> f : futures ) {
+                if( f != null ) {
+                    f.cancel(true);
+                }
             }
-            blocks = response.document.getElementsByTagName("Contents");
-            for( int i = 0; i < blocks.getLength(); i++ ) {
-                Node object = blocks.item(i);
-                Storage<org.dasein.util.uom.storage.Byte> size = null;
-                String name = null;
-                long ts = -1L;
+        }
+    }
 
-                if( object.hasChildNodes() ) {
-                    NodeList attrs = object.getChildNodes();
+    /**
+     * Returns the pages of a shard buffered by its task until its last page, the one without a marker.
+     */
+    private void drainShard( @Nonnull BlockingQueue<ObjectPage> buffer, @Nonnull Future<Void> task, @Nonnull Jiterator<Blob> iterator ) throws CloudException, InternalException, InterruptedException {
+        while( true ) {
+            ObjectPage page = buffer.poll(1L, TimeUnit.SECONDS);
+
+            if( page == null ) {
+                // a task that is done without its last page in the buffer failed
+                if( task.isDone() && buffer.isEmpty() ) {
+                    awaitResult(task);
+                    throw new InternalException("Listing of a shard ended without its last page");
+                }
+                continue;
+            }
+            for( Blob blob : page.blobs ) {
+                iterator.push(blob);
+            }
+            if( page.nextMarker == null ) {
+                return;
+            }
+        }
+    }
 
-                    for( int j = 0; j < attrs.getLength(); j++ ) {
-                        Node attr = attrs.item(j);
+    /**
+     * Lists all keys of a shard, pushing them into the iterator if there is one and otherwise handing its pages
+     * to the buffer, waiting while the buffer is full.
+     */
+    private @Nonnull Callable<Void> newShardTask( @Nonnull final String regionId, @Nonnull final String bucket, @Nonnull final String shard, final int pageSize, @Nullable final Jiterator<Blob> iterator, @Nullable final BlockingQueue<ObjectPage> buffer ) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                APITrace.begin(getProvider(), "Blob.listShard");
+                try {
+                    String marker = null;
 
-                        if( attr.getNodeName().equalsIgnoreCase("Key") ) {
-                            String key = attr.getFirstChild().getNodeValue().trim();
+                    do {
+                        ObjectPage page = fetchObjectPage(regionId, bucket, shard, null, marker, pageSize);
 
-                            name = key;
-                            marker = key;
+                        if( buffer != null ) {
+                            buffer.put(page);
                         }
-                        else if( attr.getNodeName().equalsIgnoreCase("Size") ) {
-                            size = new Storage<org.dasein.util.uom.storage.Byte>(Long.parseLong(attr.getFirstChild().getNodeValue().trim()), Storage.BYTE);
+                        else if( iterator != null ) {
+                            for( Blob blob : page.blobs ) {
+                                iterator.push(blob);
+                            }
                         }
-                        else if( attr.getNodeName().equalsIgnoreCase("LastModified") ) {
-                            SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-                            String dateString = attr.getFirstChild().getNodeValue().trim();
+                        marker = page.nextMarker;
+                    } while( marker != null );
+                    return null;
+                }
+                finally {
+                    APITrace.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * One page of a bucket listing and the marker to continue it from.
+     */
+    static private class ObjectPage {
+        private final List<Blob> blobs;
+        private final String     nextMarker;
+
+        private ObjectPage( @Nonnull List<Blob> blobs, @Nullable String nextMarker ) {
+            this.blobs = blobs;
+            this.nextMarker = nextMarker;
+        }
+    }
+
+    private int getListPageSize() {
+        return Math.min(MAX_LIST_PAGE_SIZE, getProvider().getIntProperty(P_LIST_PAGE_SIZE, MAX_LIST_PAGE_SIZE));
+    }
 
+    private void loadObjects( @Nonnull String regionId, @Nonnull String bucket, @Nonnull Jiterator<Blob> iterator ) throws CloudException, InternalException {
+        loadObjects(regionId, bucket, null, null, iterator);
+    }
+
+    private void loadObjects( @Nonnull final String regionId, @Nonnull final String bucket, @Nullable final String prefix, @Nullable final String delimiter, @Nonnull Jiterator<Blob> iterator ) throws CloudException, InternalException {
+        final int pageSize = getListPageSize();
+        ObjectPage page = fetchObjectPage(regionId, bucket, prefix, delimiter, null, pageSize);
+        Future<ObjectPage> next = null;
+
+        try {
+            while( true ) {
+                final String marker = page.nextMarker;
+
+                // fetch the next page while this one is handed to the caller
+                if( marker != null ) {
+                    next = transfers.submit(new Callable<ObjectPage>() {
+                        @Override
+                        public ObjectPage call() throws Exception {
+                            APITrace.begin(getProvider(), "Blob.listPage");
                             try {
-                                ts = fmt.parse(dateString).getTime();
+                                return fetchObjectPage(regionId, bucket, prefix, delimiter, marker, pageSize);
                             }
-                            catch( ParseException e ) {
-                                logger.error(e);
-                                e.printStackTrace();
-                                throw new CloudException(e);
+                            finally {
+                                APITrace.end();
                             }
                         }
+                    });
+                }
+                for( Blob blob : page.blobs ) {
+                    iterator.push(blob);
+                }
+                if( next == null ) {
+                    return;
+                }
+                page = awaitResult(next);
+                next = null;
+            }
+        }
+        finally {
+            if( next != null ) {
+                next.cancel(true);
+            }
+        }
+    }
+
+    static @Nonnull <T> T awaitResult( @Nonnull Future<T> future ) throws CloudException, InternalException {
+        try {
+            return future.get();
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InternalException(e);
+        }
+        catch( ExecutionException e ) {
+            Throwable t = e.getCause();
+
+            if( t instanceof CloudException ) {
+                throw ( CloudException ) t;
+            }
+            if( t instanceof InternalException ) {
+                throw ( InternalException ) t;
+            }
+            throw new InternalException(t);
+        }
+    }
+
+    private @Nonnull ObjectPage fetchObjectPage( @Nonnull String regionId, @Nonnull String bucket, @Nullable String prefix, @Nullable String delimiter, @Nullable String marker, int pageSize ) throws CloudException, InternalException {
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+        S3Response response;
+
+        if( delimiter != null ) {
+            parameters.put("delimiter", delimiter);
+        }
+        if( marker != null ) {
+            parameters.put("marker", marker);
+        }
+        parameters.put("max-keys", String.valueOf(pageSize));
+        if( prefix != null ) {
+            parameters.put("prefix", prefix);
+        }
+        try {
+            response = new S3Method(getProvider(), S3Action.LIST_CONTENTS, parameters, null).invoke(bucket, null);
+        }
+        catch( S3Exception e ) {
+            logger.error(e.getSummary());
+            throw new CloudException(e);
+        }
+        List<Blob> blobs = new ArrayList<Blob>();
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        boolean truncated = false;
+        String lastKey = null;
+        NodeList blocks;
+
+        blocks = response.document.getElementsByTagName("IsTruncated");
+        if( blocks.getLength() > 0 ) {
+            truncated = blocks.item(0).getFirstChild().getNodeValue().trim().equalsIgnoreCase("true");
+        }
+        blocks = response.document.getElementsByTagName("Contents");
+        for( int i = 0; i < blocks.getLength(); i++ ) {
+            Node object = blocks.item(i);
+            Storage<org.dasein.util.uom.storage.Byte> size = null;
+            String name = null;
+            long ts = -1L;
+
+            if( object.hasChildNodes() ) {
+                NodeList attrs = object.getChildNodes();
+
+                for( int j = 0; j < attrs.getLength(); j++ ) {
+                    Node attr = attrs.item(j);
+
+                    if( attr.getNodeName().equalsIgnoreCase("Key") ) {
+                        name = attr.getFirstChild().getNodeValue().trim();
+                        lastKey = name;
+                    }
+                    else if( attr.getNodeName().equalsIgnoreCase("Size") ) {
+                        size = new Storage<org.dasein.util.uom.storage.Byte>(Long.parseLong(attr.getFirstChild().getNodeValue().trim()), Storage.BYTE);
+                    }
+                    else if( attr.getNodeName().equalsIgnoreCase("LastModified") ) {
+                        String dateString = attr.getFirstChild().getNodeValue().trim();
+
+                        try {
+                            ts = fmt.parse(dateString).getTime();
+                        }
+                        catch( ParseException e ) {
+                            logger.error(e);
+                            throw new CloudException(e);
+                        }
                     }
                 }
-                if( name == null || size == null ) {
-                    continue;
+            }
+            if( name == null || size == null ) {
+                continue;
+            }
+            blobs.add(Blob.getInstance(regionId, getLocation(bucket, name), bucket, name, ts, size));
+        }
+        blocks = response.document.getElementsByTagName("CommonPrefixes");
+        for( int i = 0; i < blocks.getLength(); i++ ) {
+            NodeList attrs = blocks.item(i).getChildNodes();
+
+            for( int j = 0; j < attrs.getLength(); j++ ) {
+                Node attr = attrs.item(j);
+
+                if( attr.getNodeName().equalsIgnoreCase("Prefix") && attr.hasChildNodes() ) {
+                    String name = attr.getFirstChild().getNodeValue().trim();
+
+                    if( lastKey == null || name.compareTo(lastKey) > 0 ) {
+                        lastKey = name;
+                    }
+                    blobs.add(Blob.getInstance(regionId, getLocation(bucket, name), bucket, name, -1L, new Storage<org.dasein.util.uom.storage.Byte>(0L, Storage.BYTE)));
                 }
-                iterator.push(Blob.getInstance(regionId, getLocation(bucket, name), bucket, name, ts, size));
             }
         }
+        if( !truncated ) {
+            return new ObjectPage(blobs, null);
+        }
+        // S3 only returns NextMarker when a delimiter is given
+        blocks = response.document.getElementsByTagName("NextMarker");
+        if( blocks.getLength() > 0 && blocks.item(0).hasChildNodes() ) {
+            return new ObjectPage(blobs, blocks.item(0).getFirstChild().getNodeValue().trim());
+        }
+        return new ObjectPage(blobs, lastKey);
     }
 
     @Override
@@ -1258,34 +1614,24 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
 
     @Override
     public @Nonnull String[] mapServiceAction( @Nonnull ServiceAction action ) {
-        if( action.equals(BlobStoreSupport.ANY) ) {
-            return new String[]{S3Method.S3_PREFIX + "*"};
-        }
-        else if( action.equals(BlobStoreSupport.CREATE_BUCKET) ) {
-            return new String[]{S3Method.S3_PREFIX + "CreateBucket"};
-        }
-        else if( action.equals(BlobStoreSupport.DOWNLOAD) ) {
-            return new String[]{S3Method.S3_PREFIX + "GetObject"};
-        }
-        else if( action.equals(BlobStoreSupport.GET_BUCKET) ) {
-            return new String[]{S3Method.S3_PREFIX + "GetBucket"};
-        }
-        else if( action.equals(BlobStoreSupport.LIST_BUCKET) ) {
-            return new String[]{S3Method.S3_PREFIX + "ListBucket"};
-        }
-        else if( action.equals(BlobStoreSupport.LIST_BUCKET_CONTENTS) ) {
-            return new String[]{S3Method.S3_PREFIX + "ListBucket"};
-        }
-        else if( action.equals(BlobStoreSupport.MAKE_PUBLIC) ) {
-            return new String[]{S3Method.S3_PREFIX + "PutAccessControlPolicy"};
-        }
-        else if( action.equals(BlobStoreSupport.REMOVE_BUCKET) ) {
-            return new String[]{S3Method.S3_PREFIX + "DeleteBucket"};
+        return serviceActionIndex.map(action);
+    }
+
+    /**
+     * Copies an object within S3. On AWS the copy is made server side, in parallel byte ranges for large objects;
+     * other S3 implementations fall back to the generic copy.
+     */
+    private void copyObject( @Nonnull String sourceBucket, @Nonnull String sourceObject, @Nonnull String targetBucket, @Nonnull String targetObject ) throws CloudException, InternalException {
+        if( !getProvider().getEC2Provider().isAWS() ) {
+            copy(sourceBucket, sourceObject, targetBucket, targetObject);
+            return;
         }
-        else if( action.equals(BlobStoreSupport.UPLOAD) ) {
-            return new String[]{S3Method.S3_PREFIX + "PutObject"};
+        S3MultipartCopy copy = S3MultipartCopy.forObject(getProvider(), sourceBucket, sourceObject, targetBucket, targetObject);
+
+        if( copy == null ) {
+            throw new CloudException("No such object: " + sourceBucket + "/" + sourceObject);
         }
-        return new String[0];
+        copy.copy();
     }
 
     @Override
@@ -1301,7 +1647,7 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
             if( object == null ) {
                 throw new CloudException("No source object was specified");
             }
-            copy(sourceBucket, object, targetBucket, object);
+            copyObject(sourceBucket, object, targetBucket, object);
             removeObject(sourceBucket, object);
         }
         finally {
@@ -1311,6 +1657,10 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
 
     @Override
     protected void put( @Nullable String bucket, @Nonnull String object, @Nonnull File file ) throws CloudException, InternalException {
+        put(bucket, object, file, null);
+    }
+
+    private void put( @Nullable String bucket, @Nonnull String object, @Nonnull File file, @Nullable FileTransfer transfer ) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "Blob.putFile");
         try {
             boolean bucketIsPublic = isPublic(bucket, null);
@@ -1321,6 +1671,10 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
                 headers = new HashMap<String, String>();
                 headers.put("x-amz-acl", "public-read");
             }
+            if( bucket != null && S3MultipartUpload.isMultipart(getProvider(), file.length()) ) {
+                new S3MultipartUpload(getProvider(), bucket, object, file, "application/octet-stream", headers).upload(transfer);
+                return;
+            }
             method = new S3Method(getProvider(), S3Action.PUT_OBJECT, null, headers, "application/octet-stream", file);
             try {
                 method.invoke(bucket, object);
@@ -1405,6 +1759,206 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
         }
     }
 
+    /**
+     * Removes all objects from a bucket in a single pass. The bucket listing is streamed straight into batched
+     * deletes rather than removing one object per request.
+     * @param bucket the bucket to empty
+     * @throws CloudException the bucket could not be listed or some objects could not be removed
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    @Override
+    public void clearBucket( @Nonnull String bucket ) throws CloudException, InternalException {
+        APITrace.begin(getProvider(), "Blob.clearBucket");
+        try {
+            final Iterable<Blob> blobs = list(bucket);
+            Map<String, String> failures = removeObjects(bucket, new Iterable<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    final Iterator<Blob> it = blobs.iterator();
+
+                    return new Iterator<String>() {
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public String next() {
+                            return it.next().getObjectName();
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            });
+
+            if( !failures.isEmpty() ) {
+                Map.Entry<String, String> first = failures.entrySet().iterator().next();
+
+                throw new CloudException(failures.size() + " objects could not be removed from " + bucket + ", including " + first.getKey() + ": " + first.getValue());
+            }
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
+    /**
+     * Removes objects in batches of up to 1000 keys per request, with several batches in flight at the same time.
+     * Keys are consumed as the batches are filled, so a streaming listing can be passed in directly. Keys that do
+     * not exist count as removed.
+     * @param bucket the bucket holding the objects
+     * @param keys the names of the objects to remove
+     * @return the keys that could not be removed, mapped to the reason reported by S3
+     * @throws CloudException a batch was rejected as a whole
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    public @Nonnull Map<String, String> removeObjects( @Nonnull final String bucket, @Nonnull Iterable<String> keys ) throws CloudException, InternalException {
+        APITrace.begin(getProvider(), "Blob.removeObjects");
+        try {
+            Map<String, String> failures = new TreeMap<String, String>();
+
+            if( !getProvider().getEC2Provider().isAWS() ) {
+                // Multi-Object Delete is not available on other S3 implementations
+                for( String key : keys ) {
+                    try {
+                        removeObject(bucket, key);
+                    }
+                    catch( CloudException e ) {
+                        failures.put(key, e.getMessage());
+                    }
+                }
+                return failures;
+            }
+            CompletionService<Map<String, String>> completion = new ExecutorCompletionService<Map<String, String>>(transfers);
+            List<Future<Map<String, String>>> pending = new ArrayList<Future<Map<String, String>>>();
+            int concurrency = S3MultipartUpload.getConcurrency(getProvider());
+            List<String> batch = new ArrayList<String>();
+            int inFlight = 0;
+
+            try {
+                Iterator<String> it = keys.iterator();
+
+                while( it.hasNext() || !batch.isEmpty() ) {
+                    if( it.hasNext() ) {
+                        String key = it.next();
+
+                        if( key != null ) {
+                            batch.add(key);
+                        }
+                        if( batch.size() < MAX_DELETE_BATCH ) {
+                            continue;
+                        }
+                    }
+                    if( batch.isEmpty() ) {
+                        break;
+                    }
+                    if( inFlight >= concurrency ) {
+                        failures.putAll(awaitResult(completion.take()));
+                        inFlight--;
+                    }
+                    final List<String> toDelete = batch;
+
+                    pending.add(completion.submit(new Callable<Map<String, String>>() {
+                        @Override
+                        public Map<String, String> call() throws Exception {
+                            APITrace.begin(getProvider(), "Blob.removeObjectBatch");
+                            try {
+                                return removeBatch(bucket, toDelete);
+                            }
+                            finally {
+                                APITrace.end();
+                            }
+                        }
+                    }));
+                    inFlight++;
+                    batch = new ArrayList<String>();
+                }
+                while( inFlight > 0 ) {
+                    failures.putAll(awaitResult(completion.take()));
+                    inFlight--;
+                }
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InternalException(e);
+            }
+            finally {
+                for( Future<Map<String, String>> f : pending ) {
+                    f.cancel(true);
+                }
+            }
+            return failures;
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
+    private @Nonnull Map<String, String> removeBatch( @Nonnull String bucket, @Nonnull List<String> keys ) throws CloudException, InternalException {
+        StringBuilder xml = new StringBuilder();
+
+        // quiet mode only reports the keys that failed
+        xml.append("<Delete><Quiet>true</Quiet>");
+        for( String key : keys ) {
+            xml.append("<Object><Key>").append(AWSCloud.escapeXml(key)).append("</Key></Object>");
+        }
+        xml.append("</Delete>");
+
+        byte[] body;
+        Map<String, String> headers = new HashMap<String, String>();
+        Map<String, String> parameters = new HashMap<String, String>();
+
+        try {
+            body = xml.toString().getBytes("utf-8");
+            // required by S3 for this operation
+            headers.put("Content-MD5", S3Method.toBase64(MessageDigest.getInstance("MD5").digest(body)));
+        }
+        catch( UnsupportedEncodingException e ) {
+            throw new InternalException(e);
+        }
+        catch( NoSuchAlgorithmException e ) {
+            throw new InternalException(e);
+        }
+        parameters.put("delete", null);
+        S3Response response = new S3Method(getProvider(), S3Action.DELETE_MULTIPLE_OBJECTS, parameters, headers, "application/xml", body).invoke(bucket, null);
+        Map<String, String> failures = new HashMap<String, String>();
+
+        if( response == null || response.document == null ) {
+            return failures;
+        }
+        NodeList errors = response.document.getElementsByTagName("Error");
+
+        for( int i = 0; i < errors.getLength(); i++ ) {
+            NodeList attrs = errors.item(i).getChildNodes();
+            String key = null, code = null, message = null;
+
+            for( int j = 0; j < attrs.getLength(); j++ ) {
+                Node attr = attrs.item(j);
+
+                if( !attr.hasChildNodes() ) {
+                    continue;
+                }
+                if( attr.getNodeName().equals("Key") ) {
+                    key = attr.getFirstChild().getNodeValue();
+                }
+                else if( attr.getNodeName().equals("Code") ) {
+                    code = attr.getFirstChild().getNodeValue().trim();
+                }
+                else if( attr.getNodeName().equals("Message") ) {
+                    message = attr.getFirstChild().getNodeValue().trim();
+                }
+            }
+            if( key != null ) {
+                failures.put(key, code + ": " + message);
+            }
+        }
+        return failures;
+    }
+
     @Override
     public void removeObject( @Nullable String bucket, @Nonnull String name ) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "Blob.removeObject");
@@ -1433,32 +1987,76 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
     }
 
     @Override
-    public @Nonnull String renameBucket( @Nonnull String oldName, @Nonnull String newName, boolean findFreeName ) throws CloudException, InternalException {
+    public @Nonnull String renameBucket( @Nonnull final String oldName, @Nonnull String newName, boolean findFreeName ) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "Blob.renameBucket");
         try {
             Blob bucket = createBucket(newName, findFreeName);
+            final String targetBucket = bucket.getBucketName();
+            CompletionService<String> completion = new ExecutorCompletionService<String>(transfers);
+            List<Future<String>> pending = new ArrayList<Future<String>>();
+            List<String> copied = new ArrayList<String>();
+            int concurrency = S3MultipartUpload.getConcurrency(getProvider());
+            int inFlight = 0;
 
-            for( Blob file : list(oldName) ) {
-                int retries = 10;
-
-                while( true ) {
-                    retries--;
-                    try {
-                        move(oldName, file.getObjectName(), bucket.getBucketName());
-                        break;
-                    }
-                    catch( CloudException e ) {
-                        if( retries < 1 ) {
-                            throw e;
-                        }
-                    }
-                    try {
-                        Thread.sleep(retries * 10000L);
+            try {
+                for( Blob file : list(oldName) ) {
+                    if( file == null || file.getObjectName() == null ) {
+                        continue;
                     }
-                    catch( InterruptedException ignore ) {
+                    if( inFlight >= concurrency ) {
+                        copied.add(awaitResult(completion.take()));
+                        inFlight--;
                     }
+                    final String object = file.getObjectName();
+
+                    pending.add(completion.submit(new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            APITrace.begin(getProvider(), "Blob.copyObject");
+                            try {
+                                int retries = 10;
+
+                                while( true ) {
+                                    retries--;
+                                    try {
+                                        copyObject(oldName, object, targetBucket, object);
+                                        return object;
+                                    }
+                                    catch( CloudException e ) {
+                                        if( retries < 1 ) {
+                                            throw e;
+                                        }
+                                    }
+                                    Thread.sleep(retries * 10000L);
+                                }
+                            }
+                            finally {
+                                APITrace.end();
+                            }
+                        }
+                    }));
+                    inFlight++;
+                }
+                while( inFlight > 0 ) {
+                    copied.add(awaitResult(completion.take()));
+                    inFlight--;
                 }
             }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InternalException(e);
+            }
+            finally {
+                for( Future<String> f : pending ) {
+                    f.cancel(true);
+                }
+            }
+            // sources are only removed once every copy has been committed
+            Map<String, String> failures = removeObjects(oldName, copied);
+
+            if( !failures.isEmpty() ) {
+                logger.warn(failures.size() + " objects could not be removed from " + oldName + " after copying them to " + targetBucket);
+            }
             boolean ok = true;
             for( Blob file : list(oldName) ) {
                 if( file != null ) {
@@ -1482,7 +2080,7 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
             if( bucket == null ) {
                 throw new CloudException("No bucket was specified");
             }
-            copy(bucket, object, bucket, newName);
+            copyObject(bucket, object, bucket, newName);
             removeObject(bucket, object);
         }
         finally {
@@ -1512,6 +2110,20 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
 
     @Override
     public @Nonnull Blob upload( @Nonnull File source, @Nullable String bucket, @Nonnull String fileName ) throws CloudException, InternalException {
+        return upload(source, bucket, fileName, null);
+    }
+
+    /**
+     * Uploads a file, reporting progress on the given transfer. Large files are sent as parallel multipart uploads.
+     * @param source the file to upload
+     * @param bucket the target bucket
+     * @param fileName the target object name
+     * @param transfer optional transfer on which the bytes uploaded so far are reported
+     * @return the uploaded object
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    public @Nonnull Blob upload( @Nonnull File source, @Nullable String bucket, @Nonnull String fileName, @Nullable FileTransfer transfer ) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "Blob.upload");
         try {
             if( bucket == null ) {
@@ -1520,7 +2132,7 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
             if( !exists(bucket) ) {
                 createBucket(bucket, false);
             }
-            put(bucket, fileName, source);
+            put(bucket, fileName, source, transfer);
             return getObject(bucket, fileName);
         }
         finally {
@@ -1537,7 +2149,7 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
 
     		for (int i = 0; i < tags.length ; i++ )
     			tagsList.add(new Tag (tags[i].getKey(), tags[i].getValue()));
-    		updateTags(1, bucketName, S3Action.PUT_BUCKET_TAG, tagsList.toArray(new Tag[tagsList.size()]));
+    		updateTags(bucketName, S3Action.PUT_BUCKET_TAG, tagsList.toArray(new Tag[tagsList.size()]));
     	}
     	finally {
     		APITrace.end();
@@ -1565,8 +2177,8 @@ public class S3 extends AbstractBlobStoreSupport<AWSCloud> {
     						break;
     					}
     				}
-    		updateTags(1, bucketName, S3Action.DELETE_BUCKET_TAG);
-    		updateTags(1, bucketName, S3Action.PUT_BUCKET_TAG, existTags.toArray(new Tag[existTags.size()]));
+    		updateTags(bucketName, S3Action.DELETE_BUCKET_TAG);
+    		updateTags(bucketName, S3Action.PUT_BUCKET_TAG, existTags.toArray(new Tag[existTags.size()]));
     	}
         finally {
             APITrace.end();
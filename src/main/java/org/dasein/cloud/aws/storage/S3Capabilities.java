@@ -38,6 +38,8 @@ public class S3Capabilities extends AbstractCapabilities<AWSCloud> implements Bl
     static final  int                                       MAX_BUCKETS         = 100;
     static final  int                                       MAX_OBJECTS         = -1;
     static final  Storage<org.dasein.util.uom.storage.Byte> MAX_OBJECT_SIZE     = new Storage<org.dasein.util.uom.storage.Byte>(5000000000L, Storage.BYTE);
+    // AWS accepts larger objects as multipart uploads
+    static final  Storage<org.dasein.util.uom.storage.Byte> MAX_MULTIPART_SIZE  = new Storage<org.dasein.util.uom.storage.Byte>(5497558138880L, Storage.BYTE);
 
     public S3Capabilities(AWSCloud provider) {
         super(provider);
@@ -66,7 +68,7 @@ public class S3Capabilities extends AbstractCapabilities<AWSCloud> implements Bl
     @Nonnull
     @Override
     public Storage<Byte> getMaxObjectSize() throws InternalException, CloudException {
-        return MAX_OBJECT_SIZE;
+        return getProvider().getEC2Provider().isAWS() ? MAX_MULTIPART_SIZE : MAX_OBJECT_SIZE;
     }
 
     @Override
@@ -28,6 +28,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.StringEntity;
@@ -36,6 +37,8 @@ import org.apache.log4j.Logger;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.InternalException;
 import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.aws.RetryPolicy;
+import org.dasein.cloud.aws.V4Signer;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.storage.BlobStoreSupport;
 import org.dasein.cloud.util.APITrace;
@@ -141,13 +144,14 @@ public class S3Method {
     }
 
     private S3Action           action      = null;
-    private int                attempts    = 0;
     private String             body        = null;
     private String             contentType = null;
     private Map<String,String> headers     = null;
     private Map<String,String> parameters  = null;
     private AWSCloud           provider    = null;
     private File               uploadFile  = null;
+    private byte[]             uploadBytes = null;
+    private String             payloadHash = null;
 
     public S3Method(AWSCloud provider, S3Action action) {
         this.action = action;
@@ -180,6 +184,15 @@ public class S3Method {
         this.parameters = parameters;
     }
 
+    public S3Method(AWSCloud provider, S3Action action, Map<String,String> parameters, Map<String,String> headers, String contentType, byte[] uploadBytes) {
+        this.action = action;
+        this.headers = (headers == null ? new HashMap<String,String>() : headers);
+        this.contentType = contentType;
+        this.uploadBytes = uploadBytes;
+        this.provider = provider;
+        this.parameters = parameters;
+    }
+
     private String getDate() throws CloudException {
         if( provider.getEC2Provider().isStorage() && "google".equalsIgnoreCase(provider.getProviderName()) ) {
             SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ssz", new Locale("US"));
@@ -203,8 +216,51 @@ public class S3Method {
 
     static private final Logger wire = AWSCloud.getWireLogger(S3.class);
 
-    // TODO(stas): This method screams for some heavy refactoring
     S3Response invoke(@Nullable String bucket, @Nullable String object, @Nullable String temporaryEndpoint) throws S3Exception, CloudException, InternalException {
+        RetryPolicy.Attempt attempt = provider.getRetryPolicy().begin(provider.getContext().getAccountNumber(), provider.getContext().getRegionId());
+
+        while( true ) {
+            try {
+                S3Response response = invokeOnce(bucket, object, temporaryEndpoint);
+
+                attempt.succeeded();
+                return response;
+            }
+            catch( S3Exception e ) {
+                if( !attempt.retry(e) ) {
+                    throw e;
+                }
+                logger.warn("Retrying " + action + " after " + e.getSummary());
+            }
+        }
+    }
+
+    /**
+     * Hashes the request payload for V4 signing. The hash is computed once and reused when the request is retried;
+     * uploaded files are streamed through the digest rather than read into memory.
+     * @return the hex encoded SHA-256 hash of the payload
+     * @throws InternalException the upload file could not be read
+     */
+    private String getPayloadHash() throws InternalException {
+        if( payloadHash == null ) {
+            if( body != null ) {
+                payloadHash = provider.getRequestBodyHash(body);
+            }
+            else if( uploadFile != null ) {
+                payloadHash = provider.getRequestBodyHash(uploadFile);
+            }
+            else if( uploadBytes != null ) {
+                payloadHash = V4Signer.sha256Hex(uploadBytes);
+            }
+            else {
+                payloadHash = provider.getRequestBodyHash("");
+            }
+        }
+        return payloadHash;
+    }
+
+    // TODO(stas): This method screams for some heavy refactoring
+    private S3Response invokeOnce(@Nullable String bucket, @Nullable String object, @Nullable String temporaryEndpoint) throws S3Exception, CloudException, InternalException {
         if( wire.isDebugEnabled() ) {
             wire.debug("");
             wire.debug("----------------------------------------------------------------------------------");
@@ -322,7 +378,7 @@ public class S3Method {
             if( object != null ) {
                 url.append(object);
             }
-            else if( parameters != null ) {
+            if( parameters != null ) {
                 boolean first = true;
 
                 if( object != null && object.indexOf('?') != -1 ) {
@@ -389,22 +445,14 @@ public class S3Method {
             else if( uploadFile != null ) {
                 ((HttpEntityEnclosingRequestBase)method).setEntity(new FileEntity(uploadFile, contentType));
             }
+            else if( uploadBytes != null ) {
+                ((HttpEntityEnclosingRequestBase)method).setEntity(new ByteArrayEntity(uploadBytes, contentType == null ? null : ContentType.create(contentType)));
+            }
             try {
-                String hash = null;
-                if( method instanceof HttpEntityEnclosingRequestBase ) {
-                    try {
-                        hash = provider.getRequestBodyHash(EntityUtils.toString(((HttpEntityEnclosingRequestBase)method).getEntity()));
-                    }
-                    catch( IOException e ) {
-                        throw new InternalException(e);
-                    }
-                }
-                else {
-                    hash = provider.getRequestBodyHash("");
-                }
-
                 String signature;
                 if( provider.getEC2Provider().isAWS() ) {
+                    String hash = getPayloadHash();
+
                     // Sign v4 for AWS
                     signature = provider.getV4Authorization(
                             new String(provider.getAccessKey()[0]),
@@ -453,14 +501,18 @@ public class S3Method {
                     wire.debug("-- file upload --");
                     wire.debug("");
                 }
+                else if( uploadBytes != null ) {
+                    wire.debug("-- " + uploadBytes.length + " bytes upload --");
+                    wire.debug("");
+                }
             }
 
-            attempts++;
-            client = provider.getClient(body == null && uploadFile == null);
+            client = provider.getClient();
             
             S3Response response = new S3Response();
             HttpResponse httpResponse;
-            
+
+            provider.getRateLimiter().acquire(provider, "s3", provider.getContext().getRegionId(), method.getMethod());
             try {
                 APITrace.trace(provider, action.toString());
                 httpResponse = client.execute(method);
@@ -491,7 +543,7 @@ public class S3Method {
                 }
             }
             try {
-                if( status == HttpStatus.SC_OK || status == HttpStatus.SC_CREATED || status == HttpStatus.SC_ACCEPTED ) {
+                if( status == HttpStatus.SC_OK || status == HttpStatus.SC_CREATED || status == HttpStatus.SC_ACCEPTED || status == HttpStatus.SC_PARTIAL_CONTENT ) {
                     Header clen = httpResponse.getFirstHeader("Content-Length");
                     long len = -1L;
                     
@@ -502,7 +554,8 @@ public class S3Method {
                         try {
                             Header ct = httpResponse.getFirstHeader("Content-Type");
     
-                            if( (ct != null && (ct.getValue().startsWith("application/xml") || ct.getValue().startsWith("text/xml"))) || ( action.equals(S3Action.GET_BUCKET_TAG) && input != null )) {
+                            // object content is returned as is, whatever its type
+                            if( (!action.equals(S3Action.GET_OBJECT) && !action.equals(S3Action.OBJECT_EXISTS) && ct != null && (ct.getValue().startsWith("application/xml") || ct.getValue().startsWith("text/xml"))) || ( action.equals(S3Action.GET_BUCKET_TAG) && input != null )) {
                                 try {
                                     response.document = parseResponse(input);
                                     return response;
@@ -545,28 +598,17 @@ public class S3Method {
                 }
                 else {
                     if( status == HttpStatus.SC_SERVICE_UNAVAILABLE || status == HttpStatus.SC_INTERNAL_SERVER_ERROR ) {
-                        if( attempts >= 5 ) {
-                            String msg;
-                            
-                            if( status == HttpStatus.SC_SERVICE_UNAVAILABLE ) {
-                                msg = "Cloud service is currently unavailable.";
-                            }
-                            else {
-                                msg = "The cloud service encountered a server error while processing your request.";
-                            }
-                            logger.error(msg);
-                            throw new CloudException(msg);
+                        String msg;
+
+                        if( status == HttpStatus.SC_SERVICE_UNAVAILABLE ) {
+                            msg = "Cloud service is currently unavailable.";
                         }
                         else {
-                            leaveOpen = true;
-                            if( input != null ) {
-                                try { input.close(); }
-                                catch( IOException ignore ) { }
-                            }
-                            try { Thread.sleep(5000L); }
-                            catch( InterruptedException ignore ) { }
-                            return invoke(bucket, object);
+                            msg = "The cloud service encountered a server error while processing your request.";
                         }
+                        logger.error(msg);
+                        // the retry policy decides whether this is sent again
+                        throw new S3Exception(status, null, status == HttpStatus.SC_SERVICE_UNAVAILABLE ? "ServiceUnavailable" : "InternalError", msg);
                     }
                     try {
                         Document doc;
@@ -650,9 +692,8 @@ public class S3Method {
             }
         }
         finally {
-            if (!leaveOpen && client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            // connections go back to the pool when the response stream is closed, which is left to the
+            // caller when the content is handed over in the response
             if( wire.isDebugEnabled() ) {
                 wire.debug("----------------------------------------------------------------------------------");
                 wire.debug("");
@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.storage;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.aws.storage.S3Method.S3Response;
+import org.dasein.cloud.util.APITrace;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+
+/**
+ * Copies an S3 object within S3, without passing its content through the client. Objects below the multipart
+ * threshold are copied with a single request. Larger objects, including those above the 5 GB limit of a single
+ * copy, are copied as a multipart upload whose parts are byte ranges of the source copied in parallel. The upload
+ * is given the content type, user metadata and content headers of the source, which a single copy keeps.
+ * <p>
+ * Every request carries <code>x-amz-copy-source-if-match</code> on the ETag of the source, so a source replaced
+ * during the copy fails it instead of producing a mix of both versions. The copy is complete once this class
+ * returns; removing the source is left to the caller.
+ * </p>
+ *
+ * @since 2015.10
+ */
+public class S3MultipartCopy {
+    static private final Logger logger = AWSCloud.getLogger(S3MultipartCopy.class);
+
+    static private final int PART_ATTEMPTS = 3;
+
+    // the headers besides user metadata that a single copy keeps from the source
+    static private final Set<String> COPIED_HEADERS = new HashSet<String>(Arrays.asList("cache-control", "content-disposition", "content-encoding", "content-language", "expires"));
+
+    private final AWSCloud provider;
+    private final String   sourceBucket;
+    private final String   sourceObject;
+    private final String   targetBucket;
+    private final String   targetObject;
+    private final long     size;
+    private final String   etag;
+    private final String   contentType;
+    private final Map<String, String> metadata;
+
+    /**
+     * @param provider the provider to copy through
+     * @param sourceBucket the bucket holding the source object
+     * @param sourceObject the name of the source object
+     * @param targetBucket the bucket to copy to
+     * @param targetObject the name of the copy
+     * @param size the size of the source object in bytes
+     * @param etag the ETag of the source object, if known
+     */
+    public S3MultipartCopy( @Nonnull AWSCloud provider, @Nonnull String sourceBucket, @Nonnull String sourceObject, @Nonnull String targetBucket, @Nonnull String targetObject, long size, @Nullable String etag ) {
+        this(provider, sourceBucket, sourceObject, targetBucket, targetObject, size, etag, null, null);
+    }
+
+    /**
+     * @param provider the provider to copy through
+     * @param sourceBucket the bucket holding the source object
+     * @param sourceObject the name of the source object
+     * @param targetBucket the bucket to copy to
+     * @param targetObject the name of the copy
+     * @param size the size of the source object in bytes
+     * @param etag the ETag of the source object, if known
+     * @param contentType the content type of the source object, if known
+     * @param metadata the user metadata and other headers of the source object to set on a multipart copy
+     */
+    public S3MultipartCopy( @Nonnull AWSCloud provider, @Nonnull String sourceBucket, @Nonnull String sourceObject, @Nonnull String targetBucket, @Nonnull String targetObject, long size, @Nullable String etag, @Nullable String contentType, @Nullable Map<String, String> metadata ) {
+        this.provider = provider;
+        this.sourceBucket = sourceBucket;
+        this.sourceObject = sourceObject;
+        this.targetBucket = targetBucket;
+        this.targetObject = targetObject;
+        this.size = size;
+        this.etag = etag;
+        this.contentType = contentType;
+        this.metadata = ( metadata == null ? Collections.<String, String>emptyMap() : new HashMap<String, String>(metadata) );
+    }
+
+    /**
+     * Copies the object, blocking until the copy is committed.
+     * @throws CloudException the copy failed
+     * @throws InternalException the copy was interrupted or an error occurred within the Dasein Cloud implementation
+     */
+    public void copy() throws CloudException, InternalException {
+        if( !S3MultipartUpload.isMultipart(provider, size) ) {
+            copyPart(null, 0, 0L, size - 1);
+            return;
+        }
+        final long partSize = S3MultipartUpload.getPartSize(provider, size);
+        final int partCount = ( int ) ( ( size + partSize - 1 ) / partSize );
+        final String uploadId = S3MultipartUpload.initiate(provider, targetBucket, targetObject, contentType, metadata);
+        CompletionService<Map.Entry<Integer, String>> parts = new ExecutorCompletionService<Map.Entry<Integer, String>>(S3.transfers);
+        List<Future<Map.Entry<Integer, String>>> pending = new ArrayList<Future<Map.Entry<Integer, String>>>();
+        SortedMap<Integer, String> etags = new TreeMap<Integer, String>();
+        int concurrency = S3MultipartUpload.getConcurrency(provider);
+        boolean committed = false;
+        int next = 0;
+
+        try {
+            while( etags.size() < partCount ) {
+                while( next < partCount && next - etags.size() < concurrency ) {
+                    final int partNumber = next + 1;
+                    final long start = next++ * partSize;
+                    final long end = Math.min(start + partSize, size) - 1;
+
+                    pending.add(parts.submit(new Callable<Map.Entry<Integer, String>>() {
+                        @Override
+                        public Map.Entry<Integer, String> call() throws Exception {
+                            APITrace.begin(provider, "Blob.copyPart");
+                            try {
+                                String partETag = copyPart(uploadId, partNumber, start, end);
+
+                                return new AbstractMap.SimpleEntry<Integer, String>(partNumber, partETag);
+                            }
+                            finally {
+                                APITrace.end();
+                            }
+                        }
+                    }));
+                }
+                Map.Entry<Integer, String> part = S3.awaitResult(parts.take());
+
+                etags.put(part.getKey(), part.getValue());
+            }
+            S3MultipartUpload.complete(provider, targetBucket, targetObject, uploadId, etags);
+            committed = true;
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InternalException(e);
+        }
+        finally {
+            for( Future<Map.Entry<Integer, String>> f : pending ) {
+                f.cancel(true);
+            }
+            if( !committed ) {
+                S3MultipartUpload.abort(provider, targetBucket, targetObject, uploadId);
+            }
+        }
+    }
+
+    /**
+     * Copies the bytes from start to end, inclusive, as a part of an upload, or copies the whole object when
+     * no upload id is given.
+     * @return the ETag of the part or copy
+     */
+    private @Nonnull String copyPart( @Nullable String uploadId, int partNumber, long start, long end ) throws CloudException, InternalException {
+        Map<String, String> parameters = null;
+
+        if( uploadId != null ) {
+            parameters = new LinkedHashMap<String, String>();
+            parameters.put("partNumber", String.valueOf(partNumber));
+            parameters.put("uploadId", uploadId);
+        }
+        for( int attempt = 1; ; attempt++ ) {
+            Map<String, String> headers = new HashMap<String, String>();
+
+            headers.put("x-amz-copy-source", "/" + sourceBucket + "/" + AWSCloud.encode(sourceObject, true));
+            if( etag != null ) {
+                headers.put("x-amz-copy-source-if-match", etag);
+            }
+            if( uploadId != null ) {
+                headers.put("x-amz-copy-source-range", "bytes=" + start + "-" + end);
+            }
+            try {
+                S3Action action = ( uploadId == null ? S3Action.COPY_OBJECT : S3Action.UPLOAD_PART );
+                S3Response response = new S3Method(provider, action, parameters, headers).invoke(targetBucket, targetObject);
+
+                // S3 may report a failed copy in the body of a 200 response
+                if( response != null && response.document != null && response.document.getElementsByTagName("Error").getLength() > 0 ) {
+                    throw new S3Exception(HttpStatus.SC_INTERNAL_SERVER_ERROR, S3MultipartUpload.getText(response.document, "RequestId"), S3MultipartUpload.getText(response.document, "Code"), S3MultipartUpload.getText(response.document, "Message"));
+                }
+                String copied = ( response == null ? null : S3MultipartUpload.getText(response.document, "ETag") );
+
+                if( copied == null ) {
+                    throw new CloudException("No ETag was returned for the copy of " + describe(start, end));
+                }
+                String encryption = S3MultipartUpload.getHeader(response, "x-amz-server-side-encryption");
+
+                // a whole copy of an object that was not uploaded in parts keeps its MD5 as ETag unless encrypted with a KMS key
+                if( uploadId == null && etag != null && !etag.contains("-") && ( encryption == null || encryption.equals("AES256") ) && !copied.equals(etag) ) {
+                    throw new CloudException("ETag " + copied + " of the copy of " + describe(start, end) + " does not match " + etag);
+                }
+                return copied;
+            }
+            catch( S3Exception e ) {
+                if( attempt >= PART_ATTEMPTS || !provider.getRetryPolicy().isRetryable(e.getHttpCode(), e.getProviderCode()) ) {
+                    throw e;
+                }
+                logger.warn("Retrying copy of " + describe(start, end) + ": " + e.getSummary());
+            }
+        }
+    }
+
+    private @Nonnull String describe( long start, long end ) {
+        return "bytes " + start + "-" + end + " of " + sourceBucket + "/" + sourceObject + " to " + targetBucket + "/" + targetObject;
+    }
+
+    /**
+     * Prepares a copy of an object, looking up its size and ETag.
+     * @return the copy, or null if the source object does not exist or reports no size
+     */
+    static @Nullable S3MultipartCopy forObject( @Nonnull AWSCloud provider, @Nonnull String sourceBucket, @Nonnull String sourceObject, @Nonnull String targetBucket, @Nonnull String targetObject ) throws CloudException, InternalException {
+        S3Response response = S3RangedDownload.head(provider, sourceBucket, sourceObject);
+        String length = S3MultipartUpload.getHeader(response, "Content-Length");
+
+        if( response != null ) {
+            response.close();
+        }
+        if( length == null ) {
+            return null;
+        }
+        // a single copy keeps these by default, so a multipart copy sets them to match
+        Map<String, String> metadata = new HashMap<String, String>();
+
+        for( Header header : response.headers ) {
+            String name = header.getName().toLowerCase();
+
+            if( name.startsWith("x-amz-meta-") || COPIED_HEADERS.contains(name) ) {
+                metadata.put(header.getName(), header.getValue());
+            }
+        }
+        return new S3MultipartCopy(provider, sourceBucket, sourceObject, targetBucket, targetObject, Long.parseLong(length), S3MultipartUpload.getHeader(response, "ETag"), S3MultipartUpload.getHeader(response, "Content-Type"), metadata);
+    }
+
+    /**
+     * @return the size of the source object in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,542 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.storage;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.aws.V4Signer;
+import org.dasein.cloud.aws.storage.S3Method.S3Response;
+import org.dasein.cloud.storage.FileTransfer;
+import org.dasein.cloud.util.APITrace;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads a file to S3 as a multipart upload. The file is split into parts which are uploaded concurrently, each
+ * part being verified against its MD5 digest. Objects may therefore be larger than the 5 GB limit of a single PUT.
+ * <p>
+ * The upload id is persisted in the temporary directory until the upload completes. Uploading the same, unchanged
+ * file to the same object again after a failure picks up the upload and skips the parts that are already stored.
+ * </p>
+ * <p>
+ * Uploads are tuned through the custom properties of the provider context:
+ * </p>
+ * <ul>
+ *     <li><code>s3MultipartThresholdMB</code> - files of at least this size use multipart uploads (default 64)</li>
+ *     <li><code>s3PartSizeMB</code> - size of each part, at least 5 (default 16)</li>
+ *     <li><code>s3TransferThreads</code> - number of parts transferred at the same time (default 4)</li>
+ * </ul>
+ *
+ * @since 2015.10
+ */
+public class S3MultipartUpload {
+    static private final Logger logger = AWSCloud.getLogger(S3MultipartUpload.class);
+
+    static public final String P_THRESHOLD   = "s3MultipartThresholdMB";
+    static public final String P_PART_SIZE   = "s3PartSizeMB";
+    static public final String P_CONCURRENCY = "s3TransferThreads";
+
+    static private final long MB                  = 1024L * 1024L;
+    static private final int  DEFAULT_THRESHOLD   = 64;
+    static private final int  DEFAULT_PART_SIZE   = 16;
+    static private final int  DEFAULT_CONCURRENCY = 4;
+    static private final int  MIN_PART_SIZE       = 5;
+    static private final int  MAX_PARTS           = 10000;
+    static private final int  PART_ATTEMPTS       = 3;
+
+    static private final String STATE_DIR = "dasein-s3-uploads";
+
+    /**
+     * @param provider the provider the upload is made through
+     * @param length the size of the file in bytes
+     * @return true if a file of this size should be sent as a multipart upload
+     */
+    static public boolean isMultipart( @Nonnull AWSCloud provider, long length ) {
+        return ( provider.getEC2Provider().isAWS() && length >= provider.getIntProperty(P_THRESHOLD, DEFAULT_THRESHOLD) * MB );
+    }
+
+    /**
+     * @param provider the provider the transfer is made through
+     * @return the number of parts to transfer at the same time
+     */
+    static int getConcurrency( @Nonnull AWSCloud provider ) {
+        return provider.getIntProperty(P_CONCURRENCY, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * Calculates the part size for an object, keeping within the limit of 10,000 parts per upload.
+     * @param provider the provider the transfer is made through
+     * @param length the size of the object in bytes
+     * @return the part size in bytes
+     */
+    static long getPartSize( @Nonnull AWSCloud provider, long length ) {
+        long partSize = Math.max(MIN_PART_SIZE, provider.getIntProperty(P_PART_SIZE, DEFAULT_PART_SIZE)) * MB;
+        long minimum = ( length + MAX_PARTS - 1 ) / MAX_PARTS;
+
+        while( partSize < minimum ) {
+            partSize += MB;
+        }
+        return partSize;
+    }
+
+    /**
+     * Starts a multipart upload.
+     * @return the id of the new upload
+     */
+    static @Nonnull String initiate( @Nonnull AWSCloud provider, @Nonnull String bucket, @Nonnull String object, @Nullable String contentType, @Nullable Map<String, String> headers ) throws CloudException, InternalException {
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+
+        parameters.put("uploads", null);
+        S3Response response = new S3Method(provider, S3Action.INITIATE_MULTIPART_UPLOAD, parameters, copy(headers), contentType, ( String ) null).invoke(bucket, object);
+        String uploadId = ( response == null ? null : getText(response.document, "UploadId") );
+
+        if( uploadId == null ) {
+            throw new CloudException("No upload id was returned for " + bucket + "/" + object);
+        }
+        return uploadId;
+    }
+
+    /**
+     * Assembles the uploaded parts into the final object.
+     * @param etags the ETags of the uploaded parts by part number
+     */
+    static void complete( @Nonnull AWSCloud provider, @Nonnull String bucket, @Nonnull String object, @Nonnull String uploadId, @Nonnull SortedMap<Integer, String> etags ) throws CloudException, InternalException {
+        StringBuilder body = new StringBuilder();
+
+        body.append("<CompleteMultipartUpload>");
+        for( Map.Entry<Integer, String> part : etags.entrySet() ) {
+            body.append("<Part><PartNumber>").append(part.getKey()).append("</PartNumber>");
+            body.append("<ETag>").append(AWSCloud.escapeXml(part.getValue())).append("</ETag></Part>");
+        }
+        body.append("</CompleteMultipartUpload>");
+
+        S3Response response = new S3Method(provider, S3Action.COMPLETE_MULTIPART_UPLOAD, uploadParameters(uploadId), null, null, body.toString()).invoke(bucket, object);
+
+        // S3 may report a failure to assemble the object in the body of a 200 response
+        if( response != null && response.document != null && response.document.getElementsByTagName("Error").getLength() > 0 ) {
+            throw new S3Exception(HttpStatus.SC_INTERNAL_SERVER_ERROR, getText(response.document, "RequestId"), getText(response.document, "Code"), getText(response.document, "Message"));
+        }
+    }
+
+    /**
+     * Discards an upload and the parts uploaded for it.
+     */
+    static void abort( @Nonnull AWSCloud provider, @Nonnull String bucket, @Nonnull String object, @Nonnull String uploadId ) {
+        try {
+            new S3Method(provider, S3Action.ABORT_MULTIPART_UPLOAD, uploadParameters(uploadId), null).invoke(bucket, object);
+        }
+        catch( Exception e ) {
+            logger.warn("Unable to abort upload " + uploadId + " of " + bucket + "/" + object + ": " + e.getMessage());
+        }
+    }
+
+    static @Nonnull Map<String, String> uploadParameters( @Nonnull String uploadId ) {
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+
+        parameters.put("uploadId", uploadId);
+        return parameters;
+    }
+
+    static @Nullable String getText( @Nullable Document doc, @Nonnull String tagName ) {
+        if( doc == null ) {
+            return null;
+        }
+        NodeList nodes = doc.getElementsByTagName(tagName);
+
+        if( nodes.getLength() < 1 || !nodes.item(0).hasChildNodes() ) {
+            return null;
+        }
+        return nodes.item(0).getFirstChild().getNodeValue().trim();
+    }
+
+    static private @Nonnull Map<String, String> copy( @Nullable Map<String, String> headers ) {
+        return ( headers == null ? new HashMap<String, String>() : new HashMap<String, String>(headers) );
+    }
+
+    /**
+     * A part already stored by S3 for an upload being resumed.
+     */
+    static private class StoredPart {
+        private final String etag;
+        private final long   size;
+
+        private StoredPart( @Nonnull String etag, long size ) {
+            this.etag = etag;
+            this.size = size;
+        }
+    }
+
+    private final AWSCloud            provider;
+    private final String              bucket;
+    private final String              object;
+    private final File                file;
+    private final String              contentType;
+    private final Map<String, String> headers;
+
+    /**
+     * @param provider the provider to upload through
+     * @param bucket the target bucket
+     * @param object the target object name
+     * @param file the file to upload
+     * @param contentType the content type of the object
+     * @param headers additional headers of the object, such as <code>x-amz-acl</code>
+     */
+    public S3MultipartUpload( @Nonnull AWSCloud provider, @Nonnull String bucket, @Nonnull String object, @Nonnull File file, @Nullable String contentType, @Nullable Map<String, String> headers ) {
+        this.provider = provider;
+        this.bucket = bucket;
+        this.object = object;
+        this.file = file;
+        this.contentType = contentType;
+        this.headers = headers;
+    }
+
+    /**
+     * Uploads the file, blocking until all parts are stored and the object is assembled.
+     * @param transfer optional transfer on which progress is reported
+     * @throws CloudException the upload failed
+     * @throws InternalException the file could not be read or the upload was interrupted
+     */
+    public void upload( @Nullable FileTransfer transfer ) throws CloudException, InternalException {
+        final long length = file.length();
+        final long partSize = getPartSize(provider, length);
+        final int partCount = ( int ) Math.max(1L, ( length + partSize - 1 ) / partSize);
+        final File stateFile = getStateFile(partSize);
+        final AtomicLong transferred = new AtomicLong();
+
+        if( transfer != null ) {
+            transfer.setBytesToTransfer(length);
+        }
+        String uploadId = readState(stateFile);
+        Map<Integer, StoredPart> stored = Collections.emptyMap();
+
+        if( uploadId != null ) {
+            try {
+                stored = listParts(uploadId);
+                logger.info("Resuming upload " + uploadId + " of " + bucket + "/" + object + " with " + stored.size() + " of " + partCount + " parts stored");
+            }
+            catch( S3Exception e ) {
+                if( e.getStatus() != HttpStatus.SC_NOT_FOUND ) {
+                    throw e;
+                }
+                // the upload was completed or aborted since
+                uploadId = null;
+            }
+        }
+        if( uploadId == null ) {
+            uploadId = initiate(provider, bucket, object, contentType, headers);
+            writeState(stateFile, uploadId);
+        }
+        FileInputStream input;
+
+        try {
+            input = new FileInputStream(file);
+        }
+        catch( FileNotFoundException e ) {
+            throw new InternalException(e);
+        }
+        final String id = uploadId;
+        final FileChannel channel = input.getChannel();
+        final Map<Integer, StoredPart> resumed = stored;
+        CompletionService<Map.Entry<Integer, String>> parts = new ExecutorCompletionService<Map.Entry<Integer, String>>(S3.transfers);
+        List<Future<Map.Entry<Integer, String>>> pending = new ArrayList<Future<Map.Entry<Integer, String>>>();
+        SortedMap<Integer, String> etags = new TreeMap<Integer, String>();
+        int next = 1;
+
+        try {
+            int concurrency = getConcurrency(provider);
+
+            while( etags.size() < partCount ) {
+                // keep a bounded number of parts in flight so memory stays at concurrency * part size
+                while( next <= partCount && next - etags.size() <= concurrency ) {
+                    final int partNumber = next++;
+                    final long offset = ( partNumber - 1 ) * partSize;
+                    final int size = ( int ) Math.min(partSize, length - offset);
+
+                    pending.add(parts.submit(new Callable<Map.Entry<Integer, String>>() {
+                        @Override
+                        public Map.Entry<Integer, String> call() throws Exception {
+                            APITrace.begin(provider, "Blob.uploadPart");
+                            try {
+                                String etag = uploadPart(channel, id, partNumber, offset, size, resumed.get(partNumber));
+
+                                if( transfer != null ) {
+                                    transfer.setBytesTransferred(transferred.addAndGet(size));
+                                }
+                                return new AbstractMap.SimpleEntry<Integer, String>(partNumber, etag);
+                            }
+                            finally {
+                                APITrace.end();
+                            }
+                        }
+                    }));
+                }
+                Map.Entry<Integer, String> part = getPart(parts.take());
+
+                etags.put(part.getKey(), part.getValue());
+            }
+            complete(provider, bucket, object, id, etags);
+            deleteState(stateFile);
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InternalException(e);
+        }
+        catch( CloudException e ) {
+            // retryable failures keep the upload so that the next attempt resumes it
+            if( !provider.getRetryPolicy().isRetryable(e.getHttpCode(), e.getProviderCode()) ) {
+                abort(provider, bucket, object, id);
+                deleteState(stateFile);
+            }
+            else {
+                logger.warn("Upload " + id + " of " + bucket + "/" + object + " failed and is kept for resuming: " + e.getMessage());
+            }
+            throw e;
+        }
+        finally {
+            for( Future<Map.Entry<Integer, String>> f : pending ) {
+                f.cancel(true);
+            }
+            try { input.close(); }
+            catch( IOException ignore ) { }
+        }
+    }
+
+    private @Nonnull Map.Entry<Integer, String> getPart( @Nonnull Future<Map.Entry<Integer, String>> future ) throws CloudException, InternalException, InterruptedException {
+        try {
+            return future.get();
+        }
+        catch( ExecutionException e ) {
+            Throwable t = e.getCause();
+
+            if( t instanceof CloudException ) {
+                throw ( CloudException ) t;
+            }
+            if( t instanceof InternalException ) {
+                throw ( InternalException ) t;
+            }
+            throw new InternalException(t);
+        }
+    }
+
+    private @Nonnull String uploadPart( @Nonnull FileChannel channel, @Nonnull String uploadId, int partNumber, long offset, int size, @Nullable StoredPart stored ) throws CloudException, InternalException {
+        byte[] data = new byte[size];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        try {
+            while( buffer.hasRemaining() ) {
+                if( channel.read(buffer, offset + buffer.position()) < 0 ) {
+                    throw new InternalException("Unexpected end of " + file + " while reading part " + partNumber);
+                }
+            }
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        byte[] md5;
+
+        try {
+            md5 = MessageDigest.getInstance("MD5").digest(data);
+        }
+        catch( NoSuchAlgorithmException e ) {
+            throw new InternalException(e);
+        }
+        String expectedETag = "\"" + new String(Hex.encodeHex(md5, true)) + "\"";
+
+        if( stored != null && stored.size == size && expectedETag.equals(stored.etag) ) {
+            return stored.etag;
+        }
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+
+        parameters.put("partNumber", String.valueOf(partNumber));
+        parameters.put("uploadId", uploadId);
+        for( int attempt = 1; ; attempt++ ) {
+            Map<String, String> partHeaders = new HashMap<String, String>();
+
+            // S3 rejects the part with BadDigest if it does not arrive intact
+            partHeaders.put("Content-MD5", S3Method.toBase64(md5));
+            try {
+                S3Response response = new S3Method(provider, S3Action.UPLOAD_PART, parameters, partHeaders, null, data).invoke(bucket, object);
+                String etag = getHeader(response, "ETag");
+                String encryption = getHeader(response, "x-amz-server-side-encryption");
+
+                // the ETag is only the MD5 of the part when it is not encrypted with a KMS key
+                if( etag != null && ( encryption == null || encryption.equals("AES256") ) && !etag.equals(expectedETag) ) {
+                    throw new S3Exception(HttpStatus.SC_BAD_REQUEST, null, "BadDigest", "ETag " + etag + " of part " + partNumber + " does not match " + expectedETag);
+                }
+                if( etag == null ) {
+                    throw new CloudException("No ETag was returned for part " + partNumber + " of " + bucket + "/" + object);
+                }
+                return etag;
+            }
+            catch( S3Exception e ) {
+                if( attempt >= PART_ATTEMPTS || !"BadDigest".equals(e.getCode()) ) {
+                    throw e;
+                }
+                logger.warn("Retrying part " + partNumber + " of " + bucket + "/" + object + ": " + e.getSummary());
+            }
+            catch( InternalException e ) {
+                if( attempt >= PART_ATTEMPTS ) {
+                    throw e;
+                }
+                logger.warn("Retrying part " + partNumber + " of " + bucket + "/" + object + ": " + e.getMessage());
+            }
+        }
+    }
+
+    static @Nullable String getHeader( @Nullable S3Response response, @Nonnull String name ) {
+        if( response == null || response.headers == null ) {
+            return null;
+        }
+        for( Header header : response.headers ) {
+            if( header.getName().equalsIgnoreCase(name) ) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private @Nonnull Map<Integer, StoredPart> listParts( @Nonnull String uploadId ) throws CloudException, InternalException {
+        Map<Integer, StoredPart> stored = new HashMap<Integer, StoredPart>();
+        String marker = null;
+
+        do {
+            Map<String, String> parameters = uploadParameters(uploadId);
+
+            if( marker != null ) {
+                parameters.put("part-number-marker", marker);
+            }
+            S3Response response = new S3Method(provider, S3Action.LIST_PARTS, parameters, null).invoke(bucket, object);
+
+            if( response == null || response.document == null ) {
+                break;
+            }
+            NodeList blocks = response.document.getElementsByTagName("Part");
+
+            for( int i = 0; i < blocks.getLength(); i++ ) {
+                NodeList attrs = blocks.item(i).getChildNodes();
+                Integer partNumber = null;
+                String etag = null;
+                long size = -1L;
+
+                for( int j = 0; j < attrs.getLength(); j++ ) {
+                    Node attr = attrs.item(j);
+
+                    if( !attr.hasChildNodes() ) {
+                        continue;
+                    }
+                    String value = attr.getFirstChild().getNodeValue().trim();
+
+                    if( attr.getNodeName().equals("PartNumber") ) {
+                        partNumber = Integer.valueOf(value);
+                    }
+                    else if( attr.getNodeName().equals("ETag") ) {
+                        etag = value;
+                    }
+                    else if( attr.getNodeName().equals("Size") ) {
+                        size = Long.parseLong(value);
+                    }
+                }
+                if( partNumber != null && etag != null ) {
+                    stored.put(partNumber, new StoredPart(etag, size));
+                }
+            }
+            marker = ( "true".equals(getText(response.document, "IsTruncated")) ? getText(response.document, "NextPartNumberMarker") : null );
+        } while( marker != null );
+        return stored;
+    }
+
+    private @Nonnull File getStateFile( long partSize ) {
+        // any change to the file or the part size starts a new upload
+        String key = bucket + "/" + object + "|" + file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified() + "|" + partSize;
+
+        return new File(new File(System.getProperty("java.io.tmpdir"), STATE_DIR), V4Signer.sha256Hex(key) + ".upload");
+    }
+
+    private @Nullable String readState( @Nonnull File stateFile ) {
+        if( !stateFile.exists() ) {
+            return null;
+        }
+        BufferedReader reader = null;
+
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(stateFile), "utf-8"));
+            String uploadId = reader.readLine();
+
+            return ( uploadId == null || uploadId.trim().isEmpty() ? null : uploadId.trim() );
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to read upload state " + stateFile + ": " + e.getMessage());
+            return null;
+        }
+        finally {
+            if( reader != null ) {
+                try { reader.close(); }
+                catch( IOException ignore ) { }
+            }
+        }
+    }
+
+    private void writeState( @Nonnull File stateFile, @Nonnull String uploadId ) {
+        File dir = stateFile.getParentFile();
+
+        if( !dir.exists() && !dir.mkdirs() ) {
+            logger.warn("Unable to create " + dir + ", upload " + uploadId + " cannot be resumed");
+            return;
+        }
+        Writer writer = null;
+
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(stateFile), "utf-8");
+            writer.write(uploadId);
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to write upload state " + stateFile + ", upload " + uploadId + " cannot be resumed: " + e.getMessage());
+        }
+        finally {
+            if( writer != null ) {
+                try { writer.close(); }
+                catch( IOException ignore ) { }
+            }
+        }
+    }
+
+    private void deleteState( @Nonnull File stateFile ) {
+        if( stateFile.exists() && !stateFile.delete() ) {
+            logger.warn("Unable to delete upload state " + stateFile);
+        }
+    }
+}
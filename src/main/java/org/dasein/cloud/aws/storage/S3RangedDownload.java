@@ -0,0 +1,352 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.storage;
+
+import org.apache.http.HttpStatus;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.aws.storage.S3Method.S3Response;
+import org.dasein.cloud.storage.FileTransfer;
+import org.dasein.cloud.util.APITrace;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads an S3 object by fetching byte ranges in parallel and writing each of them at its offset in a
+ * preallocated file. A range that fails part way is resumed from the last byte written rather than restarting
+ * the object. Every range after the first is requested with <code>If-Match</code> on the ETag of the object, so an
+ * object replaced during the download fails it instead of producing a mix of both versions.
+ * <p>
+ * The first range is requested before the size of the object is known. Its <code>Content-Range</code> gives the
+ * size, so an object smaller than one range takes a single request. Ranges are read as stored: a range of an
+ * object stored with <code>Content-Encoding: gzip</code> is a slice of the compressed bytes, so such objects are
+ * left to a plain GET, which decodes them whole.
+ * </p>
+ * <p>
+ * Range size and concurrency follow the <code>s3PartSizeMB</code> and <code>s3TransferThreads</code> settings
+ * of {@link S3MultipartUpload}, as does the size from which the rest of an object is fetched in parallel.
+ * </p>
+ *
+ * @since 2015.10
+ */
+public class S3RangedDownload {
+    static private final Logger logger = AWSCloud.getLogger(S3RangedDownload.class);
+
+    static private final int RANGE_ATTEMPTS = 5;
+    static private final int BUFFER_SIZE    = 64 * 1024;
+
+    private final AWSCloud provider;
+    private final String   bucket;
+    private final String   object;
+    private final File     toFile;
+    private final long     size;
+    private final String   etag;
+
+    /**
+     * @param provider the provider to download through
+     * @param bucket the bucket holding the object
+     * @param object the name of the object
+     * @param toFile the file to write the object to
+     * @param size the size of the object in bytes
+     * @param etag the ETag of the object, if known
+     */
+    public S3RangedDownload( @Nonnull AWSCloud provider, @Nonnull String bucket, @Nonnull String object, @Nonnull File toFile, long size, @Nullable String etag ) {
+        this.provider = provider;
+        this.bucket = bucket;
+        this.object = object;
+        this.toFile = toFile;
+        this.size = size;
+        this.etag = etag;
+    }
+
+    /**
+     * Downloads the object, blocking until all ranges are written.
+     * @param transfer optional transfer on which progress is reported
+     * @throws CloudException a range could not be fetched
+     * @throws InternalException the file could not be written or the download was interrupted
+     */
+    public void download( @Nullable FileTransfer transfer ) throws CloudException, InternalException {
+        download(transfer, null, -1L);
+    }
+
+    /**
+     * Downloads the object, blocking until all ranges are written.
+     * @param transfer optional transfer on which progress is reported
+     * @param first the response for the first range, already requested by the caller, or null
+     * @param firstEnd the last byte of the first range, or -1 if there is none
+     */
+    private void download( @Nullable final FileTransfer transfer, @Nullable final S3Response first, final long firstEnd ) throws CloudException, InternalException {
+        final long rest = size - firstEnd - 1;
+        // below the multipart threshold the rest of the object is fetched as a single range
+        final long rangeSize = ( first != null && !S3MultipartUpload.isMultipart(provider, size) ? Math.max(1L, rest) : S3MultipartUpload.getPartSize(provider, size) );
+        final int rangeCount = ( first == null ? 0 : 1 ) + ( int ) ( ( rest + rangeSize - 1 ) / rangeSize );
+        final AtomicLong transferred = new AtomicLong();
+        RandomAccessFile file;
+
+        if( transfer != null ) {
+            transfer.setBytesToTransfer(size);
+        }
+        try {
+            file = new RandomAccessFile(toFile, "rw");
+            file.setLength(size);
+        }
+        catch( IOException e ) {
+            if( first != null ) {
+                abort(first);
+            }
+            throw new InternalException(e);
+        }
+        final FileChannel channel = file.getChannel();
+        CompletionService<Void> ranges = new ExecutorCompletionService<Void>(S3.transfers);
+        List<Future<Void>> pending = new ArrayList<Future<Void>>();
+        int concurrency = S3MultipartUpload.getConcurrency(provider);
+        int next = 0, done = 0;
+
+        try {
+            while( done < rangeCount ) {
+                // bound the number of open connections for this download
+                while( next < rangeCount && next - done < concurrency ) {
+                    final S3Response initial = ( first != null && next == 0 ? first : null );
+                    final long start = ( initial != null ? 0L : firstEnd + 1 + ( next - ( first == null ? 0 : 1 ) ) * rangeSize );
+                    final long end = ( initial != null ? firstEnd : Math.min(start + rangeSize, size) - 1 );
+
+                    next++;
+                    pending.add(ranges.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            APITrace.begin(provider, "Blob.getRange");
+                            try {
+                                fetchRange(channel, start, end, transferred, transfer, initial);
+                                return null;
+                            }
+                            finally {
+                                APITrace.end();
+                            }
+                        }
+                    }));
+                }
+                try {
+                    ranges.take().get();
+                }
+                catch( ExecutionException e ) {
+                    Throwable t = e.getCause();
+
+                    if( t instanceof CloudException ) {
+                        throw ( CloudException ) t;
+                    }
+                    if( t instanceof InternalException ) {
+                        throw ( InternalException ) t;
+                    }
+                    throw new InternalException(t);
+                }
+                done++;
+            }
+            channel.force(false);
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InternalException(e);
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        finally {
+            for( Future<Void> f : pending ) {
+                f.cancel(true);
+            }
+            if( first != null ) {
+                // releases the first response if its range was cancelled before it started
+                abort(first);
+            }
+            try { file.close(); }
+            catch( IOException ignore ) { }
+        }
+    }
+
+    /**
+     * Fetches the bytes from start to end, inclusive, into the file. Failures part way resume after the last
+     * byte written.
+     * @param initial the response already requested for the range, or null to request it
+     */
+    private void fetchRange( @Nonnull FileChannel channel, long start, long end, @Nonnull AtomicLong transferred, @Nullable FileTransfer transfer, @Nullable S3Response initial ) throws CloudException, InternalException {
+        long position = start;
+
+        for( int attempt = 1; ; attempt++ ) {
+            S3Response response = initial;
+
+            if( attempt > 1 || response == null ) {
+                Map<String, String> headers = new HashMap<String, String>();
+
+                headers.put("Range", "bytes=" + position + "-" + end);
+                if( etag != null ) {
+                    headers.put("If-Match", etag);
+                }
+                response = new S3Method(provider, S3Action.GET_OBJECT, null, headers).invoke(bucket, object);
+            }
+
+            if( response == null || response.input == null ) {
+                throw new CloudException("No content was returned for bytes " + position + "-" + end + " of " + bucket + "/" + object);
+            }
+            try {
+                InputStream input = response.input;
+                byte[] data = new byte[BUFFER_SIZE];
+                int count;
+
+                while( position <= end && ( count = input.read(data, 0, ( int ) Math.min(data.length, end - position + 1)) ) != -1 ) {
+                    ByteBuffer buffer = ByteBuffer.wrap(data, 0, count);
+
+                    while( buffer.hasRemaining() ) {
+                        position += channel.write(buffer, position);
+                    }
+                    long total = transferred.addAndGet(count);
+
+                    if( transfer != null ) {
+                        transfer.setBytesTransferred(total);
+                    }
+                }
+                if( position > end ) {
+                    return;
+                }
+                throw new IOException("Connection closed after " + ( position - start ) + " of " + ( end - start + 1 ) + " bytes");
+            }
+            catch( IOException e ) {
+                if( attempt >= RANGE_ATTEMPTS ) {
+                    throw new InternalException(e);
+                }
+                logger.warn("Resuming bytes " + position + "-" + end + " of " + bucket + "/" + object + " after: " + e.getMessage());
+            }
+            finally {
+                if( position <= end ) {
+                    // drop the connection rather than draining the rest of the range
+                    abort(response);
+                }
+                else {
+                    response.close();
+                }
+            }
+        }
+    }
+
+    static private void abort( @Nonnull S3Response response ) {
+        if( response.method != null ) {
+            response.method.abort();
+        }
+        response.close();
+    }
+
+    /**
+     * Downloads an object in ranges. The size and ETag of the object come from the response to its first range.
+     * @param transfer optional transfer on which progress is reported
+     * @return false if the object is stored gzip encoded, in which case nothing was written and the caller must
+     * fetch the object whole
+     * @throws CloudException the object does not exist or a range could not be fetched
+     * @throws InternalException the file could not be written or the download was interrupted
+     */
+    static boolean get( @Nonnull AWSCloud provider, @Nonnull String bucket, @Nonnull String object, @Nonnull File toFile, @Nullable FileTransfer transfer ) throws CloudException, InternalException {
+        Map<String, String> headers = new HashMap<String, String>();
+        S3Response response;
+
+        headers.put("Range", "bytes=0-" + ( S3MultipartUpload.getPartSize(provider, 0L) - 1 ));
+        try {
+            response = new S3Method(provider, S3Action.GET_OBJECT, null, headers).invoke(bucket, object);
+        }
+        catch( S3Exception e ) {
+            // an empty object has no first byte to start a range at
+            if( e.getStatus() != HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE ) {
+                throw e;
+            }
+            response = null;
+        }
+        if( response == null || response.input == null ) {
+            new S3RangedDownload(provider, bucket, object, toFile, 0L, null).download(transfer);
+            return true;
+        }
+        String encoding = S3MultipartUpload.getHeader(response, "Content-Encoding");
+        String range = S3MultipartUpload.getHeader(response, "Content-Range");
+        long size, firstEnd;
+
+        if( encoding != null && encoding.toLowerCase().contains("gzip") ) {
+            abort(response);
+            return false;
+        }
+        if( range == null ) {
+            // the range was ignored and the whole object returned
+            size = response.contentLength;
+            firstEnd = size - 1;
+        }
+        else {
+            // bytes <first>-<last>/<size>
+            int dash = range.indexOf('-'), slash = range.indexOf('/');
+
+            try {
+                firstEnd = Long.parseLong(range.substring(dash + 1, slash).trim());
+                size = Long.parseLong(range.substring(slash + 1).trim());
+            }
+            catch( RuntimeException e ) {
+                size = -1L;
+                firstEnd = -1L;
+            }
+        }
+        if( size < 0 || firstEnd >= size ) {
+            abort(response);
+            return false;
+        }
+        new S3RangedDownload(provider, bucket, object, toFile, size, S3MultipartUpload.getHeader(response, "ETag")).download(transfer, response, firstEnd);
+        return true;
+    }
+
+    /**
+     * Fetches the headers of an object.
+     * @return the response, or null if the object does not exist
+     */
+    static @Nullable S3Response head( @Nonnull AWSCloud provider, @Nonnull String bucket, @Nonnull String object ) throws CloudException, InternalException {
+        try {
+            return new S3Method(provider, S3Action.OBJECT_EXISTS).invoke(bucket, object);
+        }
+        catch( S3Exception e ) {
+            if( e.getStatus() == HttpStatus.SC_NOT_FOUND ) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the size of the object in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+}
@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 @RunWith(JUnit4.class)
 public class AWSSignatureV4Tests {
@@ -416,6 +417,38 @@ for f in sorted(basenames):
         assertEquals("AWS4-HMAC-SHA256 Credential=AKIDEXAMPLE/20110909/us-east-1/host/aws4_request, SignedHeaders=content-type;date;host, Signature=b105eb10c6d318d2294de9d49dd8b031b55e3c3fe139f2e637da70511e9e7b71", authz);
     }
 
+    @Test
+    public void testV4Signature__repeated_signing_is_stable() throws Exception {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Date", "Mon, 09 Sep 2011 23:36:00 GMT");
+        headers.put("Host", "host.foo.com");
+        for( int i = 0; i < 3; i++ ) {
+            String authz = awsCloud.getV4Authorization("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY",
+                    "POST", "https://host.foo.com/?f", "host", headers, "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+            assertEquals("AWS4-HMAC-SHA256 Credential=AKIDEXAMPLE/20110909/us-east-1/host/aws4_request, SignedHeaders=date;host, Signature=b7eb653abe5f846e7eee4d1dba33b15419dc424aaf215d49b1240732b10cc4ca", authz);
+        }
+    }
 
+    @Test
+    public void testV4Signature__rotated_secret_is_not_cached() throws Exception {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Date", "Mon, 09 Sep 2011 23:36:00 GMT");
+        headers.put("Host", "host.foo.com");
+        String authz = awsCloud.getV4Authorization("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY",
+                "POST", "https://host.foo.com/?f", "host", headers, "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+        String rotated = awsCloud.getV4Authorization("AKIDEXAMPLE", "rotatedSecretKeyEXAMPLEKEY",
+                "POST", "https://host.foo.com/?f", "host", headers, "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+        assertFalse("Signing key must change with the secret", authz.equals(rotated));
+    }
 
+    @Test
+    public void testV4Signature__header_whitespace_is_collapsed() throws Exception {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "  application/x-www-form-urlencoded;\t  charset=utf8 ");
+        headers.put("Date", "Mon, 09 Sep 2011 23:36:00 GMT");
+        headers.put("Host", "host.foo.com");
+        String authz = awsCloud.getV4Authorization("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY",
+                "POST", "https://host.foo.com/", "host", headers, "3ba8907e7a252327488df390ed517c45b96dead033600219bdca7107d1d3f88a");
+        assertEquals("AWS4-HMAC-SHA256 Credential=AKIDEXAMPLE/20110909/us-east-1/host/aws4_request, SignedHeaders=content-type;date;host, Signature=b105eb10c6d318d2294de9d49dd8b031b55e3c3fe139f2e637da70511e9e7b71", authz);
+    }
 }
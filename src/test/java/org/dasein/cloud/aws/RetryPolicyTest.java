@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the retry policy.
+ *
+ * @since 2015.10
+ * @see org.dasein.cloud.aws.RetryPolicy
+ */
+public class RetryPolicyTest {
+    static private final String ACCOUNT = "123456789012";
+
+    @Test
+    public void classifyRetryableErrors() {
+        RetryPolicy policy = new RetryPolicy();
+
+        assertTrue(policy.isRetryable(400, "RequestLimitExceeded"));
+        assertTrue(policy.isRetryable(400, "Throttling"));
+        assertTrue(policy.isRetryable(503, "SlowDown"));
+        assertTrue(policy.isRetryable(503, null));
+        assertTrue(policy.isRetryable(500, "InternalError"));
+        assertFalse(policy.isRetryable(400, "InvalidParameterValue"));
+        assertFalse(policy.isRetryable(403, "AccessDenied"));
+        assertFalse(policy.isRetryable(404, null));
+    }
+
+    @Test
+    public void delaysStayWithinBounds() {
+        RetryPolicy policy = new RetryPolicy(10, 100L, 2000L, 1000);
+        Random random = new Random(42);
+        long delay = 0;
+
+        for( int i = 0; i < 1000; i++ ) {
+            long next = policy.getDelay(delay, random);
+
+            assertTrue("Delay below base: " + next, next >= 100L);
+            assertTrue("Delay above cap: " + next, next <= 2000L);
+            assertTrue("Delay grew too fast: " + next, next <= Math.max(100L, delay) * 3L);
+            delay = next;
+        }
+    }
+
+    @Test
+    public void stopsAfterMaxRetries() {
+        RetryPolicy policy = new RetryPolicy(2, 1L, 1L, 1000);
+        RetryPolicy.Attempt attempt = policy.begin(ACCOUNT, "us-east-1");
+
+        assertTrue(attempt.retry(503, null));
+        assertTrue(attempt.retry(503, null));
+        assertFalse(attempt.retry(503, null));
+        assertEquals(2, attempt.getRetries());
+    }
+
+    @Test
+    public void budgetIsPerRegion() {
+        RetryPolicy policy = new RetryPolicy(10, 1L, 1L, 2 * RetryPolicy.RETRY_COST);
+
+        assertTrue(policy.begin(ACCOUNT, "us-east-1").retry(400, "RequestLimitExceeded"));
+        assertTrue(policy.begin(ACCOUNT, "us-east-1").retry(400, "RequestLimitExceeded"));
+        assertFalse("Budget should be exhausted", policy.begin(ACCOUNT, "us-east-1").retry(400, "RequestLimitExceeded"));
+        assertTrue("Other regions keep their budget", policy.begin(ACCOUNT, "eu-west-1").retry(400, "RequestLimitExceeded"));
+    }
+
+    @Test
+    public void budgetIsPerAccount() {
+        RetryPolicy policy = new RetryPolicy(10, 1L, 1L, RetryPolicy.RETRY_COST);
+
+        assertTrue(policy.begin(ACCOUNT, "us-east-1").retry(400, "RequestLimitExceeded"));
+        assertFalse("Budget should be exhausted", policy.begin(ACCOUNT, "us-east-1").retry(400, "RequestLimitExceeded"));
+        assertTrue("Other accounts keep their budget", policy.begin("210987654321", "us-east-1").retry(400, "RequestLimitExceeded"));
+    }
+
+    @Test
+    public void successRefillsBudget() {
+        RetryPolicy policy = new RetryPolicy(10, 1L, 1L, 2 * RetryPolicy.RETRY_COST);
+        RetryPolicy.Attempt attempt = policy.begin(ACCOUNT, "us-east-1");
+
+        assertTrue(attempt.retry(503, null));
+        assertTrue(attempt.retry(503, null));
+        assertEquals(0, policy.getRemainingBudget(ACCOUNT, "us-east-1"));
+        attempt.succeeded();
+        assertEquals(2 * RetryPolicy.RETRY_COST, policy.getRemainingBudget(ACCOUNT, "us-east-1"));
+    }
+}
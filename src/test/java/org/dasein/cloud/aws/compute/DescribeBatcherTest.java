@@ -0,0 +1,337 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.compute;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.aws.AWSCloud;
+import org.dasein.cloud.compute.Volume;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the coalescing of single-id lookups. Each test uses its own region, so batches from different
+ * tests never meet. Lookups are only batched while a request is in flight, so most tests first start a request that
+ * is held until they release it.
+ *
+ * @since 2015.10
+ * @see org.dasein.cloud.aws.compute.DescribeBatcher
+ */
+public class DescribeBatcherTest {
+    /**
+     * Answers every id with its own volume and records the requests made.
+     */
+    static private class RecordingFetcher implements DescribeBatcher.Fetcher<Volume> {
+        private final Map<String, Volume> volumes = new HashMap<String, Volume>();
+        private final List<String>        fetchedOne = new ArrayList<String>();
+        private final List<List<String>>  fetchedAll = new ArrayList<List<String>>();
+        private CloudException            failure;
+
+        synchronized @Nonnull Volume volume( @Nonnull String id ) {
+            Volume volume = volumes.get(id);
+
+            if( volume == null ) {
+                volume = mock(Volume.class);
+                volumes.put(id, volume);
+            }
+            return volume;
+        }
+
+        @Override
+        public synchronized @Nullable Volume fetchOne( @Nonnull String id ) throws CloudException {
+            fetchedOne.add(id);
+            if( failure != null ) {
+                throw failure;
+            }
+            return volume(id);
+        }
+
+        @Override
+        public synchronized @Nonnull Map<String, Volume> fetchAll( @Nonnull Collection<String> ids ) throws CloudException {
+            Map<String, Volume> results = new HashMap<String, Volume>();
+
+            fetchedAll.add(new ArrayList<String>(ids));
+            if( failure != null ) {
+                throw failure;
+            }
+            for( String id : ids ) {
+                results.put(id, volume(id));
+            }
+            return results;
+        }
+    }
+
+    static private @Nonnull AWSCloud provider( @Nonnull String regionId, int windowMillis ) {
+        AWSCloud provider = mock(AWSCloud.class);
+        ProviderContext ctx = mock(ProviderContext.class);
+
+        when(ctx.getAccountNumber()).thenReturn("123456789012");
+        when(ctx.getRegionId()).thenReturn(regionId);
+        when(provider.getContext()).thenReturn(ctx);
+        when(provider.getIntProperty(DescribeBatcher.P_WINDOW, 0)).thenReturn(windowMillis);
+        return provider;
+    }
+
+    /**
+     * Starts a lookup whose request stays in flight until the returned latch is released.
+     */
+    static private @Nonnull CountDownLatch holdRequest( @Nonnull ExecutorService threads, @Nonnull final AWSCloud provider ) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        threads.submit(new Callable<Volume>() {
+            @Override
+            public Volume call() throws Exception {
+                return DescribeBatcher.getVolumeBatcher().load(provider, "vol-held", new DescribeBatcher.Fetcher<Volume>() {
+                    @Override
+                    public @Nullable Volume fetchOne( @Nonnull String id ) throws InternalException {
+                        started.countDown();
+                        try {
+                            release.await();
+                        }
+                        catch( InterruptedException e ) {
+                            throw new InternalException(e);
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public @Nonnull Map<String, Volume> fetchAll( @Nonnull Collection<String> ids ) {
+                        throw new IllegalStateException("The held request was batched");
+                    }
+                });
+            }
+        });
+        started.await();
+        return release;
+    }
+
+    /**
+     * Waits until the given number of lookups were made after the count passed in, and have joined their batch.
+     */
+    static private void awaitLookups( long before, int count ) throws InterruptedException {
+        while( DescribeBatcher.getVolumeBatcher().getLookups() < before + count ) {
+            Thread.sleep(10L);
+        }
+        Thread.sleep(100L);
+    }
+
+    static private @Nonnull List<Future<Volume>> lookup( @Nonnull ExecutorService threads, @Nonnull final AWSCloud provider, @Nonnull final RecordingFetcher fetcher, @Nonnull Collection<String> ids ) {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Volume>> results = new ArrayList<Future<Volume>>();
+
+        for( final String id : ids ) {
+            results.add(threads.submit(new Callable<Volume>() {
+                @Override
+                public Volume call() throws Exception {
+                    start.await();
+                    return DescribeBatcher.getVolumeBatcher().load(provider, id, fetcher);
+                }
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+
+    static private @Nonnull List<String> ids( int count ) {
+        List<String> ids = new ArrayList<String>();
+
+        for( int i = 0; i < count; i++ ) {
+            ids.add("vol-" + i);
+        }
+        return ids;
+    }
+
+    @Test(timeout = 10000L)
+    public void concurrentLookupsShareOneRequest() throws Exception {
+        AWSCloud provider = provider("test-shared", 60000);
+        RecordingFetcher fetcher = new RecordingFetcher();
+        List<String> ids = ids(10);
+        ExecutorService threads = Executors.newCachedThreadPool();
+
+        try {
+            CountDownLatch release = holdRequest(threads, provider);
+            long before = DescribeBatcher.getVolumeBatcher().getLookups();
+            List<Future<Volume>> results = lookup(threads, provider, fetcher, ids);
+
+            awaitLookups(before, ids.size());
+            release.countDown();
+
+            for( int i = 0; i < ids.size(); i++ ) {
+                assertSame(fetcher.volume(ids.get(i)), results.get(i).get());
+            }
+            assertEquals(1, fetcher.fetchedAll.size());
+            assertEquals(new HashSet<String>(ids), new HashSet<String>(fetcher.fetchedAll.get(0)));
+            assertTrue(fetcher.fetchedOne.isEmpty());
+        }
+        finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void failureReachesEveryCaller() throws Exception {
+        AWSCloud provider = provider("test-failure", 60000);
+        RecordingFetcher fetcher = new RecordingFetcher();
+        ExecutorService threads = Executors.newCachedThreadPool();
+
+        fetcher.failure = new CloudException("Describe failed");
+        try {
+            CountDownLatch release = holdRequest(threads, provider);
+            long before = DescribeBatcher.getVolumeBatcher().getLookups();
+            List<Future<Volume>> results = lookup(threads, provider, fetcher, ids(5));
+
+            awaitLookups(before, 5);
+            release.countDown();
+            for( Future<Volume> result : results ) {
+                try {
+                    result.get();
+                    fail("The failure of the shared request was not thrown");
+                }
+                catch( ExecutionException e ) {
+                    assertSame(fetcher.failure, e.getCause());
+                }
+            }
+            assertEquals(1, fetcher.fetchedAll.size());
+        }
+        finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void fullBatchIsSentBeforeTheWindowCloses() throws Exception {
+        AWSCloud provider = provider("test-full", 60000);
+        RecordingFetcher fetcher = new RecordingFetcher();
+        ExecutorService threads = Executors.newCachedThreadPool();
+
+        try {
+            // never released, so only the size of the batch can send it
+            holdRequest(threads, provider);
+            for( Future<Volume> result : lookup(threads, provider, fetcher, ids(DescribeBatcher.MAX_IDS)) ) {
+                result.get();
+            }
+            assertEquals(1, fetcher.fetchedAll.size());
+            assertEquals(DescribeBatcher.MAX_IDS, fetcher.fetchedAll.get(0).size());
+        }
+        finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void lookupWithNothingInFlightIsSentAtOnce() throws Exception {
+        AWSCloud provider = provider("test-single", 60000);
+        RecordingFetcher fetcher = new RecordingFetcher();
+
+        assertSame(fetcher.volume("vol-1"), DescribeBatcher.getVolumeBatcher().load(provider, "vol-1", fetcher));
+        assertEquals(1, fetcher.fetchedOne.size());
+        assertTrue(fetcher.fetchedAll.isEmpty());
+    }
+
+    @Test(timeout = 10000L)
+    public void batchIsSentWhenTheRequestInFlightCompletes() throws Exception {
+        AWSCloud provider = provider("test-follow", 60000);
+        RecordingFetcher fetcher = new RecordingFetcher();
+        ExecutorService threads = Executors.newCachedThreadPool();
+
+        try {
+            CountDownLatch release = holdRequest(threads, provider);
+            long before = DescribeBatcher.getVolumeBatcher().getLookups();
+            List<Future<Volume>> results = lookup(threads, provider, fetcher, ids(1));
+
+            awaitLookups(before, 1);
+            release.countDown();
+            assertSame(fetcher.volume("vol-0"), results.get(0).get());
+            assertEquals(1, fetcher.fetchedOne.size());
+        }
+        finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void interruptedCallerLeavesTheBatchToTheOthers() throws Exception {
+        final AWSCloud provider = provider("test-interrupt", 60000);
+        final RecordingFetcher fetcher = new RecordingFetcher();
+        final Map<String, Object> results = new HashMap<String, Object>();
+        List<Thread> threads = new ArrayList<Thread>();
+        ExecutorService held = Executors.newCachedThreadPool();
+        CountDownLatch release = holdRequest(held, provider);
+
+        for( final String id : ids(3) ) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Object result;
+
+                    try {
+                        result = DescribeBatcher.getVolumeBatcher().load(provider, id, fetcher);
+                    }
+                    catch( Exception e ) {
+                        result = e;
+                    }
+                    synchronized( results ) {
+                        results.put(id, result);
+                    }
+                }
+            });
+
+            threads.add(t);
+            t.start();
+            // the first thread leads the batch, the others join it
+            Thread.sleep(100L);
+        }
+        threads.get(2).interrupt();
+        threads.get(2).join();
+        release.countDown();
+        for( Thread t : threads ) {
+            t.join();
+        }
+        held.shutdownNow();
+        assertTrue(results.get("vol-2") instanceof InternalException);
+        assertSame(fetcher.volume("vol-0"), results.get("vol-0"));
+        assertSame(fetcher.volume("vol-1"), results.get("vol-1"));
+        assertEquals(1, fetcher.fetchedAll.size());
+        assertEquals(ids(3), fetcher.fetchedAll.get(0));
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.compute;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.util.Jiterator;
+import org.junit.Test;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the streaming item set parser.
+ *
+ * @since 2015.10
+ * @see org.dasein.cloud.aws.compute.ItemSetStreamParser
+ */
+public class ItemSetStreamParserTest {
+    final static String XML_RESERVATION_1 = "    <item>\n" +
+            "      <reservationId>r-1</reservationId>\n" +
+            "      <groupSet><item><groupId>sg-1</groupId></item></groupSet>\n" +
+            "      <instancesSet>\n" +
+            "        <item>\n" +
+            "          <instanceId>i-1</instanceId>\n" +
+            "          <groupSet><item><groupId>sg-1</groupId></item></groupSet>\n" +
+            "        </item>\n" +
+            "        <item>\n" +
+            "          <instanceId>i-2</instanceId>\n" +
+            "          <tagSet><item><key>Name</key><value>a &amp; b</value></item></tagSet>\n" +
+            "        </item>\n" +
+            "      </instancesSet>\n" +
+            "    </item>\n";
+
+    final static String XML_RESERVATION_2 = "    <item>\n" +
+            "      <reservationId>r-2</reservationId>\n" +
+            "      <instancesSet>\n" +
+            "        <item><instanceId>i-3</instanceId></item>\n" +
+            "      </instancesSet>\n" +
+            "    </item>\n";
+
+    private static String response( String nextToken ) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<DescribeInstancesResponse xmlns=\"http://ec2.amazonaws.com/doc/2014-06-15/\">\n" +
+                "  <requestId>fdcdcab1-ae5c-489e-9c33-4637c5dda355</requestId>\n" +
+                "  <reservationSet>\n" + XML_RESERVATION_1 + XML_RESERVATION_2 + "  </reservationSet>\n" +
+                ( nextToken == null ? "" : "  <nextToken>" + nextToken + "</nextToken>\n" ) +
+                "</DescribeInstancesResponse>";
+    }
+
+    private static @Nullable String getValue( @Nonnull Node item, @Nonnull String name ) {
+        NodeList attributes = item.getChildNodes();
+
+        for( int i = 0; i < attributes.getLength(); i++ ) {
+            Node attr = attributes.item(i);
+
+            if( attr.getNodeName().equals(name) && attr.hasChildNodes() ) {
+                return attr.getFirstChild().getNodeValue().trim();
+            }
+        }
+        return null;
+    }
+
+    private static @Nonnull List<String> toList( @Nonnull Jiterator<String> iterator ) {
+        List<String> list = new ArrayList<String>();
+
+        for( String s : iterator ) {
+            list.add(s);
+        }
+        return list;
+    }
+
+    @Test
+    public void parseAllSets() throws Exception {
+        Jiterator<String> iterator = new Jiterator<String>();
+        ItemSetStreamParser<String> parser = new ItemSetStreamParser<String>("instancesSet", iterator) {
+            @Override
+            protected @Nullable String toItem( @Nonnull Node item ) {
+                return getValue(item, "instanceId");
+            }
+        };
+
+        parser.parse(new ByteArrayInputStream(response(null).getBytes("UTF-8")));
+        iterator.complete();
+        assertEquals("Only direct children of each instancesSet should be items", 3, parser.getCount());
+        assertEquals("[i-1, i-2, i-3]", toList(iterator).toString());
+        assertNull(parser.getNextToken());
+    }
+
+    @Test
+    public void parseNestedContent() throws Exception {
+        Jiterator<String> iterator = new Jiterator<String>();
+        ItemSetStreamParser<String> parser = new ItemSetStreamParser<String>("instancesSet", iterator) {
+            @Override
+            protected @Nullable String toItem( @Nonnull Node item ) {
+                NodeList attributes = item.getChildNodes();
+
+                for( int i = 0; i < attributes.getLength(); i++ ) {
+                    Node attr = attributes.item(i);
+
+                    if( attr.getNodeName().equals("tagSet") ) {
+                        return getValue(attr.getChildNodes().item(0), "value");
+                    }
+                }
+                return null;
+            }
+        };
+
+        parser.parse(new ByteArrayInputStream(response(null).getBytes("UTF-8")));
+        iterator.complete();
+        assertEquals("Skipped items should not be counted", 1, parser.getCount());
+        assertEquals("[a & b]", toList(iterator).toString());
+    }
+
+    @Test
+    public void parseNextToken() throws Exception {
+        Jiterator<String> iterator = new Jiterator<String>();
+        ItemSetStreamParser<String> parser = new ItemSetStreamParser<String>("instancesSet", iterator) {
+            @Override
+            protected @Nullable String toItem( @Nonnull Node item ) {
+                return getValue(item, "instanceId");
+            }
+        };
+
+        parser.parse(new ByteArrayInputStream(response("token-2").getBytes("UTF-8")));
+        iterator.complete();
+        assertEquals("token-2", parser.getNextToken());
+        assertEquals(3, toList(iterator).size());
+    }
+
+    @Test(timeout = 10000L)
+    public void parsingAcceptsTheResponse() throws Exception {
+        Jiterator<String> iterator = new Jiterator<String>();
+        FirstResponse first = new FirstResponse();
+        ItemSetStreamParser<String> parser = new ItemSetStreamParser<String>("instancesSet", iterator, first) {
+            @Override
+            protected @Nullable String toItem( @Nonnull Node item ) {
+                return getValue(item, "instanceId");
+            }
+        };
+
+        parser.parse(new ByteArrayInputStream(response(null).getBytes("UTF-8")));
+        // an error after the response was accepted is left to the iterator
+        first.failed(new CloudException("Connection reset"));
+        first.await();
+    }
+
+    @Test(timeout = 10000L)
+    public void errorBeforeTheResponseIsThrownByTheCaller() throws Exception {
+        FirstResponse first = new FirstResponse();
+        CloudException failure = new CloudException("AuthFailure");
+
+        first.failed(failure);
+        try {
+            first.await();
+            fail("The error of the request was not thrown");
+        }
+        catch( CloudException e ) {
+            assertSame(failure, e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.compute;
+
+import org.dasein.util.CalendarWrapper;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for the CloudWatch time series cache.
+ *
+ * @since 2015.10
+ * @see org.dasein.cloud.aws.compute.MetricSeriesCache
+ */
+public class MetricSeriesCacheTest {
+    static private final long MINUTE  = CalendarWrapper.MINUTE;
+    static private final long HORIZON = 2L * CalendarWrapper.DAY;
+    static private final long OVERLAP = 5L * MINUTE;
+
+    /**
+     * Returns one datapoint per minute in the window requested and records the windows requested.
+     */
+    static private class CountingFetcher implements MetricSeriesCache.Fetcher {
+        private final List<long[]> requests = new ArrayList<long[]>();
+
+        @Override
+        public @Nonnull Collection<EC2Instance.Metric> fetch( long startTimestamp, long endTimestamp ) {
+            List<EC2Instance.Metric> metrics = new ArrayList<EC2Instance.Metric>();
+
+            requests.add(new long[]{startTimestamp, endTimestamp});
+            for( long t = ( startTimestamp + MINUTE - 1 ) / MINUTE * MINUTE; t <= endTimestamp; t += MINUTE ) {
+                EC2Instance.Metric m = new EC2Instance.Metric();
+
+                m.timestamp = t;
+                m.average = t / MINUTE;
+                metrics.add(m);
+            }
+            return metrics;
+        }
+    }
+
+    @Test
+    public void slidingWindowFetchesOnlyTheTail() throws Exception {
+        CountingFetcher fetcher = new CountingFetcher();
+        long end = System.currentTimeMillis() / MINUTE * MINUTE;
+        long start = end - CalendarWrapper.DAY;
+        String key = "sliding";
+
+        assertEquals(1441, MetricSeriesCache.get(key, start, end, HORIZON, OVERLAP, fetcher).size());
+        Collection<EC2Instance.Metric> metrics = MetricSeriesCache.get(key, start + MINUTE, end + MINUTE, HORIZON, OVERLAP, fetcher);
+
+        assertEquals(1441, metrics.size());
+        assertEquals(2, fetcher.requests.size());
+        assertEquals(end - 5L * MINUTE, fetcher.requests.get(1)[0]);
+        assertEquals(end + MINUTE, fetcher.requests.get(1)[1]);
+
+        long expected = start + MINUTE;
+
+        for( EC2Instance.Metric m : metrics ) {
+            assertEquals(expected, m.timestamp);
+            assertEquals(( double ) ( expected / MINUTE ), m.average, 0.0);
+            expected += MINUTE;
+        }
+    }
+
+    @Test
+    public void lateDatapointsWithinTheOverlapAreFetched() throws Exception {
+        final List<Long> late = new ArrayList<Long>();
+        CountingFetcher fetcher = new CountingFetcher() {
+            @Override
+            public @Nonnull Collection<EC2Instance.Metric> fetch( long startTimestamp, long endTimestamp ) {
+                Collection<EC2Instance.Metric> metrics = super.fetch(startTimestamp, endTimestamp);
+
+                // on the first fetch the last 12 minutes have not been published yet
+                if( late.isEmpty() ) {
+                    for( Iterator<EC2Instance.Metric> it = metrics.iterator(); it.hasNext(); ) {
+                        EC2Instance.Metric m = it.next();
+
+                        if( m.timestamp > endTimestamp - 12L * MINUTE ) {
+                            late.add(m.timestamp);
+                            it.remove();
+                        }
+                    }
+                }
+                return metrics;
+            }
+        };
+        long end = System.currentTimeMillis() / MINUTE * MINUTE;
+        long start = end - CalendarWrapper.HOUR;
+        String key = "late";
+
+        assertEquals(49, MetricSeriesCache.get(key, start, end, HORIZON, 15L * MINUTE, fetcher).size());
+        assertEquals(62, MetricSeriesCache.get(key, start, end + MINUTE, HORIZON, 15L * MINUTE, fetcher).size());
+        assertEquals(end - 15L * MINUTE, fetcher.requests.get(1)[0]);
+    }
+
+    @Test
+    public void windowBeforeTheCacheIsFetchedInFull() throws Exception {
+        CountingFetcher fetcher = new CountingFetcher();
+        long end = System.currentTimeMillis() / MINUTE * MINUTE;
+        String key = "earlier";
+
+        MetricSeriesCache.get(key, end - CalendarWrapper.HOUR, end, HORIZON, OVERLAP, fetcher);
+        assertEquals(121, MetricSeriesCache.get(key, end - 2L * CalendarWrapper.HOUR, end, HORIZON, OVERLAP, fetcher).size());
+        assertEquals(2, fetcher.requests.size());
+        assertEquals(end - 2L * CalendarWrapper.HOUR, fetcher.requests.get(1)[0]);
+    }
+
+    @Test
+    public void datapointsBeyondTheHorizonAreRefetched() throws Exception {
+        CountingFetcher fetcher = new CountingFetcher();
+        long end = System.currentTimeMillis() / MINUTE * MINUTE;
+        long start = end - CalendarWrapper.HOUR;
+        String key = "horizon";
+
+        MetricSeriesCache.get(key, start, end, 30L * MINUTE, OVERLAP, fetcher);
+        assertEquals(61, MetricSeriesCache.get(key, start, end, 30L * MINUTE, OVERLAP, fetcher).size());
+        assertEquals(2, fetcher.requests.size());
+        assertEquals(start, fetcher.requests.get(1)[0]);
+    }
+}
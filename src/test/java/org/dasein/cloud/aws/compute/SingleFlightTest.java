@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.compute;
+
+import org.dasein.cloud.CloudException;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the sharing of identical requests in flight. Each test uses its own scope, so flights from
+ * different tests never meet.
+ *
+ * @since 2015.10
+ * @see org.dasein.cloud.aws.compute.SingleFlight
+ */
+public class SingleFlightTest {
+    static private final byte[] BODY = "<DescribeInstancesResponse/>\n\n".getBytes();
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown() {
+        threads.shutdownNow();
+    }
+
+    /**
+     * Joins a flight from another thread, as a caller other than the test thread.
+     */
+    private @Nonnull SingleFlight.Flight joinElsewhere( @Nonnull final String scope, @Nonnull final String request ) throws Exception {
+        return threads.submit(new Callable<SingleFlight.Flight>() {
+            @Override
+            public SingleFlight.Flight call() {
+                return SingleFlight.getInstance().join(scope, request);
+            }
+        }).get();
+    }
+
+    private @Nonnull Future<byte[]> await( @Nonnull final SingleFlight.Flight flight ) {
+        return threads.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return flight.await();
+            }
+        });
+    }
+
+    static private @Nonnull byte[] readAll( @Nonnull InputStream input, int length ) throws Exception {
+        byte[] read = new byte[length];
+        int total = 0;
+
+        while( total < length ) {
+            total += input.read(read, total, length - total);
+        }
+        return read;
+    }
+
+    @Test(timeout = 10000L)
+    public void followerReceivesTheLeadersBody() throws Exception {
+        SingleFlight.Flight leader = SingleFlight.getInstance().join("test-body", "r");
+        SingleFlight.Flight follower = joinElsewhere("test-body", "r");
+
+        assertTrue(leader.isLeader());
+        assertSame(leader, follower);
+        Future<byte[]> body = await(follower);
+        InputStream input = leader.capture(new ByteArrayInputStream(BODY), 1024);
+
+        assertTrue(input instanceof SingleFlight.Capture);
+        // a parser stops at the end of the document, before the trailing whitespace
+        readAll(input, BODY.length - 2);
+        (( SingleFlight.Capture ) input).drain();
+        leader.succeeded((( SingleFlight.Capture ) input).toByteArray());
+        assertArrayEquals(BODY, body.get());
+    }
+
+    @Test(timeout = 10000L)
+    public void followerReceivesTheLeadersFailure() throws Exception {
+        SingleFlight.Flight leader = SingleFlight.getInstance().join("test-failure", "r");
+        SingleFlight.Flight follower = joinElsewhere("test-failure", "r");
+        Future<byte[]> body = await(follower);
+        CloudException failure = new CloudException("Describe failed");
+
+        leader.failed(failure);
+        assertNull(body.get());
+        assertSame(failure, follower.getFailure());
+    }
+
+    @Test(timeout = 10000L)
+    public void failedFlightIsRemoved() throws Exception {
+        SingleFlight.Flight first = SingleFlight.getInstance().join("test-removed", "r");
+
+        first.failed(new CloudException("Describe failed"));
+        SingleFlight.Flight second = joinElsewhere("test-removed", "r");
+
+        assertFalse(first == second);
+        assertNull(second.getFailure());
+    }
+
+    @Test(timeout = 10000L)
+    public void flightNobodyJoinedIsNotCopied() throws Exception {
+        SingleFlight.Flight leader = SingleFlight.getInstance().join("test-alone", "r");
+        InputStream input = new ByteArrayInputStream(BODY);
+
+        assertSame(input, leader.capture(input, 1024));
+        // a caller arriving after the body started is not left waiting for a copy that is not kept
+        assertFalse(leader == joinElsewhere("test-alone", "r"));
+    }
+
+    @Test(timeout = 10000L)
+    public void bodyLargerThanTheLimitIsNotShared() throws Exception {
+        SingleFlight.Flight leader = SingleFlight.getInstance().join("test-large", "r");
+        SingleFlight.Flight follower = joinElsewhere("test-large", "r");
+        Future<byte[]> body = await(follower);
+        SingleFlight.Capture input = ( SingleFlight.Capture ) leader.capture(new ByteArrayInputStream(BODY), 10);
+
+        readAll(input, BODY.length);
+        input.drain();
+        leader.succeeded(input.toByteArray());
+        // no body and no failure tells the follower to send its own request
+        assertNull(body.get());
+        assertNull(follower.getFailure());
+    }
+
+    @Test(timeout = 10000L)
+    public void requestAfterAMutationOpensANewFlight() throws Exception {
+        SingleFlight.Flight before = SingleFlight.getInstance().join("test-mutation", "r");
+
+        SingleFlight.getInstance().mutated("test-mutation");
+        SingleFlight.Flight after = joinElsewhere("test-mutation", "r");
+
+        assertFalse(before == after);
+        assertSame(after, joinElsewhere("test-mutation", "r"));
+    }
+}
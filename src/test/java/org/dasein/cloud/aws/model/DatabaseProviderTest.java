@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests for the RDS product catalog.
+ *
+ * @since 2015.10
+ * @see org.dasein.cloud.aws.model.DatabaseProvider
+ */
+public class DatabaseProviderTest {
+    static private final String CATALOG = "/org/dasein/cloud/aws/dbproducts.json";
+
+    @Test
+    public void fromFileReadsEachProviderOnce() throws Exception {
+        assertSame(DatabaseProvider.fromFile(CATALOG, "AWS"), DatabaseProvider.fromFile(CATALOG, "aws"));
+    }
+
+    @Test
+    public void enginesRegionsAndDefinitionsAreFoundIgnoringCase() throws Exception {
+        DatabaseProvider provider = DatabaseProvider.fromFile(CATALOG, "AWS");
+        DatabaseEngine engine = provider.findEngine("MYSQL");
+
+        assertNotNull(engine);
+        assertSame(engine, provider.findEngine("mysql"));
+        assertSame(engine.findRegion("US-EAST-1"), engine.findRegion("us-east-1"));
+
+        DatabaseProduct product = engine.findRegion("us-east-1").getProducts().get(0);
+
+        assertNotNull(provider.findProductDefinition(product.getName().toUpperCase()));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void productsOfASharedRegionCannotBeReplaced() throws Exception {
+        DatabaseRegion region = DatabaseProvider.fromFile(CATALOG, "AWS").findEngine("mysql").findRegion("us-east-1");
+
+        assertFalse(region.getProducts().isEmpty());
+        region.getProducts().set(0, new DatabaseProduct());
+    }
+
+    @Test
+    public void settingEnginesRebuildsTheIndex() {
+        DatabaseProvider provider = new DatabaseProvider("AWS", "test");
+        DatabaseEngine mysql = new DatabaseEngine(), postgres = new DatabaseEngine();
+
+        mysql.setName("mysql");
+        postgres.setName("postgres");
+        provider.setEngines(Collections.singletonList(mysql));
+        assertSame(mysql, provider.findEngine("mysql"));
+        provider.setEngines(Arrays.asList(postgres));
+        assertNull(provider.findEngine("mysql"));
+        assertSame(postgres, provider.findEngine("POSTGRES"));
+    }
+}
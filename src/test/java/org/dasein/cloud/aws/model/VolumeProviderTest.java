@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.model;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests for the EBS volume catalog.
+ *
+ * @since 2015.10
+ * @see org.dasein.cloud.aws.model.VolumeProvider
+ */
+public class VolumeProviderTest {
+    static private final String CATALOG = "/org/dasein/cloud/aws/volproducts.json";
+
+    @Test
+    public void everyProductHasAPriceInUsEast() throws Exception {
+        VolumeProvider provider = VolumeProvider.fromFile(CATALOG, "AWS");
+
+        for( VolumeProduct product : provider.getProducts() ) {
+            VolumePrice price = provider.findProductPrice("US-EAST-1", product.getId().toUpperCase());
+
+            assertNotNull(product.getId(), price);
+            assertSame(price, provider.findRegion("us-east-1").findPrice(product.getId()));
+        }
+    }
+
+    @Test
+    public void unknownRegionsAndProductsHaveNoPrice() throws Exception {
+        VolumeProvider provider = VolumeProvider.fromFile(CATALOG, "AWS");
+
+        assertNull(provider.findProductPrice("nowhere-1", "gp2"));
+        assertNull(provider.findProductPrice("us-east-1", "unknown"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void sharedProductListCannotGrow() throws Exception {
+        VolumeProvider.fromFile(CATALOG, "AWS").getProducts().add(new VolumeProduct());
+    }
+
+    @Test
+    public void setPricesRebuildsTheIndex() {
+        VolumeRegion region = new VolumeRegion();
+        VolumePrice price = new VolumePrice();
+
+        price.setId("gp2");
+        price.setMonthly(0.1f);
+        assertNull(region.findPrice("gp2"));
+        region.setPrices(Collections.singletonList(price));
+        assertEquals(0.1f, region.findPrice("GP2").getMonthly(), 0f);
+    }
+}
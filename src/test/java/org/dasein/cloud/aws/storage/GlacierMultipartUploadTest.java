@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.aws.storage;
+
+import org.dasein.cloud.aws.AWSCloud;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the Glacier tree hash and part size calculations. The expected hashes were computed independently
+ * following the tree hash algorithm in the Glacier developer guide.
+ *
+ * @since 2015.10
+ * @see org.dasein.cloud.aws.storage.GlacierMultipartUpload
+ */
+public class GlacierMultipartUploadTest {
+    static private final int  MB = 1024 * 1024;
+    static private final long GB = 1024L * MB;
+
+    static private @Nonnull ByteBuffer content( int length ) {
+        byte[] bytes = new byte[length];
+
+        for( int i = 0; i < length; i++ ) {
+            bytes[i] = ( byte ) ( i % 251 );
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    static private @Nonnull String treeHash( int length ) throws Exception {
+        return GlacierMultipartUpload.toHex(GlacierMultipartUpload.treeHash(content(length)));
+    }
+
+    static private @Nonnull byte[] sha256( @Nonnull byte[]... blocks ) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+        for( byte[] block : blocks ) {
+            digest.update(block);
+        }
+        return digest.digest();
+    }
+
+    static private @Nonnull AWSCloud provider( int partSizeMB ) {
+        AWSCloud provider = mock(AWSCloud.class);
+
+        when(provider.getIntProperty(eq(GlacierMultipartUpload.P_PART_SIZE), anyInt())).thenReturn(partSizeMB);
+        return provider;
+    }
+
+    @Test
+    public void emptyContentHashesAsOneEmptyLeaf() throws Exception {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", treeHash(0));
+    }
+
+    @Test
+    public void contentBelowOneMegabyteIsItsOwnHash() throws Exception {
+        assertEquals("bce0aff19cf5aa6a7469a30d61d04e4376e4bbf6381052ee9e7f33925c954d52", treeHash(100));
+    }
+
+    @Test
+    public void oneMegabyteIsASingleLeaf() throws Exception {
+        assertEquals("631b84027d6b9e52b539c4e8373622d23032dfadc64d60af87339c9037e4f769", treeHash(MB));
+    }
+
+    @Test
+    public void oddLeafIsPromotedUnchanged() throws Exception {
+        assertEquals("2e7d51c0ffe06ce95fe74beed9a4ab35d18837f4ab2a9f4f066a60359eb999a1", treeHash(3 * MB));
+    }
+
+    @Test
+    public void partialLastLeafAndNonPowerOfTwoLength() throws Exception {
+        assertEquals("3493387cee361be12e24da9c024bf3e2a55f81df464f6ae822209f79a92248f5", treeHash(5 * MB + MB / 2));
+        assertEquals("deb96dd479a20e396e4670fc8e8d80358b97cd8c77800c9310bd82ebb3285960", treeHash(6 * MB));
+    }
+
+    @Test
+    public void hashesArePairedLevelByLevel() throws Exception {
+        byte[] a = sha256("a".getBytes()), b = sha256("b".getBytes()), c = sha256("c".getBytes());
+
+        assertArrayEquals(a, GlacierMultipartUpload.treeHash(Arrays.asList(a)));
+        assertArrayEquals(sha256(a, b), GlacierMultipartUpload.treeHash(Arrays.asList(a, b)));
+        assertArrayEquals(sha256(sha256(a, b), c), GlacierMultipartUpload.treeHash(Arrays.asList(a, b, c)));
+    }
+
+    @Test
+    public void partHashesCombineToTheArchiveHash() throws Exception {
+        int length = 5 * MB + MB / 2;
+        ByteBuffer archive = content(length);
+
+        for( int partSize : new int[]{MB, 2 * MB, 4 * MB} ) {
+            List<byte[]> parts = new ArrayList<byte[]>();
+
+            for( int start = 0; start < length; start += partSize ) {
+                ByteBuffer part = archive.duplicate();
+
+                part.position(start);
+                part.limit(Math.min(length, start + partSize));
+                parts.add(GlacierMultipartUpload.treeHash(part.slice()));
+            }
+            assertArrayEquals("part size " + partSize, GlacierMultipartUpload.treeHash(archive), GlacierMultipartUpload.treeHash(parts));
+        }
+        assertEquals(0, archive.position());
+    }
+
+    @Test
+    public void partSizeIsRoundedUpToAPowerOfTwo() throws Exception {
+        assertEquals(64L * MB, GlacierMultipartUpload.getPartSize(provider(64), 10L * MB));
+        assertEquals(4L * MB, GlacierMultipartUpload.getPartSize(provider(3), 10L * MB));
+        assertEquals(GB, GlacierMultipartUpload.getPartSize(provider(4096), 10L * MB));
+    }
+
+    @Test
+    public void partSizeGrowsToStayWithinTenThousandParts() throws Exception {
+        assertEquals(64L * MB, GlacierMultipartUpload.getPartSize(provider(64), 10000L * 64L * MB));
+        assertEquals(128L * MB, GlacierMultipartUpload.getPartSize(provider(64), 10000L * 64L * MB + 1));
+        assertEquals(2L * MB, GlacierMultipartUpload.getPartSize(provider(1), 15000L * MB));
+    }
+
+    @Test
+    public void partSizeIsClampedToOneGigabyte() throws Exception {
+        assertEquals(GB, GlacierMultipartUpload.getPartSize(provider(64), 20000L * GB));
+    }
+}